@@ -73,6 +73,13 @@ public ComponentManager getComponentManager()
         return componentManager;
     }
 
+    @Override
+    public long getLastModification()
+    {
+        // The Component Manager to delegate to depends on the context
+        return UNTRACKED;
+    }
+
     @Override
     public <T> void registerComponent(ComponentDescriptor<T> componentDescriptor, T componentInstance)
         throws ComponentRepositoryException
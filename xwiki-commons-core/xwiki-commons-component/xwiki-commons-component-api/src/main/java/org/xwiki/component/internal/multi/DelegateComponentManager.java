@@ -29,20 +29,57 @@
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.manager.ComponentRepositoryException;
+import org.xwiki.component.manager.StampedComponentManager;
 
 /**
  * Delegate all calls to a defined Component Manager, acting as a Proxy for it.
+ * <p>
+ * Modifications are tracked as long as the Component Manager to delegate to is the one set with
+ * {@link #setComponentManager(ComponentManager)} (i.e. {@link #getComponentManager()} is not overridden) and is itself
+ * a {@link StampedComponentManager}. Extensions changing how lookups are made must override
+ * {@link #getLastModification()} to return {@link #UNTRACKED}.
  * 
  * @version $Id$
  * @since 3.3M2
  */
-public class DelegateComponentManager implements ComponentManager
+public class DelegateComponentManager implements StampedComponentManager
 {
     /**
      * @see #getComponentManager()
      */
     private ComponentManager componentManager;
 
+    /**
+     * Updated each time the Component Manager to delegate to is replaced.
+     */
+    private volatile long lastModification = ModificationStamps.next();
+
+    /**
+     * Modifications are not tracked when an extension chooses the Component Manager to delegate to, since it can
+     * change without notice (e.g. depending on the context).
+     */
+    private final boolean overridesComponentManager = overridesComponentManager(getClass());
+
+    /**
+     * @param componentManagerClass the class of a Delegate Component Manager
+     * @return {@code true} if the passed class overrides {@link #getComponentManager()}
+     */
+    private static boolean overridesComponentManager(Class< ? > componentManagerClass)
+    {
+        for (Class< ? > currentClass = componentManagerClass; currentClass != DelegateComponentManager.class;
+            currentClass = currentClass.getSuperclass()) {
+            try {
+                currentClass.getDeclaredMethod("getComponentManager");
+
+                return true;
+            } catch (NoSuchMethodException e) {
+                // Not overridden at this level
+            }
+        }
+
+        return false;
+    }
+
     /**
      * @return the Component Manager to delegate to
      */
@@ -57,6 +94,26 @@ public ComponentManager getComponentManager()
     public void setComponentManager(ComponentManager componentManager)
     {
         this.componentManager = componentManager;
+
+        this.lastModification = ModificationStamps.next();
+    }
+
+    @Override
+    public long getLastModification()
+    {
+        long stamp = UNTRACKED;
+
+        // Only track the Component Manager which has been set, extensions may delegate to a different one depending on
+        // the context
+        ComponentManager target = this.componentManager;
+        if (!this.overridesComponentManager && target instanceof StampedComponentManager) {
+            long targetStamp = ((StampedComponentManager) target).getLastModification();
+            if (targetStamp != UNTRACKED) {
+                stamp = Math.max(this.lastModification, targetStamp);
+            }
+        }
+
+        return stamp;
     }
 
     @Override
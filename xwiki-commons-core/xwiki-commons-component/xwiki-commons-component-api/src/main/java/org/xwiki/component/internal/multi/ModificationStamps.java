@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.internal.multi;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generate the stamps returned by the {@link org.xwiki.component.manager.StampedComponentManager}s, shared by all
+ * the Component Managers so that a Component Manager replaced by another one always gets a different stamp, even when
+ * the new one has been modified earlier.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public final class ModificationStamps
+{
+    /**
+     * The last generated stamp.
+     */
+    private static final AtomicLong STAMPS = new AtomicLong();
+
+    /**
+     * Utility class.
+     */
+    private ModificationStamps()
+    {
+    }
+
+    /**
+     * @return a stamp greater than all the stamps previously generated
+     */
+    public static long next()
+    {
+        return STAMPS.incrementAndGet();
+    }
+}
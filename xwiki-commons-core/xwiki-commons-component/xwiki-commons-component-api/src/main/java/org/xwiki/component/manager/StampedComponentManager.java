@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.manager;
+
+/**
+ * A Component Manager able to tell when the components it gives access to (including the ones of its parents) have
+ * last been modified. The Component Managers having it as parent use it to know when the lookups they cached are
+ * outdated.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public interface StampedComponentManager extends ComponentManager
+{
+    /**
+     * Returned by {@link #getLastModification()} when the modifications can't be tracked, in which case lookups made
+     * through this Component Manager must not be cached.
+     */
+    long UNTRACKED = -1;
+
+    /**
+     * @return a stamp which changes each time a component is registered or unregistered in this Component Manager or
+     *         in the Component Managers it gives access to, or each time these Component Managers are replaced,
+     *         {@link #UNTRACKED} if these modifications can't be tracked
+     */
+    long getLastModification();
+}
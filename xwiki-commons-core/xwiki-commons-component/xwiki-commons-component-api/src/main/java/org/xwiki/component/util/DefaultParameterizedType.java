@@ -45,6 +45,12 @@ public class DefaultParameterizedType implements ParameterizedType
      */
     private final Class< ? > rawType;
 
+    /**
+     * Computed once since parameterized types are mostly used as keys (e.g. for component roles) and computing the hash
+     * code requires going through all the generic arguments.
+     */
+    private final int hashCode;
+
     /**
      * @param ownerType the owner type
      * @param rawType the raw type
@@ -55,6 +61,8 @@ public DefaultParameterizedType(Type ownerType, Class< ? > rawType, Type... actu
         this.ownerType = ownerType;
         this.actualTypeArguments = actualTypeArguments;
         this.rawType = rawType;
+        this.hashCode = Arrays.hashCode(this.actualTypeArguments) ^ ObjectUtils.hasCode(this.ownerType)
+            ^ ObjectUtils.hasCode(this.rawType);
     }
 
     /**
@@ -86,17 +94,29 @@ public Type getRawType()
     @Override
     public int hashCode()
     {
-        return Arrays.hashCode(this.actualTypeArguments) ^ ObjectUtils.hasCode(this.ownerType)
-            ^ ObjectUtils.hasCode(this.rawType);
+        return this.hashCode;
     }
 
     @Override
     public boolean equals(Object o)
     {
+        if (o == this) {
+            return true;
+        }
+
         if (o == null || !(o instanceof ParameterizedType)) {
             return false;
         }
 
+        if (o instanceof DefaultParameterizedType) {
+            DefaultParameterizedType parameterizedType = (DefaultParameterizedType) o;
+
+            // Avoid cloning the generic arguments and comparing them when the types can't be equal
+            return this.hashCode == parameterizedType.hashCode && this.rawType == parameterizedType.rawType
+                && ObjectUtils.equals(this.ownerType, parameterizedType.ownerType)
+                && Arrays.equals(this.actualTypeArguments, parameterizedType.actualTypeArguments);
+        }
+
         ParameterizedType parameterizedType = (ParameterizedType) o;
 
         return ObjectUtils.equals(this.rawType, parameterizedType.getRawType())
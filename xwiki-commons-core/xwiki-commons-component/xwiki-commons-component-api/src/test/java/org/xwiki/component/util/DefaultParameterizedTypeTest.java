@@ -0,0 +1,63 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.util;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link DefaultParameterizedType}.
+ * 
+ * @version $Id$
+ */
+public class DefaultParameterizedTypeTest
+{
+    @SuppressWarnings("unused")
+    private Map<String, List<Integer>> field;
+
+    @Test
+    public void testEqualsAndHashCode() throws Exception
+    {
+        Type javaType = DefaultParameterizedTypeTest.class.getDeclaredField("field").getGenericType();
+
+        DefaultParameterizedType type1 =
+            new DefaultParameterizedType(null, Map.class, String.class, new DefaultParameterizedType(null, List.class,
+                Integer.class));
+        DefaultParameterizedType type2 =
+            new DefaultParameterizedType(null, Map.class, String.class, new DefaultParameterizedType(null, List.class,
+                Integer.class));
+
+        Assert.assertEquals(type1, type2);
+        Assert.assertEquals(type1.hashCode(), type2.hashCode());
+
+        // Must stay compatible with the JDK implementation
+        Assert.assertEquals(type1, javaType);
+        Assert.assertEquals(javaType.hashCode(), type1.hashCode());
+        Assert.assertEquals(type1, new DefaultParameterizedType((ParameterizedType) javaType));
+
+        Assert.assertFalse(type1.equals(new DefaultParameterizedType(null, Map.class, String.class, Integer.class)));
+        Assert.assertFalse(type1.equals(Map.class));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.zip.CRC32;
+
+/**
+ * Compute the checksums of the compiled classes a component index entry has been generated from, to detect outdated
+ * entries.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class ClassChecksum
+{
+    /**
+     * The checksum of a class which can't be found.
+     */
+    static final long NO_CHECKSUM = -1;
+
+    /**
+     * Utility class.
+     */
+    private ClassChecksum()
+    {
+        // Utility class
+    }
+
+    /**
+     * @param componentClass the component implementation class
+     * @return the classes introspected to generate the descriptors of the component, i.e. the component class, its
+     *         super classes and its interfaces, except the ones provided by the JVM
+     */
+    static Set<Class< ? >> getIntrospectedClasses(Class< ? > componentClass)
+    {
+        Set<Class< ? >> classes = new LinkedHashSet<Class< ? >>();
+
+        List<Class< ? >> pending = new ArrayList<Class< ? >>();
+        pending.add(componentClass);
+        // Note: the list grows while iterating on it
+        for (int i = 0; i < pending.size(); ++i) {
+            Class< ? > pendingClass = pending.get(i);
+            if (pendingClass.getClassLoader() != null && classes.add(pendingClass)) {
+                if (pendingClass.getSuperclass() != null) {
+                    pending.add(pendingClass.getSuperclass());
+                }
+                for (Class< ? > interfaceClass : pendingClass.getInterfaces()) {
+                    pending.add(interfaceClass);
+                }
+            }
+        }
+
+        return classes;
+    }
+
+    /**
+     * @param className the name of the class
+     * @param classLoader the class loader where to find the class
+     * @return the CRC-32 checksum of the class file, {@link #NO_CHECKSUM} if it can't be found
+     * @throws IOException when failing to read the class file
+     */
+    static long getChecksum(String className, ClassLoader classLoader) throws IOException
+    {
+        URL url = classLoader.getResource(className.replace('.', '/') + ".class");
+        if (url == null) {
+            return NO_CHECKSUM;
+        }
+
+        URLConnection connection = url.openConnection();
+
+        // Jar entries already contain the checksum of their content
+        if (connection instanceof JarURLConnection) {
+            JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+            if (entry != null && entry.getCrc() != NO_CHECKSUM) {
+                return entry.getCrc();
+            }
+        }
+
+        CRC32 checksum = new CRC32();
+        InputStream stream = connection.getInputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                checksum.update(buffer, 0, read);
+            }
+        } finally {
+            stream.close();
+        }
+
+        return checksum.getValue();
+    }
+}
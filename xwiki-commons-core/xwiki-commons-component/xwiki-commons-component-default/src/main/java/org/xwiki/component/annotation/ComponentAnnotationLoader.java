@@ -19,6 +19,7 @@
  */
 package org.xwiki.component.annotation;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
@@ -29,12 +30,15 @@
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -82,6 +86,11 @@
      */
     private ComponentDescriptorFactory factory = new ComponentDescriptorFactory();
 
+    /**
+     * Used to read the component descriptors generated at build time.
+     */
+    private ComponentDescriptorIndex index = new ComponentDescriptorIndex(this);
+
     /**
      * Logger to use for logging...
      */
@@ -97,14 +106,20 @@
     public void initialize(ComponentManager manager, ClassLoader classLoader)
     {
         try {
-            // Find all declared components by retrieving the list defined in COMPONENT_LIST.
-            List<ComponentDeclaration> componentDeclarations = getDeclaredComponents(classLoader, COMPONENT_LIST);
+            long start = System.currentTimeMillis();
+
+            // Find all declared components by retrieving the list defined in COMPONENT_LIST, as well as the
+            // descriptors of the indexed ones
+            Map<String, List<ComponentDescriptor>> indexedDescriptors =
+                new HashMap<String, List<ComponentDescriptor>>();
+            List<ComponentDeclaration> componentDeclarations =
+                getDeclaredComponents(classLoader, COMPONENT_LIST, indexedDescriptors);
 
             // Find all the Component overrides and adds them to the bottom of the list as component declarations with
             // the highest priority of 0. This is purely for backward compatibility since the override files is now
             // deprecated.
             List<ComponentDeclaration> componentOverrideDeclarations =
-                getDeclaredComponents(classLoader, COMPONENT_OVERRIDE_LIST);
+                getDeclaredComponents(classLoader, COMPONENT_OVERRIDE_LIST, null);
             for (ComponentDeclaration componentOverrideDeclaration : componentOverrideDeclarations) {
                 // Since the old way to declare an override was to define it in both a component.txt and a
                 // component-overrides.txt file we first need to remove the override component declaration stored in
@@ -115,7 +130,11 @@ public void initialize(ComponentManager manager, ClassLoader classLoader)
                     .getImplementationClassName(), 0));
             }
 
-            initialize(manager, classLoader, componentDeclarations);
+            register(manager, classLoader, componentDeclarations, indexedDescriptors);
+
+            LOGGER.debug("Loaded [{}] component declarations ([{}] of them indexed) in [{}] ms",
+                new Object[] {componentDeclarations.size(), indexedDescriptors.size(),
+                System.currentTimeMillis() - start});
         } catch (Exception e) {
             // Make sure we make the calling code fail in order to fail fast and prevent the application to start
             // if something is amiss.
@@ -145,6 +164,21 @@ public void initialize(ComponentManager manager, ClassLoader classLoader,
      */
     public void register(ComponentManager manager, ClassLoader classLoader,
         List<ComponentDeclaration> componentDeclarations)
+    {
+        register(manager, classLoader, componentDeclarations,
+            Collections.<String, List<ComponentDescriptor>> emptyMap());
+    }
+
+    /**
+     * @param manager the component manager to use to dynamically register components
+     * @param classLoader the classloader to use to look for the Component list declaration file (
+     *            {@code META-INF/components.txt})
+     * @param componentDeclarations the declarations of components to register
+     * @param indexedDescriptors the descriptors of the components found in component indexes, by implementation class
+     *            name; the other components are introspected
+     */
+    private void register(ComponentManager manager, ClassLoader classLoader,
+        List<ComponentDeclaration> componentDeclarations, Map<String, List<ComponentDescriptor>> indexedDescriptors)
     {
         try {
             // 2) For each component class name found, load its class and use introspection to find the necessary
@@ -154,20 +188,24 @@ public void register(ComponentManager manager, ClassLoader classLoader,
             Map<RoleHint< ? >, Integer> priorityMap = new HashMap<RoleHint< ? >, Integer>();
 
             for (ComponentDeclaration componentDeclaration : componentDeclarations) {
-                Class< ? > componentClass = classLoader.loadClass(componentDeclaration.getImplementationClassName());
-
-                // Look for ComponentRole annotations and register one component per ComponentRole found
-                for (Type componentRoleType : findComponentRoleTypes(componentClass)) {
-                    for (ComponentDescriptor< ? > componentDescriptor : this.factory.createComponentDescriptors(
-                        componentClass, componentRoleType)) {
-                        // If there's already a existing role/hint in the list of descriptors then decide which one
-                        // to keep by looking at their priorities. Highest priority wins (i.e. lowest integer value).
-                        RoleHint< ? > roleHint =
-                            new RoleHint(componentDescriptor.getRoleType(), componentDescriptor.getRoleHint());
-
-                        addComponent(descriptorMap, priorityMap, roleHint, componentDescriptor, componentDeclaration,
-                            true);
-                    }
+                List<ComponentDescriptor> componentDescriptors =
+                    indexedDescriptors.get(componentDeclaration.getImplementationClassName());
+
+                if (componentDescriptors == null) {
+                    // Look for ComponentRole annotations and get one component per ComponentRole found
+                    componentDescriptors =
+                        getComponentsDescriptors(classLoader.loadClass(componentDeclaration
+                            .getImplementationClassName()));
+                }
+
+                for (ComponentDescriptor< ? > componentDescriptor : componentDescriptors) {
+                    // If there's already a existing role/hint in the list of descriptors then decide which one
+                    // to keep by looking at their priorities. Highest priority wins (i.e. lowest integer value).
+                    RoleHint< ? > roleHint =
+                        new RoleHint(componentDescriptor.getRoleType(), componentDescriptor.getRoleHint());
+
+                    addComponent(descriptorMap, priorityMap, roleHint, componentDescriptor, componentDeclaration,
+                        true);
                 }
             }
 
@@ -395,22 +433,31 @@ public Set<Type> findComponentRoleTypes(Class< ? > componentClass, Type[] parame
      * 
      * @param classLoader the classloader to use to find the resources
      * @param location the name of the resources to look for
+     * @param indexedDescriptors where to put the descriptors found in the component indexes located next to the
+     *            resources, {@code null} if indexes should not be looked for
      * @return the list of component implementation class names
      * @throws IOException in case of an error loading the component list resource
      * @since 3.3M1
      */
-    private List<ComponentDeclaration> getDeclaredComponents(ClassLoader classLoader, String location)
-        throws IOException
+    private List<ComponentDeclaration> getDeclaredComponents(ClassLoader classLoader, String location,
+        Map<String, List<ComponentDescriptor>> indexedDescriptors) throws IOException
     {
         List<ComponentDeclaration> annotatedClassNames = new ArrayList<ComponentDeclaration>();
+        // The classes shared by several indexes (e.g. role interfaces) are only checked once
+        Map<String, Long> checksums = new HashMap<String, Long>();
         Enumeration<URL> urls = classLoader.getResources(location);
         while (urls.hasMoreElements()) {
             URL url = urls.nextElement();
 
-            InputStream componentListStream = url.openStream();
+            // The checksum of the list identifies the index generated for it
+            CheckedInputStream componentListStream = new CheckedInputStream(url.openStream(), new CRC32());
 
             try {
                 annotatedClassNames.addAll(getDeclaredComponents(componentListStream));
+                if (indexedDescriptors != null) {
+                    readComponentIndex(url, componentListStream.getChecksum().getValue(), classLoader,
+                        indexedDescriptors, checksums);
+                }
             } finally {
                 componentListStream.close();
             }
@@ -419,6 +466,60 @@ private List<ComponentDeclaration> getDeclaredComponents(ClassLoader classLoader
         return annotatedClassNames;
     }
 
+    /**
+     * Read the component index located next to the passed component list, if any.
+     * 
+     * @param componentListURL the location of the component list
+     * @param componentListChecksum the CRC-32 checksum of the component list
+     * @param classLoader the classloader to use to load the component classes
+     * @param indexedDescriptors where to put the descriptors found in the index
+     * @param checksums the checksums of the class files already computed, by class name
+     */
+    private void readComponentIndex(URL componentListURL, long componentListChecksum, ClassLoader classLoader,
+        Map<String, List<ComponentDescriptor>> indexedDescriptors, Map<String, Long> checksums)
+    {
+        InputStream indexStream;
+        try {
+            indexStream =
+                new URL(componentListURL, ComponentDescriptorIndex.COMPONENT_INDEX
+                    .substring(ComponentDescriptorIndex.COMPONENT_INDEX.lastIndexOf('/') + 1)).openStream();
+        } catch (IOException e) {
+            // No index, the components will be introspected
+            return;
+        }
+
+        try {
+            Map<String, List<ComponentDescriptor>> descriptors =
+                this.index.read(new BufferedInputStream(indexStream), componentListChecksum, classLoader,
+                    isDirectory(componentListURL), checksums);
+            if (descriptors != null) {
+                indexedDescriptors.putAll(descriptors);
+            } else {
+                getLogger().warn("Ignoring component index for [{}] since it has not been generated for this"
+                    + " component list or its format is not supported", componentListURL);
+            }
+        } catch (Exception e) {
+            getLogger().warn("Failed to read the component index for [{}], the components will be introspected",
+                componentListURL, e);
+        } finally {
+            try {
+                indexStream.close();
+            } catch (IOException e) {
+                // Nothing more to do
+            }
+        }
+    }
+
+    /**
+     * @param componentListURL the location of a component list
+     * @return true if the component list is located in a directory, where the classes can be recompiled without
+     *         generating the component index again
+     */
+    private boolean isDirectory(URL componentListURL)
+    {
+        return "file".equals(componentListURL.getProtocol());
+    }
+
     /**
      * Get all components listed in the passed resource stream. The format is:
      * {@code (priority level):(fully qualified component implementation name)}.
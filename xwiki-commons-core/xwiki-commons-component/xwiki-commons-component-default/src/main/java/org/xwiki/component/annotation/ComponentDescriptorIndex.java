@@ -0,0 +1,278 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xwiki.component.descriptor.ComponentDescriptor;
+
+/**
+ * Reads and writes the component index: a compact binary serialization of the Component Descriptors of the components
+ * declared in a {@code META-INF/components.txt} file. The index is generated at build time (by the
+ * {@code xwiki-commons-tool-component-index-plugin} Maven plugin) and stored next to the components list so that
+ * {@link ComponentAnnotationLoader} doesn't have to introspect the component classes at startup.
+ * <p>
+ * The index contains the checksum of the components list it has been generated for and is ignored when it doesn't match
+ * the components list found next to it. Each entry of the index also contains the CRC-32 checksums of the class files
+ * its descriptors have been generated from (the component class, its super classes and its interfaces, including the
+ * role interfaces) and is ignored when one of them changed:
+ * <ul>
+ * <li>the classes coming from another location (JAR or directory) than the component class, e.g. role interfaces
+ * provided by an API JAR, are always checked since they can be upgraded independently</li>
+ * <li>the classes coming from the same location as the component class are only checked when the index is read from a
+ * directory, where they can be recompiled without generating the index again (IDE or incremental builds); a JAR
+ * contains the classes and the index generated for them by the same build</li>
+ * </ul>
+ * <p>
+ * Only components whose descriptors are made of classes and parameterized types and of standard dependencies are
+ * indexed, the other ones are still introspected at runtime.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ComponentDescriptorIndex
+{
+    /**
+     * Location in the classloader of the component index, next to {@link ComponentAnnotationLoader#COMPONENT_LIST}.
+     */
+    public static final String COMPONENT_INDEX = "META-INF/components.idx";
+
+    /**
+     * Marks a {@link Class} in the stream.
+     */
+    static final byte CLASS_TYPE = 0;
+
+    /**
+     * Marks a {@link java.lang.reflect.ParameterizedType} in the stream.
+     */
+    static final byte PARAMETERIZED_TYPE = 1;
+
+    /**
+     * Marks a {@code null} string or type in the stream.
+     */
+    static final int NULL = -1;
+
+    /**
+     * Identifies a component index stream.
+     */
+    private static final int MAGIC = 0x58434958;
+
+    /**
+     * The version of the format, to be incremented when it changes.
+     */
+    private static final byte VERSION = 4;
+
+    /**
+     * Used to find the descriptors of the components when writing the index.
+     */
+    private final ComponentAnnotationLoader loader;
+
+    /**
+     * Default constructor.
+     */
+    public ComponentDescriptorIndex()
+    {
+        this(new ComponentAnnotationLoader());
+    }
+
+    /**
+     * @param loader used to find the descriptors of the components when writing the index
+     */
+    public ComponentDescriptorIndex(ComponentAnnotationLoader loader)
+    {
+        this.loader = loader;
+    }
+
+    /**
+     * Introspect the passed component classes and write their descriptors.
+     * 
+     * @param componentClasses the component implementation classes
+     * @param componentListChecksum the CRC-32 checksum of the components list declaring the component classes
+     * @param stream the stream where to write the index
+     * @return the number of components which have been indexed
+     * @throws IOException when failing to write the index
+     */
+    public int write(List<Class< ? >> componentClasses, long componentListChecksum, OutputStream stream)
+        throws IOException
+    {
+        Map<Class< ? >, List<ComponentDescriptor>> descriptors =
+            new LinkedHashMap<Class< ? >, List<ComponentDescriptor>>();
+        for (Class< ? > componentClass : componentClasses) {
+            List<ComponentDescriptor> componentDescriptors = this.loader.getComponentsDescriptors(componentClass);
+            if (ComponentIndexWriter.isIndexable(componentDescriptors)) {
+                descriptors.put(componentClass, componentDescriptors);
+            }
+        }
+
+        DataOutputStream output = new DataOutputStream(stream);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeLong(componentListChecksum);
+        output.writeInt(descriptors.size());
+        for (Map.Entry<Class< ? >, List<ComponentDescriptor>> entry : descriptors.entrySet()) {
+            output.writeUTF(entry.getKey().getName());
+
+            URL location = getLocation(entry.getKey());
+            Set<Class< ? >> introspectedClasses = ClassChecksum.getIntrospectedClasses(entry.getKey());
+            output.writeInt(introspectedClasses.size());
+            for (Class< ? > introspectedClass : introspectedClasses) {
+                output.writeUTF(introspectedClass.getName());
+                output.writeBoolean(!isSameLocation(location, getLocation(introspectedClass)));
+                output.writeLong(ClassChecksum.getChecksum(introspectedClass.getName(),
+                    introspectedClass.getClassLoader()));
+            }
+
+            byte[] entryBytes = ComponentIndexWriter.writeDescriptors(entry.getValue());
+            output.writeInt(entryBytes.length);
+            output.write(entryBytes);
+        }
+        output.flush();
+
+        return descriptors.size();
+    }
+
+    /**
+     * @param location the location of the component class
+     * @param otherLocation the location of another class
+     * @return true if both locations are known and are the same
+     */
+    private boolean isSameLocation(URL location, URL otherLocation)
+    {
+        return location != null && otherLocation != null
+            && location.toExternalForm().equals(otherLocation.toExternalForm());
+    }
+
+    /**
+     * @param clazz the class
+     * @return the location of the JAR or directory the class has been loaded from, {@code null} if unknown
+     */
+    private URL getLocation(Class< ? > clazz)
+    {
+        CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+
+        return codeSource != null ? codeSource.getLocation() : null;
+    }
+
+    /**
+     * @param stream the stream to read the index from
+     * @param componentListChecksum the CRC-32 checksum of the components list the index is located next to
+     * @param classLoader the class loader to use to load the component classes and types
+     * @param checkLocalClasses true if the classes coming from the same location as the component classes should be
+     *            checked too, i.e. if the index is read from a directory
+     * @param checksums the checksums of the class files already computed, by class name; shared by the indexes read
+     *            with the same class loader so that common classes (e.g. role interfaces) are only checked once
+     * @return the descriptors of each indexed component implementation whose classes did not change since the index
+     *         has been generated, {@code null} if the format of the index is not supported or if it has not been
+     *         generated for the passed components list
+     * @throws IOException when failing to read the index
+     * @throws ClassNotFoundException when one of the classes of the index can't be found
+     */
+    public Map<String, List<ComponentDescriptor>> read(InputStream stream, long componentListChecksum,
+        ClassLoader classLoader, boolean checkLocalClasses, Map<String, Long> checksums) throws IOException,
+        ClassNotFoundException
+    {
+        DataInputStream input = new DataInputStream(stream);
+
+        if (input.readInt() != MAGIC || input.readByte() != VERSION || input.readLong() != componentListChecksum) {
+            return null;
+        }
+
+        int size = input.readInt();
+        Map<String, List<ComponentDescriptor>> descriptors = new HashMap<String, List<ComponentDescriptor>>();
+        for (int i = 0; i < size; ++i) {
+            String implementation = input.readUTF();
+
+            boolean upToDate = readIntrospectedClasses(input, classLoader, checkLocalClasses, checksums);
+
+            int entrySize = input.readInt();
+            if (entrySize < 0) {
+                throw new IOException(String.format("Invalid size [%s] for component [%s]", entrySize,
+                    implementation));
+            }
+            byte[] entry = new byte[entrySize];
+            input.readFully(entry);
+
+            if (upToDate) {
+                descriptors.put(implementation, ComponentIndexReader.readDescriptors(entry, classLoader));
+            }
+        }
+
+        return descriptors;
+    }
+
+    /**
+     * Read the checksums of the classes an entry has been generated from and check them.
+     * 
+     * @param input the stream to read the index from
+     * @param classLoader the class loader where to find the classes
+     * @param checkLocalClasses true if the classes coming from the same location as the component class should be
+     *            checked too
+     * @param checksums the checksums of the class files already computed, by class name
+     * @return true if none of the checked classes changed since the index has been generated
+     * @throws IOException when failing to read the index or a class file
+     */
+    private boolean readIntrospectedClasses(DataInputStream input, ClassLoader classLoader,
+        boolean checkLocalClasses, Map<String, Long> checksums) throws IOException
+    {
+        boolean upToDate = true;
+
+        int classesSize = input.readInt();
+        for (int i = 0; i < classesSize; ++i) {
+            String className = input.readUTF();
+            boolean external = input.readBoolean();
+            long checksum = input.readLong();
+            if (upToDate && (external || checkLocalClasses)) {
+                upToDate = checksum == getChecksum(className, classLoader, checksums);
+            }
+        }
+
+        return upToDate;
+    }
+
+    /**
+     * @param className the name of the class
+     * @param classLoader the class loader where to find the class
+     * @param checksums the checksums of the class files already computed, by class name
+     * @return the CRC-32 checksum of the class file
+     * @throws IOException when failing to read the class file
+     */
+    private long getChecksum(String className, ClassLoader classLoader, Map<String, Long> checksums)
+        throws IOException
+    {
+        Long checksum = checksums.get(className);
+        if (checksum == null) {
+            checksum = ClassChecksum.getChecksum(className, classLoader);
+            checksums.put(className, checksum);
+        }
+
+        return checksum;
+    }
+}
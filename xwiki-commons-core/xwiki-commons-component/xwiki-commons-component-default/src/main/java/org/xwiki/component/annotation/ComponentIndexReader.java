@@ -0,0 +1,188 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.descriptor.DefaultComponentDependency;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.util.DefaultParameterizedType;
+
+/**
+ * Read a component index written by {@link ComponentIndexWriter}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class ComponentIndexReader
+{
+    /**
+     * The stream to read the index from.
+     */
+    private final DataInputStream input;
+
+    /**
+     * The class loader to use to load the component classes and types.
+     */
+    private final ClassLoader classLoader;
+
+    /**
+     * The strings already read, by index.
+     */
+    private final List<String> strings = new ArrayList<String>();
+
+    /**
+     * @param stream the stream to read the index from
+     * @param classLoader the class loader to use to load the component classes and types
+     */
+    ComponentIndexReader(InputStream stream, ClassLoader classLoader)
+    {
+        this.input = new DataInputStream(stream);
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * @return the read integer
+     * @throws IOException when failing to read
+     */
+    int readInt() throws IOException
+    {
+        return this.input.readInt();
+    }
+
+    /**
+     * @return the read string
+     * @throws IOException when failing to read
+     */
+    String readString() throws IOException
+    {
+        String string;
+
+        int index = this.input.readInt();
+        if (index == ComponentDescriptorIndex.NULL) {
+            string = null;
+        } else if (index == this.strings.size()) {
+            string = this.input.readUTF();
+            this.strings.add(string);
+        } else {
+            string = this.strings.get(index);
+        }
+
+        return string;
+    }
+
+    /**
+     * @return the read class
+     * @throws IOException when failing to read
+     * @throws ClassNotFoundException when the class can't be found
+     */
+    Class< ? > readClass() throws IOException, ClassNotFoundException
+    {
+        String className = readString();
+
+        return className != null ? Class.forName(className, false, this.classLoader) : null;
+    }
+
+    /**
+     * @return the read type
+     * @throws IOException when failing to read
+     * @throws ClassNotFoundException when one of the classes of the type can't be found
+     */
+    Type readType() throws IOException, ClassNotFoundException
+    {
+        Type type;
+
+        if (this.input.readByte() == ComponentDescriptorIndex.CLASS_TYPE) {
+            type = readClass();
+        } else {
+            Type ownerType = this.input.readBoolean() ? readType() : null;
+            Class< ? > rawType = (Class< ? >) readType();
+            Type[] arguments = new Type[this.input.readInt()];
+            for (int i = 0; i < arguments.length; ++i) {
+                arguments[i] = readType();
+            }
+            type = new DefaultParameterizedType(ownerType, rawType, arguments);
+        }
+
+        return type;
+    }
+
+    /**
+     * @return the read component descriptor
+     * @throws IOException when failing to read
+     * @throws ClassNotFoundException when one of the classes of the descriptor can't be found
+     */
+    ComponentDescriptor readDescriptor() throws IOException, ClassNotFoundException
+    {
+        DefaultComponentDescriptor descriptor = new DefaultComponentDescriptor();
+        descriptor.setRoleType(readType());
+        descriptor.setRoleHint(readString());
+        descriptor.setImplementation(readClass());
+        descriptor.setInstantiationStrategy(ComponentInstantiationStrategy.values()[this.input.readByte()]);
+
+        int size = this.input.readInt();
+        for (int i = 0; i < size; ++i) {
+            DefaultComponentDependency dependency = new DefaultComponentDependency();
+            dependency.setRoleType(readType());
+            dependency.setRoleHint(readString());
+            dependency.setName(readString());
+            int hintsSize = this.input.readInt();
+            if (hintsSize != ComponentDescriptorIndex.NULL) {
+                String[] hints = new String[hintsSize];
+                for (int j = 0; j < hintsSize; ++j) {
+                    hints[j] = readString();
+                }
+                dependency.setHints(hints);
+            }
+            descriptor.addComponentDependency(dependency);
+        }
+
+        return descriptor;
+    }
+
+    /**
+     * @param entry the serialized descriptors of a component, see {@link ComponentIndexWriter#writeDescriptors(List)}
+     * @param classLoader the class loader to use to load the component classes and types
+     * @return the descriptors of the component
+     * @throws IOException when failing to read the descriptors
+     * @throws ClassNotFoundException when one of the classes of the descriptors can't be found
+     */
+    static List<ComponentDescriptor> readDescriptors(byte[] entry, ClassLoader classLoader) throws IOException,
+        ClassNotFoundException
+    {
+        ComponentIndexReader reader = new ComponentIndexReader(new ByteArrayInputStream(entry), classLoader);
+
+        int size = reader.readInt();
+        List<ComponentDescriptor> descriptors = new ArrayList<ComponentDescriptor>(size);
+        for (int i = 0; i < size; ++i) {
+            descriptors.add(reader.readDescriptor());
+        }
+
+        return descriptors;
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.component.descriptor.ComponentDependency;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.DefaultComponentDependency;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+
+/**
+ * Write a component index (see {@link ComponentDescriptorIndex}), each string being written only once.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class ComponentIndexWriter
+{
+    /**
+     * The stream where to write the index.
+     */
+    private final DataOutputStream output;
+
+    /**
+     * The index of the strings already written.
+     */
+    private final Map<String, Integer> strings = new HashMap<String, Integer>();
+
+    /**
+     * @param stream the stream where to write the index
+     */
+    ComponentIndexWriter(OutputStream stream)
+    {
+        this.output = new DataOutputStream(stream);
+    }
+
+    /**
+     * @param value the integer to write
+     * @throws IOException when failing to write
+     */
+    void writeInt(int value) throws IOException
+    {
+        this.output.writeInt(value);
+    }
+
+    /**
+     * @throws IOException when failing to flush the stream
+     */
+    void flush() throws IOException
+    {
+        this.output.flush();
+    }
+
+    /**
+     * @param string the string to write
+     * @throws IOException when failing to write
+     */
+    void writeString(String string) throws IOException
+    {
+        if (string == null) {
+            this.output.writeInt(ComponentDescriptorIndex.NULL);
+        } else {
+            Integer index = this.strings.get(string);
+            if (index != null) {
+                this.output.writeInt(index);
+            } else {
+                // New strings get the next index and are written just after it
+                this.output.writeInt(this.strings.size());
+                this.output.writeUTF(string);
+                this.strings.put(string, this.strings.size());
+            }
+        }
+    }
+
+    /**
+     * @param type the type to write
+     * @throws IOException when failing to write
+     */
+    void writeType(Type type) throws IOException
+    {
+        if (type instanceof Class) {
+            this.output.writeByte(ComponentDescriptorIndex.CLASS_TYPE);
+            writeString(((Class< ? >) type).getName());
+        } else {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            this.output.writeByte(ComponentDescriptorIndex.PARAMETERIZED_TYPE);
+            this.output.writeBoolean(parameterizedType.getOwnerType() != null);
+            if (parameterizedType.getOwnerType() != null) {
+                writeType(parameterizedType.getOwnerType());
+            }
+            writeType(parameterizedType.getRawType());
+            this.output.writeInt(parameterizedType.getActualTypeArguments().length);
+            for (Type argument : parameterizedType.getActualTypeArguments()) {
+                writeType(argument);
+            }
+        }
+    }
+
+    /**
+     * @param descriptor the component descriptor to write
+     * @throws IOException when failing to write
+     */
+    void writeDescriptor(ComponentDescriptor< ? > descriptor) throws IOException
+    {
+        writeType(descriptor.getRoleType());
+        writeString(descriptor.getRoleHint());
+        writeString(descriptor.getImplementation().getName());
+        this.output.writeByte(descriptor.getInstantiationStrategy().ordinal());
+        this.output.writeInt(descriptor.getComponentDependencies().size());
+        for (ComponentDependency< ? > dependency : descriptor.getComponentDependencies()) {
+            writeType(dependency.getRoleType());
+            writeString(dependency.getRoleHint());
+            writeString(dependency.getName());
+            String[] hints = dependency.getHints();
+            this.output.writeInt(hints != null ? hints.length : ComponentDescriptorIndex.NULL);
+            if (hints != null) {
+                for (String hint : hints) {
+                    writeString(hint);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param descriptors the descriptors of a component
+     * @return the serialized descriptors, with their own strings
+     * @throws IOException when failing to write the descriptors
+     */
+    static byte[] writeDescriptors(List<ComponentDescriptor> descriptors) throws IOException
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+
+        ComponentIndexWriter writer = new ComponentIndexWriter(stream);
+        writer.writeInt(descriptors.size());
+        for (ComponentDescriptor< ? > descriptor : descriptors) {
+            writer.writeDescriptor(descriptor);
+        }
+        writer.flush();
+
+        return stream.toByteArray();
+    }
+
+    /**
+     * @param descriptors the descriptors of a component
+     * @return true if the descriptors can be written in the index without losing information
+     */
+    static boolean isIndexable(List<ComponentDescriptor> descriptors)
+    {
+        for (ComponentDescriptor< ? > descriptor : descriptors) {
+            if (descriptor.getClass() != DefaultComponentDescriptor.class || !isIndexable(descriptor.getRoleType())) {
+                return false;
+            }
+
+            for (ComponentDependency< ? > dependency : descriptor.getComponentDependencies()) {
+                if (dependency.getClass() != DefaultComponentDependency.class
+                    || !isIndexable(dependency.getRoleType())) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param type the type to check
+     * @return true if the passed type can be written in the index
+     */
+    static boolean isIndexable(Type type)
+    {
+        boolean indexable;
+
+        if (type instanceof Class) {
+            indexable = true;
+        } else if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            indexable =
+                (parameterizedType.getOwnerType() == null || isIndexable(parameterizedType.getOwnerType()))
+                    && isIndexable(parameterizedType.getRawType());
+            for (Type argument : parameterizedType.getActualTypeArguments()) {
+                indexable &= isIndexable(argument);
+            }
+        } else {
+            indexable = false;
+        }
+
+        return indexable;
+    }
+}
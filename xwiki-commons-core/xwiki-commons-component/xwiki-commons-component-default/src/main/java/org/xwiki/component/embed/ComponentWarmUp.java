@@ -0,0 +1,397 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.descriptor.ComponentDependency;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
+
+/**
+ * Eagerly creates (and thus initializes) the singleton components registered in an {@link EmbeddableComponentManager}
+ * so that the first requests don't have to pay for it.
+ * <p>
+ * Components are created in parallel, a component being created only once all the singletons it depends on have been
+ * created. Components involved in dependency cycles are created sequentially at the end.
+ * <p>
+ * Only the dependencies declared in the component descriptors are known: dependencies injected through a
+ * {@link Provider} or looked up in the component manager (in {@code initialize()} for example) are not. If two such
+ * components need each other during their creation, creating them in parallel can deadlock since each thread waits for
+ * the component being created by the other thread. Use {@link #setThreads(int) setThreads(1)} to create the
+ * components sequentially in that case.
+ * <p>
+ * Example:
+ * 
+ * <pre>
+ * {@code
+ * EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+ * ecm.initialize(classLoader);
+ * ComponentWarmUp warmUp = new ComponentWarmUp(ecm);
+ * warmUp.setExclusions(Arrays.asList("org.acme.SlowComponent"));
+ * Map<ComponentDescriptor<?>, Long> timings = warmUp.warmUp();
+ * }
+ * </pre>
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ComponentWarmUp
+{
+    /**
+     * The logger to log.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ComponentWarmUp.class);
+
+    /**
+     * A singleton component to create and its relations with other singletons.
+     */
+    private static final class Node
+    {
+        /**
+         * The descriptor of the component.
+         */
+        private final ComponentDescriptor< ? > descriptor;
+
+        /**
+         * The singletons needed by this component.
+         */
+        private final Set<Node> dependencies = new HashSet<Node>();
+
+        /**
+         * The singletons needing this component.
+         */
+        private final Set<Node> dependents = new HashSet<Node>();
+
+        /**
+         * The number of dependencies which are not created yet.
+         */
+        private final AtomicInteger pendingDependencies = new AtomicInteger();
+
+        /**
+         * @param descriptor the descriptor of the component
+         */
+        private Node(ComponentDescriptor< ? > descriptor)
+        {
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * The component manager containing the components to create.
+     */
+    private final EmbeddableComponentManager componentManager;
+
+    /**
+     * @see #setThreads(int)
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * @see #setExclusions(Collection)
+     */
+    private Set<String> exclusions = Collections.emptySet();
+
+    /**
+     * The time spent to create each component, in nanoseconds.
+     */
+    private final Map<ComponentDescriptor< ? >, Long> timings =
+        new ConcurrentHashMap<ComponentDescriptor< ? >, Long>();
+
+    /**
+     * @param componentManager the component manager containing the components to create (components registered in its
+     *            parents are ignored)
+     */
+    public ComponentWarmUp(EmbeddableComponentManager componentManager)
+    {
+        this.componentManager = componentManager;
+    }
+
+    /**
+     * @param threads the number of components to create in parallel, default is the number of available processors;
+     *            1 to create them sequentially (see the class documentation for when it's needed)
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Components can be excluded either by implementation class name or by role class name. Components depending on
+     * an excluded component are excluded too since creating them would also create the excluded component.
+     * 
+     * @param exclusions the name of the implementation or role classes of the components not to create
+     */
+    public void setExclusions(Collection<String> exclusions)
+    {
+        this.exclusions = new HashSet<String>(exclusions);
+    }
+
+    /**
+     * Create all the singleton components which are not excluded.
+     * 
+     * @return the time spent creating each component (not including the time spent creating its dependencies), in
+     *         nanoseconds
+     * @throws InterruptedException when interrupted while waiting for the components to be created
+     */
+    public Map<ComponentDescriptor< ? >, Long> warmUp() throws InterruptedException
+    {
+        long start = System.nanoTime();
+
+        Collection<Node> nodes = getNodes();
+        List<Node> cyclicNodes = removeCycles(nodes);
+
+        ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+        try {
+            CountDownLatch latch = new CountDownLatch(nodes.size());
+            for (Node node : nodes) {
+                if (node.pendingDependencies.get() == 0) {
+                    submit(node, executor, latch);
+                }
+            }
+            latch.await();
+        } finally {
+            executor.shutdown();
+        }
+
+        for (Node node : cyclicNodes) {
+            create(node);
+        }
+
+        LOGGER.info("Created [{}] components in [{}] ms", this.timings.size(), (System.nanoTime() - start) / 1000000);
+
+        return this.timings;
+    }
+
+    /**
+     * @return the singleton components to create, linked to their dependencies and dependents
+     */
+    private Collection<Node> getNodes()
+    {
+        Map<Type, Map<String, Node>> nodes = new HashMap<Type, Map<String, Node>>();
+        Collection<Node> result = new HashSet<Node>();
+        for (ComponentDescriptor< ? > descriptor : this.componentManager.getLocalComponentDescriptors()) {
+            // Components without implementation are registered with their instance
+            if (descriptor.getInstantiationStrategy() == ComponentInstantiationStrategy.SINGLETON
+                && descriptor.getImplementation() != null) {
+                Node node = new Node(descriptor);
+                Map<String, Node> roleNodes = nodes.get(descriptor.getRoleType());
+                if (roleNodes == null) {
+                    roleNodes = new HashMap<String, Node>();
+                    nodes.put(descriptor.getRoleType(), roleNodes);
+                }
+                roleNodes.put(descriptor.getRoleHint(), node);
+                result.add(node);
+            }
+        }
+
+        for (Node node : result) {
+            for (ComponentDependency< ? > dependency : node.descriptor.getComponentDependencies()) {
+                for (Node dependencyNode : getDependencyNodes(dependency, nodes)) {
+                    if (dependencyNode != node) {
+                        node.dependencies.add(dependencyNode);
+                        dependencyNode.dependents.add(node);
+                    }
+                }
+            }
+        }
+
+        removeExcluded(result);
+
+        return result;
+    }
+
+    /**
+     * @param dependency the dependency to inject
+     * @param nodes the singleton components indexed by role and hint
+     * @return the singletons created when injecting the passed dependency
+     */
+    private Collection<Node> getDependencyNodes(ComponentDependency< ? > dependency, Map<Type, Map<String, Node>> nodes)
+    {
+        Class< ? > dependencyRoleClass = ReflectionUtils.getTypeClass(dependency.getRoleType());
+
+        Collection<Node> dependencyNodes;
+        if (dependencyRoleClass.isAssignableFrom(Logger.class)
+            || dependencyRoleClass.isAssignableFrom(Provider.class)) {
+            // Loggers are not components and providers are lazy
+            dependencyNodes = Collections.emptyList();
+        } else if (dependencyRoleClass.isAssignableFrom(List.class)
+            || dependencyRoleClass.isAssignableFrom(Map.class)) {
+            Map<String, Node> roleNodes =
+                nodes.get(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
+            dependencyNodes = roleNodes != null ? roleNodes.values() : Collections.<Node> emptyList();
+        } else {
+            Map<String, Node> roleNodes = nodes.get(dependency.getRoleType());
+            Node node = roleNodes != null ? roleNodes.get(dependency.getRoleHint()) : null;
+            dependencyNodes = node != null ? Collections.singletonList(node) : Collections.<Node> emptyList();
+        }
+
+        return dependencyNodes;
+    }
+
+    /**
+     * Remove the excluded components and the ones depending on them.
+     * 
+     * @param nodes the components to filter
+     */
+    private void removeExcluded(Collection<Node> nodes)
+    {
+        List<Node> excluded = new ArrayList<Node>();
+        for (Node node : nodes) {
+            if (this.exclusions.contains(node.descriptor.getImplementation().getName())
+                || this.exclusions.contains(ReflectionUtils.getTypeClass(node.descriptor.getRoleType()).getName())) {
+                excluded.add(node);
+            }
+        }
+
+        // Note: the list grows while iterating on it
+        for (int i = 0; i < excluded.size(); ++i) {
+            Node node = excluded.get(i);
+            if (nodes.remove(node)) {
+                LOGGER.debug("Excluding component [{}] from warm-up", node.descriptor);
+                excluded.addAll(node.dependents);
+            }
+        }
+    }
+
+    /**
+     * Initialize the pending dependencies counters and remove the components which are part of (or depend on) a
+     * dependency cycle.
+     * 
+     * @param nodes the components to sort
+     * @return the removed components, in the order to create them
+     */
+    private List<Node> removeCycles(Collection<Node> nodes)
+    {
+        List<Node> ready = new ArrayList<Node>();
+        for (Node node : nodes) {
+            node.dependencies.retainAll(nodes);
+            node.pendingDependencies.set(node.dependencies.size());
+            if (node.dependencies.isEmpty()) {
+                ready.add(node);
+            }
+        }
+
+        // Kahn's algorithm: whatever is not sorted at the end is part of a cycle
+        Map<Node, Integer> remaining = new HashMap<Node, Integer>();
+        for (Node node : nodes) {
+            remaining.put(node, node.dependencies.size());
+        }
+        // Note: the list grows while iterating on it
+        Set<Node> sorted = new HashSet<Node>();
+        for (int i = 0; i < ready.size(); ++i) {
+            Node node = ready.get(i);
+            sorted.add(node);
+            for (Node dependent : node.dependents) {
+                Integer count = remaining.get(dependent);
+                if (count != null) {
+                    remaining.put(dependent, count - 1);
+                    if (count == 1) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        }
+
+        List<Node> cyclicNodes = new ArrayList<Node>();
+        for (Node node : nodes) {
+            if (!sorted.contains(node)) {
+                cyclicNodes.add(node);
+            }
+        }
+        nodes.removeAll(cyclicNodes);
+
+        return cyclicNodes;
+    }
+
+    /**
+     * Create the passed component in a separate thread and then schedule the dependents which are ready.
+     * 
+     * @param node the component to create
+     * @param executor the executor running the threads
+     * @param latch counted down each time a component has been processed
+     */
+    private void submit(final Node node, final ExecutorService executor, final CountDownLatch latch)
+    {
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    create(node);
+                } finally {
+                    // Schedule the dependents even if the creation failed unexpectedly, otherwise they would never be
+                    // processed and the warm-up would wait for them forever
+                    for (Node dependent : node.dependents) {
+                        if (dependent.pendingDependencies.decrementAndGet() == 0) {
+                            submit(dependent, executor, latch);
+                        }
+                    }
+
+                    latch.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Create the passed component and remember how long it took.
+     * 
+     * @param node the component to create
+     */
+    private void create(Node node)
+    {
+        ComponentDescriptor< ? > descriptor = node.descriptor;
+
+        long start = System.nanoTime();
+        try {
+            this.componentManager.getInstance(descriptor.getRoleType(), descriptor.getRoleHint());
+
+            long time = System.nanoTime() - start;
+            this.timings.put(descriptor, time);
+
+            LOGGER.debug("Created component [{}] in [{}] ms", descriptor, time / 1000000);
+        } catch (ComponentLookupException e) {
+            LOGGER.warn("Failed to create component [{}] during warm-up", descriptor, e);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unexpected error when creating component [{}] during warm-up", descriptor, e);
+        }
+    }
+}
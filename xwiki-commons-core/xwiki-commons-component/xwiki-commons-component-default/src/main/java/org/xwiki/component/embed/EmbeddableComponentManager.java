@@ -19,14 +19,22 @@
  */
 package org.xwiki.component.embed;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Provider;
 
@@ -39,12 +47,15 @@
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.descriptor.DefaultComponentDescriptor;
 import org.xwiki.component.internal.RoleHint;
+import org.xwiki.component.internal.multi.DelegateComponentManager;
+import org.xwiki.component.internal.multi.ModificationStamps;
 import org.xwiki.component.manager.ComponentEventManager;
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.manager.ComponentManagerInitializer;
 import org.xwiki.component.manager.ComponentRepositoryException;
+import org.xwiki.component.manager.StampedComponentManager;
 import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.util.ReflectionUtils;
 
@@ -54,8 +65,25 @@
  * @version $Id$
  * @since 2.0M1
  */
-public class EmbeddableComponentManager implements ComponentManager
+public class EmbeddableComponentManager implements StampedComponentManager
 {
+    /**
+     * Maximum number of role/hint pairs kept in the lookup cache, protects against lookups of unbounded sets of hints.
+     */
+    private static final int LOOKUP_CACHE_SIZE = 10000;
+
+    /**
+     * The hint used when none is provided.
+     */
+    private static final String DEFAULT_HINT = "default";
+
+    /**
+     * The lookup methods which can't be bypassed when they are overridden by an extension.
+     */
+    private static final Set<String> LOOKUP_METHODS = new HashSet<String>(Arrays.asList("hasComponent",
+        "getInstance", "getInstanceList", "getInstanceMap", "getComponentDescriptor", "getComponentDescriptorList",
+        "getComponentInstance"));
+
     private ComponentEventManager eventManager;
 
     /**
@@ -78,28 +106,195 @@ public class EmbeddableComponentManager implements ComponentManager
          */
         public volatile R instance;
 
-        public ComponentEntry(ComponentDescriptor<R> descriptor, R instance)
+        /**
+         * The Component Manager in which the component is registered and which is in charge of creating its instances.
+         */
+        public final EmbeddableComponentManager componentManager;
+
+        /**
+         * How to inject the dependencies of the component. Lazily initialized when the first instance is created.
+         */
+        public volatile List<Injection> injections;
+
+        public ComponentEntry(ComponentDescriptor<R> descriptor, R instance,
+            EmbeddableComponentManager componentManager)
         {
             this.descriptor = descriptor;
             this.instance = instance;
+            this.componentManager = componentManager;
+        }
+    }
+
+    /**
+     * The components of a given role registered in this Component Manager and its parents, indexed by hint.
+     */
+    private static class MergedComponentEntries
+    {
+        /**
+         * The last modification of the Component Manager chain at the time the entries were gathered.
+         */
+        public final long lastModification;
+
+        public final Map<String, ComponentEntry< ? >> entries;
+
+        public MergedComponentEntries(long lastModification, Map<String, ComponentEntry< ? >> entries)
+        {
+            this.lastModification = lastModification;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * The various ways of resolving the value to inject in a component field.
+     */
+    private enum InjectionKind
+    {
+        LOGGER,
+        LIST,
+        MAP,
+        PROVIDER,
+        COMPONENT
+    }
+
+    /**
+     * Everything needed to inject a dependency which does not depend on the instance being created.
+     */
+    private static class Injection
+    {
+        /**
+         * The field to set (already made accessible), {@code null} if the component does not have such field.
+         */
+        public final Field field;
+
+        public final InjectionKind kind;
+
+        public final ComponentDependency< ? > dependency;
+
+        /**
+         * The component to look up: the role of the dependency or, for collections and providers, its generic argument.
+         */
+        public final RoleHint<Object> roleHint;
+
+        /**
+         * The component entry the dependency was resolved to, only used with {@link InjectionKind#COMPONENT}.
+         */
+        public volatile ResolvedComponentEntry target;
+
+        public Injection(Field field, InjectionKind kind, ComponentDependency< ? > dependency, RoleHint<Object> roleHint)
+        {
+            this.field = field;
+            this.kind = kind;
+            this.dependency = dependency;
+            this.roleHint = roleHint;
+        }
+    }
+
+    /**
+     * A component entry found in a Component Manager chain, valid as long as the chain is not modified.
+     */
+    private static class ResolvedComponentEntry
+    {
+        public final ComponentEntry<Object> entry;
+
+        public final long lastModification;
+
+        public ResolvedComponentEntry(ComponentEntry<Object> entry, long lastModification)
+        {
+            this.entry = entry;
+            this.lastModification = lastModification;
+        }
+    }
+
+    /**
+     * The result of the lookups made in this Component Manager and its parents, including the ones which did not find
+     * any component.
+     */
+    private static class LookupCache
+    {
+        /**
+         * The last modification of the Component Manager chain at the time the cache was created.
+         */
+        public final long lastModification;
+
+        /**
+         * Indexed by role type and then hint so that looking up a role/hint pair does not require any allocation.
+         */
+        public final ConcurrentMap<Type, Map<String, ResolvedComponentEntry>> entries =
+            new ConcurrentHashMap<Type, Map<String, ResolvedComponentEntry>>();
+
+        public final AtomicInteger size = new AtomicInteger();
+
+        public LookupCache(long lastModification)
+        {
+            this.lastModification = lastModification;
         }
     }
 
     private Map<RoleHint< ? >, ComponentEntry< ? >> componentEntries =
         new ConcurrentHashMap<RoleHint< ? >, ComponentEntry< ? >>();
 
+    /**
+     * Same entries as {@link #componentEntries} but indexed by role type so that listing the components of a role does
+     * not require going through all registered components. Always modified while holding the lock on
+     * {@link #componentEntries} so that both maps stay in sync.
+     */
+    private Map<Type, Map<String, ComponentEntry< ? >>> componentEntriesByRole =
+        new ConcurrentHashMap<Type, Map<String, ComponentEntry< ? >>>();
+
+    /**
+     * Cache of the components of a role found in this Component Manager and its parents.
+     */
+    private Map<Type, MergedComponentEntries> mergedComponentEntries =
+        new ConcurrentHashMap<Type, MergedComponentEntries>();
+
+    /**
+     * Updated with a new {@link ModificationStamps} value each time a component is registered or unregistered, or
+     * when the parent changes. Used to invalidate {@link #mergedComponentEntries} and {@link #lookupCache}.
+     */
+    private volatile long lastModification = ModificationStamps.next();
+
+    /**
+     * Replaced as a whole as soon as this Component Manager or one of its parents is modified.
+     */
+    private volatile LookupCache lookupCache = new LookupCache(-1);
+
+    /**
+     * Lookups are not cached (and this Component Manager is not looked into directly by its children) when an extension
+     * overrides one of the {@link #LOOKUP_METHODS} since the cached lookups would bypass it.
+     */
+    private final boolean overridesLookups = overridesLookups(getClass());
+
+    private final AtomicLong lookupCacheHits = new AtomicLong();
+
+    private final AtomicLong lookupCacheMisses = new AtomicLong();
+
     private Logger logger = LoggerFactory.getLogger(EmbeddableComponentManager.class);
 
     /**
-     * Finds all lifecycle handlers to use when instantiating a Component.
+     * All lifecycle handlers to use when instantiating a Component. Loaded once and for all since a
+     * {@link ServiceLoader} can't be iterated by several threads at the same time (components can be created in
+     * parallel, see {@link ComponentWarmUp}).
      */
-    private ServiceLoader<LifecycleHandler> lifecycleHandlers = ServiceLoader.load(LifecycleHandler.class);
+    private final List<LifecycleHandler> lifecycleHandlers = loadLifecycleHandlers();
 
     public EmbeddableComponentManager()
     {
         registerThis();
     }
 
+    /**
+     * @return all lifecycle handlers to use when instantiating a Component
+     */
+    private static List<LifecycleHandler> loadLifecycleHandlers()
+    {
+        List<LifecycleHandler> handlers = new ArrayList<LifecycleHandler>();
+        for (LifecycleHandler lifecycleHandler : ServiceLoader.load(LifecycleHandler.class)) {
+            handlers.add(lifecycleHandler);
+        }
+
+        return handlers;
+    }
+
     /**
      * Allow to lookup the this as default {@link ComponentManager} implementation.
      */
@@ -136,13 +331,18 @@ public void initialize(ClassLoader classLoader)
     @Override
     public boolean hasComponent(Type role)
     {
-        return hasComponent(role, "default");
+        return hasComponent(role, DEFAULT_HINT);
     }
 
     @Override
     public boolean hasComponent(Type role, String hint)
     {
-        if (this.componentEntries.containsKey(new RoleHint<Object>(role, hint))) {
+        ResolvedComponentEntry resolved = getCachedComponentEntry(role, hint);
+        if (resolved != null) {
+            return resolved.entry != null;
+        }
+
+        if (getComponentEntry(role, hint) != null) {
             return true;
         }
 
@@ -152,13 +352,17 @@ public boolean hasComponent(Type role, String hint)
     @Override
     public <T> T getInstance(Type roleType) throws ComponentLookupException
     {
-        return getComponentInstance(new RoleHint<T>(roleType));
+        // Only allocate a RoleHint when the lookup hook may have been overridden
+        return this.overridesLookups ? getComponentInstance(new RoleHint<T>(roleType))
+            : this.<T>getComponentInstance(roleType, null);
     }
 
     @Override
     public <T> T getInstance(Type roleType, String roleHint) throws ComponentLookupException
     {
-        return getComponentInstance(new RoleHint<T>(roleType, roleHint));
+        // Only allocate a RoleHint when the lookup hook may have been overridden
+        return this.overridesLookups ? getComponentInstance(new RoleHint<T>(roleType, roleHint))
+            : this.<T>getComponentInstance(roleType, roleHint);
     }
 
     @Override
@@ -177,15 +381,24 @@ public <T> Map<String, T> getInstanceMap(Type role) throws ComponentLookupExcept
     {
         Map<String, T> objects = new HashMap<String, T>();
 
-        for (Map.Entry<RoleHint< ? >, ComponentEntry< ? >> entry : this.componentEntries.entrySet()) {
-            RoleHint< ? > roleHint = entry.getKey();
+        Map<String, ComponentEntry< ? >> mergedEntries = getMergedComponentEntries(role);
+        if (mergedEntries != null) {
+            // Fast path: the whole Component Manager chain is known, each instance is created by the Component Manager
+            // owning the component
+            for (Map.Entry<String, ComponentEntry< ? >> entry : mergedEntries.entrySet()) {
+                ComponentEntry<T> componentEntry = (ComponentEntry<T>) entry.getValue();
+                objects.put(entry.getKey(), componentEntry.componentManager.getComponentInstance(componentEntry, role,
+                    entry.getKey()));
+            }
 
-            if (role.equals(roleHint.getRoleType())) {
-                try {
-                    objects.put(roleHint.getHint(), getComponentInstance((ComponentEntry<T>) entry.getValue()));
-                } catch (Exception e) {
-                    throw new ComponentLookupException("Failed to lookup component [" + roleHint + "]", e);
-                }
+            return objects;
+        }
+
+        Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(role);
+        if (entries != null) {
+            for (Map.Entry<String, ComponentEntry< ? >> entry : entries.entrySet()) {
+                objects.put(entry.getKey(),
+                    getComponentInstance((ComponentEntry<T>) entry.getValue(), role, entry.getKey()));
             }
         }
 
@@ -206,8 +419,13 @@ public <T> Map<String, T> getInstanceMap(Type role) throws ComponentLookupExcept
     @SuppressWarnings("unchecked")
     public <T> ComponentDescriptor<T> getComponentDescriptor(Type role, String hint)
     {
+        ResolvedComponentEntry resolved = getCachedComponentEntry(role, hint);
+        if (resolved != null) {
+            return resolved.entry != null ? (ComponentDescriptor<T>) resolved.entry.descriptor : null;
+        }
+
         ComponentDescriptor<T> result = null;
-        ComponentEntry<T> componentEntry = (ComponentEntry<T>) this.componentEntries.get(new RoleHint<T>(role, hint));
+        ComponentEntry<T> componentEntry = (ComponentEntry<T>) getComponentEntry(role, hint);
         if (componentEntry == null) {
             // Check in parent!
             if (getParent() != null) {
@@ -224,11 +442,22 @@ public <T> ComponentDescriptor<T> getComponentDescriptor(Type role, String hint)
     @SuppressWarnings("unchecked")
     public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Type role)
     {
+        Map<String, ComponentEntry< ? >> mergedEntries = getMergedComponentEntries(role);
+        if (mergedEntries != null) {
+            List<ComponentDescriptor<T>> descriptors = new ArrayList<ComponentDescriptor<T>>(mergedEntries.size());
+            for (ComponentEntry< ? > entry : mergedEntries.values()) {
+                descriptors.add((ComponentDescriptor<T>) entry.descriptor);
+            }
+
+            return descriptors;
+        }
+
         Map<String, ComponentDescriptor<T>> descriptors = new HashMap<String, ComponentDescriptor<T>>();
 
-        for (Map.Entry<RoleHint< ? >, ComponentEntry< ? >> entry : this.componentEntries.entrySet()) {
-            if (entry.getKey().getRoleType().equals(role)) {
-                descriptors.put(entry.getKey().getHint(), (ComponentDescriptor<T>) entry.getValue().descriptor);
+        Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(role);
+        if (entries != null) {
+            for (Map.Entry<String, ComponentEntry< ? >> entry : entries.entrySet()) {
+                descriptors.put(entry.getKey(), (ComponentDescriptor<T>) entry.getValue().descriptor);
             }
         }
 
@@ -246,6 +475,207 @@ public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Type role)
         return new ArrayList<ComponentDescriptor<T>>(descriptors.values());
     }
 
+    /**
+     * @param role the role of the components
+     * @return the components of the passed role registered in this Component Manager and its parents (the ones
+     *         registered in this Component Manager having priority), or {@code null} if the modifications of the
+     *         parent chain can't be tracked, in which case the result can't be cached
+     */
+    private Map<String, ComponentEntry< ? >> getMergedComponentEntries(Type role)
+    {
+        // Get the stamp before gathering the entries so that a modification happening in between invalidates the
+        // cached result on next call
+        long stamp = getLastModification();
+        if (stamp < 0) {
+            return null;
+        }
+
+        MergedComponentEntries merged = this.mergedComponentEntries.get(role);
+        if (merged == null || merged.lastModification != stamp) {
+            Map<String, ComponentEntry< ? >> entries = new HashMap<String, ComponentEntry< ? >>();
+
+            if (getParent() != null) {
+                EmbeddableComponentManager parentComponentManager = getTrackedParent(this);
+                if (parentComponentManager == null) {
+                    // The parent changed in the meantime
+                    return null;
+                }
+                Map<String, ComponentEntry< ? >> parentEntries = parentComponentManager.getMergedComponentEntries(role);
+                if (parentEntries == null) {
+                    return null;
+                }
+                entries.putAll(parentEntries);
+            }
+
+            // If the hint already exists in the parent Component Manager then override it
+            Map<String, ComponentEntry< ? >> localEntries = this.componentEntriesByRole.get(role);
+            if (localEntries != null) {
+                entries.putAll(localEntries);
+            }
+
+            merged = new MergedComponentEntries(stamp, Collections.unmodifiableMap(entries));
+            this.mergedComponentEntries.put(role, merged);
+        }
+
+        return merged.entries;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Modifications can't be tracked if one of the lookup methods is overridden or if one of the parents is not an
+     * {@link EmbeddableComponentManager} or a {@link DelegateComponentManager} delegating to an
+     * {@link EmbeddableComponentManager} while tracking modifications.
+     * 
+     * @since 4.5M1
+     */
+    @Override
+    public long getLastModification()
+    {
+        if (this.overridesLookups) {
+            return UNTRACKED;
+        }
+
+        long stamp = this.lastModification;
+
+        ComponentManager parentComponentManager = getParent();
+        if (parentComponentManager != null) {
+            // The stamp of a tracked parent already covers the Component Managers it delegates to
+            long parentStamp = UNTRACKED;
+            if (parentComponentManager instanceof StampedComponentManager) {
+                parentStamp = ((StampedComponentManager) parentComponentManager).getLastModification();
+            }
+            if (parentStamp != UNTRACKED && getTrackedParent(this) != null) {
+                stamp = Math.max(stamp, parentStamp);
+            } else {
+                stamp = UNTRACKED;
+            }
+        }
+
+        return stamp;
+    }
+
+    /**
+     * @param componentManagerClass the class of a Component Manager
+     * @return {@code true} if the passed class overrides one of the {@link #LOOKUP_METHODS}
+     */
+    private static boolean overridesLookups(Class< ? > componentManagerClass)
+    {
+        for (Class< ? > currentClass = componentManagerClass; currentClass != EmbeddableComponentManager.class;
+            currentClass = currentClass.getSuperclass()) {
+            for (Method method : currentClass.getDeclaredMethods()) {
+                if (LOOKUP_METHODS.contains(method.getName())) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Only meaningful once the stamp of the passed Component Manager has been found tracked, which guarantees that the
+     * {@link DelegateComponentManager}s of the chain delegate to the Component Manager they have been given.
+     * 
+     * @param componentManager a Component Manager
+     * @return the {@link EmbeddableComponentManager} in which the lookups falling back on the parent of the passed
+     *         Component Manager are made, {@code null} if the parent doesn't have one
+     */
+    private static EmbeddableComponentManager getTrackedParent(EmbeddableComponentManager componentManager)
+    {
+        ComponentManager parentComponentManager = componentManager.getParent();
+        while (parentComponentManager instanceof DelegateComponentManager) {
+            parentComponentManager = ((DelegateComponentManager) parentComponentManager).getComponentManager();
+        }
+
+        return parentComponentManager instanceof EmbeddableComponentManager
+            && !((EmbeddableComponentManager) parentComponentManager).overridesLookups
+            ? (EmbeddableComponentManager) parentComponentManager : null;
+    }
+
+    /**
+     * @param role the role of the component
+     * @param hint the hint of the component, {@code null} for the default hint
+     * @return the component registered in this Component Manager (not its parents) with the passed role and hint, or
+     *         {@code null} if there's none
+     */
+    private ComponentEntry< ? > getComponentEntry(Type role, String hint)
+    {
+        // Don't go through componentEntries to avoid allocating a RoleHint
+        Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(role);
+
+        return entries != null ? entries.get(hint != null ? hint : DEFAULT_HINT) : null;
+    }
+
+    /**
+     * @param role the role of the component to find
+     * @param hint the hint of the component to find, {@code null} for the default hint
+     * @return the entry found the last time the component was looked up in this Component Manager and its parents (the
+     *         entry of the result being {@code null} if none was found), or {@code null} if the modifications of the
+     *         parent chain can't be tracked, in which case the result can't be cached
+     */
+    private ResolvedComponentEntry getCachedComponentEntry(Type role, String hint)
+    {
+        long stamp = getLastModification();
+        if (stamp < 0) {
+            return null;
+        }
+
+        LookupCache cache = this.lookupCache;
+        if (cache.lastModification != stamp) {
+            cache = new LookupCache(stamp);
+            this.lookupCache = cache;
+        }
+
+        String roleHint = hint != null ? hint : DEFAULT_HINT;
+
+        Map<String, ResolvedComponentEntry> entries = cache.entries.get(role);
+        ResolvedComponentEntry resolved = entries != null ? entries.get(roleHint) : null;
+        if (resolved == null) {
+            this.lookupCacheMisses.incrementAndGet();
+
+            resolved = new ResolvedComponentEntry(findComponentEntry(role, roleHint), stamp);
+            if (cache.size.get() < LOOKUP_CACHE_SIZE) {
+                if (entries == null) {
+                    entries = new ConcurrentHashMap<String, ResolvedComponentEntry>();
+                    Map<String, ResolvedComponentEntry> previousEntries = cache.entries.putIfAbsent(role, entries);
+                    if (previousEntries != null) {
+                        // Another thread created the map in the meantime
+                        entries = previousEntries;
+                    }
+                }
+                if (entries.put(roleHint, resolved) == null) {
+                    cache.size.incrementAndGet();
+                }
+            }
+        } else {
+            this.lookupCacheHits.incrementAndGet();
+        }
+
+        return resolved;
+    }
+
+    /**
+     * @return the number of lookups made in this Component Manager and answered without going through the Component
+     *         Manager chain
+     * @since 4.5M1
+     */
+    public long getLookupCacheHits()
+    {
+        return this.lookupCacheHits.get();
+    }
+
+    /**
+     * @return the number of lookups made in this Component Manager which had to go through the Component Manager chain
+     *         because the component was never looked up or because a Component Manager of the chain has been modified
+     *         since the last lookup
+     * @since 4.5M1
+     */
+    public long getLookupCacheMisses()
+    {
+        return this.lookupCacheMisses.get();
+    }
+
     @Override
     public ComponentEventManager getComponentEventManager()
     {
@@ -268,53 +698,31 @@ public ComponentManager getParent()
     public void setParent(ComponentManager parentComponentManager)
     {
         this.parent = parentComponentManager;
+
+        this.lastModification = ModificationStamps.next();
     }
 
-    private <T> T createInstance(ComponentDescriptor<T> descriptor) throws Exception
+    private <T> T createInstance(ComponentEntry<T> componentEntry) throws Exception
     {
+        ComponentDescriptor<T> descriptor = componentEntry.descriptor;
+
         T instance = descriptor.getImplementation().newInstance();
 
         // Set each dependency
-        for (ComponentDependency< ? > dependency : descriptor.getComponentDependencies()) {
+        for (Injection injection : getInjections(componentEntry)) {
 
             // TODO: Handle dependency cycles
 
-            // Handle different field types
-            Object fieldValue;
-
-            // Step 1: Verify if there's a Provider registered for the field type
-            // - A Provider is a component like any other (except it cannot have a field produced by itself!)
-            // - A Provider must implement the JSR330 Producer interface
-            //
-            // Step 2: Handle Logger injection.
-            //
-            // Step 3: No producer found, handle scalar and collection types by looking up standard component
-            // implementations.
+            Object fieldValue = getInjectionValue(injection, instance);
 
-            Class< ? > dependencyRoleClass = ReflectionUtils.getTypeClass(dependency.getRoleType());
-
-            if (dependencyRoleClass.isAssignableFrom(Logger.class)) {
-                fieldValue = createLogger(instance.getClass());
-            } else if (dependencyRoleClass.isAssignableFrom(List.class)) {
-                fieldValue = getInstanceList(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
-            } else if (dependencyRoleClass.isAssignableFrom(Map.class)) {
-                fieldValue = getInstanceMap(ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()));
-            } else if (dependencyRoleClass.isAssignableFrom(Provider.class)) {
+            // Set the field by introspection
+            if (fieldValue != null && injection.field != null) {
                 try {
-                    fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
-                } catch (ComponentLookupException e) {
-                    fieldValue =
-                        new GenericProvider<Object>(this, new RoleHint<Object>(
-                            ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType()),
-                            dependency.getRoleHint()));
+                    injection.field.set(instance, fieldValue);
+                } catch (IllegalAccessException e) {
+                    throw new RuntimeException("Failed to set field [" + injection.dependency.getName()
+                        + "] in instance of [" + instance.getClass().getName() + "]", e);
                 }
-            } else {
-                fieldValue = getInstance(dependency.getRoleType(), dependency.getRoleHint());
-            }
-
-            // Set the field by introspection
-            if (fieldValue != null) {
-                ReflectionUtils.setFieldValue(instance, dependency.getName(), fieldValue);
             }
         }
 
@@ -326,6 +734,171 @@ private <T> T createInstance(ComponentDescriptor<T> descriptor) throws Exception
         return instance;
     }
 
+    /**
+     * @return how to inject the dependencies of the passed component, computed only once per registered component
+     */
+    private List<Injection> getInjections(ComponentEntry< ? > componentEntry)
+    {
+        List<Injection> injections = componentEntry.injections;
+
+        if (injections == null) {
+            ComponentDescriptor< ? > descriptor = componentEntry.descriptor;
+
+            injections = new ArrayList<Injection>();
+            for (ComponentDependency< ? > dependency : descriptor.getComponentDependencies()) {
+                injections.add(createInjection(descriptor.getImplementation(), dependency));
+            }
+
+            componentEntry.injections = injections;
+        }
+
+        return injections;
+    }
+
+    private Injection createInjection(Class< ? > implementation, ComponentDependency< ? > dependency)
+    {
+        // Handle different field types
+        //
+        // Step 1: Verify if there's a Provider registered for the field type
+        // - A Provider is a component like any other (except it cannot have a field produced by itself!)
+        // - A Provider must implement the JSR330 Producer interface
+        //
+        // Step 2: Handle Logger injection.
+        //
+        // Step 3: No producer found, handle scalar and collection types by looking up standard component
+        // implementations.
+
+        Class< ? > dependencyRoleClass = ReflectionUtils.getTypeClass(dependency.getRoleType());
+
+        InjectionKind kind;
+        Type roleType;
+        if (dependencyRoleClass.isAssignableFrom(Logger.class)) {
+            kind = InjectionKind.LOGGER;
+            roleType = dependency.getRoleType();
+        } else if (dependencyRoleClass.isAssignableFrom(List.class)) {
+            kind = InjectionKind.LIST;
+            roleType = ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType());
+        } else if (dependencyRoleClass.isAssignableFrom(Map.class)) {
+            kind = InjectionKind.MAP;
+            roleType = ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType());
+        } else if (dependencyRoleClass.isAssignableFrom(Provider.class)) {
+            kind = InjectionKind.PROVIDER;
+            roleType = ReflectionUtils.getLastTypeGenericArgument(dependency.getRoleType());
+        } else {
+            kind = InjectionKind.COMPONENT;
+            roleType = dependency.getRoleType();
+        }
+
+        return new Injection(getInjectedField(implementation, dependency.getName()), kind, dependency,
+            new RoleHint<Object>(roleType, dependency.getRoleHint()));
+    }
+
+    /**
+     * Find the field to inject the same way {@link ReflectionUtils#setFieldValue(Object, String, Object)} does and make
+     * it accessible once and for all.
+     */
+    private Field getInjectedField(Class< ? > implementation, String fieldName)
+    {
+        for (Class< ? > targetClass = implementation; targetClass != null; targetClass =
+            targetClass.getSuperclass()) {
+            for (Field field : targetClass.getDeclaredFields()) {
+                if (field.getName().equalsIgnoreCase(fieldName)) {
+                    try {
+                        field.setAccessible(true);
+                    } catch (SecurityException e) {
+                        // This shouldn't happen but if it does then the Component manager will not function properly
+                        // and we need to abort. It probably means the Java security manager has been configured to
+                        // prevent accessing private fields.
+                        throw new RuntimeException("Failed to set field [" + fieldName + "] in instance of ["
+                            + implementation.getName() + "]. The Java Security Manager has "
+                            + "probably been configured to prevent settting private field values. XWiki requires "
+                            + "this ability to work.", e);
+                    }
+
+                    return field;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private Object getInjectionValue(Injection injection, Object instance) throws ComponentLookupException
+    {
+        Object fieldValue;
+
+        switch (injection.kind) {
+            case LOGGER:
+                fieldValue = createLogger(instance.getClass());
+                break;
+            case LIST:
+                fieldValue = getInstanceList(injection.roleHint.getRoleType());
+                break;
+            case MAP:
+                fieldValue = getInstanceMap(injection.roleHint.getRoleType());
+                break;
+            case PROVIDER:
+                try {
+                    fieldValue =
+                        getInstance(injection.dependency.getRoleType(), injection.dependency.getRoleHint());
+                } catch (ComponentLookupException e) {
+                    fieldValue = new GenericProvider<Object>(this, injection.roleHint);
+                }
+                break;
+            default:
+                fieldValue = getDependencyInstance(injection);
+                break;
+        }
+
+        return fieldValue;
+    }
+
+    /**
+     * Lookup the component to inject, reusing the entry found the previous time as long as the Component Manager chain
+     * has not been modified.
+     */
+    private Object getDependencyInstance(Injection injection) throws ComponentLookupException
+    {
+        ResolvedComponentEntry target = injection.target;
+
+        long stamp = getLastModification();
+        if (target == null || target.lastModification != stamp) {
+            ComponentEntry<Object> entry =
+                stamp < 0 ? null : findComponentEntry(injection.roleHint.getRoleType(), injection.roleHint.getHint());
+            if (entry == null) {
+                // Not found or can't be tracked: standard lookup
+                return getInstance(injection.roleHint.getRoleType(), injection.roleHint.getHint());
+            }
+
+            target = new ResolvedComponentEntry(entry, stamp);
+            injection.target = target;
+        }
+
+        return target.entry.componentManager.getComponentInstance(target.entry, injection.roleHint.getRoleType(),
+            injection.roleHint.getHint());
+    }
+
+    /**
+     * @return the entry associated to the passed role and hint in this Component Manager or its parents, {@code null}
+     *         if it can't be found or if the modifications of the parent chain can't be tracked
+     */
+    @SuppressWarnings("unchecked")
+    private <T> ComponentEntry<T> findComponentEntry(Type role, String hint)
+    {
+        EmbeddableComponentManager componentManager = this;
+        while (true) {
+            ComponentEntry<T> entry = (ComponentEntry<T>) componentManager.getComponentEntry(role, hint);
+            if (entry != null) {
+                return entry;
+            }
+
+            componentManager = getTrackedParent(componentManager);
+            if (componentManager == null) {
+                return null;
+            }
+        }
+    }
+
     /**
      * Create a Logger instance to inject.
      */
@@ -334,31 +907,56 @@ protected Object createLogger(Class< ? > instanceClass)
         return LoggerFactory.getLogger(instanceClass);
     }
 
-    @SuppressWarnings("unchecked")
     protected <T> T getComponentInstance(RoleHint<T> roleHint) throws ComponentLookupException
     {
+        return getComponentInstance(roleHint.getRoleType(), roleHint.getHint());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getComponentInstance(Type role, String hint) throws ComponentLookupException
+    {
+        ResolvedComponentEntry resolved = getCachedComponentEntry(role, hint);
+        if (resolved != null) {
+            if (resolved.entry == null) {
+                throw new ComponentLookupException("Can't find descriptor for the component ["
+                    + new RoleHint<T>(role, hint) + "]");
+            }
+
+            // The instance is created by the Component Manager owning the component
+            ComponentEntry<T> componentEntry = (ComponentEntry<T>) resolved.entry;
+            return componentEntry.componentManager.getComponentInstance(componentEntry, role, hint);
+        }
+
         T instance;
 
-        ComponentEntry<T> componentEntry = (ComponentEntry<T>) this.componentEntries.get(roleHint);
+        ComponentEntry<T> componentEntry = (ComponentEntry<T>) getComponentEntry(role, hint);
 
         if (componentEntry != null) {
-            try {
-                instance = getComponentInstance(componentEntry);
-            } catch (Throwable e) {
-                throw new ComponentLookupException(String.format("Failed to lookup component [%s] identifier by [%s]",
-                    componentEntry.descriptor.getImplementation().getName(), roleHint.toString()), e);
-            }
+            instance = getComponentInstance(componentEntry, role, hint);
         } else {
             if (getParent() != null) {
-                instance = getParent().getInstance(roleHint.getRoleType(), roleHint.getHint());
+                instance = getParent().getInstance(role, hint);
             } else {
-                throw new ComponentLookupException("Can't find descriptor for the component [" + roleHint + "]");
+                throw new ComponentLookupException("Can't find descriptor for the component ["
+                    + new RoleHint<T>(role, hint) + "]");
             }
         }
 
         return instance;
     }
 
+    private <T> T getComponentInstance(ComponentEntry<T> componentEntry, Type role, String hint)
+        throws ComponentLookupException
+    {
+        try {
+            return getComponentInstance(componentEntry);
+        } catch (Throwable e) {
+            // Only allocate the RoleHint when there's an error to report
+            throw new ComponentLookupException(String.format("Failed to lookup component [%s] identifier by [%s]",
+                componentEntry.descriptor.getImplementation().getName(), new RoleHint<T>(role, hint)), e);
+        }
+    }
+
     private <T> T getComponentInstance(ComponentEntry<T> componentEntry) throws Exception
     {
         T instance;
@@ -375,13 +973,13 @@ private <T> T getComponentInstance(ComponentEntry<T> componentEntry) throws Exce
                     if (componentEntry.instance != null) {
                         instance = componentEntry.instance;
                     } else {
-                        componentEntry.instance = createInstance(descriptor);
+                        componentEntry.instance = createInstance(componentEntry);
                         instance = componentEntry.instance;
                     }
                 }
             }
         } else {
-            instance = createInstance(descriptor);
+            instance = createInstance(componentEntry);
         }
 
         return instance;
@@ -414,10 +1012,22 @@ public <T> void registerComponent(ComponentDescriptor<T> componentDescriptor, T
 
     private <T> void addComponent(RoleHint<T> roleHint, ComponentDescriptor<T> descriptor, T instance)
     {
-        ComponentEntry<T> componentEntry = new ComponentEntry<T>(descriptor, instance);
+        ComponentEntry<T> componentEntry = new ComponentEntry<T>(descriptor, instance, this);
 
         // Register new component
-        this.componentEntries.put(roleHint, componentEntry);
+        synchronized (this.componentEntries) {
+            this.componentEntries.put(roleHint, componentEntry);
+
+            Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(roleHint.getRoleType());
+            if (entries == null) {
+                entries = new ConcurrentHashMap<String, ComponentEntry< ? >>();
+                this.componentEntriesByRole.put(roleHint.getRoleType(), entries);
+            }
+            entries.put(roleHint.getHint(), componentEntry);
+
+            // Stamp only once the maps are up to date so that a concurrent lookup can't cache a stale view
+            this.lastModification = ModificationStamps.next();
+            }
 
         // Send event about component registration
         if (this.eventManager != null) {
@@ -500,7 +1110,21 @@ private void removeComponent(RoleHint< ? > roleHint) throws ComponentLifecycleEx
     {
         // Make sure to remove the entry from the map before destroying it to reduce at the minimum the risk of
         // lookupping something invalid
-        ComponentEntry< ? > componentEntry = this.componentEntries.remove(roleHint);
+        ComponentEntry< ? > componentEntry;
+        synchronized (this.componentEntries) {
+            componentEntry = this.componentEntries.remove(roleHint);
+
+            Map<String, ComponentEntry< ? >> entries = this.componentEntriesByRole.get(roleHint.getRoleType());
+            if (entries != null) {
+                entries.remove(roleHint.getHint());
+                if (entries.isEmpty()) {
+                    this.componentEntriesByRole.remove(roleHint.getRoleType());
+                }
+            }
+
+            // Stamp only once the maps are up to date so that a concurrent lookup can't cache a stale view
+            this.lastModification = ModificationStamps.next();
+            }
 
         if (componentEntry != null) {
             ComponentDescriptor< ? > oldDescriptor = componentEntry.descriptor;
@@ -528,6 +1152,20 @@ private <T> void removeComponentWithoutException(RoleHint<T> roleHint)
         }
     }
 
+    /**
+     * @return the descriptors of the components registered in this Component Manager, not including the ones
+     *         registered in its parent
+     */
+    List<ComponentDescriptor< ? >> getLocalComponentDescriptors()
+    {
+        List<ComponentDescriptor< ? >> descriptors = new ArrayList<ComponentDescriptor< ? >>();
+        for (ComponentEntry< ? > entry : this.componentEntries.values()) {
+            descriptors.add(entry.descriptor);
+        }
+
+        return descriptors;
+    }
+
     // Deprecated
 
     @Override
@@ -536,9 +1174,11 @@ private <T> void removeComponentWithoutException(RoleHint<T> roleHint)
     public <T> List<ComponentDescriptor<T>> getComponentDescriptorList(Class<T> role)
     {
         List<ComponentDescriptor<T>> results = new ArrayList<ComponentDescriptor<T>>();
-        for (Map.Entry<RoleHint< ? >, ComponentEntry< ? >> entry : this.componentEntries.entrySet()) {
-            if (entry.getKey().getRoleClass() == role) {
-                results.add((ComponentDescriptor<T>) entry.getValue().descriptor);
+        for (Map.Entry<Type, Map<String, ComponentEntry< ? >>> entry : this.componentEntriesByRole.entrySet()) {
+            if (ReflectionUtils.getTypeClass(entry.getKey()) == role) {
+                for (ComponentEntry< ? > componentEntry : entry.getValue().values()) {
+                    results.add((ComponentDescriptor<T>) componentEntry.descriptor);
+                }
             }
         }
         return results;
@@ -19,7 +19,8 @@
  */
 package org.xwiki.component.internal;
 
-import java.util.Stack;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.xwiki.component.descriptor.ComponentDescriptor;
 import org.xwiki.component.event.ComponentDescriptorAddedEvent;
@@ -45,14 +46,15 @@ public class StackingComponentEventManager implements ComponentEventManager
     private ObservationManager observationManager;
 
     /**
-     * The event stacked before been given the order to send them.
+     * The event stacked before been given the order to send them. A lock free queue so that components registered
+     * concurrently (e.g. when installing a JAR extension) don't wait for each other.
      */
-    private Stack<ComponentEventEntry> events = new Stack<ComponentEventEntry>();
+    private Queue<ComponentEventEntry> events = new ConcurrentLinkedQueue<ComponentEventEntry>();
 
     /**
      * Indicate if event should be retained to directly sent.
      */
-    private boolean shouldStack = true;
+    private volatile boolean shouldStack = true;
 
     @Override
     public void notifyComponentRegistered(ComponentDescriptor< ? > descriptor)
@@ -83,12 +85,11 @@ public void notifyComponentUnregistered(ComponentDescriptor< ? > descriptor, Com
     }
 
     /**
-     * Force to send all stored events.
+     * Force to send all stored events, in the order they have been received.
      */
     public synchronized void flushEvents()
     {
-        while (!this.events.isEmpty()) {
-            ComponentEventEntry entry = this.events.pop();
+        for (ComponentEventEntry entry = this.events.poll(); entry != null; entry = this.events.poll()) {
             sendEvent(entry.event, entry.descriptor, entry.componentManager);
         }
     }
@@ -121,9 +122,7 @@ private void notifyComponentEvent(Event event, ComponentDescriptor< ? > descript
         ComponentManager componentManager)
     {
         if (this.shouldStack) {
-            synchronized (this) {
-                this.events.push(new ComponentEventEntry(event, descriptor, componentManager));
-            }
+            this.events.offer(new ComponentEventEntry(event, descriptor, componentManager));
         } else {
             sendEvent(event, descriptor, componentManager);
         }
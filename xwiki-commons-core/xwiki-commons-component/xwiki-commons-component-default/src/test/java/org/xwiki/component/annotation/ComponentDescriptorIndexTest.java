@@ -0,0 +1,195 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.annotation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.embed.EmbeddableComponentManager;
+import org.xwiki.component.internal.ContextComponentManagerProvider;
+
+/**
+ * Unit tests for {@link ComponentDescriptorIndex}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ComponentDescriptorIndexTest
+{
+    private static final long COMPONENT_LIST_CHECKSUM = 42;
+
+    /**
+     * A component whose super class comes from another JAR.
+     */
+    @Component
+    public static class ExternalSuperClassImpl extends Assert implements ComponentDescriptorFactoryTest.NonGenericRole
+    {
+    }
+
+    private ComponentDescriptorIndex index = new ComponentDescriptorIndex();
+
+    private ComponentAnnotationLoader loader = new ComponentAnnotationLoader();
+
+    private byte[] write(Class< ? >... componentClasses) throws Exception
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.index.write(Arrays.<Class< ? >> asList(componentClasses), COMPONENT_LIST_CHECKSUM, stream);
+
+        return stream.toByteArray();
+    }
+
+    private Map<String, List<ComponentDescriptor>> read(byte[] bytes, long componentListChecksum,
+        boolean checkLocalClasses, Map<String, Long> checksums) throws Exception
+    {
+        return this.index.read(new ByteArrayInputStream(bytes), componentListChecksum, getClass().getClassLoader(),
+            checkLocalClasses, checksums);
+    }
+
+    @Test
+    public void writeAndRead() throws Exception
+    {
+        byte[] bytes =
+            write(ComponentDescriptorFactoryTest.RoleImpl.class, ComponentDescriptorFactoryTest.MultipleRolesImpl.class);
+
+        Map<String, List<ComponentDescriptor>> descriptors =
+            read(bytes, COMPONENT_LIST_CHECKSUM, false, new HashMap<String, Long>());
+
+        Assert.assertEquals(2, descriptors.size());
+        Assert.assertEquals(this.loader.getComponentsDescriptors(ComponentDescriptorFactoryTest.RoleImpl.class),
+            descriptors.get(ComponentDescriptorFactoryTest.RoleImpl.class.getName()));
+        Assert.assertEquals(
+            this.loader.getComponentsDescriptors(ComponentDescriptorFactoryTest.MultipleRolesImpl.class),
+            descriptors.get(ComponentDescriptorFactoryTest.MultipleRolesImpl.class.getName()));
+    }
+
+    @Test
+    public void readIndexOfOtherComponentList() throws Exception
+    {
+        byte[] bytes =
+            write(ComponentDescriptorFactoryTest.RoleImpl.class, ComponentDescriptorFactoryTest.MultipleRolesImpl.class);
+
+        // Simulate a modification of the components list since the index has been generated
+        Assert.assertNull(read(bytes, COMPONENT_LIST_CHECKSUM + 1, false, new HashMap<String, Long>()));
+    }
+
+    @Test
+    public void readWhenExternalClassChanged() throws Exception
+    {
+        byte[] bytes = write(ExternalSuperClassImpl.class, ComponentDescriptorFactoryTest.RoleImpl.class);
+
+        Assert.assertEquals(2, read(bytes, COMPONENT_LIST_CHECKSUM, false, new HashMap<String, Long>()).size());
+
+        // Simulate an upgrade of the JAR providing the super class since the index has been generated
+        Map<String, Long> checksums = new HashMap<String, Long>();
+        checksums.put(Assert.class.getName(), ClassChecksum.NO_CHECKSUM);
+        Map<String, List<ComponentDescriptor>> descriptors = read(bytes, COMPONENT_LIST_CHECKSUM, false, checksums);
+
+        Assert.assertEquals(1, descriptors.size());
+        Assert.assertTrue(descriptors.containsKey(ComponentDescriptorFactoryTest.RoleImpl.class.getName()));
+    }
+
+    @Test
+    public void readWhenLocalClassChanged() throws Exception
+    {
+        byte[] bytes = write(ComponentDescriptorFactoryTest.RoleImpl.class);
+
+        // Simulate a recompilation of the role interface without generating the index again
+        Map<String, Long> checksums = new HashMap<String, Long>();
+        checksums.put(ComponentDescriptorFactoryTest.NonGenericRole.class.getName(), ClassChecksum.NO_CHECKSUM);
+
+        // The local classes are only checked when the index is read from a directory
+        Assert.assertEquals(1, read(bytes, COMPONENT_LIST_CHECKSUM, false, checksums).size());
+        Assert.assertTrue(read(bytes, COMPONENT_LIST_CHECKSUM, true, checksums).isEmpty());
+    }
+
+    @Test
+    public void loadComponentsFromIndex() throws Exception
+    {
+        File directory = new File("target/test-" + getClass().getSimpleName());
+        File componentListFile = new File(directory, ComponentAnnotationLoader.COMPONENT_LIST);
+        componentListFile.getParentFile().mkdirs();
+
+        byte[] componentList = ContextComponentManagerProvider.class.getName().getBytes("UTF-8");
+        OutputStream stream = new FileOutputStream(componentListFile);
+        try {
+            stream.write(componentList);
+        } finally {
+            stream.close();
+        }
+
+        CRC32 checksum = new CRC32();
+        checksum.update(componentList);
+        stream = new FileOutputStream(new File(directory, ComponentDescriptorIndex.COMPONENT_INDEX));
+        try {
+            Assert.assertEquals(1, this.index.write(Arrays.<Class< ? >> asList(ContextComponentManagerProvider.class),
+                checksum.getValue(), stream));
+        } finally {
+            stream.close();
+        }
+
+        // Only look for resources in the generated directory
+        ClassLoader classLoader = new URLClassLoader(new URL[] {directory.toURI().toURL()}, null)
+        {
+            @Override
+            public Class< ? > loadClass(String name) throws ClassNotFoundException
+            {
+                return ComponentDescriptorIndexTest.class.getClassLoader().loadClass(name);
+            }
+
+            @Override
+            public URL getResource(String name)
+            {
+                // The class files are checked since the index is located in a directory
+                return name.endsWith(".class") ? ComponentDescriptorIndexTest.class.getClassLoader().getResource(name)
+                    : super.getResource(name);
+            }
+        };
+
+        // Make sure the components are not introspected
+        ComponentAnnotationLoader indexedLoader = new ComponentAnnotationLoader()
+        {
+            @Override
+            public List<ComponentDescriptor> getComponentsDescriptors(Class< ? > componentClass)
+            {
+                throw new AssertionError("Component [" + componentClass + "] should have been indexed");
+            }
+        };
+
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        indexedLoader.initialize(ecm, classLoader);
+
+        ComponentDescriptor< ? > expected =
+            this.loader.getComponentsDescriptors(ContextComponentManagerProvider.class).get(0);
+        Assert.assertEquals(expected, ecm.getComponentDescriptor(expected.getRoleType(), "context"));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.component.embed;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.descriptor.DefaultComponentDependency;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+
+/**
+ * Unit tests for {@link ComponentWarmUp}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ComponentWarmUpTest
+{
+    private static final List<String> INITIALIZED = Collections.synchronizedList(new ArrayList<String>());
+
+    public static interface Role
+    {
+    }
+
+    public static class RoleImpl implements Role, Initializable
+    {
+        private Role dependency;
+
+        @Override
+        public void initialize() throws InitializationException
+        {
+            INITIALIZED.add(getClass().getSimpleName());
+        }
+    }
+
+    public static class AImpl extends RoleImpl
+    {
+    }
+
+    public static class BImpl extends RoleImpl
+    {
+    }
+
+    public static class ExcludedImpl extends RoleImpl
+    {
+    }
+
+    public static class DependsOnExcludedImpl extends RoleImpl
+    {
+    }
+
+    public static class FailingImpl extends RoleImpl
+    {
+        @Override
+        public void initialize() throws InitializationException
+        {
+            throw new LinkageError("[test] failing component");
+        }
+    }
+
+    public static class DependsOnFailingImpl extends RoleImpl
+    {
+    }
+
+    private EmbeddableComponentManager ecm;
+
+    @Before
+    public void setUp()
+    {
+        INITIALIZED.clear();
+
+        this.ecm = new EmbeddableComponentManager();
+
+        register("a", AImpl.class, "b");
+        register("b", BImpl.class, null);
+        register("excluded", ExcludedImpl.class, null);
+        register("dependsonexcluded", DependsOnExcludedImpl.class, "excluded");
+    }
+
+    private void register(String hint, Class< ? extends Role> implementation, String dependencyHint)
+    {
+        DefaultComponentDescriptor<Role> descriptor = new DefaultComponentDescriptor<Role>();
+        descriptor.setRoleType(Role.class);
+        descriptor.setRoleHint(hint);
+        descriptor.setImplementation(implementation);
+
+        if (dependencyHint != null) {
+            DefaultComponentDependency<Role> dependency = new DefaultComponentDependency<Role>();
+            dependency.setRoleType(Role.class);
+            dependency.setRoleHint(dependencyHint);
+            dependency.setName("dependency");
+            descriptor.addComponentDependency(dependency);
+        }
+
+        this.ecm.registerComponent(descriptor, null);
+    }
+
+    @Test
+    public void warmUp() throws Exception
+    {
+        ComponentWarmUp warmUp = new ComponentWarmUp(this.ecm);
+        warmUp.setThreads(2);
+        warmUp.setExclusions(Arrays.asList(ExcludedImpl.class.getName()));
+
+        Map<ComponentDescriptor< ? >, Long> timings = warmUp.warmUp();
+
+        Assert.assertTrue(INITIALIZED.containsAll(Arrays.asList("AImpl", "BImpl")));
+        Assert.assertFalse(INITIALIZED.contains("ExcludedImpl"));
+        Assert.assertFalse(INITIALIZED.contains("DependsOnExcludedImpl"));
+
+        // Dependencies are created first
+        Assert.assertTrue(INITIALIZED.indexOf("BImpl") < INITIALIZED.indexOf("AImpl"));
+
+        Assert.assertEquals(2, timings.size());
+        Assert.assertTrue(timings.containsKey(this.ecm.getComponentDescriptor(Role.class, "a")));
+        Assert.assertFalse(timings.containsKey(this.ecm.getComponentDescriptor(Role.class, "excluded")));
+    }
+
+    @Test(timeout = 10000)
+    public void warmUpWithFailingComponent() throws Exception
+    {
+        register("failing", FailingImpl.class, null);
+        register("dependsonfailing", DependsOnFailingImpl.class, "failing");
+
+        ComponentWarmUp warmUp = new ComponentWarmUp(this.ecm);
+        warmUp.setThreads(2);
+        warmUp.setExclusions(Arrays.asList(ExcludedImpl.class.getName()));
+
+        warmUp.warmUp();
+
+        Assert.assertTrue(INITIALIZED.containsAll(Arrays.asList("AImpl", "BImpl")));
+    }
+}
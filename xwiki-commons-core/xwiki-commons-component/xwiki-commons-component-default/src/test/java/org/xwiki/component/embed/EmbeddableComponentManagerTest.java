@@ -20,6 +20,7 @@
 package org.xwiki.component.embed;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,8 @@
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.descriptor.DefaultComponentDependency;
 import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.internal.RoleHint;
+import org.xwiki.component.internal.multi.DelegateComponentManager;
 import org.xwiki.component.manager.ComponentEventManager;
 import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -39,6 +42,7 @@
 import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.test.jmock.JMockRule;
 
 /**
@@ -106,6 +110,16 @@ public Logger getLogger()
         }
     }
 
+    public static class DependencyRoleImpl implements Role
+    {
+        private Role role;
+
+        public Role getRole()
+        {
+            return this.role;
+        }
+    }
+
     @Test
     public void testLookupThisComponentManager() throws ComponentLookupException
     {
@@ -287,6 +301,50 @@ public void testGetInstanceListAndMapWhenSomeComponentsInParent() throws Excepti
         Assert.assertSame(roleImpl, instances.get("default"));
     }
 
+    @Test
+    public void testGetInstanceMapWhenParentIsModified() throws Exception
+    {
+        EmbeddableComponentManager parent = new EmbeddableComponentManager();
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(parent);
+
+        Assert.assertTrue(ecm.getInstanceMap(Role.class).isEmpty());
+
+        // Register a component in the parent after the first lookup
+        DefaultComponentDescriptor<Role> cd1 = new DefaultComponentDescriptor<Role>();
+        cd1.setRole(Role.class);
+        cd1.setRoleHint("hint");
+        cd1.setImplementation(RoleImpl.class);
+        parent.registerComponent(cd1);
+
+        Map<String, Role> instances = ecm.getInstanceMap(Role.class);
+        Assert.assertEquals(1, instances.size());
+        Assert.assertSame(parent.getInstance(Role.class, "hint"), instances.get("hint"));
+
+        // Override it in the child
+        DefaultComponentDescriptor<Role> cd2 = new DefaultComponentDescriptor<Role>();
+        cd2.setRole(Role.class);
+        cd2.setRoleHint("hint");
+        cd2.setImplementation(OtherRoleImpl.class);
+        ecm.registerComponent(cd2);
+
+        Assert.assertTrue(ecm.getInstanceMap(Role.class).get("hint") instanceof OtherRoleImpl);
+        Assert.assertEquals(1, ecm.getComponentDescriptorList((Type) Role.class).size());
+        Assert.assertTrue(parent.getInstanceMap(Role.class).get("hint") instanceof RoleImpl);
+
+        // Remove it from the parent
+        ecm.unregisterComponent(Role.class, "hint");
+        parent.unregisterComponent(Role.class, "hint");
+
+        Assert.assertTrue(ecm.getInstanceMap(Role.class).isEmpty());
+        Assert.assertTrue(ecm.getComponentDescriptorList((Type) Role.class).isEmpty());
+
+        // Change the parent
+        ecm.setParent(createParentComponentManager());
+
+        Assert.assertEquals(1, ecm.getInstanceMap(Role.class).size());
+    }
+
     @Test
     public void testHasComponent() throws Exception
     {
@@ -311,6 +369,182 @@ public void testHasComponentWhenComponentInParent() throws Exception
         Assert.assertTrue(ecm.hasComponent(Role.class, "default"));
     }
 
+    @Test
+    public void testLookupWhenParentIsModified() throws Exception
+    {
+        EmbeddableComponentManager parent = new EmbeddableComponentManager();
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(parent);
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertEquals(1, ecm.getLookupCacheHits());
+        Assert.assertEquals(1, ecm.getLookupCacheMisses());
+
+        // Register a component in the parent after the first lookups
+        DefaultComponentDescriptor<Role> cd1 = new DefaultComponentDescriptor<Role>();
+        cd1.setRole(Role.class);
+        cd1.setRoleHint("hint");
+        cd1.setImplementation(RoleImpl.class);
+        parent.registerComponent(cd1);
+
+        Assert.assertTrue(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertSame(RoleImpl.class, ecm.getComponentDescriptor(Role.class, "hint").getImplementation());
+        Assert.assertSame(parent.getInstance(Role.class, "hint"), ecm.getInstance(Role.class, "hint"));
+        Assert.assertEquals(2, ecm.getLookupCacheMisses());
+
+        // Override it in the child
+        DefaultComponentDescriptor<Role> cd2 = new DefaultComponentDescriptor<Role>();
+        cd2.setRole(Role.class);
+        cd2.setRoleHint("hint");
+        cd2.setImplementation(OtherRoleImpl.class);
+        ecm.registerComponent(cd2);
+
+        Assert.assertTrue(ecm.<Role>getInstance(Role.class, "hint") instanceof OtherRoleImpl);
+        Assert.assertTrue(parent.<Role>getInstance(Role.class, "hint") instanceof RoleImpl);
+
+        // Remove them
+        ecm.unregisterComponent(Role.class, "hint");
+        parent.unregisterComponent(Role.class, "hint");
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertNull(ecm.getComponentDescriptor(Role.class, "hint"));
+        try {
+            ecm.getInstance(Role.class, "hint");
+            Assert.fail("Should have raised an exception");
+        } catch (ComponentLookupException expected) {
+            // The exception message doesn't matter. All we need to know is that the component descriptor
+            // doesn't exist.
+        }
+
+        // Change the parent
+        ecm.setParent(createParentComponentManager("hint"));
+
+        Assert.assertTrue(ecm.hasComponent(Role.class, "hint"));
+    }
+
+    @Test
+    public void testLookupWhenOtherComponentManagerIsModified() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(new EmbeddableComponentManager());
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+
+        // A Component Manager outside of the chain doesn't invalidate the cached lookups
+        createParentComponentManager("hint");
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertEquals(1, ecm.getLookupCacheHits());
+    }
+
+    @Test
+    public void testLookupWhenParentIsDelegate() throws Exception
+    {
+        EmbeddableComponentManager parent = new EmbeddableComponentManager();
+        DelegateComponentManager delegate = new DelegateComponentManager();
+        delegate.setComponentManager(parent);
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(delegate);
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertEquals(1, ecm.getLookupCacheHits());
+
+        // Register a component behind the delegate after the first lookups
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<Role>();
+        cd.setRole(Role.class);
+        cd.setRoleHint("hint");
+        cd.setImplementation(RoleImpl.class);
+        parent.registerComponent(cd);
+
+        Assert.assertTrue(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertSame(parent.getInstance(Role.class, "hint"), ecm.getInstance(Role.class, "hint"));
+        Assert.assertEquals(2, ecm.getLookupCacheHits());
+
+        // Replace the Component Manager behind the delegate
+        delegate.setComponentManager(new EmbeddableComponentManager());
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+    }
+
+    @Test
+    public void testLookupWhenParentIsContextualDelegate() throws Exception
+    {
+        ComponentManager other = createParentComponentManager("hint");
+
+        final ComponentManager[] current = new ComponentManager[] {new EmbeddableComponentManager()};
+        DelegateComponentManager delegate = new DelegateComponentManager()
+        {
+            @Override
+            public ComponentManager getComponentManager()
+            {
+                return current[0];
+            }
+        };
+        delegate.setComponentManager(current[0]);
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(delegate);
+
+        Assert.assertFalse(ecm.hasComponent(Role.class, "hint"));
+
+        // Switch the Component Manager behind the delegate without telling it
+        current[0] = other;
+
+        Assert.assertTrue(ecm.hasComponent(Role.class, "hint"));
+        Assert.assertEquals(0, ecm.getLookupCacheHits());
+    }
+
+    @Test
+    public void testLookupWhenLookupHookIsOverridden() throws Exception
+    {
+        final List<String> lookups = new ArrayList<String>();
+        EmbeddableComponentManager parent = new EmbeddableComponentManager()
+        {
+            @Override
+            protected <T> T getComponentInstance(RoleHint<T> roleHint) throws ComponentLookupException
+            {
+                lookups.add(roleHint.getHint());
+
+                return super.getComponentInstance(roleHint);
+            }
+        };
+        DefaultComponentDescriptor<Role> cd = new DefaultComponentDescriptor<Role>();
+        cd.setRole(Role.class);
+        cd.setImplementation(RoleImpl.class);
+        parent.registerComponent(cd);
+
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(parent);
+
+        // Looked up directly and through a child, each lookup goes through the overridden hook
+        parent.getInstance(Role.class);
+        ecm.getInstance(Role.class);
+        ecm.getInstance(Role.class);
+
+        Assert.assertEquals(3, lookups.size());
+        Assert.assertEquals(0, ecm.getLookupCacheHits());
+    }
+
+    @Test
+    public void testLookupWithParameterizedRole() throws Exception
+    {
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+
+        DefaultComponentDescriptor<List<String>> cd = new DefaultComponentDescriptor<List<String>>();
+        cd.setRoleType(new DefaultParameterizedType(null, List.class, String.class));
+        cd.setImplementation((Class) ArrayList.class);
+        ecm.registerComponent(cd);
+
+        // Lookup with an equal but different role type instance and with null or default hint
+        Type role = new DefaultParameterizedType(null, List.class, String.class);
+        Assert.assertTrue(ecm.hasComponent(role));
+        Assert.assertTrue(ecm.hasComponent(role, null));
+        Assert.assertNotNull(ecm.getComponentDescriptor(role, "default"));
+        Assert.assertSame(ecm.getInstance(role), ecm.getInstance(role, null));
+        Assert.assertFalse(ecm.hasComponent(new DefaultParameterizedType(null, List.class, Integer.class)));
+    }
+
     @Test
     public void testLoggingInjection() throws Exception
     {
@@ -331,6 +565,57 @@ public void testLoggingInjection() throws Exception
         Assert.assertNotNull(impl.getLogger());
     }
 
+    @Test
+    public void testInjectionWhenDependencyIsRegisteredAgain() throws Exception
+    {
+        EmbeddableComponentManager parent = new EmbeddableComponentManager();
+        EmbeddableComponentManager ecm = new EmbeddableComponentManager();
+        ecm.setParent(parent);
+
+        DefaultComponentDescriptor<Role> d = new DefaultComponentDescriptor<Role>();
+        d.setRole(Role.class);
+        d.setRoleHint("dependency");
+        d.setImplementation(DependencyRoleImpl.class);
+        d.setInstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP);
+
+        DefaultComponentDependency dependencyDescriptor = new DefaultComponentDependency();
+        dependencyDescriptor.setRoleType(Role.class);
+        dependencyDescriptor.setName("role");
+
+        d.addComponentDependency(dependencyDescriptor);
+        ecm.registerComponent(d);
+
+        // The dependency is first found in the parent
+        DefaultComponentDescriptor<Role> d1 = new DefaultComponentDescriptor<Role>();
+        d1.setRole(Role.class);
+        d1.setImplementation(RoleImpl.class);
+        parent.registerComponent(d1);
+
+        DependencyRoleImpl impl = ecm.getInstance(Role.class, "dependency");
+        Assert.assertSame(parent.getInstance(Role.class), impl.getRole());
+        Assert.assertSame(impl.getRole(), ecm.<DependencyRoleImpl> getInstance(Role.class, "dependency").getRole());
+
+        // Then overridden in the child
+        DefaultComponentDescriptor<Role> d2 = new DefaultComponentDescriptor<Role>();
+        d2.setRole(Role.class);
+        d2.setImplementation(OtherRoleImpl.class);
+        ecm.registerComponent(d2);
+
+        impl = ecm.getInstance(Role.class, "dependency");
+        Assert.assertSame(OtherRoleImpl.class, impl.getRole().getClass());
+
+        // And finally removed
+        ecm.unregisterComponent(Role.class, "default");
+        parent.unregisterComponent(Role.class, "default");
+
+        try {
+            ecm.getInstance(Role.class, "dependency");
+            Assert.fail("Should have failed to inject the missing dependency");
+        } catch (ComponentLookupException expected) {
+            // expected
+        }
+    }
+
     private ComponentManager createParentComponentManager() throws Exception
     {
         return createParentComponentManager(null);
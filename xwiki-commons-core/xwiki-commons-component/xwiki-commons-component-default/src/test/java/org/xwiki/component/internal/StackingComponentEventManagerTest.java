@@ -24,6 +24,7 @@
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.Sequence;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -97,20 +98,50 @@ public void flushEvents()
         final ComponentDescriptorRemovedEvent removedEvent =
             new ComponentDescriptorRemovedEvent(this.descriptor2.getRoleType(), this.descriptor2.getRoleHint());
 
+        // The events are sent in the order they have been received
+        final Sequence sequence = this.mockery.sequence("events");
+
         this.mockery.checking(new Expectations()
         {
             {
-                oneOf(mockObservationManager).notify(with(equal(addedEvent)), with(same(mockComponentManager)),
-                    with(same(descriptor1)));
                 oneOf(mockObservationManager).notify(with(equal(addedEvent)), with(aNull(Object.class)),
                     with(same(descriptor1)));
-                oneOf(mockObservationManager).notify(with(equal(removedEvent)), with(same(mockComponentManager)),
-                    with(same(descriptor2)));
+                inSequence(sequence);
+                oneOf(mockObservationManager).notify(with(equal(addedEvent)), with(same(mockComponentManager)),
+                    with(same(descriptor1)));
+                inSequence(sequence);
                 oneOf(mockObservationManager).notify(with(equal(removedEvent)), with(aNull(Object.class)),
                     with(same(descriptor2)));
+                inSequence(sequence);
+                oneOf(mockObservationManager).notify(with(equal(removedEvent)), with(same(mockComponentManager)),
+                    with(same(descriptor2)));
+                inSequence(sequence);
             }
         });
 
         this.eventManager.flushEvents();
+
+        // Nothing left to send
+        this.eventManager.flushEvents();
+    }
+
+    @Test
+    public void sendEventsWhenNotStacking()
+    {
+        this.eventManager.shouldStack(false);
+
+        final ComponentDescriptorAddedEvent addedEvent =
+            new ComponentDescriptorAddedEvent(this.descriptor1.getRoleType(), this.descriptor1.getRoleHint());
+
+        this.mockery.checking(new Expectations()
+        {
+            {
+                oneOf(mockObservationManager).notify(with(equal(addedEvent)), with(same(mockComponentManager)),
+                    with(same(descriptor1)));
+            }
+        });
+
+        this.eventManager.notifyComponentRegistered(this.descriptor1, this.mockComponentManager);
+        this.eventManager.flushEvents();
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable list of the characters of a {@link String} which does not box the characters until they are
+ * accessed. {@link DiffManager#diff(java.util.List, java.util.List, DiffConfiguration)} reads the characters directly
+ * when comparing such lists, which makes character diffs cheaper.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class CharacterList extends AbstractList<Character> implements RandomAccess, Serializable
+{
+    /**
+     * Serialization identifier.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The characters.
+     */
+    private final String characters;
+
+    /**
+     * @param characters the characters
+     */
+    public CharacterList(String characters)
+    {
+        this.characters = characters;
+    }
+
+    /**
+     * @param index the index of the character
+     * @return the character at the specified position, without boxing it
+     */
+    public char charAt(int index)
+    {
+        return this.characters.charAt(index);
+    }
+
+    @Override
+    public Character get(int index)
+    {
+        return Character.valueOf(this.characters.charAt(index));
+    }
+
+    @Override
+    public int size()
+    {
+        return this.characters.length();
+    }
+}
@@ -29,5 +29,61 @@
  */
 public class DiffConfiguration<E> extends HashMap<String, Object>
 {
+    /**
+     * The name of the key used to setup the maximum time allowed to search for the differences.
+     * 
+     * @since 4.5M1
+     */
+    public static final String KEY_TIMEOUT = "timeout";
 
+    /**
+     * The name of the key used to setup the maximum number of inserted and deleted elements to search for.
+     * 
+     * @since 4.5M1
+     */
+    public static final String KEY_MAXEDITDISTANCE = "maxeditdistance";
+
+    /**
+     * When the timeout is reached the modified area is reported as one big change instead of the detailed
+     * modifications.
+     * 
+     * @param timeout the maximum time in milliseconds allowed to search for the differences, 0 or less for no limit
+     * @since 4.5M1
+     */
+    public void setTimeout(long timeout)
+    {
+        put(KEY_TIMEOUT, timeout);
+    }
+
+    /**
+     * @return the maximum time in milliseconds allowed to search for the differences, 0 or less for no limit
+     * @since 4.5M1
+     */
+    public long getTimeout()
+    {
+        // Default is no limit
+        return containsKey(KEY_TIMEOUT) ? ((Number) get(KEY_TIMEOUT)).longValue() : 0;
+    }
+
+    /**
+     * When the maximum edit distance is reached the modified area is reported as one big change instead of the
+     * detailed modifications.
+     * 
+     * @param maxEditDistance the maximum number of inserted and deleted elements to search for, 0 or less for no limit
+     * @since 4.5M1
+     */
+    public void setMaxEditDistance(int maxEditDistance)
+    {
+        put(KEY_MAXEDITDISTANCE, maxEditDistance);
+    }
+
+    /**
+     * @return the maximum number of inserted and deleted elements to search for, 0 or less for no limit
+     * @since 4.5M1
+     */
+    public int getMaxEditDistance()
+    {
+        // Default is no limit
+        return containsKey(KEY_MAXEDITDISTANCE) ? ((Number) get(KEY_MAXEDITDISTANCE)).intValue() : 0;
+    }
 }
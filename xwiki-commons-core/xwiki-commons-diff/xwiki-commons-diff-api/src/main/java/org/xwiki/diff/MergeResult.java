@@ -53,4 +53,10 @@
      * @return the result of the 3 ways merge
      */
     List<E> getMerged();
+
+    /**
+     * @return the conflicts found during the merge, in the order of the common ancestor
+     * @since 4.5M1
+     */
+    List<Conflict<E>> getConflicts();
 }
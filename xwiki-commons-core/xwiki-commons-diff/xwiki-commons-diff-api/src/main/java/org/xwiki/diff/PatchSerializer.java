@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Convert {@link Patch}es to and from a compact binary format or a textual unified diff so that they can be stored.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Role
+public interface PatchSerializer
+{
+    /**
+     * Write a patch between two lists of lines in a compact binary format.
+     * 
+     * @param patch the patch to write
+     * @param output where to write the patch
+     * @throws IOException failed to write the patch
+     */
+    void writeLines(Patch<String> patch, DataOutput output) throws IOException;
+
+    /**
+     * Read a patch written with {@link #writeLines(Patch, DataOutput)}.
+     * 
+     * @param input where to read the patch from
+     * @return the patch
+     * @throws IOException failed to read the patch
+     */
+    Patch<String> readLines(DataInput input) throws IOException;
+
+    /**
+     * Write a patch between two lists of characters in a compact binary format.
+     * 
+     * @param patch the patch to write
+     * @param output where to write the patch
+     * @throws IOException failed to write the patch
+     */
+    void writeCharacters(Patch<Character> patch, DataOutput output) throws IOException;
+
+    /**
+     * Read a patch written with {@link #writeCharacters(Patch, DataOutput)}.
+     * 
+     * @param input where to read the patch from
+     * @return the patch
+     * @throws IOException failed to read the patch
+     */
+    Patch<Character> readCharacters(DataInput input) throws IOException;
+
+    /**
+     * Write a patch between two lists of lines as a unified diff without context lines.
+     * 
+     * @param patch the patch to write, the lines can't contain any line separator
+     * @param writer where to write the patch
+     * @throws IOException failed to write the patch
+     */
+    void writeUnified(Patch<String> patch, Writer writer) throws IOException;
+
+    /**
+     * Read a patch written with {@link #writeUnified(Patch, Writer)}.
+     * 
+     * @param reader where to read the patch from
+     * @return the patch
+     * @throws IOException failed to read the patch
+     */
+    Patch<String> readUnified(Reader reader) throws IOException;
+}
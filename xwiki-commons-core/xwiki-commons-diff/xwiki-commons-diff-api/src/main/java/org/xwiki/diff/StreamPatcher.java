@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Apply {@link Patch}es on streamed content, without loading the previous or the next version in memory.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Role
+public interface StreamPatcher
+{
+    /**
+     * Apply a patch between two lists of lines. The previous version is split in lines the same way as
+     * {@link java.io.BufferedReader#readLine()}. The lines copied from the previous version keep their terminator, the
+     * added lines are terminated like the lines of the previous version, and the next version ends with a line
+     * terminator only if the previous version does.
+     * 
+     * @param patch the patch to apply
+     * @param previous the previous version
+     * @param next where to write the next version
+     * @throws IOException failed to read the previous version or to write the next version
+     * @throws PatchException the previous version does not match the patch
+     */
+    void applyLines(Patch<String> patch, Reader previous, Writer next) throws IOException, PatchException;
+
+    /**
+     * Apply a patch between two lists of characters.
+     * 
+     * @param patch the patch to apply
+     * @param previous the previous version
+     * @param next where to write the next version
+     * @throws IOException failed to read the previous version or to write the next version
+     * @throws PatchException the previous version does not match the patch
+     */
+    void applyCharacters(Patch<Character> patch, Reader previous, Writer next) throws IOException, PatchException;
+}
@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+
+/**
+ * Read and write patches in a binary format.
+ * <p>
+ * The binary format is made of a header (magic number, version and type of elements) followed by the number of deltas
+ * and, for each delta, its type and its previous and next chunks (index, size and elements).
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+class BinaryPatchSerializer
+{
+    /**
+     * The magic number at the beginning of binary patches ("XPAT").
+     */
+    private static final int MAGIC = 0x58504154;
+
+    /**
+     * The version of the binary format.
+     */
+    private static final byte VERSION = 1;
+
+    /**
+     * The initial capacity of the list of elements of a chunk, whatever size it declares. The list grows as elements
+     * are actually read, so a corrupted size fails with an {@link java.io.EOFException} instead of allocating memory.
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    /**
+     * @param <E> the type of elements
+     * @param patch the patch to write
+     * @param output where to write the patch
+     * @param serializer used to write the elements
+     * @throws IOException failed to write the patch
+     */
+    <E> void write(Patch<E> patch, DataOutput output, ElementSerializer<E> serializer) throws IOException
+    {
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeByte(serializer.getType());
+
+        output.writeInt(patch.size());
+        for (Delta<E> delta : patch) {
+            output.writeByte(delta.getType().ordinal());
+            writeChunk(delta.getPrevious(), output, serializer);
+            writeChunk(delta.getNext(), output, serializer);
+        }
+    }
+
+    /**
+     * @param <E> the type of elements
+     * @param chunk the chunk to write
+     * @param output where to write the chunk
+     * @param serializer used to write the elements
+     * @throws IOException failed to write the chunk
+     */
+    private <E> void writeChunk(Chunk<E> chunk, DataOutput output, ElementSerializer<E> serializer)
+        throws IOException
+    {
+        output.writeInt(chunk.getIndex());
+        output.writeInt(chunk.size());
+        for (E element : chunk.getElements()) {
+            serializer.write(element, output);
+        }
+    }
+
+    /**
+     * @param <E> the type of elements
+     * @param input where to read the patch from
+     * @param serializer used to read the elements
+     * @return the patch
+     * @throws IOException failed to read the patch
+     */
+    <E> Patch<E> read(DataInput input, ElementSerializer<E> serializer) throws IOException
+    {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a binary patch");
+        }
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException(String.format("Unsupported binary patch version [%s]", version));
+        }
+        byte type = input.readByte();
+        if (type != serializer.getType()) {
+            throw new IOException(String.format("Unexpected type of elements [%s]", (char) type));
+        }
+
+        Patch<E> patch = new DefaultPatch<E>();
+
+        int size = input.readInt();
+        if (size < 0) {
+            throw new IOException(String.format("Invalid number of deltas [%s]", size));
+        }
+        for (int i = 0; i < size; ++i) {
+            int deltaType = input.readByte();
+            if (deltaType < 0 || deltaType >= Delta.Type.values().length) {
+                throw new IOException(String.format("Unknown delta type [%s]", deltaType));
+            }
+
+            Chunk<E> previous = readChunk(input, serializer);
+            Chunk<E> next = readChunk(input, serializer);
+
+            patch.add(toDelta(Delta.Type.values()[deltaType], previous, next));
+        }
+
+        return patch;
+    }
+
+    /**
+     * @param <E> the type of elements
+     * @param input where to read the chunk from
+     * @param serializer used to read the elements
+     * @return the chunk
+     * @throws IOException failed to read the chunk
+     */
+    private <E> Chunk<E> readChunk(DataInput input, ElementSerializer<E> serializer) throws IOException
+    {
+        int index = input.readInt();
+        int size = input.readInt();
+        if (index < 0 || size < 0) {
+            throw new IOException(String.format("Invalid chunk with index [%s] and size [%s]", index, size));
+        }
+
+        List<E> elements = new ArrayList<E>(Math.min(size, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < size; ++i) {
+            elements.add(serializer.read(input));
+        }
+
+        return new DefaultChunk<E>(index, elements);
+    }
+
+    /**
+     * @param <E> the type of elements
+     * @param type the type of delta
+     * @param previous the chunk before the modification
+     * @param next the chunk after the modification
+     * @return the delta
+     */
+    private <E> Delta<E> toDelta(Delta.Type type, Chunk<E> previous, Chunk<E> next)
+    {
+        Delta<E> delta;
+
+        switch (type) {
+            case CHANGE:
+                delta = new ChangeDelta<E>(previous, next);
+                break;
+            case DELETE:
+                delta = new DeleteDelta<E>(previous, next);
+                break;
+            default:
+                delta = new InsertDelta<E>(previous, next);
+                break;
+        }
+
+        return delta;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Read and write characters as UTF-16 code units.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class CharacterSerializer implements ElementSerializer<Character>
+{
+    @Override
+    public byte getType()
+    {
+        return 'C';
+    }
+
+    @Override
+    public void write(Character element, DataOutput output) throws IOException
+    {
+        output.writeChar(element.charValue());
+    }
+
+    @Override
+    public Character read(DataInput input) throws IOException
+    {
+        return input.readChar();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import org.xwiki.diff.Conflict;
+import org.xwiki.diff.Delta;
+
+/**
+ * Default implementation of {@link Conflict}.
+ * 
+ * @param <E> the type of compared elements
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class DefaultConflict<E> implements Conflict<E>
+{
+    /**
+     * @see #getIndex()
+     */
+    private final int index;
+
+    /**
+     * @see #getDeltaNext()
+     */
+    private final Delta<E> deltaNext;
+
+    /**
+     * @see #getDeltaCurrent()
+     */
+    private final Delta<E> deltaCurrent;
+
+    /**
+     * @param index the index of the conflict in the common ancestor
+     * @param deltaNext the modification applied to the common ancestor in the next version
+     * @param deltaCurrent the modification applied to the common ancestor in the current version
+     */
+    public DefaultConflict(int index, Delta<E> deltaNext, Delta<E> deltaCurrent)
+    {
+        this.index = index;
+        this.deltaNext = deltaNext;
+        this.deltaCurrent = deltaCurrent;
+    }
+
+    @Override
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    @Override
+    public Delta<E> getDeltaNext()
+    {
+        return this.deltaNext;
+    }
+
+    @Override
+    public Delta<E> getDeltaCurrent()
+    {
+        return this.deltaCurrent;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[index: " + this.index + ", next: " + this.deltaNext + ", current: " + this.deltaCurrent + "]";
+    }
+}
@@ -22,6 +22,7 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import javax.inject.Singleton;
 
@@ -38,10 +39,15 @@
 import org.xwiki.diff.MergeResult;
 import org.xwiki.diff.Patch;
 
-import difflib.DiffUtils;
-
 /**
  * Default implementation of {@link DiffManager}.
+ * <p>
+ * The merge diffs the common ancestor against each version and goes through the two patches in one sweep over the
+ * common ancestor, copying at once the areas that neither version modified. It doesn't align the two patches the way
+ * diff3 does (by splitting the common ancestor in stable and unstable regions): it would report as conflicts some
+ * modifications which are merged today (e.g. insertions at the same place), and existing callers rely on them being
+ * merged. The sweep is not split in sections merged in parallel either: it's linear in the size of the common
+ * ancestor and its cost is dominated by the two diffs.
  * 
  * @version $Id$
  */
@@ -54,7 +60,7 @@ public <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<
     {
         DefaultDiffResult<E> result = new DefaultDiffResult<E>(previous, next);
 
-        // DiffUtils#diff does not support null
+        // MyersDiff#diff does not support null
         Patch<E> patch;
         if (previous == null || previous.isEmpty()) {
             patch = new DefaultPatch<E>();
@@ -67,7 +73,11 @@ public <E> DiffResult<E> diff(List<E> previous, List<E> next, DiffConfiguration<
             patch.add(new DeleteDelta<E>(new DefaultChunk<E>(0, previous), new DefaultChunk<E>(0, Collections
                 .<E> emptyList())));
         } else {
-            patch = new DefaultPatch<E>(DiffUtils.diff(previous, next));
+            if (diff != null) {
+                patch = MyersDiff.diff(previous, next, diff.getMaxEditDistance(), diff.getTimeout(), result.getLog());
+            } else {
+                patch = MyersDiff.diff(previous, next);
+            }
         }
 
         result.setPatch(patch);
@@ -113,6 +123,9 @@ public <E> MergeResult<E> merge(List<E> commonAncestor, List<E> next, List<E> cu
                 // The current version has been replaced by an empty string
                 mergeResult.getLog().error("The current value is empty");
             }
+        } else if (current.equals(next)) {
+            // The same modification was already applied
+            mergeResult.setMerged(current);
         } else {
             // Get diff between common ancestor and current version
             DiffResult<E> diffCurrentResult;
@@ -128,7 +141,10 @@ public <E> MergeResult<E> merge(List<E> commonAncestor, List<E> next, List<E> cu
             if (patchCurrent.isEmpty()) {
                 mergeResult.setMerged(next);
             } else {
-                merge(mergeResult, commonAncestor, patchNext, patchCurrent, configuration);
+                // The common ancestor is accessed by index
+                List<E> ancestor =
+                    commonAncestor instanceof RandomAccess ? commonAncestor : new ArrayList<E>(commonAncestor);
+                merge(mergeResult, ancestor, patchNext, patchCurrent, configuration);
             }
         }
 
@@ -181,7 +197,7 @@ private <E> void merge(DefaultMergeResult<E> mergeResult, List<E> commonAncestor
         Patch<E> patchCurrent, MergeConfiguration<E> configuration) throws MergeException
     {
         // Merge the two diffs
-        List<E> merged = new ArrayList<E>();
+        List<E> merged = new ArrayList<E>(commonAncestor.size());
 
         mergeResult.setMerged(merged);
 
@@ -267,7 +283,11 @@ private <E> void merge(DefaultMergeResult<E> mergeResult, List<E> commonAncestor
 
                 deltaNext = nextElement(patchNext);
             } else {
-                merged.add(commonAncestor.get(index));
+                // Copy at once the elements not modified in any version
+                int end = Math.min(getNextIndex(deltaCurrent, index, commonAncestor.size()),
+                    getNextIndex(deltaNext, index, commonAncestor.size()));
+                merged.addAll(commonAncestor.subList(index, end));
+                index = end - 1;
             }
         }
 
@@ -281,13 +301,24 @@ private <E> void merge(DefaultMergeResult<E> mergeResult, List<E> commonAncestor
         }
     }
 
+    /**
+     * Combine the elements inserted at the same place by the two versions: the two insertions are diffed against each
+     * other so that the elements they have in common are kept once, in their order, and the elements specific to each
+     * one are kept around them, those of {@code previous} first.
+     * 
+     * @param <E> the type of compared elements
+     * @param previous the elements inserted by the first version
+     * @param next the elements inserted by the second version
+     * @return the combined insertions
+     * @throws MergeException failed to diff the two insertions
+     */
     private <E> List<E> or(List<E> previous, List<E> next) throws MergeException
     {
         DiffResult<E> diffCurrentResult;
         try {
             diffCurrentResult = diff(previous, next, null);
         } catch (DiffException e) {
-            throw new MergeException("Faile to diff between two versions", e);
+            throw new MergeException("Failed to diff between two versions", e);
         }
 
         List<E> result = new ArrayList<E>(previous.size() + next.size());
@@ -317,6 +348,8 @@ private <E> List<E> or(List<E> previous, List<E> next) throws MergeException
     private <E> void logConflict(DefaultMergeResult<E> mergeResult, Delta<E> deltaCurrent, Delta<E> deltaNext)
     {
         mergeResult.getLog().error("Conflict between [{}] and [{}]", deltaCurrent, deltaNext);
+        mergeResult.addConflict(new DefaultConflict<E>(Math.min(deltaCurrent.getPrevious().getIndex(), deltaNext
+            .getPrevious().getIndex()), deltaNext, deltaCurrent));
     }
 
     private <E> int apply(Delta<E> delta, List<E> merged, int currentIndex)
@@ -351,6 +384,19 @@ private <E> boolean isPreviousIndex(Delta<E> delta, int index)
         return delta != null && delta.getPrevious().getIndex() == index;
     }
 
+    /**
+     * @param <E> the type of compared elements
+     * @param delta the next delta to apply
+     * @param index the current index in the common ancestor
+     * @param size the size of the common ancestor
+     * @return the index of the delta in the common ancestor if it's located after the current index, the size of the
+     *         common ancestor otherwise
+     */
+    private <E> int getNextIndex(Delta<E> delta, int index, int size)
+    {
+        return delta != null && delta.getPrevious().getIndex() > index ? delta.getPrevious().getIndex() : size;
+    }
+
     private <E> boolean isInPreviousDelta(Delta<E> delta, int index)
     {
         return delta != null && delta.getPrevious().getIndex() <= index && delta.getPrevious().getIndex() >= index;
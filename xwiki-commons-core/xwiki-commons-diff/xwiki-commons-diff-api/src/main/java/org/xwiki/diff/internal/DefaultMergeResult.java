@@ -19,8 +19,10 @@
  */
 package org.xwiki.diff.internal;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.xwiki.diff.Conflict;
 import org.xwiki.diff.MergeResult;
 import org.xwiki.logging.LogQueue;
 
@@ -57,6 +59,11 @@
      */
     private LogQueue log = new LogQueue();
 
+    /**
+     * @see #getConflicts()
+     */
+    private List<Conflict<E>> conflicts = new ArrayList<Conflict<E>>();
+
     /**
      * @param commonAncestor the common ancestor
      * @param next the new version
@@ -109,4 +116,19 @@ public void setMerged(List<E> merged)
     {
         this.merged = merged;
     }
+
+    @Override
+    public List<Conflict<E>> getConflicts()
+    {
+        return this.conflicts;
+    }
+
+    /**
+     * @param conflict the conflict found during the merge
+     * @since 4.5M1
+     */
+    public void addConflict(Conflict<E> conflict)
+    {
+        this.conflicts.add(conflict);
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchSerializer;
+
+/**
+ * Default implementation of {@link PatchSerializer}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Component
+@Singleton
+public class DefaultPatchSerializer implements PatchSerializer
+{
+    /**
+     * Used to read and write lines.
+     */
+    private static final LineSerializer LINES = new LineSerializer();
+
+    /**
+     * Used to read and write characters.
+     */
+    private static final CharacterSerializer CHARACTERS = new CharacterSerializer();
+
+    /**
+     * Used to read and write binary patches.
+     */
+    private final BinaryPatchSerializer binary = new BinaryPatchSerializer();
+
+    /**
+     * Used to read and write unified diffs.
+     */
+    private final UnifiedDiffSerializer unified = new UnifiedDiffSerializer();
+
+    @Override
+    public void writeLines(Patch<String> patch, DataOutput output) throws IOException
+    {
+        this.binary.write(patch, output, LINES);
+    }
+
+    @Override
+    public Patch<String> readLines(DataInput input) throws IOException
+    {
+        return this.binary.read(input, LINES);
+    }
+
+    @Override
+    public void writeCharacters(Patch<Character> patch, DataOutput output) throws IOException
+    {
+        this.binary.write(patch, output, CHARACTERS);
+    }
+
+    @Override
+    public Patch<Character> readCharacters(DataInput input) throws IOException
+    {
+        return this.binary.read(input, CHARACTERS);
+    }
+
+    @Override
+    public void writeUnified(Patch<String> patch, Writer writer) throws IOException
+    {
+        this.unified.write(patch, writer);
+    }
+
+    @Override
+    public Patch<String> readUnified(Reader reader) throws IOException
+    {
+        return this.unified.read(reader);
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.diff.StreamPatcher;
+
+/**
+ * Default implementation of {@link StreamPatcher}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Component
+@Singleton
+public class DefaultStreamPatcher implements StreamPatcher
+{
+    /**
+     * Read the elements of the previous version and write the elements of the next version.
+     * 
+     * @param <E> the type of elements
+     * @version $Id$
+     */
+    private interface ElementStream<E>
+    {
+        /**
+         * @return the next element of the previous version, null if the end has been reached
+         * @throws IOException failed to read the previous version
+         */
+        E read() throws IOException;
+
+        /**
+         * @param element the element to add to the next version
+         * @throws IOException failed to write the next version
+         */
+        void write(E element) throws IOException;
+
+        /**
+         * Copy elements from the previous version to the next version.
+         * 
+         * @param count the number of elements to copy
+         * @return the number of copied elements, less than <code>count</code> if the end of the previous version has
+         *         been reached
+         * @throws IOException failed to copy the elements
+         */
+        int copy(int count) throws IOException;
+
+        /**
+         * Called once all the elements of the next version have been written.
+         * 
+         * @throws IOException failed to write the next version
+         */
+        void end() throws IOException;
+    }
+
+    /**
+     * Stream lines, keeping the line terminators of the previous version.
+     * <p>
+     * Copied lines keep their own terminator. Added lines are terminated by the first terminator found in the previous
+     * version (<code>\n</code> if there's none), and the next version ends with a terminator only if the previous one
+     * did. A line terminator is written only when the following line is, which is how a line can be added after a
+     * last line which had no terminator.
+     * 
+     * @version $Id$
+     */
+    private static final class LineStream implements ElementStream<String>
+    {
+        /**
+         * The default line terminator.
+         */
+        private static final String LF = "\n";
+
+        /**
+         * The previous version.
+         */
+        private final BufferedReader previous;
+
+        /**
+         * The next version.
+         */
+        private final Writer next;
+
+        /**
+         * The buffer used to read lines.
+         */
+        private final StringBuilder line = new StringBuilder();
+
+        /**
+         * The terminator of the last line read, empty if it's the last line of the previous version and it has none.
+         */
+        private String terminator;
+
+        /**
+         * The first line terminator found in the previous version, used to terminate the added lines.
+         */
+        private String lineSeparator;
+
+        /**
+         * False if the last line of the previous version has no terminator.
+         */
+        private boolean terminated = true;
+
+        /**
+         * True if a line has been written to the next version.
+         */
+        private boolean started;
+
+        /**
+         * The terminator of the last line written, null if it's an added line.
+         */
+        private String pendingTerminator;
+
+        /**
+         * @param previous the previous version
+         * @param next the next version
+         */
+        LineStream(Reader previous, Writer next)
+        {
+            this.previous = new BufferedReader(previous);
+            this.next = next;
+        }
+
+        @Override
+        public String read() throws IOException
+        {
+            int c = this.previous.read();
+            if (c < 0) {
+                return null;
+            }
+
+            this.line.setLength(0);
+            while (c >= 0 && c != '\n' && c != '\r') {
+                this.line.append((char) c);
+                c = this.previous.read();
+            }
+
+            this.terminator = readTerminator(c);
+            this.terminated = !this.terminator.isEmpty();
+            if (this.lineSeparator == null && this.terminated) {
+                this.lineSeparator = this.terminator;
+            }
+
+            return this.line.toString();
+        }
+
+        /**
+         * @param c the character which ended the line, negative if the end of the previous version has been reached
+         * @return the line terminator starting with the passed character
+         * @throws IOException failed to read the previous version
+         */
+        private String readTerminator(int c) throws IOException
+        {
+            String lineTerminator;
+            if (c == '\r') {
+                this.previous.mark(1);
+                if (this.previous.read() == '\n') {
+                    lineTerminator = "\r\n";
+                } else {
+                    this.previous.reset();
+                    lineTerminator = "\r";
+                }
+            } else {
+                lineTerminator = c < 0 ? "" : LF;
+            }
+
+            return lineTerminator;
+        }
+
+        @Override
+        public void write(String element) throws IOException
+        {
+            write(element, null);
+        }
+
+        /**
+         * @param element the line to add to the next version
+         * @param elementTerminator the terminator of the line, null to use the line separator of the previous version
+         * @throws IOException failed to write the next version
+         */
+        private void write(String element, String elementTerminator) throws IOException
+        {
+            if (this.started) {
+                this.next.write(StringUtils.isEmpty(this.pendingTerminator) ? getLineSeparator()
+                    : this.pendingTerminator);
+            }
+
+            this.next.write(element);
+
+            this.pendingTerminator = elementTerminator;
+            this.started = true;
+        }
+
+        /**
+         * @return the line terminator to use for the added lines
+         */
+        private String getLineSeparator()
+        {
+            return this.lineSeparator != null ? this.lineSeparator : LF;
+        }
+
+        @Override
+        public int copy(int count) throws IOException
+        {
+            int copied = 0;
+            while (copied < count) {
+                String copiedLine = read();
+                if (copiedLine == null) {
+                    break;
+                }
+
+                write(copiedLine, this.terminator);
+                ++copied;
+            }
+
+            return copied;
+        }
+
+        @Override
+        public void end() throws IOException
+        {
+            if (this.started) {
+                if (this.pendingTerminator != null) {
+                    this.next.write(this.pendingTerminator);
+                } else if (this.terminated) {
+                    this.next.write(getLineSeparator());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stream characters.
+     * 
+     * @version $Id$
+     */
+    private static final class CharacterStream implements ElementStream<Character>
+    {
+        /**
+         * The previous version.
+         */
+        private final Reader previous;
+
+        /**
+         * The next version.
+         */
+        private final Writer next;
+
+        /**
+         * The buffer used to copy characters.
+         */
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        /**
+         * @param previous the previous version
+         * @param next the next version
+         */
+        CharacterStream(Reader previous, Writer next)
+        {
+            this.previous = new BufferedReader(previous);
+            this.next = next;
+        }
+
+        @Override
+        public Character read() throws IOException
+        {
+            int c = this.previous.read();
+
+            return c < 0 ? null : Character.valueOf((char) c);
+        }
+
+        @Override
+        public void write(Character element) throws IOException
+        {
+            this.next.write(element.charValue());
+        }
+
+        @Override
+        public int copy(int count) throws IOException
+        {
+            int copied = 0;
+            while (copied < count) {
+                int read = this.previous.read(this.buffer, 0, Math.min(this.buffer.length, count - copied));
+                if (read < 0) {
+                    break;
+                }
+
+                this.next.write(this.buffer, 0, read);
+                copied += read;
+            }
+
+            return copied;
+        }
+
+        @Override
+        public void end()
+        {
+            // Nothing is left to write
+        }
+    }
+
+    /**
+     * The size of the buffer used to copy characters.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    @Override
+    public void applyLines(Patch<String> patch, Reader previous, Writer next) throws IOException, PatchException
+    {
+        apply(patch, new LineStream(previous, next));
+
+        next.flush();
+    }
+
+    @Override
+    public void applyCharacters(Patch<Character> patch, Reader previous, Writer next) throws IOException,
+        PatchException
+    {
+        apply(patch, new CharacterStream(previous, next));
+
+        next.flush();
+    }
+
+    /**
+     * @param <E> the type of elements
+     * @param patch the patch to apply
+     * @param stream the previous and next versions
+     * @throws IOException failed to read the previous version or to write the next version
+     * @throws PatchException the previous version does not match the patch
+     */
+    private <E> void apply(Patch<E> patch, ElementStream<E> stream) throws IOException, PatchException
+    {
+        int index = 0;
+
+        for (Delta<E> delta : patch) {
+            int start = delta.getPrevious().getIndex();
+            if (start < index) {
+                throw new PatchException(String.format("Delta [%s] overlaps the previous delta", delta));
+            }
+
+            // Copy the unmodified elements
+            if (stream.copy(start - index) < start - index) {
+                throw new PatchException(String.format("Delta [%s] is located after the end of the target", delta));
+            }
+
+            // Skip the deleted elements
+            for (E element : delta.getPrevious().getElements()) {
+                if (!ObjectUtils.equals(element, stream.read())) {
+                    throw new PatchException(String.format("Delta [%s] does not match the target", delta));
+                }
+            }
+
+            // Add the new elements
+            for (E element : delta.getNext().getElements()) {
+                stream.write(element);
+            }
+
+            index = start + delta.getPrevious().size();
+        }
+
+        // Copy the remaining unmodified elements
+        stream.copy(Integer.MAX_VALUE);
+
+        stream.end();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Read and write the elements of a binary patch.
+ * 
+ * @param <E> the type of elements
+ * @version $Id$
+ * @since 4.5M1
+ */
+interface ElementSerializer<E>
+{
+    /**
+     * @return the identifier of the type of elements stored in the binary header
+     */
+    byte getType();
+
+    /**
+     * @param element the element to write
+     * @param output where to write the element
+     * @throws IOException failed to write the element
+     */
+    void write(E element, DataOutput output) throws IOException;
+
+    /**
+     * @param input where to read the element from
+     * @return the element
+     * @throws IOException failed to read the element
+     */
+    E read(DataInput input) throws IOException;
+}
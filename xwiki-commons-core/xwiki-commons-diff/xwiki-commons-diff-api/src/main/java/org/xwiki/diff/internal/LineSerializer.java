@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Read and write lines as length prefixed UTF-8 bytes.
+ * <p>
+ * The length is not trusted when reading: the bytes are read in blocks so that a corrupted length fails with an
+ * {@link java.io.EOFException} instead of allocating a huge array.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class LineSerializer implements ElementSerializer<String>
+{
+    /**
+     * The encoding used to store lines.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The number of bytes allocated before the length of a line has been confirmed by reading its bytes.
+     */
+    private static final int BLOCK_SIZE = 8192;
+
+    @Override
+    public byte getType()
+    {
+        return 'L';
+    }
+
+    @Override
+    public void write(String element, DataOutput output) throws IOException
+    {
+        if (element == null) {
+            output.writeInt(-1);
+        } else {
+            byte[] bytes = element.getBytes(UTF8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    public String read(DataInput input) throws IOException
+    {
+        int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[Math.min(length, BLOCK_SIZE)];
+        int read = 0;
+        while (read < length) {
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * bytes.length));
+            }
+            input.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+        }
+
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,516 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.apache.commons.lang3.ObjectUtils;
+import org.slf4j.Logger;
+import org.xwiki.diff.CharacterList;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.DiffException;
+import org.xwiki.diff.Patch;
+
+/**
+ * Implementation of the Myers diff algorithm working on <code>int</code> symbols instead of the compared elements.
+ * <p>
+ * Each element is replaced by a symbol (equal elements share the same symbol) so that the core algorithm only compares
+ * primitives and stores the explored path in primitive arrays. {@link Character}s are directly used as their own
+ * symbol, and the characters of a {@link CharacterList} are read without being boxed.
+ * <p>
+ * The common beginning of the compared lists is skipped before looking for a path. The common end is not skipped: the
+ * algorithm goes forward so it would place the deltas differently when the modified area is repeated at the limit of
+ * the common end (e.g. removing the first {@code b} of {@code abcb} instead of the last one), which would change the
+ * result of merges relying on the position of the deltas. It's only skipped to report the differing area as one single
+ * change when the search is given up.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public final class MyersDiff
+{
+    /**
+     * The initial number of nodes of the explored path. The number of nodes depends on the edit distance and not on
+     * the size of the compared lists, so start small and grow as needed.
+     */
+    private static final int INITIAL_NODES_CAPACITY = 64;
+
+    /**
+     * The nodes of the explored path, stored in primitive arrays.
+     * 
+     * @version $Id$
+     */
+    private static final class PathNodes
+    {
+        /**
+         * The index in the previous list of each node.
+         */
+        private int[] previousIndexes;
+
+        /**
+         * The index in the next list of each node.
+         */
+        private int[] nextIndexes;
+
+        /**
+         * The node preceding each node, -1 for none.
+         */
+        private int[] parents;
+
+        /**
+         * Indicate if each node is a snake (a sequence of equal elements) or a diff node.
+         */
+        private boolean[] snakes;
+
+        /**
+         * The number of nodes.
+         */
+        private int size;
+
+        /**
+         * @param capacity the initial capacity
+         */
+        PathNodes(int capacity)
+        {
+            this.previousIndexes = new int[capacity];
+            this.nextIndexes = new int[capacity];
+            this.parents = new int[capacity];
+            this.snakes = new boolean[capacity];
+        }
+
+        /**
+         * @param previousIndex the index in the previous list
+         * @param nextIndex the index in the next list
+         * @param parent the preceding node
+         * @param snake true if the node is a snake
+         * @return the new node
+         */
+        int add(int previousIndex, int nextIndex, int parent, boolean snake)
+        {
+            if (this.size == this.parents.length) {
+                int capacity = this.size * 2;
+                this.previousIndexes = Arrays.copyOf(this.previousIndexes, capacity);
+                this.nextIndexes = Arrays.copyOf(this.nextIndexes, capacity);
+                this.parents = Arrays.copyOf(this.parents, capacity);
+                this.snakes = Arrays.copyOf(this.snakes, capacity);
+            }
+
+            this.previousIndexes[this.size] = previousIndex;
+            this.nextIndexes[this.size] = nextIndex;
+            this.parents[this.size] = parent;
+            this.snakes[this.size] = snake;
+
+            return this.size++;
+        }
+
+        /**
+         * @param node the node
+         * @return the closest snake (or the first node) preceding or equal to the passed node, -1 if there is none
+         */
+        int previousSnake(int node)
+        {
+            int current = node;
+
+            while (current >= 0) {
+                if (this.previousIndexes[current] < 0 || this.nextIndexes[current] < 0) {
+                    // Bootstrap node
+                    return -1;
+                }
+                if (this.snakes[current] || this.parents[current] < 0) {
+                    break;
+                }
+
+                current = this.parents[current];
+            }
+
+            return current;
+        }
+    }
+
+    /**
+     * Utility class.
+     */
+    private MyersDiff()
+    {
+    }
+
+    /**
+     * Produce the differences between the two passed lists of elements.
+     * 
+     * @param <E> the type of compared elements
+     * @param previous the previous version of the content to compare
+     * @param next the next version of the content to compare
+     * @return the differences
+     * @throws DiffException failed to find the differences
+     */
+    public static <E> Patch<E> diff(List<E> previous, List<E> next) throws DiffException
+    {
+        return diff(previous, next, 0, 0, null);
+    }
+
+    /**
+     * Produce the differences between the two passed lists of elements, giving up the detailed search when one of the
+     * provided budgets is exceeded. In that case the area between the common beginning and the common end of the two
+     * lists is reported as one single change.
+     * 
+     * @param <E> the type of compared elements
+     * @param previous the previous version of the content to compare
+     * @param next the next version of the content to compare
+     * @param maxEditDistance the maximum number of inserted and deleted elements to search for, 0 or less for no limit
+     * @param timeout the maximum time in milliseconds allowed to search for the differences, 0 or less for no limit
+     * @param logger the logger where to report when the search is given up, can be null
+     * @return the differences
+     * @throws DiffException failed to find the differences
+     */
+    public static <E> Patch<E> diff(List<E> previous, List<E> next, int maxEditDistance, long timeout,
+        Logger logger) throws DiffException
+    {
+        List<E> previousList = toRandomAccess(previous);
+        List<E> nextList = toRandomAccess(next);
+
+        // The common beginning is what the algorithm would follow first anyway
+        int prefix = getCommonPrefix(previousList, nextList);
+
+        if (prefix == previousList.size() && prefix == nextList.size()) {
+            // Identical lists
+            return new DefaultPatch<E>();
+        }
+
+        List<E> previousWindow = previousList.subList(prefix, previousList.size());
+        List<E> nextWindow = nextList.subList(prefix, nextList.size());
+
+        int[] previousSymbols = new int[previousWindow.size()];
+        int[] nextSymbols = new int[nextWindow.size()];
+
+        if (!toCharacterSymbols(previousList, prefix, previousSymbols)
+            || !toCharacterSymbols(nextList, prefix, nextSymbols)) {
+            Map<E, Integer> symbols = new HashMap<E, Integer>();
+            toSymbols(previousWindow, previousSymbols, symbols);
+            toSymbols(nextWindow, nextSymbols, symbols);
+        }
+
+        PathNodes nodes = new PathNodes(INITIAL_NODES_CAPACITY);
+
+        int path =
+            buildPath(previousSymbols, nextSymbols, nodes, maxEditDistance,
+                timeout > 0 ? System.currentTimeMillis() + timeout : 0);
+
+        if (path < 0) {
+            if (logger != null) {
+                logger.warn("Failed to find the detailed differences in the allowed budget (max edit distance [{}], "
+                    + "timeout [{}] ms), the elements from index [{}] are reported as one single change",
+                    maxEditDistance, timeout, prefix);
+            }
+
+            return buildSingleChangePatch(previousList, nextList, prefix);
+        }
+
+        return buildPatch(nodes, path, prefix, previousList, nextList);
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param previous the previous version of the content to compare
+     * @param next the next version of the content to compare
+     * @param prefix the number of equal elements at the beginning of the two lists
+     * @return a patch reporting the area between the common beginning and the common end of the two lists as one
+     *         single change
+     */
+    private static <E> Patch<E> buildSingleChangePatch(List<E> previous, List<E> next, int prefix)
+    {
+        int suffix = getCommonSuffix(previous, next, prefix);
+
+        DefaultPatch<E> patch = new DefaultPatch<E>();
+        patch.add(toDelta(new DefaultChunk<E>(prefix, new ArrayList<E>(previous.subList(prefix, previous.size()
+            - suffix))), new DefaultChunk<E>(prefix, new ArrayList<E>(next.subList(prefix, next.size() - suffix)))));
+
+        return patch;
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param previous the previous version of the content to compare
+     * @param next the next version of the content to compare
+     * @return the number of equal elements at the beginning of the two lists
+     */
+    private static <E> int getCommonPrefix(List<E> previous, List<E> next)
+    {
+        int max = Math.min(previous.size(), next.size());
+
+        int prefix = 0;
+        if (previous instanceof CharacterList && next instanceof CharacterList) {
+            CharacterList previousCharacters = (CharacterList) previous;
+            CharacterList nextCharacters = (CharacterList) next;
+            while (prefix < max && previousCharacters.charAt(prefix) == nextCharacters.charAt(prefix)) {
+                ++prefix;
+            }
+        } else {
+            while (prefix < max && ObjectUtils.equals(previous.get(prefix), next.get(prefix))) {
+                ++prefix;
+            }
+        }
+
+        return prefix;
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param previous the previous version of the content to compare
+     * @param next the next version of the content to compare
+     * @param prefix the number of equal elements at the beginning of the two lists
+     * @return the number of equal elements at the end of the two lists, not overlapping the common prefix
+     */
+    private static <E> int getCommonSuffix(List<E> previous, List<E> next, int prefix)
+    {
+        int max = Math.min(previous.size(), next.size()) - prefix;
+
+        int suffix = 0;
+        while (suffix < max
+            && ObjectUtils.equals(previous.get(previous.size() - 1 - suffix), next.get(next.size() - 1 - suffix))) {
+            ++suffix;
+        }
+
+        return suffix;
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param elements the elements
+     * @param offset the index of the first element to convert
+     * @param symbols the array where to store the symbols of the elements starting at the offset
+     * @return true if all the elements are {@link Character}s
+     */
+    private static <E> boolean toCharacterSymbols(List<E> elements, int offset, int[] symbols)
+    {
+        if (elements instanceof CharacterList) {
+            CharacterList characters = (CharacterList) elements;
+            for (int i = 0; i < symbols.length; ++i) {
+                symbols[i] = characters.charAt(offset + i);
+            }
+
+            return true;
+        }
+
+        int i = 0;
+        for (E element : elements.subList(offset, elements.size())) {
+            if (!(element instanceof Character)) {
+                return false;
+            }
+
+            symbols[i++] = ((Character) element).charValue();
+        }
+
+        return true;
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param elements the elements
+     * @param symbols the array where to store the symbols
+     * @param symbolMap the symbols already associated to elements
+     */
+    private static <E> void toSymbols(List<E> elements, int[] symbols, Map<E, Integer> symbolMap)
+    {
+        int i = 0;
+        for (E element : elements) {
+            Integer symbol = symbolMap.get(element);
+            if (symbol == null) {
+                symbol = symbolMap.size();
+                symbolMap.put(element, symbol);
+            }
+
+            symbols[i++] = symbol;
+        }
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param elements the elements
+     * @return a list with fast random access to the elements
+     */
+    private static <E> List<E> toRandomAccess(List<E> elements)
+    {
+        return elements instanceof RandomAccess ? elements : new ArrayList<E>(elements);
+    }
+
+    /**
+     * Find the shortest path from the beginning to the end of the two lists of symbols.
+     * 
+     * @param previous the symbols of the previous version
+     * @param next the symbols of the next version
+     * @param nodes the storage of the nodes of the path
+     * @param maxEditDistance the maximum number of inserted and deleted elements to search for, 0 or less for no limit
+     * @param deadline the time after which the search is given up, 0 for no limit
+     * @return the last node of the path, -1 if the search was given up
+     * @throws DiffException failed to find a path
+     */
+    private static int buildPath(int[] previous, int[] next, PathNodes nodes, int maxEditDistance, long deadline)
+        throws DiffException
+    {
+        int max = previous.length + next.length + 1;
+        int maxD = maxEditDistance > 0 ? Math.min(max, maxEditDistance + 1) : max;
+        // The search never goes beyond the diagonals -maxD and maxD
+        int middle = maxD;
+        int[] diagonal = new int[1 + 2 * maxD];
+
+        diagonal[middle + 1] = nodes.add(0, -1, -1, true);
+
+        for (int d = 0; d < max; d++) {
+            if (isOverBudget(d, maxD, deadline)) {
+                return -1;
+            }
+
+            for (int k = -d; k <= d; k += 2) {
+                int kmiddle = middle + k;
+                boolean fromAbove = k == -d || (k != d && nodes.previousIndexes[diagonal[kmiddle - 1]]
+                    < nodes.previousIndexes[diagonal[kmiddle + 1]]);
+                int node = followDiagonal(previous, next, nodes, diagonal, kmiddle, fromAbove);
+
+                diagonal[kmiddle] = node;
+
+                if (nodes.previousIndexes[node] >= previous.length && nodes.nextIndexes[node] >= next.length) {
+                    return node;
+                }
+            }
+        }
+
+        throw new DiffException("Could not find a diff path");
+    }
+
+    /**
+     * @param d the current edit distance
+     * @param maxD the first edit distance which is not allowed
+     * @param deadline the time after which the search is given up, 0 for no limit
+     * @return true if the search should be given up
+     */
+    private static boolean isOverBudget(int d, int maxD, long deadline)
+    {
+        return d == maxD || (deadline > 0 && System.currentTimeMillis() > deadline);
+    }
+
+    /**
+     * Move to the diagonal <code>k</code> from the best of the adjacent diagonals and follow the equal symbols.
+     * 
+     * @param previous the symbols of the previous version
+     * @param next the symbols of the next version
+     * @param nodes the storage of the nodes of the path
+     * @param diagonal the last node found on each diagonal
+     * @param kmiddle the index of the diagonal <code>k</code> in <code>diagonal</code>
+     * @param fromAbove true if the path should come from the diagonal <code>k + 1</code>
+     * @return the last node reached on the diagonal <code>k</code>
+     */
+    private static int followDiagonal(int[] previous, int[] next, PathNodes nodes, int[] diagonal, int kmiddle,
+        boolean fromAbove)
+    {
+        int parent;
+        int i;
+        if (fromAbove) {
+            parent = diagonal[kmiddle + 1];
+            i = nodes.previousIndexes[parent];
+        } else {
+            parent = diagonal[kmiddle - 1];
+            i = nodes.previousIndexes[parent] + 1;
+        }
+
+        int j = i - (kmiddle - diagonal.length / 2);
+
+        int node = nodes.add(i, j, nodes.previousSnake(parent), false);
+
+        while (i < previous.length && j < next.length && previous[i] == next[j]) {
+            i++;
+            j++;
+        }
+
+        if (i > nodes.previousIndexes[node]) {
+            node = nodes.add(i, j, node, true);
+        }
+
+        return node;
+    }
+
+    /**
+     * Convert the path into a {@link Patch}.
+     * 
+     * @param <E> the type of compared elements
+     * @param nodes the storage of the nodes of the path
+     * @param lastNode the last node of the path
+     * @param offset the index of the compared window in the lists
+     * @param previous the previous version of the content to compare
+     * @param next the next version of the content to compare
+     * @return the differences
+     */
+    private static <E> Patch<E> buildPatch(PathNodes nodes, int lastNode, int offset, List<E> previous,
+        List<E> next)
+    {
+        DefaultPatch<E> patch = new DefaultPatch<E>();
+
+        int node = lastNode;
+        if (nodes.snakes[node]) {
+            node = nodes.parents[node];
+        }
+
+        while (node >= 0 && nodes.parents[node] >= 0 && nodes.nextIndexes[nodes.parents[node]] >= 0) {
+            int i = offset + nodes.previousIndexes[node];
+            int j = offset + nodes.nextIndexes[node];
+
+            node = nodes.parents[node];
+
+            int previousIndex = offset + nodes.previousIndexes[node];
+            int nextIndex = offset + nodes.nextIndexes[node];
+
+            // The path is walked backward
+            patch.addFirst(toDelta(new DefaultChunk<E>(previousIndex, new ArrayList<E>(previous.subList(
+                previousIndex, i))), new DefaultChunk<E>(nextIndex, new ArrayList<E>(next.subList(nextIndex, j)))));
+
+            if (nodes.snakes[node]) {
+                node = nodes.parents[node];
+            }
+        }
+
+        return patch;
+    }
+
+    /**
+     * @param <E> the type of compared elements
+     * @param previous the chunk before the modification
+     * @param next the chunk after the modification
+     * @return the delta
+     */
+    static <E> Delta<E> toDelta(Chunk<E> previous, Chunk<E> next)
+    {
+        Delta<E> delta;
+
+        if (previous.size() == 0 && next.size() != 0) {
+            delta = new InsertDelta<E>(previous, next);
+        } else if (previous.size() != 0 && next.size() == 0) {
+            delta = new DeleteDelta<E>(previous, next);
+        } else {
+            delta = new ChangeDelta<E>(previous, next);
+        }
+
+        return delta;
+    }
+}
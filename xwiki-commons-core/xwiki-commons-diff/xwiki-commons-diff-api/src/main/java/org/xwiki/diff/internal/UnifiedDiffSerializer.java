@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.diff.Chunk;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Patch;
+
+/**
+ * Read and write patches between lists of lines as unified diffs without context lines.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class UnifiedDiffSerializer
+{
+    /**
+     * The pattern of a unified diff block header.
+     */
+    private static final Pattern HEADER = Pattern.compile("^@@ -(\\d+),(\\d+) \\+(\\d+),(\\d+) @@$");
+
+    /**
+     * The prefix of deleted lines.
+     */
+    private static final char DELETED = '-';
+
+    /**
+     * The prefix of added lines.
+     */
+    private static final char ADDED = '+';
+
+    /**
+     * The line separator.
+     */
+    private static final char NEWLINE = '\n';
+
+    /**
+     * @param patch the patch to write, the lines can't contain any line separator
+     * @param writer where to write the patch
+     * @throws IOException failed to write the patch
+     */
+    public void write(Patch<String> patch, Writer writer) throws IOException
+    {
+        for (Delta<String> delta : patch) {
+            Chunk<String> previous = delta.getPrevious();
+            Chunk<String> next = delta.getNext();
+
+            // Unified diff indexes start at 1 except for empty chunks which indicate the line preceding them
+            writer.write(String.format("@@ -%d,%d +%d,%d @@", previous.size() > 0 ? previous.getIndex() + 1
+                : previous.getIndex(), previous.size(), next.size() > 0 ? next.getIndex() + 1 : next.getIndex(), next
+                .size()));
+            writer.write(NEWLINE);
+
+            writeLines(previous, DELETED, writer);
+            writeLines(next, ADDED, writer);
+        }
+    }
+
+    /**
+     * @param chunk the lines to write
+     * @param prefix the prefix of each line
+     * @param writer where to write the lines
+     * @throws IOException failed to write the lines
+     */
+    private void writeLines(Chunk<String> chunk, char prefix, Writer writer) throws IOException
+    {
+        for (String line : chunk.getElements()) {
+            if (StringUtils.containsAny(line, '\n', '\r')) {
+                throw new IllegalArgumentException(String.format("Line [%s] contains a line separator", line));
+            }
+
+            writer.write(prefix);
+            writer.write(line);
+            writer.write(NEWLINE);
+        }
+    }
+
+    /**
+     * @param reader where to read the patch from
+     * @return the patch
+     * @throws IOException failed to read the patch
+     */
+    public Patch<String> read(Reader reader) throws IOException
+    {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+
+        Patch<String> patch = new DefaultPatch<String>();
+
+        for (String header = bufferedReader.readLine(); header != null; header = bufferedReader.readLine()) {
+            Matcher matcher = HEADER.matcher(header);
+            if (!matcher.matches()) {
+                throw new IOException(String.format("Invalid unified diff block header [%s]", header));
+            }
+
+            Chunk<String> previous =
+                readLines(bufferedReader, Integer.parseInt(matcher.group(1)),
+                    Integer.parseInt(matcher.group(2)), DELETED);
+            Chunk<String> next =
+                readLines(bufferedReader, Integer.parseInt(matcher.group(3)),
+                    Integer.parseInt(matcher.group(4)), ADDED);
+
+            patch.add(MyersDiff.toDelta(previous, next));
+        }
+
+        return patch;
+    }
+
+    /**
+     * @param reader where to read the lines from
+     * @param start the start of the chunk as written in the block header
+     * @param size the number of lines to read
+     * @param prefix the expected prefix of each line
+     * @return the chunk
+     * @throws IOException failed to read the lines
+     */
+    private Chunk<String> readLines(BufferedReader reader, int start, int size, char prefix)
+        throws IOException
+    {
+        List<String> lines = new ArrayList<String>(size);
+        for (int i = 0; i < size; ++i) {
+            String line = reader.readLine();
+            if (line == null || line.isEmpty() || line.charAt(0) != prefix) {
+                throw new IOException(String.format("Invalid unified diff line [%s], expected prefix [%s]", line,
+                    prefix));
+            }
+
+            lines.add(line.substring(1));
+        }
+
+        return new DefaultChunk<String>(size > 0 ? start - 1 : start, lines);
+    }
+}
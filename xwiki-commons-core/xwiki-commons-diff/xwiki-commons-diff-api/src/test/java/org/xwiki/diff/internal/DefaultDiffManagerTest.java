@@ -22,6 +22,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 
 import junit.framework.Assert;
@@ -29,6 +30,7 @@
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.diff.Delta.Type;
+import org.xwiki.diff.DiffConfiguration;
 import org.xwiki.diff.DiffManager;
 import org.xwiki.diff.DiffResult;
 import org.xwiki.diff.MergeResult;
@@ -124,6 +126,34 @@ public void testDiffCharList() throws Exception
         Assert.assertEquals(Type.CHANGE, result.getPatch().get(0).getType());
     }
 
+    @Test
+    public void testDiffWithMaxEditDistance() throws Exception
+    {
+        DiffConfiguration<Character> configuration = new DiffConfiguration<Character>();
+        configuration.setMaxEditDistance(4);
+
+        // In budget
+
+        DiffResult<Character> result =
+            this.mocker.getMockedComponent().diff(toCharacters("abcdef"), toCharacters("abXdeY"), configuration);
+
+        Assert.assertEquals(2, result.getPatch().size());
+        Assert.assertTrue(result.getLog().isEmpty());
+
+        // Out of budget
+
+        result =
+            this.mocker.getMockedComponent().diff(toCharacters("abcdef"), toCharacters("aXcYeZ"), configuration);
+
+        Assert.assertEquals(1, result.getPatch().size());
+        Assert.assertEquals(Type.CHANGE, result.getPatch().get(0).getType());
+        Assert.assertEquals(1, result.getPatch().get(0).getPrevious().getIndex());
+        Assert.assertEquals(toCharacters("bcdef"), result.getPatch().get(0).getPrevious().getElements());
+        Assert.assertEquals(toCharacters("XcYeZ"), result.getPatch().get(0).getNext().getElements());
+        Assert.assertEquals(1, result.getLog().getLogs(LogLevel.WARN).size());
+        Assert.assertEquals(toCharacters("aXcYeZ"), result.getPatch().apply(toCharacters("abcdef")));
+    }
+
     @Test
     public void testMergeStringList() throws Exception
     {
@@ -252,6 +282,19 @@ public void testMergeCharList() throws Exception
         Assert.assertEquals(0, result.getLog().getLogs(LogLevel.ERROR).size());
         Assert.assertEquals(toCharacters("aijb"), result.getMerged());
 
+        result = this.mocker.getMockedComponent().merge(
+            toCharacters("ab"), toCharacters("axyb"), toCharacters("axzb"), null);
+
+        Assert.assertEquals(0, result.getLog().getLogs(LogLevel.ERROR).size());
+        Assert.assertEquals(toCharacters("axyzb"), result.getMerged());
+
+        // The elements shared by the two insertions are kept once, between the ones specific to each version
+        result = this.mocker.getMockedComponent().merge(
+            toCharacters("yz"), toCharacters("axbyz"), toCharacters("cxdyz"), null);
+
+        Assert.assertEquals(0, result.getLog().getLogs(LogLevel.ERROR).size());
+        Assert.assertEquals(toCharacters("caxdbyz"), result.getMerged());
+
         result = this.mocker.getMockedComponent().merge(
             toCharacters(""), toCharacters("ab"), toCharacters("abc"), null);
 
@@ -295,5 +338,32 @@ public void testMergeCharOnConflicts() throws Exception
 
         Assert.assertEquals(1, result.getLog().getLogs(LogLevel.ERROR).size());
         Assert.assertEquals(toCharacters("b"), result.getMerged());
+        Assert.assertEquals(1, result.getConflicts().size());
+        Assert.assertEquals(0, result.getConflicts().get(0).getIndex());
+        Assert.assertEquals(toCharacters("b"), result.getConflicts().get(0).getDeltaNext().getNext().getElements());
+        Assert.assertEquals(toCharacters("c"), result.getConflicts().get(0).getDeltaCurrent().getNext().getElements());
+    }
+
+    @Test
+    public void testMergeLargeLinkedList() throws Exception
+    {
+        List<String> commonAncestor = new LinkedList<String>();
+        for (int i = 0; i < 10000; ++i) {
+            commonAncestor.add("line " + i);
+        }
+
+        List<String> next = new LinkedList<String>(commonAncestor);
+        next.set(10, "next");
+        List<String> current = new LinkedList<String>(commonAncestor);
+        current.set(9000, "current");
+
+        MergeResult<String> result = this.mocker.getMockedComponent().merge(commonAncestor, next, current, null);
+
+        List<String> expected = new ArrayList<String>(commonAncestor);
+        expected.set(10, "next");
+        expected.set(9000, "current");
+
+        Assert.assertTrue(result.getConflicts().isEmpty());
+        Assert.assertEquals(expected, result.getMerged());
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchSerializer;
+
+public class DefaultPatchSerializerTest
+{
+    private final PatchSerializer serializer = new DefaultPatchSerializer();
+
+    private static List<Character> toCharacters(String str)
+    {
+        Character[] characters = new Character[str.length()];
+        for (int i = 0; i < characters.length; ++i) {
+            characters[i] = str.charAt(i);
+        }
+
+        return Arrays.asList(characters);
+    }
+
+    // Tests
+
+    @Test
+    public void testLines() throws Exception
+    {
+        List<String> previous = Arrays.asList("one", "two", "three", "four");
+        List<String> next = Arrays.asList("zero", "one", "2", "three", "\u00E9t\u00E9");
+        Patch<String> patch = MyersDiff.diff(previous, next);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.serializer.writeLines(patch, new DataOutputStream(output));
+
+        Patch<String> readPatch =
+            this.serializer.readLines(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+
+        Assert.assertEquals(patch, readPatch);
+        Assert.assertEquals(next, readPatch.apply(previous));
+    }
+
+    @Test
+    public void testCharacters() throws Exception
+    {
+        List<Character> previous = toCharacters("some content");
+        List<Character> next = toCharacters("some new \uD83D\uDE00 content!");
+        Patch<Character> patch = MyersDiff.diff(previous, next);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.serializer.writeCharacters(patch, new DataOutputStream(output));
+
+        Patch<Character> readPatch =
+            this.serializer.readCharacters(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+
+        Assert.assertEquals(patch, readPatch);
+        Assert.assertEquals(next, readPatch.apply(previous));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadCharactersFromLines() throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.serializer.writeLines(new DefaultPatch<String>(), new DataOutputStream(output));
+
+        this.serializer.readCharacters(new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadForgedSizes() throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        this.serializer.writeLines(MyersDiff.diff(Arrays.asList("one"), Arrays.asList("two")),
+            new DataOutputStream(output));
+
+        // Claim that the previous chunk has Integer.MAX_VALUE elements and the first one Integer.MAX_VALUE bytes
+        byte[] bytes = output.toByteArray();
+        for (int i = 0; i < 4; ++i) {
+            bytes[15 + i] = (byte) (i == 0 ? 0x7F : 0xFF);
+            bytes[19 + i] = (byte) (i == 0 ? 0x7F : 0xFF);
+        }
+
+        this.serializer.readLines(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    public void testUnified() throws Exception
+    {
+        List<String> previous = Arrays.asList("one", "two", "three", "four");
+        List<String> next = Arrays.asList("zero", "one", "2", "three");
+        Patch<String> patch = MyersDiff.diff(previous, next);
+
+        StringWriter writer = new StringWriter();
+        this.serializer.writeUnified(patch, writer);
+
+        Assert.assertEquals("@@ -0,0 +1,1 @@\n+zero\n@@ -2,1 +3,1 @@\n-two\n+2\n@@ -4,1 +4,0 @@\n-four\n",
+            writer.toString());
+
+        Patch<String> readPatch = this.serializer.readUnified(new StringReader(writer.toString()));
+
+        Assert.assertEquals(patch, readPatch);
+        Assert.assertEquals(next, readPatch.apply(previous));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidUnified() throws Exception
+    {
+        this.serializer.readUnified(new StringReader("@@ -1,1 +1,1 @@\n-one\n two\n"));
+    }
+}
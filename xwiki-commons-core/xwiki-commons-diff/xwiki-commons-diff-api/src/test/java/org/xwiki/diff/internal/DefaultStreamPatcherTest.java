@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.xwiki.diff.Patch;
+import org.xwiki.diff.PatchException;
+import org.xwiki.diff.StreamPatcher;
+
+public class DefaultStreamPatcherTest
+{
+    private final StreamPatcher patcher = new DefaultStreamPatcher();
+
+    private static List<Character> toCharacters(String str)
+    {
+        Character[] characters = new Character[str.length()];
+        for (int i = 0; i < characters.length; ++i) {
+            characters[i] = str.charAt(i);
+        }
+
+        return Arrays.asList(characters);
+    }
+
+    // Tests
+
+    @Test
+    public void testApplyLines() throws Exception
+    {
+        Patch<String> patch =
+            MyersDiff.diff(Arrays.asList("one", "two", "three", "four", "five"),
+                Arrays.asList("zero", "one", "2", "three", "five", "six"));
+
+        StringWriter writer = new StringWriter();
+        this.patcher.applyLines(patch, new StringReader("one\ntwo\r\nthree\nfour\nfive"), writer);
+
+        Assert.assertEquals("zero\none\n2\nthree\nfive\nsix", writer.toString());
+    }
+
+    @Test
+    public void testApplyLinesKeepsTerminators() throws Exception
+    {
+        Patch<String> patch =
+            MyersDiff.diff(Arrays.asList("one", "two", "three"), Arrays.asList("zero", "one", "three", "four"));
+
+        StringWriter writer = new StringWriter();
+        this.patcher.applyLines(patch, new StringReader("one\r\ntwo\r\nthree\r\n"), writer);
+
+        Assert.assertEquals("zero\r\none\r\nthree\r\nfour\r\n", writer.toString());
+    }
+
+    @Test
+    public void testApplyLinesWithoutChange() throws Exception
+    {
+        Patch<String> patch = MyersDiff.diff(Arrays.asList("one", "two"), Arrays.asList("one", "two"));
+
+        StringWriter writer = new StringWriter();
+        this.patcher.applyLines(patch, new StringReader("one\rtwo"), writer);
+
+        Assert.assertEquals("one\rtwo", writer.toString());
+    }
+
+    @Test
+    public void testApplyCharacters() throws Exception
+    {
+        StringBuilder previous = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            previous.append("line ").append(i).append('\n');
+        }
+        StringBuilder next = new StringBuilder(previous);
+        next.insert(0, '#');
+        next.replace(5000, 5010, "modified");
+        next.append("end");
+
+        Patch<Character> patch =
+            MyersDiff.diff(toCharacters(previous.toString()), toCharacters(next.toString()));
+
+        StringWriter writer = new StringWriter();
+        this.patcher.applyCharacters(patch, new StringReader(previous.toString()), writer);
+
+        Assert.assertEquals(next.toString(), writer.toString());
+    }
+
+    @Test(expected = PatchException.class)
+    public void testApplyOnWrongContent() throws Exception
+    {
+        Patch<Character> patch = MyersDiff.diff(toCharacters("abc"), toCharacters("aXc"));
+
+        this.patcher.applyCharacters(patch, new StringReader("aYc"), new StringWriter());
+    }
+
+    @Test(expected = PatchException.class)
+    public void testApplyOnShorterContent() throws Exception
+    {
+        Patch<String> patch = MyersDiff.diff(Arrays.asList("one", "two", "three"), Arrays.asList("one", "two"));
+
+        this.patcher.applyLines(patch, new StringReader("one"), new StringWriter());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.diff.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.xwiki.diff.CharacterList;
+import org.xwiki.diff.Delta;
+import org.xwiki.diff.Delta.Type;
+import org.xwiki.diff.Patch;
+
+import difflib.DiffUtils;
+
+public class MyersDiffTest
+{
+    private static <E> List<E> randomList(Random random, E[] alphabet, int size)
+    {
+        List<E> list = new ArrayList<E>(size);
+        for (int i = 0; i < size; ++i) {
+            list.add(alphabet[random.nextInt(alphabet.length)]);
+        }
+
+        return list;
+    }
+
+    private static <E> void assertSameAsDiffUtils(List<E> previous, List<E> next) throws Exception
+    {
+        Patch<E> expected = new DefaultPatch<E>(DiffUtils.diff(previous, next));
+        Patch<E> actual = MyersDiff.diff(previous, next);
+
+        Assert.assertEquals(expected, actual);
+        Assert.assertEquals(next, actual.apply(previous));
+    }
+
+    // Tests
+
+    @Test
+    public void testDiffCharacters() throws Exception
+    {
+        List<Character> previous = Arrays.asList('a', 'b', 'c', 'd');
+        List<Character> next = Arrays.asList('a', 'x', 'c', 'd', 'e');
+
+        Patch<Character> patch = MyersDiff.diff(previous, next);
+
+        Assert.assertEquals(2, patch.size());
+        Assert.assertEquals(Type.CHANGE, patch.get(0).getType());
+        Assert.assertEquals(1, patch.get(0).getPrevious().getIndex());
+        Assert.assertEquals(Arrays.asList('x'), patch.get(0).getNext().getElements());
+        Assert.assertEquals(Type.INSERT, patch.get(1).getType());
+        Assert.assertEquals(4, patch.get(1).getPrevious().getIndex());
+        Assert.assertEquals(Arrays.asList('e'), patch.get(1).getNext().getElements());
+    }
+
+    @Test
+    public void testDiffCharacterLists() throws Exception
+    {
+        List<Character> previous = new CharacterList("aécd");
+        List<Character> next = new CharacterList("aéxcde");
+
+        Patch<Character> patch = MyersDiff.diff(previous, next);
+
+        Assert.assertEquals(MyersDiff.diff(new ArrayList<Character>(previous), new ArrayList<Character>(next)), patch);
+        Assert.assertEquals(next, patch.apply(previous));
+    }
+
+    @Test
+    public void testDiffIdenticalLists() throws Exception
+    {
+        List<String> list = Arrays.asList("a", "b");
+
+        Assert.assertTrue(MyersDiff.diff(list, new LinkedList<String>(list)).isEmpty());
+    }
+
+    @Test
+    public void testDiffWithCommonPrefixAndSuffix() throws Exception
+    {
+        List<String> previous = Arrays.asList("a", "b", "c", "d", "e");
+        List<String> next = new LinkedList<String>(Arrays.asList("a", "b", "x", "y", "d", "e"));
+
+        Patch<String> patch = MyersDiff.diff(previous, next);
+
+        Assert.assertEquals(1, patch.size());
+        Assert.assertEquals(Type.CHANGE, patch.get(0).getType());
+        Assert.assertEquals(2, patch.get(0).getPrevious().getIndex());
+        Assert.assertEquals(Arrays.asList("c"), patch.get(0).getPrevious().getElements());
+        Assert.assertEquals(2, patch.get(0).getNext().getIndex());
+        Assert.assertEquals(Arrays.asList("x", "y"), patch.get(0).getNext().getElements());
+
+        // Repeated elements at the limit of the window
+        patch = MyersDiff.diff(Arrays.asList("a", "a"), Arrays.asList("a", "a", "a"));
+
+        Assert.assertEquals(1, patch.size());
+        Assert.assertEquals(Type.INSERT, patch.get(0).getType());
+        Assert.assertEquals(2, patch.get(0).getPrevious().getIndex());
+    }
+
+    @Test
+    public void testDiffSameAsDiffUtils() throws Exception
+    {
+        Random random = new Random(42);
+        String[] lines = new String[] {"one", "two", "three", "four"};
+        Character[] characters = new Character[] {'a', 'b', 'c', 'é'};
+
+        // The modified area is repeated at the limit of the common end
+        assertSameAsDiffUtils(Arrays.asList('a', 'b', 'c', 'b'), Arrays.asList('b'));
+
+        for (int i = 0; i < 200; ++i) {
+            assertSameAsDiffUtils(randomList(random, lines, 1 + random.nextInt(30)),
+                randomList(random, lines, 1 + random.nextInt(30)));
+            assertSameAsDiffUtils(randomList(random, characters, 1 + random.nextInt(30)),
+                randomList(random, characters, 1 + random.nextInt(30)));
+        }
+    }
+
+    @Test
+    public void testDiffWithinMaxEditDistance() throws Exception
+    {
+        Random random = new Random(42);
+        Character[] characters = new Character[] {'a', 'b', 'c', 'é'};
+
+        for (int i = 0; i < 100; ++i) {
+            List<Character> previous = randomList(random, characters, 1 + random.nextInt(30));
+            List<Character> next = randomList(random, characters, 1 + random.nextInt(30));
+            Patch<Character> expected = MyersDiff.diff(previous, next);
+
+            int editDistance = 0;
+            for (Delta<Character> delta : expected) {
+                editDistance += delta.getPrevious().size() + delta.getNext().size();
+            }
+
+            // The search only explores the diagonals allowed by the budget
+            Assert.assertEquals(expected, MyersDiff.diff(previous, next, editDistance, 0, null));
+        }
+    }
+}
@@ -19,6 +19,7 @@
  */
 package org.xwiki.diff.display;
 
+import java.util.Iterator;
 import java.util.List;
 
 import org.xwiki.component.annotation.Role;
@@ -83,4 +84,19 @@
      * @return the list of blocks that form the unified diff
      */
     <E, F> List<UnifiedDiffBlock<E, F>> display(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config);
+
+    /**
+     * Displays the given diff result as an unified diff using the provided configuration, producing the blocks only
+     * when they are requested. The in-line diff of a modified element is also computed only when the chunks of that
+     * element are requested, so displaying the first blocks of a huge diff is cheap.
+     * 
+     * @param <E> the type of elements that were compared to produce the diff
+     * @param <F> the type of sub-elements that can be compared to produce an in-line diff when an element is modified
+     * @param diffResult the diff result
+     * @param config the configuration
+     * @return an iterator over the blocks that form the unified diff
+     * @see #display(DiffResult, UnifiedDiffConfiguration)
+     * @since 4.5M1
+     */
+    <E, F> Iterator<UnifiedDiffBlock<E, F>> iterate(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config);
 }
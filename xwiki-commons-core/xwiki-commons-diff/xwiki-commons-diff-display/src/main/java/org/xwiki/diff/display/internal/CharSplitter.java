@@ -19,17 +19,16 @@
  */
 package org.xwiki.diff.display.internal;
 
-import java.util.Arrays;
 import java.util.List;
 
 import javax.inject.Singleton;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.diff.CharacterList;
 import org.xwiki.diff.display.Splitter;
 
 /**
- * Splits a string into its characters.
+ * Splits a string into its characters. The returned list is unmodifiable.
  * 
  * @version $Id$
  * @since 4.1RC1
@@ -41,6 +40,7 @@ public class CharSplitter implements Splitter<String, Character>
     @Override
     public List<Character> split(String composite)
     {
-        return Arrays.asList(ArrayUtils.toObject(composite.toCharArray()));
+        // The characters are compared without being boxed
+        return new CharacterList(composite);
     }
 }
@@ -20,8 +20,9 @@
 package org.xwiki.diff.display.internal;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Stack;
+import java.util.NoSuchElementException;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -58,22 +59,32 @@
 public class DefaultUnifiedDiffDisplayer implements UnifiedDiffDisplayer
 {
     /**
-     * The state of the displayer.
+     * Produces the unified diff blocks one by one, on demand.
      * 
      * @param <E> the type of composite elements that are compared to produce the first level diff
      * @param <F> the type of sub-elements that are compared to produce the second-level diff
      */
-    private static class State<E, F>
+    private class BlockIterator<E, F> implements Iterator<UnifiedDiffBlock<E, F>>
     {
         /**
-         * The collection of unified diff blocks build so far.
+         * The previous version, used to take the unmodified elements from.
          */
-        private final Stack<UnifiedDiffBlock<E, F>> blocks = new Stack<UnifiedDiffBlock<E, F>>();
+        private final List<E> previous;
 
         /**
-         * The previous version, used to take the unmodified elements from.
+         * The changes to display.
          */
-        private final List<E> previous;
+        private final Iterator<Delta<E>> deltas;
+
+        /**
+         * The configuration of the displayer.
+         */
+        private final UnifiedDiffConfiguration<E, F> config;
+
+        /**
+         * The first change of the next block, already taken from {@link #deltas}.
+         */
+        private Delta<E> nextDelta;
 
         /**
          * The last change processed by the displayer.
@@ -83,45 +94,173 @@ public class DefaultUnifiedDiffDisplayer implements UnifiedDiffDisplayer
         /**
          * Creates a new instance.
          * 
-         * @param previous the previous version used to take the unmodified elements from
+         * @param diffResult the diff result to display
+         * @param config the configuration of the displayer
          */
-        public State(List<E> previous)
+        BlockIterator(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config)
         {
-            this.previous = previous;
+            this.previous = diffResult.getPrevious();
+            this.deltas = diffResult.getPatch().iterator();
+            this.config = config;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.nextDelta != null || this.deltas.hasNext();
+        }
+
+        @Override
+        public UnifiedDiffBlock<E, F> next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            UnifiedDiffBlock<E, F> block = new UnifiedDiffBlock<E, F>();
+
+            int contextSize = this.config.getContextSize();
+
+            Delta<E> delta = this.nextDelta != null ? this.nextDelta : this.deltas.next();
+            this.nextDelta = null;
+            while (delta != null) {
+                // Add unmodified elements before the current delta.
+                addUnmodifiedElements(block, delta, block.isEmpty() ? contextSize : contextSize * 2);
+
+                // Add changed elements.
+                block.addAll(DefaultUnifiedDiffDisplayer.this.<E, F> getChangedElements(delta, this.config));
+
+                this.lastDelta = delta;
+
+                delta = this.deltas.hasNext() ? this.deltas.next() : null;
+
+                // Start a new block if the distance between the current delta and the last one is greater than or
+                // equal to 2 * context size.
+                if (delta != null
+                    && this.lastDelta.getPrevious().getLastIndex() < delta.getPrevious().getIndex() - contextSize * 2) {
+                    this.nextDelta = delta;
+                    delta = null;
+                }
+            }
+
+            // Add unmodified elements after the last delta.
+            int start = this.lastDelta.getPrevious().getLastIndex() + 1;
+            int end = Math.min(start + contextSize, this.previous.size());
+            block.addAll(DefaultUnifiedDiffDisplayer.this.<E, F> getUnmodifiedElements(this.previous, start, end));
+
+            return block;
         }
 
         /**
-         * @return the last processed change
+         * Adds the unmodified elements before the given delta.
+         * 
+         * @param block the block where to add the elements
+         * @param delta the change
+         * @param count the maximum number of unmodified elements to add
          */
-        public Delta<E> getLastDelta()
+        private void addUnmodifiedElements(UnifiedDiffBlock<E, F> block, Delta<E> delta, int count)
         {
-            return lastDelta;
+            int lastChangeIndex = this.lastDelta == null ? -1 : this.lastDelta.getPrevious().getLastIndex();
+            int end = delta.getPrevious().getIndex();
+            int start = Math.max(end - count, lastChangeIndex + 1);
+            block.addAll(DefaultUnifiedDiffDisplayer.this.<E, F> getUnmodifiedElements(this.previous, start, end));
         }
 
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * The in-line diff between the two versions of a modified element, computed the first time it's needed.
+     * 
+     * @param <E> the type of composite elements that are compared to produce the first level diff
+     * @param <F> the type of sub-elements that are compared to produce the second-level diff
+     */
+    private class InlineDiff<E, F>
+    {
         /**
-         * Sets the last processed change.
-         * 
-         * @param lastDelta the last processed change
+         * The previous version of the element.
+         */
+        private final LazyElement<E, F> previous;
+
+        /**
+         * The next version of the element.
+         */
+        private final LazyElement<E, F> next;
+
+        /**
+         * The configuration for the in-line diff.
          */
-        public void setLastDelta(Delta<E> lastDelta)
+        private final UnifiedDiffConfiguration<E, F> config;
+
+        /**
+         * Indicates if the in-line diff has already been computed.
+         */
+        private boolean computed;
+
+        /**
+         * @param delta the change replacing one element by another one
+         * @param config the configuration for the in-line diff
+         */
+        InlineDiff(Delta<E> delta, UnifiedDiffConfiguration<E, F> config)
         {
-            this.lastDelta = lastDelta;
+            this.previous =
+                new LazyElement<E, F>(delta.getPrevious().getIndex(), Type.DELETED, delta.getPrevious().getElements()
+                    .get(0), this);
+            this.next =
+                new LazyElement<E, F>(delta.getNext().getIndex(), Type.ADDED, delta.getNext().getElements().get(0),
+                    this);
+            this.config = config;
         }
 
         /**
-         * @return the collection of unified diff blocks build so far
+         * Computes the in-line diff if it's not already done.
          */
-        public Stack<UnifiedDiffBlock<E, F>> getBlocks()
+        synchronized void compute()
         {
-            return blocks;
+            if (!this.computed) {
+                this.computed = true;
+
+                displayInlineDiff(this.previous, this.next, this.config);
+            }
         }
+    }
+
+    /**
+     * An element whose chunks are computed when they are requested for the first time.
+     * 
+     * @param <E> the type of composite elements that are compared to produce the first level diff
+     * @param <F> the type of sub-elements that are compared to produce the second-level diff
+     */
+    private static class LazyElement<E, F> extends UnifiedDiffElement<E, F>
+    {
+        /**
+         * The in-line diff this element is part of.
+         */
+        private final DefaultUnifiedDiffDisplayer.InlineDiff<E, F> inlineDiff;
 
         /**
-         * @return the previous version, used to take the unmodified elements from
+         * @param index the element index
+         * @param type the element type
+         * @param value the wrapped element
+         * @param inlineDiff the in-line diff this element is part of
          */
-        public List<E> getPrevious()
+        LazyElement(int index, Type type, E value, DefaultUnifiedDiffDisplayer.InlineDiff<E, F> inlineDiff)
         {
-            return previous;
+            super(index, type, value);
+
+            this.inlineDiff = inlineDiff;
+        }
+
+        @Override
+        public List<InlineDiffChunk<F>> getChunks()
+        {
+            this.inlineDiff.compute();
+
+            return super.getChunks();
         }
     }
 
@@ -152,62 +291,49 @@ public <E, F> List<UnifiedDiffBlock<E, F>> display(DiffResult<E> diffResult)
     @Override
     public <E, F> List<UnifiedDiffBlock<E, F>> display(DiffResult<E> diffResult, UnifiedDiffConfiguration<E, F> config)
     {
-        State<E, F> state = new State<E, F>(diffResult.getPrevious());
-
-        for (Delta<E> delta : diffResult.getPatch()) {
-            // Add unmodified elements before the current delta. Start a new block if the distance between the current
-            // delta and the last one is greater than or equal to 2 * context size.
-            maybeStartBlock(delta, state, config.getContextSize());
-
-            // Add changed elements.
-            switch (delta.getType()) {
-                case CHANGE:
-                    state.getBlocks().peek().addAll(this.<E, F> getModifiedElements(delta, config));
-                    break;
-                case DELETE:
-                    state.getBlocks().peek().addAll(this.<E, F> getElements(delta.getPrevious(), Type.DELETED));
-                    break;
-                case INSERT:
-                    state.getBlocks().peek().addAll(this.<E, F> getElements(delta.getNext(), Type.ADDED));
-                    break;
-                default:
-                    break;
-            }
+        List<UnifiedDiffBlock<E, F>> blocks = new ArrayList<UnifiedDiffBlock<E, F>>();
 
-            state.setLastDelta(delta);
+        for (Iterator<UnifiedDiffBlock<E, F>> it = iterate(diffResult, config); it.hasNext();) {
+            blocks.add(it.next());
         }
 
-        // Add unmodified elements after the last delta.
-        maybeEndBlock(state, config.getContextSize());
+        return blocks;
+    }
 
-        return state.getBlocks();
+    @Override
+    public <E, F> Iterator<UnifiedDiffBlock<E, F>> iterate(DiffResult<E> diffResult,
+        UnifiedDiffConfiguration<E, F> config)
+    {
+        return new BlockIterator<E, F>(diffResult, config);
     }
 
     /**
-     * Starts a new {@link UnifiedDiffBlock} if the provided change is in a different context. The distance between two
-     * changes inside the same block is less than 2 * context size.
-     * 
      * @param delta the change
-     * @param state the state of the displayer
-     * @param contextSize the number of unmodified elements to display before and after each change
+     * @param config the configuration used to access the splitter
      * @param <E> the type of composite elements that are compared to produce the first level diff
      * @param <F> the type of sub-elements that are compared to produce the second-level diff when a composite element
      *            is modified
+     * @return the list of unified diff elements corresponding to the elements modified in the given delta
      */
-    private <E, F> void maybeStartBlock(Delta<E> delta, State<E, F> state, int contextSize)
+    private <E, F> List<UnifiedDiffElement<E, F>> getChangedElements(Delta<E> delta,
+        UnifiedDiffConfiguration<E, F> config)
     {
-        if (state.getLastDelta() == null
-            || state.getLastDelta().getPrevious().getLastIndex() < delta.getPrevious().getIndex() - contextSize * 2) {
-            maybeEndBlock(state, contextSize);
-            state.getBlocks().push(new UnifiedDiffBlock<E, F>());
+        List<UnifiedDiffElement<E, F>> elements;
+
+        switch (delta.getType()) {
+            case CHANGE:
+                elements = getModifiedElements(delta, config);
+                break;
+            case DELETE:
+                elements = getElements(delta.getPrevious(), Type.DELETED);
+                break;
+            default:
+                // INSERT
+                elements = getElements(delta.getNext(), Type.ADDED);
+                break;
         }
 
-        // Add the unmodified elements before the given delta.
-        int count = state.getBlocks().peek().isEmpty() ? contextSize : contextSize * 2;
-        int lastChangeIndex = state.getLastDelta() == null ? -1 : state.getLastDelta().getPrevious().getLastIndex();
-        int end = delta.getPrevious().getIndex();
-        int start = Math.max(end - count, lastChangeIndex + 1);
-        state.getBlocks().peek().addAll(this.<E, F> getUnmodifiedElements(state.getPrevious(), start, end));
+        return elements;
     }
 
     /**
@@ -226,13 +352,19 @@ private <E, F> void maybeStartBlock(Delta<E> delta, State<E, F> state, int conte
     private <E, F> List<UnifiedDiffElement<E, F>> getModifiedElements(Delta<E> delta,
         UnifiedDiffConfiguration<E, F> config)
     {
-        List<UnifiedDiffElement<E, F>> elements = new ArrayList<UnifiedDiffElement<E, F>>();
-        elements.addAll(this.<E, F> getElements(delta.getPrevious(), Type.DELETED));
-        elements.addAll(this.<E, F> getElements(delta.getNext(), Type.ADDED));
+        List<UnifiedDiffElement<E, F>> elements;
 
         // An element is modified when it is replaced by a single element.
         if (config.getSplitter() != null && delta.getPrevious().size() == 1 && delta.getNext().size() == 1) {
-            displayInlineDiff(elements.get(0), elements.get(1), config);
+            // The in-line diff is computed only when the chunks of one of the elements are requested
+            InlineDiff<E, F> inlineDiff = new InlineDiff<E, F>(delta, config);
+            elements = new ArrayList<UnifiedDiffElement<E, F>>(2);
+            elements.add(inlineDiff.previous);
+            elements.add(inlineDiff.next);
+        } else {
+            elements = new ArrayList<UnifiedDiffElement<E, F>>();
+            elements.addAll(this.<E, F> getElements(delta.getPrevious(), Type.DELETED));
+            elements.addAll(this.<E, F> getElements(delta.getNext(), Type.ADDED));
         }
 
         return elements;
@@ -274,24 +406,6 @@ private <E, F> List<UnifiedDiffElement<E, F>> getUnmodifiedElements(List<E> prev
         return unmodifiedElements;
     }
 
-    /**
-     * Ends the last {@link UnifiedDiffBlock} by adding a number of unmodified elements.
-     * 
-     * @param state the state of the displayer
-     * @param contextSize the number of unmodified elements to display at the end of a block
-     * @param <E> the type of composite elements that are compared to produce the first level diff
-     * @param <F> the type of sub-elements that are compared to produce the second-level diff when a composite element
-     *            is modified
-     */
-    private <E, F> void maybeEndBlock(State<E, F> state, int contextSize)
-    {
-        if (!state.getBlocks().isEmpty()) {
-            int start = state.getLastDelta().getPrevious().getLastIndex() + 1;
-            int end = Math.min(start + contextSize, state.getPrevious().size());
-            state.getBlocks().peek().addAll(this.<E, F> getUnmodifiedElements(state.getPrevious(), start, end));
-        }
-    }
-
     /**
      * Computes the changes between two versions of an element by splitting the element into sub-elements and displays
      * the result using the in-line format.
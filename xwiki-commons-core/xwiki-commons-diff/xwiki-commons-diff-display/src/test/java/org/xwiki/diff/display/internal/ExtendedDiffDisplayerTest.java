@@ -21,8 +21,10 @@
 
 import java.lang.reflect.ParameterizedType;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 import junit.framework.Assert;
 
@@ -72,15 +74,56 @@ public void testLineReplaced() throws Exception
         execute("one\ntwo\nthree", "one\ntWo\nextra\nthree", "@@ -1,3 +1,4 @@\n one\n-two\n+tWo\n+extra\n three\n");
     }
 
+    @Test
+    public void testIterate() throws Exception
+    {
+        StringBuilder previous = new StringBuilder();
+        StringBuilder next = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            previous.append("line ").append(i).append('\n');
+            next.append("line ").append(i % 20 == 0 ? "x" : i).append('\n');
+        }
+
+        DiffResult<String> diffResult = diff(previous.toString(), next.toString());
+
+        UnifiedDiffDisplayer unifiedDiffDisplayer = getComponentManager().getInstance(UnifiedDiffDisplayer.class);
+        UnifiedDiffConfiguration<String, Character> config = getConfiguration(unifiedDiffDisplayer);
+
+        List<UnifiedDiffBlock<String, Character>> blocks = unifiedDiffDisplayer.display(diffResult, config);
+        Iterator<UnifiedDiffBlock<String, Character>> iterator = unifiedDiffDisplayer.iterate(diffResult, config);
+
+        Assert.assertEquals(5, blocks.size());
+        for (UnifiedDiffBlock<String, Character> block : blocks) {
+            Assert.assertTrue(iterator.hasNext());
+
+            UnifiedDiffBlock<String, Character> iteratedBlock = iterator.next();
+            Assert.assertEquals(block.toString(), iteratedBlock.toString());
+            Assert.assertEquals(block.getPreviousStart(), iteratedBlock.getPreviousStart());
+            Assert.assertEquals(block.getNextSize(), iteratedBlock.getNextSize());
+        }
+        Assert.assertFalse(iterator.hasNext());
+
+        try {
+            iterator.next();
+            Assert.fail();
+        } catch (NoSuchElementException expected) {
+            // Expected
+        }
+
+        // The in-line diff is computed when requested from any of the two modified elements
+        UnifiedDiffElement<String, Character> added = blocks.get(1).get(4);
+        Assert.assertTrue(added.isAdded());
+        Assert.assertEquals(2, added.getChunks().size());
+        Assert.assertEquals(2, blocks.get(1).get(3).getChunks().size());
+    }
+
     /**
-     * Generates the extended diff between the given versions and asserts if it meets the expectation.
-     * 
      * @param previous the previous version
      * @param next the next version
-     * @param expected the expected extended diff
+     * @return the line level diff between the given versions
      * @throws Exception if creating the diff fails
      */
-    private void execute(String previous, String next, String expected) throws Exception
+    private DiffResult<String> diff(String previous, String next) throws Exception
     {
         ParameterizedType lineSplitterType =
             new DefaultParameterizedType(null, Splitter.class, String.class, String.class);
@@ -89,16 +132,43 @@ private void execute(String previous, String next, String expected) throws Excep
         List<String> nextLines = lineSplitter.split(next);
 
         DiffManager diffManager = getComponentManager().getInstance(DiffManager.class);
-        DiffResult<String> diffResult = diffManager.diff(previousLines, nextLines, null);
 
+        return diffManager.diff(previousLines, nextLines, null);
+    }
+
+    /**
+     * @param unifiedDiffDisplayer the displayer
+     * @return the configuration producing a character level in-line diff
+     * @throws Exception if the character splitter cannot be found
+     */
+    private UnifiedDiffConfiguration<String, Character> getConfiguration(UnifiedDiffDisplayer unifiedDiffDisplayer)
+        throws Exception
+    {
         ParameterizedType charSplitterType =
             new DefaultParameterizedType(null, Splitter.class, String.class, Character.class);
         Splitter<String, Character> charSplitter = getComponentManager().getInstance(charSplitterType);
 
-        UnifiedDiffDisplayer unifiedDiffDisplayer = getComponentManager().getInstance(UnifiedDiffDisplayer.class);
         UnifiedDiffConfiguration<String, Character> config = unifiedDiffDisplayer.getDefaultConfiguration();
         config.setSplitter(charSplitter);
 
+        return config;
+    }
+
+    /**
+     * Generates the extended diff between the given versions and asserts if it meets the expectation.
+     * 
+     * @param previous the previous version
+     * @param next the next version
+     * @param expected the expected extended diff
+     * @throws Exception if creating the diff fails
+     */
+    private void execute(String previous, String next, String expected) throws Exception
+    {
+        DiffResult<String> diffResult = diff(previous, next);
+
+        UnifiedDiffDisplayer unifiedDiffDisplayer = getComponentManager().getInstance(UnifiedDiffDisplayer.class);
+        UnifiedDiffConfiguration<String, Character> config = getConfiguration(unifiedDiffDisplayer);
+
         Map<Type, String> separators = new HashMap<Type, String>();
         separators.put(Type.ADDED, "+");
         separators.put(Type.DELETED, "-");
@@ -35,6 +35,8 @@
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
 import org.xwiki.logging.LoggerManager;
+import org.xwiki.logging.logback.internal.DefaultLogEventAppender;
+import org.xwiki.logging.logback.internal.DefaultLogListenerStack;
 import org.xwiki.logging.logback.internal.DefaultLoggerManager;
 import org.xwiki.observation.internal.DefaultObservationManager;
 import org.xwiki.test.annotation.BeforeComponent;
@@ -44,6 +46,8 @@
 @ComponentList({
     DefaultExtensionManagerConfiguration.class,
     DefaultLoggerManager.class,
+    DefaultLogListenerStack.class,
+    DefaultLogEventAppender.class,
     DefaultObservationManager.class
 })
 public class DefaultExtensionManagerConfigurationTest
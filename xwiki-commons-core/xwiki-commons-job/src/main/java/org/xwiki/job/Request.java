@@ -41,6 +41,23 @@ public interface Request extends Serializable
      */
     String PROPERTY_INTERACTIVE = "interactive";
 
+    /**
+     * The name of the {@link Integer} property holding the maximum number of log events of a level lower than
+     * {@link org.xwiki.logging.LogLevel#WARN} retained by the status of the job, 0 (the default) for no limit.
+     * 
+     * @since 4.5M1
+     */
+    String PROPERTY_LOG_LIMIT = "logs.limit";
+
+    /**
+     * The name of the {@link Boolean} property indicating if the status of the job should retain the
+     * {@link String} representation of the log arguments instead of the arguments themselves, false by default.
+     * 
+     * @see org.xwiki.logging.event.LogEvent#snapshot()
+     * @since 4.5M1
+     */
+    String PROPERTY_LOG_SNAPSHOT = "logs.snapshot";
+
     /**
      * @return list based identifier used to access the job. If none is provided the job will not be accessible by id
      *         and the status of the job will not be stored.
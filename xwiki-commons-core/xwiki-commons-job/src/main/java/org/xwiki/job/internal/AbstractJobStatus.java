@@ -64,9 +64,11 @@
     private R request;
 
     /**
-     * Log sent during job execution.
+     * Log sent during job execution. Each retained event also costs a skip list node and a boxed offset in the indexes
+     * of the queue, so long jobs should set {@link Request#PROPERTY_LOG_LIMIT}, and
+     * {@link Request#PROPERTY_LOG_SNAPSHOT} when the arguments of their log are big live objects.
      */
-    private LogQueue logs = new LogQueue();
+    private LogQueue logs;
 
     /**
      * @see #getStartDate()
@@ -118,11 +120,26 @@ public AbstractJobStatus(R request, ObservationManager observationManager, Logge
         boolean subJob)
     {
         this.request = request;
+        this.logs = createLogQueue(request);
         this.observationManager = observationManager;
         this.loggerManager = loggerManager;
         this.subJob = subJob;
     }
 
+    /**
+     * @param request the request provided when started the job
+     * @return the queue retaining the log of the job, configured by the request
+     */
+    private static LogQueue createLogQueue(Request request)
+    {
+        if (request == null) {
+            return new LogQueue();
+        }
+
+        return new LogQueue(request.<Integer> getProperty(Request.PROPERTY_LOG_LIMIT, 0),
+            request.<Boolean> getProperty(Request.PROPERTY_LOG_SNAPSHOT, false));
+    }
+
     /**
      * Start listening to events.
      */
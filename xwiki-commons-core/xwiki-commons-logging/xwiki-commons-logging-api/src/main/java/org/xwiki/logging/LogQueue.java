@@ -19,10 +19,19 @@
  */
 package org.xwiki.logging;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Logger;
@@ -31,6 +40,22 @@
 
 /**
  * A queue of {@link LogEvent}s.
+ * <p>
+ * Events are indexed by level and by offset (the position of the event in the sequence of all the events added to the
+ * queue) so that filtering them does not require going through the whole queue. The queue can also be bounded: all
+ * {@link LogLevel#ERROR} and {@link LogLevel#WARN} events are kept but only the most recent events of lower levels are
+ * retained.
+ * <p>
+ * Events are added under a lock so that offsets follow the order of the queue and {@link #getOffset()} only covers
+ * events which are already indexed; reading the indexes does not lock. Indexing costs, for each event, a skip list node
+ * and a boxed offset in the index of its level, plus an entry in the map used to find the offset of the event when it
+ * is removed, which should be taken into account when choosing the limit of a long lived queue. Removing the oldest
+ * events when the limit is reached resumes from the previously removed event so it does not go through the retained
+ * events again.
+ * <p>
+ * When the queue is created in snapshot mode the arguments of the events are replaced by their {@link String}
+ * representation when the events are added (see {@link LogEvent#snapshot()}) so that the queue does not keep live
+ * objects reachable.
  * 
  * @version $Id$
  * @since 3.2M3
@@ -42,6 +67,147 @@ public class LogQueue extends ConcurrentLinkedQueue<LogEvent> implements Logger
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The maximum number of events of a level lower than {@link LogLevel#WARN} to retain, 0 for no limit.
+     */
+    private final int limit;
+
+    /**
+     * True if the arguments of the events are replaced by their {@link String} representation when they are added.
+     */
+    private final boolean snapshot;
+
+    /**
+     * Used to add and remove events, and to update the indexes accordingly.
+     */
+    private transient Object lock;
+
+    /**
+     * The offset of the next event to add. Only increased once the previous event has been indexed.
+     */
+    private transient volatile long offset;
+
+    /**
+     * The events of each level, indexed by offset.
+     */
+    private transient Map<LogLevel, ConcurrentNavigableMap<Long, LogEvent>> indexes;
+
+    /**
+     * The number of events of each level.
+     */
+    private transient Map<LogLevel, AtomicInteger> counters;
+
+    /**
+     * The offset of each event of the queue, by identity. Only accessed with the lock held.
+     */
+    private transient Map<LogEvent, Long> offsets;
+
+    /**
+     * Iterates over the queue from the last event removed by {@link #trim()}. Only accessed with the lock held.
+     */
+    private transient Iterator<LogEvent> trimIterator;
+
+    /**
+     * Iterate over the events of the queue and keep indexes up to date when removing events.
+     * 
+     * @version $Id$
+     */
+    private class IndexedIterator implements Iterator<LogEvent>
+    {
+        /**
+         * The iterator of the queue.
+         */
+        private final Iterator<LogEvent> iterator;
+
+        /**
+         * The last returned event.
+         */
+        private LogEvent current;
+
+        /**
+         * @param iterator the iterator of the queue
+         */
+        IndexedIterator(Iterator<LogEvent> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public LogEvent next()
+        {
+            this.current = this.iterator.next();
+
+            return this.current;
+        }
+
+        @Override
+        public void remove()
+        {
+            synchronized (LogQueue.this.lock) {
+                this.iterator.remove();
+
+                unindex(this.current);
+            }
+        }
+    }
+
+    /**
+     * Create an unbounded queue.
+     */
+    public LogQueue()
+    {
+        this(0);
+    }
+
+    /**
+     * @param limit the maximum number of events of a level lower than {@link LogLevel#WARN} to retain, the oldest ones
+     *            are removed from the queue when it's reached; 0 for no limit
+     * @since 4.5M1
+     */
+    public LogQueue(int limit)
+    {
+        this(limit, false);
+    }
+
+    /**
+     * @param limit the maximum number of events of a level lower than {@link LogLevel#WARN} to retain, the oldest ones
+     *            are removed from the queue when it's reached; 0 for no limit
+     * @param snapshot true if the arguments of the events should be replaced by their {@link String} representation
+     *            when the events are added, see {@link LogEvent#snapshot()}
+     * @since 4.5M1
+     */
+    public LogQueue(int limit, boolean snapshot)
+    {
+        this.limit = limit;
+        this.snapshot = snapshot;
+
+        initIndexes();
+    }
+
+    /**
+     * Create empty indexes.
+     */
+    private void initIndexes()
+    {
+        this.lock = new Object();
+        this.offset = 0;
+        this.offsets = new IdentityHashMap<LogEvent, Long>();
+        this.trimIterator = null;
+        this.indexes = new EnumMap<LogLevel, ConcurrentNavigableMap<Long, LogEvent>>(LogLevel.class);
+        this.counters = new EnumMap<LogLevel, AtomicInteger>(LogLevel.class);
+
+        for (LogLevel level : LogLevel.values()) {
+            this.indexes.put(level, new ConcurrentSkipListMap<Long, LogEvent>());
+            this.counters.put(level, new AtomicInteger());
+        }
+    }
+
     /**
      * @param level the log level
      * @param format the log message
@@ -101,10 +267,7 @@ public LogEvent addLogEvent(LogLevel level, String format, Object[] arguments, T
      */
     public LogEvent addLogEvent(Marker marker, LogLevel level, String format, Object[] arguments, Throwable throwable)
     {
-        LogEvent logEvent = new LogEvent(marker, level, format, arguments, throwable);
-        add(logEvent);
-
-        return logEvent;
+        return addEvent(new LogEvent(marker, level, format, arguments, throwable));
     }
 
     /**
@@ -116,15 +279,7 @@ public LogEvent addLogEvent(Marker marker, LogLevel level, String format, Object
      */
     public List<LogEvent> getLogs(LogLevel level)
     {
-        List<LogEvent> levelLogs = new LinkedList<LogEvent>();
-
-        for (LogEvent log : this) {
-            if (log.getLevel() == level) {
-                levelLogs.add(log);
-            }
-        }
-
-        return levelLogs;
+        return new ArrayList<LogEvent>(this.indexes.get(level).headMap(this.offset).values());
     }
 
     /**
@@ -136,15 +291,333 @@ public List<LogEvent> getLogs(LogLevel level)
      */
     public List<LogEvent> getLogsFrom(LogLevel level)
     {
-        List<LogEvent> levelLogs = new LinkedList<LogEvent>();
+        return getLogs(level, 0);
+    }
+
+    /**
+     * Return the logs added to the queue since the provided offset and still in the queue. Start with 0 and then use
+     * {@link #getOffset()} to get only the new logs.
+     * 
+     * @param offset the offset of the first log to return
+     * @return the logs
+     * @since 4.5M1
+     */
+    public List<LogEvent> getLogsSince(long offset)
+    {
+        return getLogs(LogLevel.TRACE, offset);
+    }
+
+    /**
+     * @return the offset of the next log to be added to the queue, i.e. the total number of logs added to the queue
+     * @since 4.5M1
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * @param level the level of the logs to count
+     * @return the number of logs of the provided level in the queue
+     * @since 4.5M1
+     */
+    public int getLogCount(LogLevel level)
+    {
+        return this.counters.get(level).get();
+    }
+
+    /**
+     * @param level the lowest level of the logs to return
+     * @param from the offset of the first log to return
+     * @return the logs ordered by offset
+     */
+    private List<LogEvent> getLogs(LogLevel level, long from)
+    {
+        // Ignore the events which are being indexed
+        long end = this.offset;
+        if (from >= end) {
+            return new ArrayList<LogEvent>();
+        }
+
+        Map<Long, LogEvent> logs = new TreeMap<Long, LogEvent>();
+
+        for (LogLevel indexLevel : LogLevel.values()) {
+            if (indexLevel.compareTo(level) <= 0) {
+                logs.putAll(this.indexes.get(indexLevel).subMap(from, end));
+            }
+        }
+
+        return new ArrayList<LogEvent>(logs.values());
+    }
+
+    /**
+     * Add an event to the queue, taking its snapshot first in snapshot mode.
+     * 
+     * @param logEvent the event to add
+     * @return the queued event
+     */
+    private LogEvent addEvent(LogEvent logEvent)
+    {
+        // Format the arguments before taking the lock
+        LogEvent addedEvent = this.snapshot ? logEvent.snapshot() : logEvent;
+
+        synchronized (this.lock) {
+            addedEvent = enqueue(addedEvent);
+            trim();
+        }
+
+        return addedEvent;
+    }
+
+    /**
+     * Add an event to the queue and index it. Must be called with the lock held.
+     * 
+     * @param logEvent the event to add
+     * @return the queued event
+     */
+    private LogEvent enqueue(LogEvent logEvent)
+    {
+        // The same instance can't be indexed twice
+        LogEvent queuedEvent = logEvent;
+        if (this.offsets.containsKey(queuedEvent)) {
+            queuedEvent =
+                new LogEvent(logEvent.getMarker(), logEvent.getLevel(), logEvent.getMessage(),
+                    logEvent.getArgumentArray(), logEvent.getThrowable());
+        }
+
+        super.offer(queuedEvent);
+
+        index(queuedEvent, this.offset);
+
+        // Publish the event
+        this.offset = this.offset + 1;
+
+        return queuedEvent;
+    }
+
+    /**
+     * @param logEvent the event to index
+     * @param eventOffset the offset of the event
+     */
+    private void index(LogEvent logEvent, long eventOffset)
+    {
+        Long key = Long.valueOf(eventOffset);
+
+        this.indexes.get(logEvent.getLevel()).put(key, logEvent);
+        this.offsets.put(logEvent, key);
+        this.counters.get(logEvent.getLevel()).incrementAndGet();
+    }
+
+    /**
+     * Must be called with the lock held.
+     * 
+     * @param logEvent the event removed from the queue
+     */
+    private void unindex(LogEvent logEvent)
+    {
+        Long key = this.offsets.remove(logEvent);
+
+        if (key != null && this.indexes.get(logEvent.getLevel()).remove(key) != null) {
+            this.counters.get(logEvent.getLevel()).decrementAndGet();
+        }
+    }
+
+    /**
+     * Remove an event from the queue and from the indexes. Must be called with the lock held.
+     * 
+     * @param logEvent the event to remove
+     * @return true if the event has been found
+     */
+    private boolean dequeue(Object logEvent)
+    {
+        for (Iterator<LogEvent> it = super.iterator(); it.hasNext();) {
+            LogEvent queuedEvent = it.next();
+            if (queuedEvent.equals(logEvent)) {
+                it.remove();
+                unindex(queuedEvent);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the number of events of a level lower than {@link LogLevel#WARN} in the queue
+     */
+    private int getDroppableCount()
+    {
+        int count = 0;
+        for (LogLevel level : LogLevel.values()) {
+            if (level.compareTo(LogLevel.WARN) > 0) {
+                count += this.counters.get(level).get();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @return the index entry of the oldest event of a level lower than {@link LogLevel#WARN}, null if there is none
+     */
+    private Map.Entry<Long, LogEvent> getOldestDroppable()
+    {
+        Map.Entry<Long, LogEvent> oldest = null;
+
+        for (LogLevel level : LogLevel.values()) {
+            if (level.compareTo(LogLevel.WARN) > 0) {
+                Map.Entry<Long, LogEvent> first = this.indexes.get(level).firstEntry();
+                if (first != null && (oldest == null || first.getKey() < oldest.getKey())) {
+                    oldest = first;
+                }
+            }
+        }
+
+        return oldest;
+    }
+
+    /**
+     * Remove the oldest events of a level lower than {@link LogLevel#WARN} until the limit is respected. Must be called
+     * with the lock held.
+     */
+    private void trim()
+    {
+        while (this.limit > 0 && getDroppableCount() > this.limit) {
+            Map.Entry<Long, LogEvent> oldest = getOldestDroppable();
+            if (oldest == null) {
+                break;
+            }
+
+            evict(oldest.getValue());
+        }
+    }
+
+    /**
+     * Remove the oldest event of a level lower than {@link LogLevel#WARN} from the queue and from the indexes. Must be
+     * called with the lock held.
+     * <p>
+     * Only retained events precede it after the previously evicted event so the search resumes from there instead of
+     * going again through all the retained events at the head of the queue.
+     * 
+     * @param logEvent the event to remove
+     */
+    private void evict(LogEvent logEvent)
+    {
+        if (this.trimIterator == null || !skipTo(logEvent)) {
+            // The event is not after the previous position (for example the iterator reached the end of the queue
+            // before the event was added, or the previous position has been polled)
+            this.trimIterator = super.iterator();
 
-        for (LogEvent log : this) {
-            if (log.getLevel().compareTo(level) <= 0) {
-                levelLogs.add(log);
+            if (!skipTo(logEvent)) {
+                this.trimIterator = null;
             }
         }
 
-        return levelLogs;
+        if (this.trimIterator != null) {
+            this.trimIterator.remove();
+        }
+
+        unindex(logEvent);
+    }
+
+    /**
+     * @param logEvent the event to look for, compared by identity
+     * @return true if {@link #trimIterator} has just returned the event, false if it has reached the end of the queue
+     */
+    private boolean skipTo(LogEvent logEvent)
+    {
+        while (this.trimIterator.hasNext()) {
+            if (this.trimIterator.next() == logEvent) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Queue
+
+    @Override
+    public boolean offer(LogEvent logEvent)
+    {
+        if (this.indexes == null) {
+            // Called by ConcurrentLinkedQueue#readObject() on some JVMs, the indexes are built by #readResolve()
+            return super.offer(logEvent);
+        }
+
+        addEvent(logEvent);
+
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection< ? extends LogEvent> logEvents)
+    {
+        if (logEvents == this) {
+            throw new IllegalArgumentException("Can't add a queue to itself");
+        }
+
+        boolean modified = false;
+        for (LogEvent logEvent : logEvents) {
+            modified |= offer(logEvent);
+        }
+
+        return modified;
+    }
+
+    @Override
+    public LogEvent poll()
+    {
+        synchronized (this.lock) {
+            LogEvent logEvent = super.poll();
+
+            if (logEvent != null) {
+                unindex(logEvent);
+            }
+
+            return logEvent;
+        }
+    }
+
+    @Override
+    public boolean remove(Object object)
+    {
+        if (object == null) {
+            return false;
+        }
+
+        synchronized (this.lock) {
+            return dequeue(object);
+        }
+    }
+
+    @Override
+    public Iterator<LogEvent> iterator()
+    {
+        return new IndexedIterator(super.iterator());
+    }
+
+    // Serializable
+
+    /**
+     * The indexes are not serialized, they are rebuilt from the events. This is done here rather than in
+     * {@code readObject()} because XStream does not call it for the queues stored without a {@link LogQueue} section
+     * (e.g. the logs of the job statuses stored before the indexes were introduced). Depending on how the queue has
+     * been instantiated the indexes might be missing or might have been created empty before the events were read.
+     * 
+     * @return this queue
+     */
+    private Object readResolve()
+    {
+        initIndexes();
+
+        for (Iterator<LogEvent> it = super.iterator(); it.hasNext();) {
+            index(it.next(), this.offset);
+            ++this.offset;
+        }
+
+        return this;
     }
 
     // Logger
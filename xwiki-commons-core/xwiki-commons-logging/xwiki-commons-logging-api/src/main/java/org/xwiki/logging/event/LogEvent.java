@@ -23,6 +23,7 @@
 
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.slf4j.Marker;
@@ -172,6 +173,63 @@ public String getFormattedMessage()
         return this.formattedMessage;
     }
 
+    /**
+     * Release the arguments of the event which might be big live objects (documents, extensions, etc.) by replacing
+     * them with their {@link String} representation, as inserted in the formatted message. Immutable arguments like
+     * {@link String}s, primitive wrappers and enums are kept as is.
+     * 
+     * @return a copy of this event with immutable arguments, or this event if all its arguments are already immutable
+     * @since 4.5M1
+     */
+    public LogEvent snapshot()
+    {
+        if (isSnapshot()) {
+            return this;
+        }
+
+        Object[] snapshotArray = new Object[this.argumentArray.length];
+        for (int i = 0; i < snapshotArray.length; ++i) {
+            snapshotArray[i] = toImmutable(this.argumentArray[i]);
+        }
+
+        return new LogEvent(getMarker(), getLevel(), getMessage(), snapshotArray, getThrowable());
+    }
+
+    /**
+     * @return true if all the arguments of the event are immutable
+     */
+    private boolean isSnapshot()
+    {
+        if (this.argumentArray != null) {
+            for (Object argument : this.argumentArray) {
+                if (!isImmutable(argument)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param argument the argument
+     * @return true if the argument is immutable
+     */
+    private boolean isImmutable(Object argument)
+    {
+        return argument == null || argument instanceof String || argument instanceof Enum
+            || ClassUtils.isPrimitiveWrapper(argument.getClass());
+    }
+
+    /**
+     * @param argument the argument
+     * @return the argument if it's immutable, its representation in the formatted message otherwise
+     */
+    private Object toImmutable(Object argument)
+    {
+        return isImmutable(argument) ? argument : MessageFormatter.format("{}", argument).getMessage();
+    }
+
     /**
      * @return the log message cut in peaces
      * @since 4.2M1
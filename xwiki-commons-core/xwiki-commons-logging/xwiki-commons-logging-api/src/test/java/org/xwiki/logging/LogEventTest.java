@@ -53,4 +53,25 @@ public void testGetMessageElements()
 
         Assert.assertEquals(logEvent.getMessageElements(), Arrays.asList("message ", ""));
     }
+
+    @Test
+    public void testSnapshot()
+    {
+        LogEvent logEvent = new LogEvent(null, LogLevel.ERROR, "message {} {}", new Object[] {"value", 42}, null);
+
+        Assert.assertSame(logEvent, logEvent.snapshot());
+
+        Object argument = new StringBuilder("live");
+        logEvent =
+            new LogEvent(null, LogLevel.ERROR, "message {} {} {}", new Object[] {"value", argument,
+                new int[] {1, 2}}, null);
+
+        LogEvent snapshot = logEvent.snapshot();
+
+        Assert.assertNotSame(logEvent, snapshot);
+        Assert.assertSame(argument, logEvent.getArgumentArray()[1]);
+        Assert.assertEquals(Arrays.asList("value", "live", "[1, 2]"), Arrays.asList(snapshot.getArgumentArray()));
+        Assert.assertEquals(logEvent.getFormattedMessage(), snapshot.getFormattedMessage());
+        Assert.assertEquals(logEvent.getMessageElements(), snapshot.getMessageElements());
+    }
 }
@@ -19,11 +19,20 @@
  */
 package org.xwiki.logging;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.xwiki.logging.event.LogEvent;
 
+import com.thoughtworks.xstream.XStream;
+
 /**
  * Test {@link LogQueue}.
  * 
@@ -56,4 +65,211 @@ public void testError()
         Assert.assertEquals(logEvent.getFormattedMessage(), "message param1");
         Assert.assertNotNull(logEvent.getThrowable());
     }
+
+    @Test
+    public void testGetLogs()
+    {
+        LogQueue queue = new LogQueue();
+
+        queue.error("error1");
+        queue.info("info1");
+        queue.warn("warn1");
+        queue.error("error2");
+
+        Assert.assertEquals(2, queue.getLogs(LogLevel.ERROR).size());
+        Assert.assertEquals("error2", queue.getLogs(LogLevel.ERROR).get(1).getMessage());
+        Assert.assertEquals(2, queue.getLogCount(LogLevel.ERROR));
+        Assert.assertEquals(0, queue.getLogCount(LogLevel.DEBUG));
+
+        List<LogEvent> logs = queue.getLogsFrom(LogLevel.WARN);
+        Assert.assertEquals(3, logs.size());
+        Assert.assertEquals("error1", logs.get(0).getMessage());
+        Assert.assertEquals("warn1", logs.get(1).getMessage());
+        Assert.assertEquals("error2", logs.get(2).getMessage());
+
+        Assert.assertEquals("error1", queue.poll().getMessage());
+        Assert.assertEquals(1, queue.getLogCount(LogLevel.ERROR));
+
+        Iterator<LogEvent> iterator = queue.iterator();
+        iterator.next();
+        iterator.next();
+        iterator.remove();
+        Assert.assertEquals(0, queue.getLogs(LogLevel.WARN).size());
+        Assert.assertEquals(2, queue.getLogsFrom(LogLevel.TRACE).size());
+    }
+
+    @Test
+    public void testGetLogsSince()
+    {
+        LogQueue queue = new LogQueue();
+
+        queue.info("info1");
+        queue.error("error1");
+
+        long offset = queue.getOffset();
+        Assert.assertEquals(2, offset);
+        Assert.assertEquals(2, queue.getLogsSince(0).size());
+        Assert.assertTrue(queue.getLogsSince(offset).isEmpty());
+
+        queue.debug("debug1");
+        queue.warn("warn1");
+
+        List<LogEvent> logs = queue.getLogsSince(offset);
+        Assert.assertEquals(2, logs.size());
+        Assert.assertEquals("debug1", logs.get(0).getMessage());
+        Assert.assertEquals("warn1", logs.get(1).getMessage());
+        Assert.assertEquals(4, queue.getOffset());
+    }
+
+    @Test
+    public void testLimit()
+    {
+        LogQueue queue = new LogQueue(2);
+
+        queue.error("error1");
+        queue.info("info1");
+        queue.debug("debug1");
+        queue.warn("warn1");
+        queue.trace("trace1");
+        queue.error("error2");
+        queue.info("info2");
+
+        Assert.assertEquals(5, queue.size());
+        Assert.assertEquals(0, queue.getLogCount(LogLevel.DEBUG));
+        Assert.assertEquals(1, queue.getLogCount(LogLevel.INFO));
+
+        List<LogEvent> logs = queue.getLogsFrom(LogLevel.TRACE);
+        Assert.assertEquals(5, logs.size());
+        Assert.assertEquals("error1", logs.get(0).getMessage());
+        Assert.assertEquals("warn1", logs.get(1).getMessage());
+        Assert.assertEquals("trace1", logs.get(2).getMessage());
+        Assert.assertEquals("error2", logs.get(3).getMessage());
+        Assert.assertEquals("info2", logs.get(4).getMessage());
+        Assert.assertEquals("error1", queue.peek().getMessage());
+        Assert.assertEquals(7, queue.getOffset());
+    }
+
+    @Test
+    public void testLimitWithRetainedEvents()
+    {
+        LogQueue queue = new LogQueue(2);
+
+        for (int i = 0; i < 100; ++i) {
+            queue.warn("warn" + i);
+            queue.info("info" + i);
+        }
+
+        Assert.assertEquals(102, queue.size());
+        Assert.assertEquals(2, queue.getLogCount(LogLevel.INFO));
+        Assert.assertEquals("info98", queue.getLogs(LogLevel.INFO).get(0).getMessage());
+
+        // Remove the events at the head of the queue, including the ones preceding the last trimmed event
+        while (queue.peek().getLevel() == LogLevel.WARN) {
+            queue.poll();
+        }
+        queue.poll();
+
+        queue.info("info100");
+        queue.info("info101");
+
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(2, queue.getLogCount(LogLevel.INFO));
+        Assert.assertEquals("warn99", queue.peek().getMessage());
+        Assert.assertEquals("info100", queue.getLogs(LogLevel.INFO).get(0).getMessage());
+        Assert.assertEquals("info101", queue.getLogs(LogLevel.INFO).get(1).getMessage());
+    }
+
+    @Test
+    public void testRemove()
+    {
+        LogQueue queue = new LogQueue();
+
+        LogEvent logEvent = new LogEvent(LogLevel.INFO, "message", null, null);
+        queue.add(logEvent);
+        queue.add(logEvent);
+        queue.info("other");
+
+        Assert.assertEquals(3, queue.getLogCount(LogLevel.INFO));
+
+        Assert.assertTrue(queue.remove(new LogEvent(LogLevel.INFO, "message", null, null)));
+        Assert.assertEquals(2, queue.getLogCount(LogLevel.INFO));
+        Assert.assertEquals(2, queue.getLogsSince(1).size());
+
+        Assert.assertTrue(queue.remove(logEvent));
+        Assert.assertFalse(queue.remove(logEvent));
+        Assert.assertEquals(1, queue.getLogCount(LogLevel.INFO));
+        Assert.assertEquals("other", queue.getLogs(LogLevel.INFO).get(0).getMessage());
+    }
+
+    @Test
+    public void testSerialization() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(new LogQueue(1));
+        output.close();
+
+        LogQueue queue = (LogQueue) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        queue.error("error1");
+        queue.info("info1");
+        queue.info("info2");
+
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals(3, queue.getOffset());
+        Assert.assertEquals(1, queue.getLogCount(LogLevel.INFO));
+        Assert.assertEquals("info2", queue.getLogsSince(1).get(0).getMessage());
+        Assert.assertEquals("error1", queue.poll().getMessage());
+        Assert.assertEquals(0, queue.getLogCount(LogLevel.ERROR));
+    }
+
+    /**
+     * The logs of the job statuses stored before the indexes were introduced don't have any {@link LogQueue} section.
+     */
+    @Test
+    public void testXStreamWithoutLogQueueSection()
+    {
+        String xml =
+            "<org.xwiki.logging.LogQueue serialization=\"custom\">"
+                + "<unserializable-parents/>"
+                + "<java.util.concurrent.ConcurrentLinkedQueue>"
+                + "<default/>"
+                + "<org.xwiki.logging.event.LogEvent><level>INFO</level><message>info</message>"
+                + "<argumentArray><string>parameter value</string></argumentArray>"
+                + "</org.xwiki.logging.event.LogEvent>"
+                + "<org.xwiki.logging.event.LogEvent><level>ERROR</level><message>error</message>"
+                + "</org.xwiki.logging.event.LogEvent>"
+                + "<null/>"
+                + "</java.util.concurrent.ConcurrentLinkedQueue>"
+                + "</org.xwiki.logging.LogQueue>";
+
+        LogQueue queue = (LogQueue) new XStream().fromXML(xml);
+
+        Assert.assertEquals(2, queue.getOffset());
+        Assert.assertEquals("info", queue.getLogs(LogLevel.INFO).get(0).getMessage());
+        Assert.assertEquals(1, queue.getLogCount(LogLevel.ERROR));
+
+        queue.addLogEvent(LogLevel.INFO, "other", new Object[0]);
+
+        Assert.assertEquals(3, queue.size());
+        Assert.assertEquals(2, queue.getLogCount(LogLevel.INFO));
+        Assert.assertEquals("other", queue.getLogsSince(2).get(0).getMessage());
+    }
+
+    @Test
+    public void testSnapshot()
+    {
+        LogQueue queue = new LogQueue(0, true);
+
+        Object argument = new StringBuilder("live");
+        LogEvent logEvent = queue.addLogEvent(LogLevel.INFO, "message {}", new Object[] {argument});
+
+        Assert.assertEquals("live", logEvent.getArgumentArray()[0]);
+        Assert.assertSame(logEvent, queue.peek());
+
+        queue.add(new LogEvent(LogLevel.INFO, "message {}", new Object[] {argument}, null));
+
+        Assert.assertEquals("message live", queue.getLogs(LogLevel.INFO).get(1).getFormattedMessage());
+        Assert.assertEquals("live", queue.getLogs(LogLevel.INFO).get(1).getArgumentArray()[0]);
+    }
 }
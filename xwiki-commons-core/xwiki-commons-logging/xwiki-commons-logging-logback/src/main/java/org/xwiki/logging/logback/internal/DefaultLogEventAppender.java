@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.logging.LogLevel;
+import org.xwiki.logging.event.LogEvent;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.IndexedObservationManager;
+import org.xwiki.observation.ObservationManager;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
+import ch.qos.logback.core.AppenderBase;
+
+/**
+ * Default implementation of {@link LogEventAppender}.
+ * <p>
+ * If the logs of the current thread are captured (see {@link org.xwiki.logging.LoggerManager#pushLogListener}), the
+ * event is first sent directly to the listener capturing them.
+ * </p>
+ * <p>
+ * No {@link LogEvent} is created when the logs of the current thread are not captured and the Observation Manager
+ * knows that no listener is listening to them (see {@link IndexedObservationManager}).
+ * </p>
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Component
+@Singleton
+public class DefaultLogEventAppender extends AppenderBase<ILoggingEvent> implements LogEventAppender
+{
+    /**
+     * The logger to log.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * The component manager.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * The listeners capturing the logs of each thread.
+     */
+    @Inject
+    private LogListenerStack logListeners;
+
+    /**
+     * Logback utilities.
+     */
+    private LogbackUtils utils = new LogbackUtils();
+
+    @Override
+    public String getName()
+    {
+        // Keep the name the appender had when it was implemented by the event listener
+        return LogbackEventGenerator.NAME;
+    }
+
+    @Override
+    public synchronized void register(ch.qos.logback.classic.Logger rootLogger)
+    {
+        if (!isStarted()) {
+            setContext(rootLogger.getLoggerContext());
+            rootLogger.addAppender(this);
+            start();
+        }
+    }
+
+    /**
+     * @return the ObservationManager implementation
+     * @throws ComponentLookupException failed to get ObservationManager implementation
+     */
+    private ObservationManager getObservationManager() throws ComponentLookupException
+    {
+        return this.componentManager.getInstance(ObservationManager.class);
+    }
+
+    /**
+     * @param observationManager the Observation Manager
+     * @return {@code false} if the Observation Manager knows that no listener can receive a {@link LogEvent}
+     */
+    private boolean isListened(ObservationManager observationManager)
+    {
+        return !(observationManager instanceof IndexedObservationManager)
+            || ((IndexedObservationManager) observationManager).isListened(LogEvent.class);
+    }
+
+    /**
+     * @param event the Logback event
+     * @param logLevel the level of the event
+     * @return the log event to send to the listeners
+     */
+    private LogEvent toLogEvent(ILoggingEvent event, LogLevel logLevel)
+    {
+        Throwable throwable = null;
+        IThrowableProxy throwableProxy = event.getThrowableProxy();
+        if (throwableProxy instanceof ThrowableProxy) {
+            throwable = ((ThrowableProxy) throwableProxy).getThrowable();
+        }
+
+        return new LogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(), throwable);
+    }
+
+    @Override
+    protected void append(ILoggingEvent event)
+    {
+        try {
+            LogLevel logLevel = this.utils.toLogLevel(event.getLevel());
+
+            // The log event is only created when someone is going to receive it
+            LogEvent logevent = null;
+
+            // Send the log to the listener capturing the current thread logs, if any
+            if (this.logListeners.isCapturing()) {
+                logevent = toLogEvent(event, logLevel);
+                sendToCapturingListener(logevent, event.getLoggerName());
+            }
+
+            ObservationManager observationManager = getObservationManager();
+            if (isListened(observationManager)) {
+                if (logevent == null) {
+                    logevent = toLogEvent(event, logLevel);
+                }
+                observationManager.notify(logevent, event.getLoggerName(), null);
+            }
+        } catch (IllegalArgumentException e) {
+            this.logger.debug("Unsupported log level [{}]", event.getLevel());
+        } catch (ComponentLookupException e) {
+            this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
+        }
+    }
+
+    /**
+     * Send the log event to the listener capturing the logs of the current thread.
+     * 
+     * @param logEvent the log event
+     * @param loggerName the name of the logger which produced the log
+     */
+    private void sendToCapturingListener(LogEvent logEvent, String loggerName)
+    {
+        EventListener listener = this.logListeners.peek();
+
+        if (listener != null) {
+            try {
+                listener.onEvent(logEvent, loggerName, null);
+            } catch (Exception e) {
+                // protect from bad listeners
+                this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] {logEvent, listener, e});
+            }
+        }
+    }
+}
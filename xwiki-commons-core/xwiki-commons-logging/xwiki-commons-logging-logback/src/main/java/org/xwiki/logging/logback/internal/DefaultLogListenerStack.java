@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.observation.EventListener;
+
+/**
+ * Default implementation of {@link LogListenerStack} based on a {@link ThreadLocal}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Component
+@Singleton
+public class DefaultLogListenerStack implements LogListenerStack
+{
+    /**
+     * The stack of listeners for the current thread. Not set when the thread logs are not captured.
+     */
+    private ThreadLocal<List<EventListener>> listeners = new ThreadLocal<List<EventListener>>();
+
+    @Override
+    public void push(EventListener listener)
+    {
+        List<EventListener> listenerStack = this.listeners.get();
+
+        if (listenerStack == null) {
+            listenerStack = new ArrayList<EventListener>();
+            this.listeners.set(listenerStack);
+        }
+
+        listenerStack.add(listener);
+    }
+
+    @Override
+    public EventListener pop()
+    {
+        List<EventListener> listenerStack = this.listeners.get();
+
+        EventListener listener = null;
+        if (listenerStack != null) {
+            listener = listenerStack.remove(listenerStack.size() - 1);
+            if (listenerStack.isEmpty()) {
+                this.listeners.remove();
+            }
+        }
+
+        return listener;
+    }
+
+    @Override
+    public boolean isCapturing()
+    {
+        return this.listeners.get() != null;
+    }
+
+    @Override
+    public EventListener peek()
+    {
+        List<EventListener> listenerStack = this.listeners.get();
+
+        return listenerStack != null ? listenerStack.get(listenerStack.size() - 1) : null;
+    }
+}
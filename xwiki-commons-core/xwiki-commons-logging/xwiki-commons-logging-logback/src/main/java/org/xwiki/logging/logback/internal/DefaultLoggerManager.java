@@ -21,7 +21,6 @@
 
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.Stack;
 
 import javax.inject.Inject;
 
@@ -32,8 +31,6 @@
 import org.xwiki.logging.LogLevel;
 import org.xwiki.logging.LoggerManager;
 import org.xwiki.observation.EventListener;
-import org.xwiki.observation.ObservationManager;
-import org.xwiki.observation.WrappedThreadEventListener;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -49,21 +46,22 @@
 public class DefaultLoggerManager implements LoggerManager, Initializable
 {
     /**
-     * Used to register/unregister {@link org.xwiki.logging.event.LogEvent} listeners.
+     * The stacks of {@link org.xwiki.logging.event.LogEvent} listeners of each thread.
      */
     @Inject
-    private ObservationManager observation;
+    private LogListenerStack listeners;
 
     /**
-     * The logger.
+     * The appender sending the captured logs to the listeners.
      */
     @Inject
-    private Logger logger;
+    private LogEventAppender logEventAppender;
 
     /**
-     * The stack of listeners for the current thread.
+     * The logger.
      */
-    private ThreadLocal<Stack<EventListener>> listeners = new ThreadLocal<Stack<EventListener>>();
+    @Inject
+    private Logger logger;
 
     /**
      * Logback utilities.
@@ -82,12 +80,15 @@ public void initialize() throws InitializationException
         ch.qos.logback.classic.Logger rootLogger = getRootLogger();
 
         if (rootLogger != null) {
+            // Make sure the captured logs are sent to the listeners
+            this.logEventAppender.register(rootLogger);
+
             Iterator<Appender<ILoggingEvent>> iterator = rootLogger.iteratorForAppenders();
 
             while (iterator.hasNext()) {
                 Appender<ILoggingEvent> appender = iterator.next();
 
-                if (!(appender instanceof LogbackEventGenerator)) {
+                if (appender != this.logEventAppender) {
                     appender.addFilter(this.forbiddenThreads);
                 }
             }
@@ -100,44 +101,21 @@ public void initialize() throws InitializationException
     @Override
     public void pushLogListener(EventListener listener)
     {
-        Stack<EventListener> listenerStack = this.listeners.get();
-
-        if (listenerStack == null) {
-            listenerStack = new Stack<EventListener>();
-            this.listeners.set(listenerStack);
-        }
-
-        if (!listenerStack.isEmpty()) {
-            this.observation.removeListener(listenerStack.peek().getName());
-        }
-
-        if (listener != null) {
-            this.observation.addListener(new WrappedThreadEventListener(listener, Thread.currentThread()));
-        }
-        if (listenerStack.isEmpty()) {
+        if (!this.listeners.isCapturing()) {
             grabLog(Thread.currentThread());
         }
-        listenerStack.push(listener);
+
+        this.listeners.push(listener);
     }
 
     @Override
     public EventListener popLogListener()
     {
-        Stack<EventListener> listenerStack = this.listeners.get();
-
         EventListener listener;
-        if (listenerStack != null && !listenerStack.isEmpty()) {
-            listener = listenerStack.pop();
-            if (listener != null) {
-                this.observation.removeListener(listener.getName());
-            }
-            if (listenerStack.isEmpty()) {
+        if (this.listeners.isCapturing()) {
+            listener = this.listeners.pop();
+            if (!this.listeners.isCapturing()) {
                 ungrabLog(Thread.currentThread());
-            } else {
-                EventListener topListener = listenerStack.peek();
-                if (topListener != null) {
-                    this.observation.addListener(new WrappedThreadEventListener(topListener, Thread.currentThread()));
-                }
             }
         } else {
             listener = null;
@@ -0,0 +1,40 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import org.xwiki.component.annotation.Role;
+
+/**
+ * The Logback appender converting logs to {@link org.xwiki.logging.event.LogEvent}s and sending them to the listener
+ * capturing the logs of the current thread and to the {@link org.xwiki.observation.ObservationManager}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Role
+public interface LogEventAppender
+{
+    /**
+     * Register the appender in the provided root logger, if not already done.
+     * 
+     * @param rootLogger the Logback root logger
+     */
+    void register(ch.qos.logback.classic.Logger rootLogger);
+}
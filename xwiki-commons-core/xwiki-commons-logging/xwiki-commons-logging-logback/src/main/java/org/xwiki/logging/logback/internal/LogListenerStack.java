@@ -0,0 +1,54 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.observation.EventListener;
+
+/**
+ * The stack of log listeners of each thread. Logs produced by a thread are sent directly to the listener at the top of
+ * its stack, without going through the {@link org.xwiki.observation.ObservationManager}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+@Role
+public interface LogListenerStack
+{
+    /**
+     * @param listener the listener which will receive the logs of the current thread, can be null to discard them
+     */
+    void push(EventListener listener);
+
+    /**
+     * @return the listener which was receiving the logs of the current thread
+     */
+    EventListener pop();
+
+    /**
+     * @return true if the logs of the current thread are captured
+     */
+    boolean isCapturing();
+
+    /**
+     * @return the listener receiving the logs of the current thread, null if the logs are discarded or not captured
+     */
+    EventListener peek();
+}
@@ -28,41 +28,39 @@
 
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
-import org.xwiki.component.manager.ComponentLookupException;
-import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
-import org.xwiki.logging.LogLevel;
-import org.xwiki.logging.event.LogEvent;
 import org.xwiki.observation.EventListener;
-import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.Event;
 
-import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.classic.spi.IThrowableProxy;
-import ch.qos.logback.classic.spi.ThrowableProxy;
-import ch.qos.logback.core.AppenderBase;
-
 /**
  * Bridge converting log to Observation Events.
  * <p>
+ * The logs are converted by the {@link LogEventAppender} which this component registers in Logback.
+ * </p>
+ * <p>
  * Note that this class is implemented as an Event Listener only because we needed a way for this component to be
  * initialized early when the system starts and the Observation Manager Component is the first Component loaded in the
  * system and in its own initialization it initializes all Event Listeners... The reason we want this component
- * initialized early is because it adds itself as a Logback Appender in its initialization and thus by having it done
- * early any other component wishing to listen to logs will be able to do so and not "loose" events (there's still a
- * possibility that some logs will not be seen if some Event Listeners do logging in their initialization and it happens
- * that they're initialized before this component...).
+ * initialized early is because it adds the Logback Appender in its initialization and thus by having it done early any
+ * other component wishing to listen to logs will be able to do so and not "loose" events (there's still a possibility
+ * that some logs will not be seen if some Event Listeners do logging in their initialization and it happens that
+ * they're initialized before this component...).
  * </p>
  * 
  * @version $Id$
  * @since 3.2M1
  */
 @Component
-@Named("LogbackEventGenerator")
+@Named(LogbackEventGenerator.NAME)
 @Singleton
-public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implements EventListener, Initializable
+public class LogbackEventGenerator implements EventListener, Initializable
 {
+    /**
+     * The name of the listener and of the appender.
+     */
+    public static final String NAME = "LogbackEventGenerator";
+
     /**
      * The logger to log.
      */
@@ -70,10 +68,10 @@ public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implement
     private Logger logger;
 
     /**
-     * The component manager.
+     * The appender converting the logs to events.
      */
     @Inject
-    private ComponentManager componentManager;
+    private LogEventAppender appender;
 
     /**
      * Logback utilities.
@@ -83,7 +81,7 @@ public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implement
     @Override
     public String getName()
     {
-        return "LogbackEventGenerator";
+        return NAME;
     }
 
     @Override
@@ -101,9 +99,7 @@ public void initialize() throws InitializationException
         ch.qos.logback.classic.Logger rootLogger = getRootLogger();
 
         if (rootLogger != null) {
-            setContext(rootLogger.getLoggerContext());
-            rootLogger.addAppender(this);
-            start();
+            this.appender.register(rootLogger);
         } else {
             this.logger.warn("Could not find any Logback root logger."
                 + " The logging module won't be able to catch logs.");
@@ -117,38 +113,6 @@ public void onEvent(Event event, Object source, Object data)
         // initialization (see the class documentation above).
     }
 
-    /**
-     * @return the ObservationManager implementation
-     * @throws ComponentLookupException failed to get ObservationManager implementation
-     */
-    private ObservationManager getObservationManager() throws ComponentLookupException
-    {
-        return this.componentManager.getInstance(ObservationManager.class);
-    }
-
-    @Override
-    protected void append(ILoggingEvent event)
-    {
-        Throwable throwable = null;
-        IThrowableProxy throwableProxy = event.getThrowableProxy();
-        if (throwableProxy instanceof ThrowableProxy) {
-            throwable = ((ThrowableProxy) throwableProxy).getThrowable();
-        }
-
-        try {
-            LogLevel logLevel = this.utils.toLogLevel(event.getLevel());
-
-            LogEvent logevent =
-                new LogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(), throwable);
-
-            getObservationManager().notify(logevent, event.getLoggerName(), null);
-        } catch (IllegalArgumentException e) {
-            this.logger.debug("Unsupported log level [{}]", event.getLevel());
-        } catch (ComponentLookupException e) {
-            this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
-        }
-    }
-
     /**
      * @return the Logback root logger or null if Logback is not available
      */
@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.logging.LogLevel;
+import org.xwiki.logging.event.LogEvent;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.IndexedObservationManager;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link DefaultLogEventAppender}.
+ * 
+ * @version $Id$
+ */
+public class DefaultLogEventAppenderTest
+{
+    private DefaultLogEventAppender appender = new DefaultLogEventAppender();
+
+    private IndexedObservationManager observationManager = mock(IndexedObservationManager.class);
+
+    private LogListenerStack logListeners = mock(LogListenerStack.class);
+
+    private LoggingEvent event = new LoggingEvent();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ComponentManager componentManager = mock(ComponentManager.class);
+        when(componentManager.<ObservationManager>getInstance(ObservationManager.class)).thenReturn(
+            this.observationManager);
+
+        ReflectionUtils.setFieldValue(this.appender, "logger", mock(Logger.class));
+        ReflectionUtils.setFieldValue(this.appender, "componentManager", componentManager);
+        ReflectionUtils.setFieldValue(this.appender, "logListeners", this.logListeners);
+
+        this.event.setLevel(Level.INFO);
+        this.event.setMessage("message");
+        this.event.setLoggerName("logger");
+    }
+
+    @Test
+    public void appendWhenListened()
+    {
+        when(this.observationManager.isListened(LogEvent.class)).thenReturn(true);
+
+        this.appender.append(this.event);
+
+        verify(this.observationManager).notify(eq(new LogEvent(null, LogLevel.INFO, "message", null, null)),
+            eq("logger"), eq(null));
+    }
+
+    @Test
+    public void appendWhenNotListened()
+    {
+        this.appender.append(this.event);
+
+        verify(this.observationManager, never()).notify(any(Event.class), any(), any());
+    }
+
+    @Test
+    public void appendWhenCapturingAndNotListened()
+    {
+        EventListener listener = mock(EventListener.class);
+        when(this.logListeners.isCapturing()).thenReturn(true);
+        when(this.logListeners.peek()).thenReturn(listener);
+
+        this.appender.append(this.event);
+
+        verify(listener).onEvent(eq(new LogEvent(null, LogLevel.INFO, "message", null, null)), eq("logger"),
+            eq(null));
+        verify(this.observationManager, never()).notify(any(Event.class), any(), any());
+    }
+}
@@ -53,13 +53,14 @@
  * @version $Id$
  * @since 3.2M3
  */
-@ComponentList({DefaultLoggerManager.class, DefaultObservationManager.class, LogbackEventGenerator.class})
+@ComponentList({DefaultLoggerManager.class, DefaultObservationManager.class, LogbackEventGenerator.class,
+    DefaultLogListenerStack.class, DefaultLogEventAppender.class})
 public class DefaultLoggerManagerTest
 {
     @Rule
     public final MockitoComponentMockingRule<DefaultLoggerManager> mocker =
         new MockitoComponentMockingRule<DefaultLoggerManager>(DefaultLoggerManager.class,
-            Arrays.asList(ObservationManager.class));
+            Arrays.asList(ObservationManager.class, LogListenerStack.class, LogEventAppender.class));
 
     private DefaultLoggerManager loggerManager;
 
@@ -178,6 +179,25 @@ public void testStackedListeners()
         this.loggerManager.popLogListener();
     }
 
+    @Test
+    public void testCapturedLogsDontGoThroughObservationManager() throws Exception
+    {
+        LogQueue queue = new LogQueue();
+
+        this.loggerManager.pushLogListener(new LogQueueListener("loglistenerid", queue));
+
+        // The capturing listener is not registered as a global listener
+        ObservationManager observationManager = this.mocker.getInstance(ObservationManager.class);
+        Assert.assertNull(observationManager.getListener("loglistenerid"));
+
+        this.logger.error("[test] captured");
+
+        Assert.assertEquals(1, queue.size());
+        Assert.assertEquals("[test] captured", queue.poll().getMessage());
+
+        this.loggerManager.popLogListener();
+    }
+
     @Test
     public void testNullListeners()
     {
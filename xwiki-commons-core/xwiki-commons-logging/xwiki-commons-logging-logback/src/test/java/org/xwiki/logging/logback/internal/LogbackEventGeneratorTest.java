@@ -49,7 +49,9 @@
  */
 @ComponentList({
     DefaultObservationManager.class,
-    LogbackEventGenerator.class
+    LogbackEventGenerator.class,
+    DefaultLogListenerStack.class,
+    DefaultLogEventAppender.class
 })
 public class LogbackEventGeneratorTest
 {
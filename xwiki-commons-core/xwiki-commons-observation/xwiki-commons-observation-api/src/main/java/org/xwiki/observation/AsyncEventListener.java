@@ -0,0 +1,70 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+/**
+ * An {@link EventListener} whose {@link #onEvent(org.xwiki.observation.event.Event, Object, Object)} method is called
+ * asynchronously, so that it does not add its latency to the code notifying the event.
+ * <p>
+ * Matching events are put in a bounded queue dedicated to the listener and drained by a pool of threads shared by all
+ * asynchronous listeners. Events are always delivered to a given listener in the order in which they were notified,
+ * one at a time. Note that the event source and data are passed as is, so they must remain usable after the
+ * notification returned.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public interface AsyncEventListener extends EventListener
+{
+    /**
+     * What to do when an event is notified while the queue of the listener is full.
+     * <p>
+     * A thread delivering asynchronous events (for example an asynchronous listener notifying an event) never waits:
+     * with {@link #BLOCK} and {@link #CALLER_RUNS} the events it notifies are queued beyond the capacity of the queue.
+     */
+    enum OverflowPolicy
+    {
+        /**
+         * Wait for the queue to have room for the new event.
+         */
+        BLOCK,
+
+        /**
+         * Discard the oldest event waiting in the queue.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Deliver the waiting events and the new event in the notifying thread.
+         */
+        CALLER_RUNS
+    }
+
+    /**
+     * @return the maximum number of events waiting to be delivered to this listener
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return what to do when an event is notified while the queue of the listener is full, {@code null} for
+     *         {@link OverflowPolicy#CALLER_RUNS}
+     */
+    OverflowPolicy getOverflowPolicy();
+}
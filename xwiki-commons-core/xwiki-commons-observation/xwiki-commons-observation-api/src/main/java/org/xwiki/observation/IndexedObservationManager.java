@@ -0,0 +1,39 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+import org.xwiki.observation.event.Event;
+
+/**
+ * An {@link ObservationManager} indexing its listeners by event class, which allows code notifying frequent events to
+ * check cheaply whether creating them is worth it.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public interface IndexedObservationManager extends ObservationManager
+{
+    /**
+     * @param eventClass the concrete class of an event
+     * @return {@code false} if no registered listener can receive the events of the passed class, {@code true} if
+     *         some listener might receive them (it still depends on the event matching the listened events)
+     */
+    boolean isListened(Class< ? extends Event> eventClass);
+}
@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.management.JMXBeanRegistration;
+import org.xwiki.observation.AsyncEventListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.internal.jmx.JMXObservationManager;
+
+/**
+ * Manage the queues of the {@link AsyncEventListener}s registered in the Observation Manager and the pool of threads
+ * delivering their events.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class AsyncEventDispatcher
+{
+    /**
+     * The queues of the registered asynchronous listeners, indexed by listener name.
+     */
+    private final Map<String, AsyncListenerQueue> queues = new ConcurrentHashMap<String, AsyncListenerQueue>();
+
+    /**
+     * The pool of threads delivering events to asynchronous listeners, created when the first asynchronous listener
+     * is registered.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The logger to log.
+     */
+    private final Logger logger;
+
+    /**
+     * @param logger the logger to log
+     */
+    public AsyncEventDispatcher(Logger logger)
+    {
+        this.logger = logger;
+    }
+
+    /**
+     * @param listener the listener being registered
+     * @return the listener to register in place of the passed one: a queue if the listener is an
+     *         {@link AsyncEventListener}, the passed listener otherwise
+     */
+    public synchronized EventListener wrap(EventListener listener)
+    {
+        if (listener instanceof AsyncEventListener) {
+            if (this.executor == null) {
+                this.executor =
+                    Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new AsyncThreadFactory());
+            }
+
+            AsyncListenerQueue queue =
+                new AsyncListenerQueue((AsyncEventListener) listener, this.executor, this.logger);
+            this.queues.put(listener.getName(), queue);
+
+            return queue;
+        }
+
+        // A synchronous listener might replace an asynchronous one with the same name
+        this.queues.remove(listener.getName());
+
+        return listener;
+    }
+
+    /**
+     * @param listenerName the name of the listener being unregistered
+     */
+    public void remove(String listenerName)
+    {
+        // Events already queued are still delivered
+        this.queues.remove(listenerName);
+    }
+
+    /**
+     * @return the queues of the registered asynchronous listeners
+     */
+    public Collection<AsyncListenerQueue> getQueues()
+    {
+        return new ArrayList<AsyncListenerQueue>(this.queues.values());
+    }
+
+    /**
+     * Register a JMX MBean providing information about the asynchronous listeners queues.
+     * 
+     * @param componentManager used to lookup the component registering the MBean
+     */
+    public void registerMBean(ComponentManager componentManager)
+    {
+        // Management is optional (it's not available in most unit tests for example)
+        if (componentManager.hasComponent(JMXBeanRegistration.class)) {
+            try {
+                JMXBeanRegistration jmxRegistration = componentManager.getInstance(JMXBeanRegistration.class);
+                jmxRegistration.registerMBean(new JMXObservationManager(this),
+                    "type=Observation,name=AsyncListeners");
+            } catch (ComponentLookupException e) {
+                this.logger.warn("Failed to register the asynchronous listeners MBean", e);
+            }
+        }
+    }
+
+    /**
+     * Stop the threads delivering the events, once the queued events have been delivered.
+     */
+    public synchronized void dispose()
+    {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+}
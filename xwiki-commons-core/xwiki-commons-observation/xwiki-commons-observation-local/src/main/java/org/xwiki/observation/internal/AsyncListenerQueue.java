@@ -0,0 +1,493 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.xwiki.observation.AsyncEventListener;
+import org.xwiki.observation.AsyncEventListener.OverflowPolicy;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * The bounded queue of events waiting to be delivered to an {@link AsyncEventListener}. It's registered in place of
+ * the asynchronous listener so that notifying it queues the event.
+ * <p>
+ * At most one task draining the queue is submitted at a time to the shared executor and events are taken from the
+ * queue and delivered while holding a lock, so that events are delivered in order even when the notifying thread has
+ * to deliver them itself ({@link OverflowPolicy#CALLER_RUNS}).
+ * <p>
+ * A thread which is delivering asynchronous events (a thread of the shared executor, or a notifying thread delivering
+ * events itself) never waits for room in a full queue, nor for the delivery lock of another queue: waiting could
+ * deadlock when a listener notifies its own full queue, or when all the threads of the executor wait for each other's
+ * queues. With the {@link OverflowPolicy#BLOCK} and {@link OverflowPolicy#CALLER_RUNS} policies the events notified
+ * by such a thread are queued beyond the capacity of the queue instead.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class AsyncListenerQueue implements EventListener, Runnable
+{
+    /**
+     * An event waiting to be delivered.
+     */
+    private static class QueuedEvent
+    {
+        /**
+         * The notified event.
+         */
+        private final Event event;
+
+        /**
+         * The source of the event.
+         */
+        private final Object source;
+
+        /**
+         * The additional data related to the event.
+         */
+        private final Object data;
+
+        /**
+         * When the event was queued, in nanoseconds.
+         */
+        private final long queuedTime = System.nanoTime();
+
+        /**
+         * True if the event takes room in the queue, false if it has been queued beyond the capacity of the queue.
+         */
+        private boolean holdsRoom;
+
+        /**
+         * @param event the notified event
+         * @param source the source of the event
+         * @param data the additional data related to the event
+         */
+        QueuedEvent(Event event, Object source, Object data)
+        {
+            this.event = event;
+            this.source = source;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Indicate if the current thread is delivering asynchronous events.
+     */
+    private static final ThreadLocal<Boolean> DELIVERING = new ThreadLocal<Boolean>();
+
+    /**
+     * The listener to deliver the events to.
+     */
+    private final AsyncEventListener listener;
+
+    /**
+     * What to do when the queue is full.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * The maximum number of events waiting to be delivered, not counting the events queued by threads delivering
+     * asynchronous events.
+     */
+    private final int capacity;
+
+    /**
+     * The events waiting to be delivered.
+     */
+    private final BlockingQueue<QueuedEvent> queue = new LinkedBlockingQueue<QueuedEvent>();
+
+    /**
+     * The room left in the queue.
+     */
+    private final Semaphore room;
+
+    /**
+     * The shared executor running the tasks draining the queues.
+     */
+    private final Executor executor;
+
+    /**
+     * The logger to log.
+     */
+    private final Logger logger;
+
+    /**
+     * Held while taking an event from the queue and delivering it.
+     */
+    private final Object deliveryLock = new Object();
+
+    /**
+     * Indicate if a task draining the queue has been submitted to the executor and did not finish yet.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /**
+     * @see #getNotifiedCount()
+     */
+    private final AtomicLong notifiedCount = new AtomicLong();
+
+    /**
+     * @see #getDeliveredCount()
+     */
+    private final AtomicLong deliveredCount = new AtomicLong();
+
+    /**
+     * @see #getDroppedCount()
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * @see #getCallerRunsCount()
+     */
+    private final AtomicLong callerRunsCount = new AtomicLong();
+
+    /**
+     * @see #getLastLag()
+     */
+    private volatile long lastLag;
+
+    /**
+     * @see #getMaxLag()
+     */
+    private volatile long maxLag;
+
+    /**
+     * @param listener the listener to deliver the events to
+     * @param executor the shared executor running the tasks draining the queues
+     * @param logger the logger to log
+     */
+    public AsyncListenerQueue(AsyncEventListener listener, Executor executor, Logger logger)
+    {
+        this.listener = listener;
+        this.overflowPolicy =
+            listener.getOverflowPolicy() != null ? listener.getOverflowPolicy() : OverflowPolicy.CALLER_RUNS;
+        this.capacity = Math.max(1, listener.getQueueCapacity());
+        this.room = new Semaphore(this.capacity);
+        this.executor = executor;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName()
+    {
+        return this.listener.getName();
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return this.listener.getEvents();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Queue the event to be delivered to the listener, applying the overflow policy of the listener if the queue is
+     * full.
+     * 
+     * @see org.xwiki.observation.EventListener#onEvent(org.xwiki.observation.event.Event, java.lang.Object,
+     *      java.lang.Object)
+     */
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        QueuedEvent queuedEvent = new QueuedEvent(event, source, data);
+
+        this.notifiedCount.incrementAndGet();
+
+        if (!offer(queuedEvent)) {
+            switch (this.overflowPolicy) {
+                case DROP_OLDEST:
+                    while (!offer(queuedEvent)) {
+                        if (poll() != null) {
+                            this.droppedCount.incrementAndGet();
+                        }
+                    }
+                    break;
+                case CALLER_RUNS:
+                    if (DELIVERING.get() != null) {
+                        // Delivering in this thread would wait for the delivery lock of this queue
+                        this.queue.offer(queuedEvent);
+                        break;
+                    }
+                    deliverInCallerThread(queuedEvent);
+                    return;
+                default:
+                    if (DELIVERING.get() != null) {
+                        // Waiting for room could wait for this thread
+                        this.queue.offer(queuedEvent);
+                    } else if (!put(queuedEvent)) {
+                        return;
+                    }
+            }
+        }
+
+        schedule();
+    }
+
+    /**
+     * Queue the passed event if there is room in the queue.
+     * 
+     * @param queuedEvent the event to queue
+     * @return true if the event has been queued, false if the queue is full
+     */
+    private boolean offer(QueuedEvent queuedEvent)
+    {
+        if (this.room.tryAcquire()) {
+            queuedEvent.holdsRoom = true;
+            this.queue.offer(queuedEvent);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the oldest event waiting in the queue, {@code null} if the queue is empty
+     */
+    private QueuedEvent poll()
+    {
+        QueuedEvent queuedEvent = this.queue.poll();
+
+        if (queuedEvent != null && queuedEvent.holdsRoom) {
+            this.room.release();
+        }
+
+        return queuedEvent;
+    }
+
+    /**
+     * Wait for the queue to have room for the passed event.
+     * 
+     * @param queuedEvent the event to queue
+     * @return true if the event has been queued, false if the thread was interrupted
+     */
+    private boolean put(QueuedEvent queuedEvent)
+    {
+        try {
+            this.room.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.droppedCount.incrementAndGet();
+            this.logger.warn("Interrupted while waiting to queue event [{}] for listener [{}]", queuedEvent.event,
+                this.listener.getName());
+
+            return false;
+        }
+
+        queuedEvent.holdsRoom = true;
+        this.queue.offer(queuedEvent);
+
+        return true;
+    }
+
+    /**
+     * Deliver the events waiting in the queue and then the passed event in the current thread.
+     * <p>
+     * Only the events already waiting when the lock is acquired are delivered: the ones queued meanwhile by other
+     * threads are left to the worker so that the caller is not stalled by a steady flow of events.
+     * 
+     * @param queuedEvent the event which could not be queued
+     */
+    private void deliverInCallerThread(QueuedEvent queuedEvent)
+    {
+        this.callerRunsCount.incrementAndGet();
+
+        synchronized (this.deliveryLock) {
+            // Deliver the events queued before the new one to keep the order
+            int waiting = this.queue.size();
+            for (int i = 0; i < waiting; ++i) {
+                QueuedEvent waitingEvent = poll();
+                if (waitingEvent == null) {
+                    break;
+                }
+                deliver(waitingEvent);
+            }
+            deliver(queuedEvent);
+        }
+    }
+
+    /**
+     * Make sure a task draining the queue is running or will run.
+     */
+    private void schedule()
+    {
+        if (this.scheduled.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // The executor has been shutdown, deliver in the current thread
+                run();
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        do {
+            while (deliverNext()) {
+                // Continue until the queue is empty
+            }
+
+            this.scheduled.set(false);
+
+            // An event might have been queued after the last poll but before the flag was reset
+        } while (!this.queue.isEmpty() && this.scheduled.compareAndSet(false, true));
+    }
+
+    /**
+     * @return true if an event has been delivered, false if the queue was empty
+     */
+    private boolean deliverNext()
+    {
+        synchronized (this.deliveryLock) {
+            QueuedEvent queuedEvent = poll();
+            if (queuedEvent != null) {
+                deliver(queuedEvent);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Deliver an event to the listener. Must be called with the delivery lock held.
+     * 
+     * @param queuedEvent the event to deliver
+     */
+    private void deliver(QueuedEvent queuedEvent)
+    {
+        long lag = System.nanoTime() - queuedEvent.queuedTime;
+        this.lastLag = lag;
+        if (lag > this.maxLag) {
+            this.maxLag = lag;
+        }
+
+        Boolean delivering = DELIVERING.get();
+        DELIVERING.set(Boolean.TRUE);
+        try {
+            this.listener.onEvent(queuedEvent.event, queuedEvent.source, queuedEvent.data);
+        } catch (Exception e) {
+            // protect from bad listeners
+            this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] {queuedEvent.event,
+                this.listener, e});
+        } finally {
+            if (delivering == null) {
+                DELIVERING.remove();
+            }
+        }
+
+        this.deliveredCount.incrementAndGet();
+    }
+
+    /**
+     * @return the listener to deliver the events to
+     */
+    public AsyncEventListener getListener()
+    {
+        return this.listener;
+    }
+
+    /**
+     * @return what to do when the queue is full
+     */
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return this.overflowPolicy;
+    }
+
+    /**
+     * @return the number of events waiting to be delivered
+     */
+    public int getSize()
+    {
+        return this.queue.size();
+    }
+
+    /**
+     * @return the maximum number of events waiting to be delivered, not counting the events queued by threads
+     *         delivering asynchronous events
+     */
+    public int getCapacity()
+    {
+        return this.capacity;
+    }
+
+    /**
+     * @return the number of events notified to the listener
+     */
+    public long getNotifiedCount()
+    {
+        return this.notifiedCount.get();
+    }
+
+    /**
+     * @return the number of events delivered to the listener
+     */
+    public long getDeliveredCount()
+    {
+        return this.deliveredCount.get();
+    }
+
+    /**
+     * @return the number of events which have been discarded
+     */
+    public long getDroppedCount()
+    {
+        return this.droppedCount.get();
+    }
+
+    /**
+     * @return the number of times the queue was full and the events were delivered in the notifying thread
+     */
+    public long getCallerRunsCount()
+    {
+        return this.callerRunsCount.get();
+    }
+
+    /**
+     * @return the time the last delivered event waited in the queue, in nanoseconds
+     */
+    public long getLastLag()
+    {
+        return this.lastLag;
+    }
+
+    /**
+     * @return the longest time an event waited in the queue, in nanoseconds
+     */
+    public long getMaxLag()
+    {
+        return this.maxLag;
+    }
+}
@@ -19,9 +19,6 @@
  */
 package org.xwiki.observation.internal;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -36,34 +33,34 @@
 import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.observation.EventListener;
-import org.xwiki.observation.ObservationManager;
-import org.xwiki.observation.event.AllEvent;
+import org.xwiki.observation.IndexedObservationManager;
 import org.xwiki.observation.event.Event;
 
 /**
- * Default implementation of the {@link ObservationManager}.
+ * Default implementation of the {@link org.xwiki.observation.ObservationManager}.
  * <p>
- * This component use synchronized for concurrent protection instead of having
- * {@link java.util.concurrent.ConcurrentHashMap} everywhere because it's more efficient since most of methods access to
- * several maps and generally do enumerations.
+ * Registered listeners are modified under a lock but {@link #notify} only reads an immutable dispatch table computed
+ * for each concrete event class: notifying an event is a lookup followed by an array scan. The dispatch table is
+ * updated in place when listeners are added or removed (see {@link ListenerDispatchTable}).
+ * <p>
+ * An {@link org.xwiki.observation.AsyncEventListener} is registered through a queue, so that notifying it only
+ * queues the event. Queued events are delivered by a pool of threads shared by all asynchronous listeners.
  * 
  * @version $Id$
  */
 @Component
 @Singleton
-public class DefaultObservationManager implements ObservationManager, Initializable
+public class DefaultObservationManager implements IndexedObservationManager, Initializable, Disposable
 {
     /**
-     * Registered listeners indexed on Event classes so that it's fast to find all the listeners registered for a given
-     * event, so that {@link #notify} calls execute fast and in a fixed amount a time.
-     * 
-     * @todo Should we allow event inheritance?
+     * Registered listeners and the listeners to call for each concrete event class, so that {@link #notify} calls
+     * execute fast and in a fixed amount a time.
      */
-    private Map<Class< ? extends Event>, Map<String, RegisteredListener>> listenersByEvent =
-        new ConcurrentHashMap<Class< ? extends Event>, Map<String, RegisteredListener>>();
+    private final ListenerDispatchTable dispatchTable = new ListenerDispatchTable();
 
     /**
      * Registered listeners index by listener name. It makes it fast to perform operations on already registered
@@ -84,49 +81,9 @@ public class DefaultObservationManager implements ObservationManager, Initializa
     private Logger logger;
 
     /**
-     * Helper class to store the list of events of a given type associated with a given listener. We need this for
-     * performance reasons and also in order to be able to add events after a listener has been registered.
+     * Manage the queues of asynchronous listeners.
      */
-    private static class RegisteredListener
-    {
-        /**
-         * Events of a given type associated with a given listener.
-         */
-        private List<Event> events = new ArrayList<Event>();
-
-        /**
-         * Listener associated with the events.
-         */
-        private EventListener listener;
-
-        /**
-         * @param listener the listener associated with the events.
-         * @param event the first event to associate with the passed listener. More events are added by calling
-         *            {@link #addEvent(Event)}
-         */
-        RegisteredListener(EventListener listener, Event event)
-        {
-            addEvent(event);
-
-            this.listener = listener;
-        }
-
-        /**
-         * @param event the event to add
-         */
-        void addEvent(Event event)
-        {
-            this.events.add(event);
-        }
-
-        /**
-         * @param event the event to remove
-         */
-        void removeEvent(Event event)
-        {
-            this.events.remove(event);
-        }
-    }
+    private AsyncEventDispatcher asyncDispatcher;
 
     @Override
     public void initialize() throws InitializationException
@@ -138,10 +95,34 @@ public void initialize() throws InitializationException
         } catch (ComponentLookupException e) {
             throw new InitializationException("Failed to lookup Event Listeners", e);
         }
+
+        // Register a JMX MBean for providing information about the asynchronous listeners queues
+        getAsyncDispatcher().registerMBean(this.componentManager);
+    }
+
+    @Override
+    public synchronized void dispose()
+    {
+        if (this.asyncDispatcher != null) {
+            this.asyncDispatcher.dispose();
+        }
+    }
+
+    /**
+     * @return the manager of the queues of asynchronous listeners
+     * @since 4.5M1
+     */
+    public synchronized AsyncEventDispatcher getAsyncDispatcher()
+    {
+        if (this.asyncDispatcher == null) {
+            this.asyncDispatcher = new AsyncEventDispatcher(this.logger);
+        }
+
+        return this.asyncDispatcher;
     }
 
     @Override
-    public void addListener(EventListener eventListener)
+    public synchronized void addListener(EventListener eventListener)
     {
         // Register the listener by name. If already registered, override it.
         EventListener previousListener = this.listenersByName.put(eventListener.getName(), eventListener);
@@ -156,59 +137,29 @@ public void addListener(EventListener eventListener)
                         eventListener.getName()});
         }
 
-        // For each event defined for this listener, add it to the Event Map.
-        for (Event event : eventListener.getEvents()) {
-            // Check if this is a new Event type not already registered
-            Map<String, RegisteredListener> eventListeners = this.listenersByEvent.get(event.getClass());
-            if (eventListeners == null) {
-                // No listener registered for this event yet. Create a map to store listeners for this event.
-                eventListeners = new ConcurrentHashMap<String, RegisteredListener>();
-                this.listenersByEvent.put(event.getClass(), eventListeners);
-                // There is no RegisteredListener yet, create one
-                eventListeners.put(eventListener.getName(), new RegisteredListener(eventListener, event));
-            } else {
-                // Add an event to existing RegisteredListener object
-                RegisteredListener registeredListener = eventListeners.get(eventListener.getName());
-                if (registeredListener == null) {
-                    eventListeners.put(eventListener.getName(), new RegisteredListener(eventListener, event));
-                } else {
-                    registeredListener.addEvent(event);
-                }
-            }
-        }
+        this.dispatchTable.add(eventListener.getName(), getAsyncDispatcher().wrap(eventListener),
+            eventListener.getEvents());
     }
 
     @Override
-    public void removeListener(String listenerName)
+    public synchronized void removeListener(String listenerName)
     {
         this.listenersByName.remove(listenerName);
-        for (Map.Entry<Class< ? extends Event>, Map<String, RegisteredListener>> entry : this.listenersByEvent
-            .entrySet()) {
-            entry.getValue().remove(listenerName);
-            if (entry.getValue().isEmpty()) {
-                this.listenersByEvent.remove(entry.getKey());
-            }
+        if (this.dispatchTable.remove(listenerName)) {
+            getAsyncDispatcher().remove(listenerName);
         }
     }
 
     @Override
-    public void addEvent(String listenerName, Event event)
+    public synchronized void addEvent(String listenerName, Event event)
     {
-        Map<String, RegisteredListener> listeners = this.listenersByEvent.get(event.getClass());
-        RegisteredListener listener = listeners.get(listenerName);
-        if (listener != null) {
-            listener.addEvent(event);
-        }
+        this.dispatchTable.addEvent(listenerName, event);
     }
 
     @Override
-    public void removeEvent(String listenerName, Event event)
+    public synchronized void removeEvent(String listenerName, Event event)
     {
-        Map<String, RegisteredListener> listeners = this.listenersByEvent.get(event.getClass());
-        RegisteredListener listener = listeners.get(listenerName);
-        if (listener != null) {
-            listener.removeEvent(event);
-        }
+        this.dispatchTable.removeEvent(listenerName, event);
     }
 
     @Override
@@ -218,18 +169,17 @@ public EventListener getListener(String listenerName)
     }
 
     @Override
-    public void notify(Event event, Object source, Object data)
+    public boolean isListened(Class< ? extends Event> eventClass)
     {
-        // Find all listeners for this event
-        Map<String, RegisteredListener> regListeners = this.listenersByEvent.get(event.getClass());
-        if (regListeners != null) {
-            notify(regListeners.values(), event, source, data);
-        }
+        return this.dispatchTable.get(eventClass).length > 0;
+    }
 
-        // Find listener listening all events
-        Map<String, RegisteredListener> allEventRegListeners = this.listenersByEvent.get(AllEvent.class);
-        if (allEventRegListeners != null) {
-            notify(allEventRegListeners.values(), event, source, data);
+    @Override
+    public void notify(Event event, Object source, Object data)
+    {
+        ListenerDispatchTable.ListenerDispatch[] dispatch = this.dispatchTable.get(event.getClass());
+        for (int i = 0; i < dispatch.length; ++i) {
+            notify(dispatch[i], event, source, data);
         }
 
         // We want this Observation Manager to be able to handle new Event Listener components being added or removed
@@ -243,31 +193,24 @@ public void notify(Event event, Object source, Object data)
     }
 
     /**
-     * Call the provided listeners matching the passed Event. The definition of <em>source</em> and <em>data</em> is
-     * purely up to the communicating classes.
+     * Call the provided listener if one of its events matches the passed Event. The definition of <em>source</em> and
+     * <em>data</em> is purely up to the communicating classes.
      * 
-     * @param listeners the listeners to notify
+     * @param dispatch the listener to notify and its events
      * @param event the event to pass to the registered listeners
      * @param source the source of the event (or <code>null</code>)
      * @param data the additional data related to the event (or <code>null</code>)
      */
-    private void notify(Collection<RegisteredListener> listeners, Event event, Object source, Object data)
+    private void notify(ListenerDispatchTable.ListenerDispatch dispatch, Event event, Object source, Object data)
     {
-        for (RegisteredListener listener : listeners) {
-            // Verify that one of the events matches and send the first matching event
-            for (Event listenerEvent : listener.events) {
-                if (listenerEvent.matches(event)) {
-                    try {
-                        listener.listener.onEvent(event, source, data);
-                    } catch (Exception e) {
-                        // protect from bad listeners
-                        this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] {event,
-                            listener.listener, e});
-                    }
-
-                    // Only send the first matching event since the listener should only be called once per event.
-                    break;
-                }
+        // The listener is called only once per event even if several of its events match.
+        if (dispatch.matches(event)) {
+            try {
+                dispatch.getListener().onEvent(event, source, data);
+            } catch (Exception e) {
+                // protect from bad listeners
+                this.logger.error("Failed to send event [{}] to listener [{}]", new Object[] {event,
+                    dispatch.getListener(), e});
             }
         }
     }
@@ -0,0 +1,311 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.AllEvent;
+import org.xwiki.observation.event.Event;
+
+/**
+ * The registered listeners of the {@link DefaultObservationManager} and the dispatch table computed from them.
+ * <p>
+ * Listeners are modified under a lock but {@link #get(Class)} only reads an immutable array computed for each
+ * concrete event class: finding the listeners to notify is a lookup. Arrays are computed lazily and are kept up to
+ * date as listeners are modified: a new listener is appended to the arrays already computed and a removed listener is
+ * filtered out of them, so that registering many listeners in a row (for example when the stacked component events
+ * are flushed) doesn't rebuild the dispatch table each time. Only the arrays of the event classes affected by other
+ * modifications are dropped and rebuilt on the next lookup.
+ *
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class ListenerDispatchTable
+{
+    /**
+     * Empty dispatch array shared by all event classes for which no listener is registered.
+     */
+    private static final ListenerDispatch[] EMPTY_DISPATCH = new ListenerDispatch[0];
+
+    /**
+     * Registered listeners indexed by listener name, in registration order. It's the reference from which the
+     * dispatch table is computed. Access to this map is synchronized on this table.
+     */
+    private final Map<String, RegisteredListener> registeredListeners =
+        new LinkedHashMap<String, RegisteredListener>();
+
+    /**
+     * The listeners to call (and the events they're listening to) for each concrete event class. Only modified with
+     * the lock held, and the arrays it contains are never modified once published.
+     */
+    private final Map<Class< ? extends Event>, ListenerDispatch[]> dispatchTable =
+        new ConcurrentHashMap<Class< ? extends Event>, ListenerDispatch[]>();
+
+    /**
+     * Helper class to store the list of events associated with a given listener. We need this in order to be able to
+     * add events after a listener has been registered.
+     */
+    private static class RegisteredListener
+    {
+        /**
+         * Events associated with the listener.
+         */
+        private List<Event> events;
+
+        /**
+         * Listener associated with the events.
+         */
+        private EventListener listener;
+
+        /**
+         * @param listener the listener associated with the events
+         * @param events the events to associate with the passed listener
+         */
+        RegisteredListener(EventListener listener, List<Event> events)
+        {
+            this.listener = listener;
+            this.events = new ArrayList<Event>(events);
+        }
+    }
+
+    /**
+     * Immutable entry of the dispatch table: a listener and the events it listens to for a given concrete event
+     * class.
+     */
+    static final class ListenerDispatch
+    {
+        /**
+         * The listener to call.
+         */
+        private final EventListener listener;
+
+        /**
+         * The events of the listener which may match the notified event.
+         */
+        private final Event[] events;
+
+        /**
+         * @param listener the listener to call
+         * @param events the events of the listener which may match the notified event
+         */
+        ListenerDispatch(EventListener listener, Event[] events)
+        {
+            this.listener = listener;
+            this.events = events;
+        }
+
+        /**
+         * @return the listener to call
+         */
+        EventListener getListener()
+        {
+            return this.listener;
+        }
+
+        /**
+         * @param event the notified event
+         * @return {@code true} if one of the events of the listener matches the notified event
+         */
+        boolean matches(Event event)
+        {
+            for (int i = 0; i < this.events.length; ++i) {
+                if (this.events[i].matches(event)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * @param eventClass the class of the notified event
+     * @return the listeners to call and the events they're listening to
+     */
+    ListenerDispatch[] get(Class< ? extends Event> eventClass)
+    {
+        ListenerDispatch[] dispatch = this.dispatchTable.get(eventClass);
+        if (dispatch == null) {
+            dispatch = compute(eventClass);
+        }
+
+        return dispatch;
+    }
+
+    /**
+     * Register a listener, replacing the one registered with the same name if any.
+     *
+     * @param name the name of the listener
+     * @param listener the listener to call
+     * @param events the events the listener is listening to
+     */
+    synchronized void add(String name, EventListener listener, List<Event> events)
+    {
+        RegisteredListener registeredListener = new RegisteredListener(listener, events);
+
+        if (this.registeredListeners.put(name, registeredListener) != null) {
+            // The new listener takes the place of the replaced one
+            this.dispatchTable.clear();
+        } else {
+            // The new listener comes last: append it wherever it listens
+            for (Map.Entry<Class< ? extends Event>, ListenerDispatch[]> entry : this.dispatchTable.entrySet()) {
+                Event[] matchingEvents = getEvents(registeredListener, entry.getKey());
+                if (matchingEvents.length > 0) {
+                    ListenerDispatch[] dispatch = Arrays.copyOf(entry.getValue(), entry.getValue().length + 1);
+                    dispatch[dispatch.length - 1] = new ListenerDispatch(listener, matchingEvents);
+                    this.dispatchTable.put(entry.getKey(), dispatch);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name the name of the listener to unregister
+     * @return {@code true} if a listener was registered with this name
+     */
+    synchronized boolean remove(String name)
+    {
+        RegisteredListener registeredListener = this.registeredListeners.remove(name);
+
+        if (registeredListener != null) {
+            for (Map.Entry<Class< ? extends Event>, ListenerDispatch[]> entry : this.dispatchTable.entrySet()) {
+                List<ListenerDispatch> dispatch = new ArrayList<ListenerDispatch>(Arrays.asList(entry.getValue()));
+                for (Iterator<ListenerDispatch> it = dispatch.iterator(); it.hasNext();) {
+                    if (it.next().listener == registeredListener.listener) {
+                        it.remove();
+                    }
+                }
+                if (dispatch.size() < entry.getValue().length) {
+                    this.dispatchTable.put(entry.getKey(), dispatch.toArray(EMPTY_DISPATCH));
+                }
+            }
+        }
+
+        return registeredListener != null;
+    }
+
+    /**
+     * @param name the name of the listener
+     * @param event the event to add to the events the listener is listening to
+     */
+    synchronized void addEvent(String name, Event event)
+    {
+        RegisteredListener registeredListener = this.registeredListeners.get(name);
+        if (registeredListener != null) {
+            registeredListener.events.add(event);
+
+            dropDispatch(event);
+        }
+    }
+
+    /**
+     * @param name the name of the listener
+     * @param event the event to remove from the events the listener is listening to
+     */
+    synchronized void removeEvent(String name, Event event)
+    {
+        RegisteredListener registeredListener = this.registeredListeners.get(name);
+        if (registeredListener != null) {
+            registeredListener.events.remove(event);
+
+            dropDispatch(event);
+        }
+    }
+
+    /**
+     * Drop the dispatch arrays of the event classes matched by the passed listener event. Must be called with the
+     * lock held.
+     *
+     * @param listenerEvent an event added to or removed from a listener
+     */
+    private void dropDispatch(Event listenerEvent)
+    {
+        for (Iterator<Class< ? extends Event>> it = this.dispatchTable.keySet().iterator(); it.hasNext();) {
+            if (matches(listenerEvent, it.next())) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Compute (and cache) the dispatch array for the passed concrete event class.
+     *
+     * @param eventClass the class of the notified event
+     * @return the listeners to call and the events they're listening to
+     */
+    private synchronized ListenerDispatch[] compute(Class< ? extends Event> eventClass)
+    {
+        // The array might have been computed while we were waiting for the lock
+        ListenerDispatch[] dispatch = this.dispatchTable.get(eventClass);
+
+        if (dispatch == null) {
+            List<ListenerDispatch> dispatchList = new ArrayList<ListenerDispatch>();
+            for (RegisteredListener registeredListener : this.registeredListeners.values()) {
+                Event[] events = getEvents(registeredListener, eventClass);
+                if (events.length > 0) {
+                    dispatchList.add(new ListenerDispatch(registeredListener.listener, events));
+                }
+            }
+
+            dispatch = dispatchList.isEmpty() ? EMPTY_DISPATCH : dispatchList.toArray(EMPTY_DISPATCH);
+
+            this.dispatchTable.put(eventClass, dispatch);
+        }
+
+        return dispatch;
+    }
+
+    /**
+     * @param registeredListener a registered listener
+     * @param eventClass the class of the notified event
+     * @return the events of the listener which may match an event of the passed class
+     */
+    private static Event[] getEvents(RegisteredListener registeredListener, Class< ? extends Event> eventClass)
+    {
+        List<Event> events = new ArrayList<Event>(registeredListener.events.size());
+        for (Event listenerEvent : registeredListener.events) {
+            if (matches(listenerEvent, eventClass)) {
+                events.add(listenerEvent);
+            }
+        }
+
+        return events.toArray(new Event[events.size()]);
+    }
+
+    /**
+     * A listener event may match an event if it's an {@link AllEvent} or if its class is the class of the event or
+     * one of its super classes.
+     *
+     * @param listenerEvent an event a listener is listening to
+     * @param eventClass the class of the notified event
+     * @return {@code true} if the listener event may match an event of the passed class
+     */
+    private static boolean matches(Event listenerEvent, Class< ? extends Event> eventClass)
+    {
+        return listenerEvent instanceof AllEvent || listenerEvent.getClass().isAssignableFrom(eventClass);
+    }
+}
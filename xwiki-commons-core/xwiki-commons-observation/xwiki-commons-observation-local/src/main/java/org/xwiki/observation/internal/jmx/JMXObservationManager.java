@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation.internal.jmx;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.xwiki.observation.internal.AsyncEventDispatcher;
+import org.xwiki.observation.internal.AsyncListenerQueue;
+
+/**
+ * Expose the state of the asynchronous listeners queues of the Observation Manager.
+ *
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class JMXObservationManager implements JMXObservationManagerMBean
+{
+    /**
+     * The names of the columns of the asynchronous listeners table.
+     */
+    private static final String[] COLUMN_NAMES = new String[] {"listenerName", "overflowPolicy", "queueSize",
+        "queueCapacity", "notified", "delivered", "dropped", "callerRuns", "lastLag", "maxLag"};
+
+    /**
+     * The descriptions of the columns of the asynchronous listeners table.
+     */
+    private static final String[] COLUMN_DESCRIPTIONS = new String[] {"The name of the listener",
+        "What to do when the queue is full", "The number of events waiting in the queue",
+        "The maximum number of events waiting in the queue", "The number of events notified to the listener",
+        "The number of events delivered to the listener", "The number of discarded events",
+        "The number of times events were delivered in the notifying thread",
+        "The time the last delivered event waited in the queue (ms)",
+        "The longest time an event waited in the queue (ms)"};
+
+    /**
+     * The dispatcher of the Observation Manager for which to return management data.
+     */
+    private AsyncEventDispatcher asyncDispatcher;
+
+    /**
+     * @param asyncDispatcher the dispatcher of the Observation Manager for which to return management data
+     */
+    public JMXObservationManager(AsyncEventDispatcher asyncDispatcher)
+    {
+        this.asyncDispatcher = asyncDispatcher;
+    }
+
+    @Override
+    public TabularData getAsyncListeners()
+    {
+        TabularData data;
+
+        try {
+            CompositeType rowType = new CompositeType("asyncListener",
+                "Asynchronous listener queue management data for a row", COLUMN_NAMES, COLUMN_DESCRIPTIONS,
+                new OpenType[] {SimpleType.STRING, SimpleType.STRING, SimpleType.INTEGER, SimpleType.INTEGER,
+                    SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG,
+                    SimpleType.LONG});
+
+            TabularType type = new TabularType("asyncListeners", "Asynchronous listeners queues management data",
+                rowType, new String[] {COLUMN_NAMES[0]});
+            data = new TabularDataSupport(type);
+
+            for (AsyncListenerQueue queue : this.asyncDispatcher.getQueues()) {
+                CompositeData rowData = new CompositeDataSupport(rowType, COLUMN_NAMES, new Object[] {
+                    queue.getListener().getName(), queue.getOverflowPolicy().name(), queue.getSize(),
+                    queue.getCapacity(), queue.getNotifiedCount(), queue.getDeliveredCount(), queue.getDroppedCount(),
+                    queue.getCallerRunsCount(), TimeUnit.NANOSECONDS.toMillis(queue.getLastLag()),
+                    TimeUnit.NANOSECONDS.toMillis(queue.getMaxLag())});
+                data.put(rowData);
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to gather information on asynchronous listeners", e);
+        }
+
+        return data;
+    }
+}
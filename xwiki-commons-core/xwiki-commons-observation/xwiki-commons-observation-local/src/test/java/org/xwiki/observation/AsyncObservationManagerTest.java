@@ -0,0 +1,225 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.observation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.observation.event.ActionExecutionEvent;
+import org.xwiki.observation.event.Event;
+import org.xwiki.observation.internal.AsyncListenerQueue;
+import org.xwiki.observation.internal.DefaultObservationManager;
+
+/**
+ * Unit tests for {@link AsyncEventListener} support in {@link DefaultObservationManager}.
+ * 
+ * @version $Id$
+ */
+public class AsyncObservationManagerTest
+{
+    private static class TestAsyncEventListener implements AsyncEventListener
+    {
+        private final int capacity;
+
+        private final OverflowPolicy policy;
+
+        private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        private final CountDownLatch start = new CountDownLatch(1);
+
+        private final CountDownLatch done;
+
+        TestAsyncEventListener(int capacity, OverflowPolicy policy, int expected)
+        {
+            this.capacity = capacity;
+            this.policy = policy;
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public String getName()
+        {
+            return "asynclistener";
+        }
+
+        @Override
+        public List<Event> getEvents()
+        {
+            return Arrays.<Event>asList(new ActionExecutionEvent("action"));
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            try {
+                this.start.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.received.add((String) source);
+            this.done.countDown();
+        }
+
+        @Override
+        public int getQueueCapacity()
+        {
+            return this.capacity;
+        }
+
+        @Override
+        public OverflowPolicy getOverflowPolicy()
+        {
+            return this.policy;
+        }
+    }
+
+    private DefaultObservationManager manager;
+
+    @Before
+    public void setUp()
+    {
+        this.manager = new DefaultObservationManager();
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.manager.dispose();
+    }
+
+    private void notify(int count)
+    {
+        for (int i = 0; i < count; ++i) {
+            this.manager.notify(new ActionExecutionEvent("action"), String.valueOf(i));
+        }
+    }
+
+    private List<String> range(int from, int to)
+    {
+        List<String> values = new ArrayList<String>();
+        for (int i = from; i < to; ++i) {
+            values.add(String.valueOf(i));
+        }
+
+        return values;
+    }
+
+    @Test
+    public void testEventsDeliveredInOrder() throws Exception
+    {
+        TestAsyncEventListener listener =
+            new TestAsyncEventListener(1000, AsyncEventListener.OverflowPolicy.BLOCK, 100);
+        this.manager.addListener(listener);
+
+        notify(100);
+        listener.start.countDown();
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(range(0, 100), listener.received);
+
+        AsyncListenerQueue queue = this.manager.getAsyncDispatcher().getQueues().iterator().next();
+        Assert.assertEquals(100, queue.getNotifiedCount());
+        Assert.assertEquals(100, queue.getDeliveredCount());
+        Assert.assertEquals(0, queue.getSize());
+    }
+
+    @Test
+    public void testCallerRunsKeepsOrder() throws Exception
+    {
+        TestAsyncEventListener listener =
+            new TestAsyncEventListener(2, AsyncEventListener.OverflowPolicy.CALLER_RUNS, 100);
+        listener.start.countDown();
+        this.manager.addListener(listener);
+
+        notify(100);
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(range(0, 100), listener.received);
+    }
+
+    @Test
+    public void testNotifyFullQueueFromListener() throws Exception
+    {
+        TestAsyncEventListener listener =
+            new TestAsyncEventListener(1, AsyncEventListener.OverflowPolicy.BLOCK, 11)
+            {
+                @Override
+                public void onEvent(Event event, Object source, Object data)
+                {
+                    super.onEvent(event, source, data);
+
+                    // Waiting for room in its own queue would never end
+                    if ("0".equals(source)) {
+                        for (int i = 1; i < 11; ++i) {
+                            manager.notify(new ActionExecutionEvent("action"), String.valueOf(i));
+                        }
+                    }
+                }
+            };
+        listener.start.countDown();
+        this.manager.addListener(listener);
+
+        notify(1);
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(range(0, 11), listener.received);
+    }
+
+    @Test
+    public void testDefaultOverflowPolicy()
+    {
+        this.manager.addListener(new TestAsyncEventListener(1, null, 0));
+
+        AsyncListenerQueue queue = this.manager.getAsyncDispatcher().getQueues().iterator().next();
+        Assert.assertSame(AsyncEventListener.OverflowPolicy.CALLER_RUNS, queue.getOverflowPolicy());
+    }
+
+    @Test
+    public void testDropOldest() throws Exception
+    {
+        TestAsyncEventListener listener =
+            new TestAsyncEventListener(2, AsyncEventListener.OverflowPolicy.DROP_OLDEST, 3);
+        this.manager.addListener(listener);
+
+        // Wait for the first event to be taken from the queue by the worker
+        this.manager.notify(new ActionExecutionEvent("action"), "0");
+        AsyncListenerQueue queue = this.manager.getAsyncDispatcher().getQueues().iterator().next();
+        while (queue.getSize() > 0) {
+            Thread.sleep(1);
+        }
+
+        for (int i = 1; i < 10; ++i) {
+            this.manager.notify(new ActionExecutionEvent("action"), String.valueOf(i));
+        }
+        listener.start.countDown();
+
+        Assert.assertTrue(listener.done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("0", "8", "9"), listener.received);
+        Assert.assertEquals(7, queue.getDroppedCount());
+    }
+}
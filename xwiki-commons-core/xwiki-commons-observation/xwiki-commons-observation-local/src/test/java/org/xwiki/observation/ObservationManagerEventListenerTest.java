@@ -39,6 +39,8 @@
 public class ObservationManagerEventListenerTest extends AbstractComponentTestCase
 {
     private ObservationManager manager;
+
+    private StackingComponentEventManager componentEventManager;
     
     private EventListener eventListenerMock;
     
@@ -53,10 +55,10 @@ public void setUp() throws Exception
         super.setUp();
 
         this.manager = getComponentManager().getInstance(ObservationManager.class);
-        StackingComponentEventManager componentEventManager = new StackingComponentEventManager();
-        componentEventManager.shouldStack(false);
-        componentEventManager.setObservationManager(this.manager);
-        getComponentManager().setComponentEventManager(componentEventManager);
+        this.componentEventManager = new StackingComponentEventManager();
+        this.componentEventManager.shouldStack(false);
+        this.componentEventManager.setObservationManager(this.manager);
+        getComponentManager().setComponentEventManager(this.componentEventManager);
 
         this.eventListenerMock = getMockery().mock(EventListener.class);
         this.eventMock = getMockery().mock(Event.class);
@@ -89,4 +91,35 @@ public void testRemovedListenerComponent() throws Exception
         
         Assert.assertNull(this.manager.getListener("mylistener"));
     }
+
+    @Test
+    public void testNewListenerComponentInBatch() throws Exception
+    {
+        this.componentEventManager.shouldStack(true);
+
+        getComponentManager().registerComponent(this.componentDescriptor, this.eventListenerMock);
+
+        Assert.assertNull(this.manager.getListener("mylistener"));
+
+        this.componentEventManager.flushEvents();
+
+        Assert.assertSame(this.eventListenerMock, this.manager.getListener("mylistener"));
+    }
+
+    @Test
+    public void testRemovedListenerComponentInBatch() throws Exception
+    {
+        getComponentManager().registerComponent(this.componentDescriptor, this.eventListenerMock);
+
+        this.componentEventManager.shouldStack(true);
+
+        getComponentManager().unregisterComponent(this.componentDescriptor.getRoleType(),
+            this.componentDescriptor.getRoleHint());
+
+        Assert.assertSame(this.eventListenerMock, this.manager.getListener("mylistener"));
+
+        this.componentEventManager.flushEvents();
+
+        Assert.assertNull(this.manager.getListener("mylistener"));
+    }
 }
@@ -23,6 +23,7 @@
 
 import static org.hamcrest.Matchers.*;
 import org.jmock.Expectations;
+import org.jmock.Sequence;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -71,6 +72,27 @@ public void testNotifyWhenMatching()
         this.manager.notify(event, "some source", "some data");
     }
 
+    @Test
+    public void testIsListened()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(new ActionExecutionEvent("action"))));
+        }});
+
+        IndexedObservationManager indexedManager = (IndexedObservationManager) this.manager;
+        Assert.assertFalse(indexedManager.isListened(ActionExecutionEvent.class));
+
+        this.manager.addListener(listener);
+        Assert.assertTrue(indexedManager.isListened(ActionExecutionEvent.class));
+        Assert.assertFalse(indexedManager.isListened(AllEvent.class));
+
+        this.manager.removeListener("mylistener");
+        Assert.assertFalse(indexedManager.isListened(ActionExecutionEvent.class));
+    }
+
     @Test
     public void testRemoveListener()
     {
@@ -237,4 +259,79 @@ public void testRegisterListenerForTwoEventsOfSameType()
         this.manager.notify(eventMatcher1, "some source", "some data");
         this.manager.notify(eventMatcher2, "some source", "some data");
     }
+
+    /**
+     * Verify that a listener registered on an event type also receives the events of its sub types.
+     */
+    @Test
+    public void testRegisterListenerForParentEventType()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+        final Event eventMatcher = new ActionExecutionEvent("action");
+        final Event notifiedEvent = new ActionExecutionEvent("action")
+        {
+        };
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(eventMatcher)));
+
+            oneOf(listener).onEvent(with(same(notifiedEvent)), with(any(Object.class)), with(any(Object.class)));
+        }});
+
+        this.manager.addListener(listener);
+        this.manager.notify(notifiedEvent, "some source", "some data");
+    }
+
+    /**
+     * Verify that a listener matching an event through several of its events is only called once.
+     */
+    @Test
+    public void testListenerCalledOnceWhenSeveralEventsMatch()
+    {
+        final EventListener listener = this.mockery.mock(EventListener.class);
+        final Event eventMatcher = new ActionExecutionEvent("action");
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener).getName(); will(returnValue("mylistener"));
+            allowing(listener).getEvents(); will(returnValue(Arrays.asList(eventMatcher, AllEvent.ALLEVENT)));
+
+            oneOf(listener).onEvent(with(eventMatcher), with(any(Object.class)), with(any(Object.class)));
+        }});
+
+        this.manager.addListener(listener);
+        this.manager.notify(eventMatcher, "some source", "some data");
+    }
+
+    /**
+     * Verify that listeners added or removed after an event has been notified receive the next events, in
+     * registration order.
+     */
+    @Test
+    public void testModifyListenersAfterNotify()
+    {
+        final EventListener listener1 = this.mockery.mock(EventListener.class, "listener1");
+        final EventListener listener2 = this.mockery.mock(EventListener.class, "listener2");
+        final Event event = new ActionExecutionEvent("action");
+        final Sequence sequence = this.mockery.sequence("notifications");
+
+        this.mockery.checking(new Expectations() {{
+            allowing(listener1).getName(); will(returnValue("listener 1"));
+            allowing(listener2).getName(); will(returnValue("listener 2"));
+            allowing(listener1).getEvents(); will(returnValue(Arrays.asList(event)));
+            allowing(listener2).getEvents(); will(returnValue(Arrays.asList(AllEvent.ALLEVENT)));
+
+            oneOf(listener1).onEvent(with(same(event)), with(nullValue()), with(nullValue())); inSequence(sequence);
+            oneOf(listener1).onEvent(with(same(event)), with(nullValue()), with(nullValue())); inSequence(sequence);
+            oneOf(listener2).onEvent(with(same(event)), with(nullValue()), with(nullValue())); inSequence(sequence);
+            oneOf(listener2).onEvent(with(same(event)), with(nullValue()), with(nullValue())); inSequence(sequence);
+        }});
+
+        this.manager.addListener(listener1);
+        this.manager.notify(event, null);
+        this.manager.addListener(listener2);
+        this.manager.notify(event, null);
+        this.manager.removeListener("listener 1");
+        this.manager.notify(event, null);
+    }
 }
@@ -21,6 +21,8 @@
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -51,6 +53,12 @@
 @Singleton
 public class DefaultConverterManager implements ConverterManager
 {
+    /**
+     * Maximum number of types kept in {@link #typeGenericNames}, protects against conversions to unbounded sets of
+     * types (for example parameterized types created on the fly).
+     */
+    private static final int TYPE_GENERIC_NAMES_SIZE = 1000;
+
     /**
      * Use to find the proper {@link Converter} component for provided target type.
      */
@@ -77,6 +85,12 @@ public class DefaultConverterManager implements ConverterManager
     @Inject
     private Logger logger;
 
+    /**
+     * The hints of the {@link Converter} components associated to the already converted types. Computing them requires
+     * going through all the generic arguments of the type. Bounded by {@link #TYPE_GENERIC_NAMES_SIZE}.
+     */
+    private Map<Type, String> typeGenericNames = new ConcurrentHashMap<Type, String>();
+
     @Override
     public <T> T convert(Type targetType, Object value)
     {
@@ -101,7 +115,7 @@ private Converter lookupConverter(Type targetType)
     {
         Converter converter = null;
 
-        String typeGenericName = getTypeGenericName(targetType);
+        String typeGenericName = getConverterHint(targetType);
 
         if (this.componentManager.hasComponent(Converter.class, typeGenericName)) {
             try {
@@ -135,6 +149,23 @@ private Converter lookupConverter(Type targetType)
         return converter;
     }
 
+    /**
+     * @param targetType the type to convert to
+     * @return the hint of the specific {@link Converter} component for the passed type
+     */
+    private String getConverterHint(Type targetType)
+    {
+        String typeGenericName = this.typeGenericNames.get(targetType);
+        if (typeGenericName == null) {
+            typeGenericName = getTypeGenericName(targetType);
+            if (this.typeGenericNames.size() < TYPE_GENERIC_NAMES_SIZE) {
+                this.typeGenericNames.put(targetType, typeGenericName);
+            }
+        }
+
+        return typeGenericName;
+    }
+
     /**
      * Get class name without generics.
      * 
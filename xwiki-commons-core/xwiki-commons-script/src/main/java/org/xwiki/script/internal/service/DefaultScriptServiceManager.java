@@ -58,14 +58,19 @@ public class DefaultScriptServiceManager implements ScriptServiceManager
     @Override
     public ScriptService get(String serviceName)
     {
-        ScriptService scriptService;
+        ScriptService scriptService = null;
 
-        try {
-            scriptService = this.componentManager.get().getInstance(ScriptService.class, serviceName);
-        } catch (Exception e) {
-            this.logger.debug("Failed to lookup script service for role hint [{}]", serviceName, e);
+        ComponentManager contextComponentManager = this.componentManager.get();
 
-            scriptService = null;
+        // Check first since most lookups of unknown services would otherwise cost a ComponentLookupException
+        if (contextComponentManager.hasComponent(ScriptService.class, serviceName)) {
+            try {
+                scriptService = contextComponentManager.getInstance(ScriptService.class, serviceName);
+            } catch (Exception e) {
+                this.logger.debug("Failed to lookup script service for role hint [{}]", serviceName, e);
+            }
+        } else {
+            this.logger.debug("No script service registered for role hint [{}]", serviceName);
         }
 
         return scriptService;
@@ -0,0 +1,297 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link Writer} which encodes the characters in UTF-8 into a fixed size chunk and writes the chunk to the target
+ * stream or channel as soon as it's full. Passing it to
+ * {@link VelocityEngine#evaluate(org.apache.velocity.context.Context, Writer, String, String)} allows to send the
+ * result of the evaluation as it's produced instead of keeping the whole result in memory (in a
+ * {@link java.io.StringWriter} for example) before sending it.
+ * <p>
+ * Chunks of the default size are pooled and reused once the writer is closed. This class is not thread safe.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ChunkedOutputWriter extends Writer
+{
+    /**
+     * The default size of a chunk, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    /**
+     * The maximum number of chunks kept in the pool.
+     */
+    private static final int POOL_SIZE = 16;
+
+    /**
+     * The pool of chunks of default size.
+     */
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<ByteBuffer>();
+
+    /**
+     * The encoding used to write the characters.
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Where to write the chunks.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The stream to flush when the writer is flushed, if any.
+     */
+    private final Flushable flushable;
+
+    /**
+     * Used to encode the characters.
+     */
+    private final CharsetEncoder encoder = UTF8.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /**
+     * The current chunk, {@code null} when the writer is closed.
+     */
+    private ByteBuffer chunk;
+
+    /**
+     * A high surrogate written at the end of the previous write call and waiting for its low surrogate.
+     */
+    private CharBuffer leftover;
+
+    /**
+     * The number of bytes written to the target so far.
+     */
+    private long writtenBytes;
+
+    /**
+     * @param out the stream where to write the chunks
+     */
+    public ChunkedOutputWriter(OutputStream out)
+    {
+        this(Channels.newChannel(out), out, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param out the stream where to write the chunks
+     * @param chunkSize the size of a chunk, in bytes
+     */
+    public ChunkedOutputWriter(OutputStream out, int chunkSize)
+    {
+        this(Channels.newChannel(out), out, chunkSize);
+    }
+
+    /**
+     * @param channel the channel where to write the chunks
+     */
+    public ChunkedOutputWriter(WritableByteChannel channel)
+    {
+        this(channel, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param channel the channel where to write the chunks
+     * @param chunkSize the size of a chunk, in bytes
+     */
+    public ChunkedOutputWriter(WritableByteChannel channel, int chunkSize)
+    {
+        this(channel, channel instanceof Flushable ? (Flushable) channel : null, chunkSize);
+    }
+
+    /**
+     * @param channel the channel where to write the chunks
+     * @param flushable the stream to flush when the writer is flushed, if any
+     * @param chunkSize the size of a chunk, in bytes
+     */
+    private ChunkedOutputWriter(WritableByteChannel channel, Flushable flushable, int chunkSize)
+    {
+        // A chunk must be able to hold the longest UTF-8 sequence
+        if (chunkSize < (int) this.encoder.maxBytesPerChar()) {
+            throw new IllegalArgumentException("Invalid chunk size [" + chunkSize + "]");
+        }
+
+        this.channel = channel;
+        this.flushable = flushable;
+        this.chunk = acquireChunk(chunkSize);
+    }
+
+    /**
+     * @return the number of bytes written to the target stream or channel so far (not including the bytes waiting in
+     *         the current chunk)
+     */
+    public long getWrittenBytes()
+    {
+        return this.writtenBytes;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException
+    {
+        encode(CharBuffer.wrap(cbuf, off, len));
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException
+    {
+        encode(CharBuffer.wrap(str, off, off + len));
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        ensureOpen();
+
+        writeChunk();
+
+        if (this.flushable != null) {
+            this.flushable.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (this.chunk == null) {
+            return;
+        }
+
+        try {
+            // A pending high surrogate is malformed and thus replaced
+            encode(this.leftover != null ? this.leftover : CharBuffer.allocate(0), true);
+            while (this.encoder.flush(this.chunk).isOverflow()) {
+                writeChunk();
+            }
+            writeChunk();
+            if (this.flushable != null) {
+                this.flushable.flush();
+            }
+        } finally {
+            releaseChunk(this.chunk);
+            this.chunk = null;
+            this.channel.close();
+        }
+    }
+
+    /**
+     * @param input the characters to encode
+     * @throws IOException when failing to write a chunk
+     */
+    private void encode(CharBuffer input) throws IOException
+    {
+        ensureOpen();
+
+        while (this.leftover != null && input.hasRemaining()) {
+            // Complete the surrogate pair
+            CharBuffer pair = CharBuffer.allocate(2);
+            pair.put(this.leftover.get());
+            pair.put(input.get());
+            pair.flip();
+            this.leftover = null;
+            encode(pair, false);
+        }
+
+        encode(input, false);
+    }
+
+    /**
+     * @param input the characters to encode
+     * @param endOfInput {@code true} if there won't be any more characters to encode
+     * @throws IOException when failing to write a chunk
+     */
+    private void encode(CharBuffer input, boolean endOfInput) throws IOException
+    {
+        while (true) {
+            CoderResult result = this.encoder.encode(input, this.chunk, endOfInput);
+            if (result.isOverflow()) {
+                writeChunk();
+            } else if (result.isUnderflow()) {
+                // The encoder leaves an incomplete surrogate pair in the input
+                this.leftover = input.hasRemaining() ? CharBuffer.wrap(new char[] {input.get()}) : null;
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    /**
+     * Write the content of the current chunk to the target and clear it.
+     * 
+     * @throws IOException when failing to write the chunk
+     */
+    private void writeChunk() throws IOException
+    {
+        this.chunk.flip();
+        while (this.chunk.hasRemaining()) {
+            this.writtenBytes += this.channel.write(this.chunk);
+        }
+        this.chunk.clear();
+    }
+
+    /**
+     * @throws IOException if the writer is closed
+     */
+    private void ensureOpen() throws IOException
+    {
+        if (this.chunk == null) {
+            throw new IOException("The writer is closed");
+        }
+    }
+
+    /**
+     * @param chunkSize the size of the chunk
+     * @return an empty chunk, taken from the pool when possible
+     */
+    private static ByteBuffer acquireChunk(int chunkSize)
+    {
+        ByteBuffer buffer = chunkSize == DEFAULT_CHUNK_SIZE ? POOL.poll() : null;
+
+        return buffer != null ? buffer : ByteBuffer.allocate(chunkSize);
+    }
+
+    /**
+     * @param buffer the chunk to put back in the pool
+     */
+    private static void releaseChunk(ByteBuffer buffer)
+    {
+        if (buffer.capacity() == DEFAULT_CHUNK_SIZE && POOL.size() < POOL_SIZE) {
+            buffer.clear();
+            POOL.offer(buffer);
+        }
+    }
+}
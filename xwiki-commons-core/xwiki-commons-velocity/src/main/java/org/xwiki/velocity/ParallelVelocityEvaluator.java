@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+
+/**
+ * Evaluates independent Velocity fragments concurrently using the passed executor (which is in charge of limiting the
+ * number of concurrent evaluations) and returns the results in the order of the fragments.
+ * <p>
+ * Each fragment is evaluated in its own macro namespace (its template name), which is cleared once no fragment uses it
+ * anymore, and in its own context, on top of the passed context which is only read. The passed contexts (and the
+ * objects they contain) can thus be shared between fragments only if they are safe to read concurrently.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ParallelVelocityEvaluator
+{
+    /**
+     * The engine used to evaluate the fragments.
+     */
+    private final VelocityEngine engine;
+
+    /**
+     * The executor used to evaluate the fragments.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * @param engine the engine used to evaluate the fragments
+     * @param executor the executor used to evaluate the fragments
+     */
+    public ParallelVelocityEvaluator(VelocityEngine engine, ExecutorService executor)
+    {
+        this.engine = engine;
+        this.executor = executor;
+    }
+
+    /**
+     * @param fragments the fragments to evaluate
+     * @return the result of the evaluation of each fragment, in the same order
+     * @throws XWikiVelocityException when the evaluation of one of the fragments failed
+     */
+    public List<String> evaluate(List<Fragment> fragments) throws XWikiVelocityException
+    {
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>(fragments.size());
+        for (final Fragment fragment : fragments) {
+            tasks.add(new Callable<String>()
+            {
+                @Override
+                public String call() throws XWikiVelocityException
+                {
+                    return evaluate(fragment);
+                }
+            });
+        }
+
+        List<String> results = new ArrayList<String>(fragments.size());
+        try {
+            for (Future<String> future : this.executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XWikiVelocityException("Interrupted while evaluating Velocity fragments", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof XWikiVelocityException) {
+                throw (XWikiVelocityException) e.getCause();
+            }
+            throw new XWikiVelocityException("Failed to evaluate Velocity fragments", e.getCause());
+        }
+
+        return results;
+    }
+
+    /**
+     * @param fragment the fragment to evaluate
+     * @return the result of the evaluation
+     * @throws XWikiVelocityException when the fragment could not be parsed or its evaluation failed
+     */
+    private String evaluate(Fragment fragment) throws XWikiVelocityException
+    {
+        StringWriter writer = new StringWriter();
+
+        this.engine.startedUsingMacroNamespace(fragment.getTemplateName());
+        try {
+            if (!this.engine.evaluate(new VelocityContext(fragment.getContext()), writer, fragment.getTemplateName(),
+                fragment.getSource())) {
+                throw new XWikiVelocityException("Failed to parse Velocity fragment [" + fragment.getTemplateName()
+                    + "]");
+            }
+        } finally {
+            this.engine.stoppedUsingMacroNamespace(fragment.getTemplateName());
+        }
+
+        return writer.toString();
+    }
+
+    /**
+     * A Velocity fragment to evaluate.
+     * 
+     * @version $Id$
+     */
+    public static class Fragment
+    {
+        /**
+         * @see #getTemplateName()
+         */
+        private final String templateName;
+
+        /**
+         * @see #getSource()
+         */
+        private final String source;
+
+        /**
+         * @see #getContext()
+         */
+        private final Context context;
+
+        /**
+         * @param templateName the name of the template, also used as macro namespace
+         * @param source the Velocity source to evaluate
+         * @param context the context to use in the evaluation, only read
+         */
+        public Fragment(String templateName, String source, Context context)
+        {
+            this.templateName = templateName;
+            this.source = source;
+            this.context = context;
+        }
+
+        /**
+         * @return the name of the template, also used as macro namespace
+         */
+        public String getTemplateName()
+        {
+            return this.templateName;
+        }
+
+        /**
+         * @return the Velocity source to evaluate
+         */
+        public String getSource()
+        {
+            return this.source;
+        }
+
+        /**
+         * @return the context to use in the evaluation, only read
+         */
+        public Context getContext()
+        {
+            return this.context;
+        }
+    }
+}
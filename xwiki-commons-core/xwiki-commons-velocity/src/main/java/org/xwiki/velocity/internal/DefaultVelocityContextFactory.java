@@ -19,8 +19,13 @@
  */
 package org.xwiki.velocity.internal;
 
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -29,10 +34,19 @@
 import org.apache.velocity.context.Context;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.descriptor.ComponentDescriptor;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+import org.xwiki.velocity.StaticVelocityContextInitializer;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityContextFactory;
 import org.xwiki.velocity.VelocityContextInitializer;
@@ -40,13 +54,24 @@
 
 /**
  * Default implementation for {@link VelocityContextFactory}.
+ * <p>
+ * The list of {@link VelocityContextInitializer} component descriptors is cached and reset when such a component is
+ * registered or unregistered (the cache is disabled when there's no {@link ObservationManager} to be notified). The
+ * contributions of the {@link StaticVelocityContextInitializer}s are computed once and copied in each new context (so
+ * that they are still listed by {@link VelocityContext#getKeys()}), only the other initializers are looked up and
+ * executed for each new context.
  * 
  * @version $Id$
  */
 @Component
 @Singleton
-public class DefaultVelocityContextFactory implements VelocityContextFactory, Initializable
+public class DefaultVelocityContextFactory implements VelocityContextFactory, Initializable, Disposable
 {
+    /**
+     * Used to give a unique name to the listener of each instance.
+     */
+    private static final AtomicLong LISTENER_COUNTER = new AtomicLong();
+
     /**
      * The component manager we used to find all components implementing the
      * {@link org.xwiki.velocity.VelocityContextInitializer} role.
@@ -72,6 +97,34 @@ public class DefaultVelocityContextFactory implements VelocityContextFactory, In
      */
     private Context toolsContext;
 
+    /**
+     * The contributions of the static initializers and the initializers to execute for each new context, {@code null}
+     * when it needs to be computed again.
+     */
+    private volatile ContextTemplate contextTemplate;
+
+    /**
+     * Incremented each time the cached initializers are reset.
+     */
+    private long contextTemplateVersion;
+
+    /**
+     * {@code true} if the cached initializers are reset when an initializer is registered or unregistered, i.e. if
+     * they can be cached.
+     */
+    private boolean cacheEnabled;
+
+    /**
+     * The observation manager the listener resetting the cached initializers is registered to, {@code null} if there
+     * is none.
+     */
+    private ObservationManager observationManager;
+
+    /**
+     * The name of the listener resetting the cached initializers.
+     */
+    private String listenerName;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -93,23 +146,192 @@ public void initialize() throws InitializationException
                 this.logger.debug("Setting tool [{}] = [{}]", key, value);
             }
         }
+
+        // Reset the cached initializers when an initializer is registered or unregistered
+        try {
+            if (this.componentManager.hasComponent(ObservationManager.class)) {
+                this.observationManager = this.componentManager.getInstance(ObservationManager.class);
+                this.listenerName =
+                    DefaultVelocityContextFactory.class.getName() + '#' + LISTENER_COUNTER.incrementAndGet();
+                this.observationManager.addListener(new InitializerListener(this.listenerName));
+                this.cacheEnabled = true;
+            }
+        } catch (ComponentLookupException e) {
+            throw new InitializationException("Failed to register the Velocity Context initializers listener", e);
+        }
     }
 
     @Override
-    public VelocityContext createContext() throws XWikiVelocityException
+    public void dispose() throws ComponentLifecycleException
+    {
+        if (this.observationManager != null) {
+            this.observationManager.removeListener(this.listenerName);
+        }
+    }
+
+    /**
+     * Reset the cached list of initializers and the contributions of the static initializers.
+     */
+    private synchronized void resetContextTemplate()
+    {
+        this.contextTemplate = null;
+        this.contextTemplateVersion++;
+    }
+
+    /**
+     * @return the contributions of the static initializers and the initializers to execute for each new context
+     * @throws ComponentLookupException when failing to lookup the initializers
+     */
+    private ContextTemplate getContextTemplate() throws ComponentLookupException
+    {
+        if (!this.cacheEnabled) {
+            // Nobody tells us when the initializers change
+            return createContextTemplate();
+        }
+
+        ContextTemplate template = this.contextTemplate;
+
+        if (template == null) {
+            long version;
+            synchronized (this) {
+                version = this.contextTemplateVersion;
+            }
+
+            template = createContextTemplate();
+
+            synchronized (this) {
+                // Don't cache the initializers if they changed in the meantime
+                if (version == this.contextTemplateVersion) {
+                    this.contextTemplate = template;
+                }
+            }
+        }
+
+        return template;
+    }
+
+    /**
+     * @return the contributions of the static initializers and the initializers to execute for each new context
+     * @throws ComponentLookupException when failing to lookup the static initializers
+     */
+    private ContextTemplate createContextTemplate() throws ComponentLookupException
     {
         // Note: This constructor uses the passed context as an internal read-only context.
-        VelocityContext context = new VelocityContext(this.toolsContext);
+        VelocityContext staticContext = new VelocityContext(this.toolsContext);
+        List<String> initializerHints = new ArrayList<String>();
+        for (ComponentDescriptor<VelocityContextInitializer> descriptor : this.componentManager
+            .<VelocityContextInitializer>getComponentDescriptorList((Type) VelocityContextInitializer.class)) {
+            if (StaticVelocityContextInitializer.class.isAssignableFrom(descriptor.getImplementation())) {
+                this.componentManager.<VelocityContextInitializer>getInstance(VelocityContextInitializer.class,
+                    descriptor.getRoleHint()).initialize(staticContext);
+            } else {
+                // Only keep the hint: the component may have to be looked up each time it's used
+                initializerHints.add(descriptor.getRoleHint());
+            }
+        }
 
-        // Call all components implementing the VelocityContextInitializer's role.
+        return new ContextTemplate(staticContext, initializerHints);
+    }
+
+    @Override
+    public VelocityContext createContext() throws XWikiVelocityException
+    {
         try {
-            for (Object interceptor : this.componentManager.getInstanceList(VelocityContextInitializer.class)) {
-                ((VelocityContextInitializer) interceptor).initialize(context);
+            ContextTemplate template = getContextTemplate();
+
+            // Note: This constructor uses the passed context as an internal read-only context.
+            VelocityContext context = new VelocityContext(this.toolsContext);
+
+            // Put the contributions of the static initializers in the context itself, as the static initializers
+            // would have done, so that they are enumerated with the other keys of the context
+            for (Object key : template.staticKeys) {
+                context.put((String) key, template.staticContext.get((String) key));
+            }
+
+            // Call all components implementing the VelocityContextInitializer's role (except the static ones).
+            for (String hint : template.initializerHints) {
+                this.componentManager.<VelocityContextInitializer>getInstance(VelocityContextInitializer.class, hint)
+                    .initialize(context);
             }
+
+            return context;
         } catch (ComponentLookupException e) {
             throw new XWikiVelocityException("Failed to locate some Velocity Context initializers", e);
         }
+    }
 
-        return context;
+    /**
+     * The contributions of the static initializers and the initializers to execute for each new context.
+     *
+     * @version $Id$
+     */
+    private static final class ContextTemplate
+    {
+        /**
+         * The contributions of the static initializers, with the Velocity tools as internal context.
+         */
+        private final Context staticContext;
+
+        /**
+         * The keys of the contributions of the static initializers (the keys of the internal context are not listed).
+         */
+        private final Object[] staticKeys;
+
+        /**
+         * The hints of the initializers to execute for each new context.
+         */
+        private final List<String> initializerHints;
+
+        /**
+         * @param staticContext the contributions of the static initializers, with the Velocity tools as internal
+         *            context
+         * @param initializerHints the hints of the initializers to execute for each new context
+         */
+        ContextTemplate(Context staticContext, List<String> initializerHints)
+        {
+            this.staticContext = staticContext;
+            this.staticKeys = staticContext.getKeys();
+            this.initializerHints = initializerHints;
+        }
+    }
+
+    /**
+     * Reset the cached initializers when an initializer is registered or unregistered.
+     *
+     * @version $Id$
+     */
+    private class InitializerListener implements EventListener
+    {
+        /**
+         * The name of the listener, unique for each instance of the factory.
+         */
+        private final String name;
+
+        /**
+         * @param name the name of the listener, unique for each instance of the factory
+         */
+        InitializerListener(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String getName()
+        {
+            return this.name;
+        }
+
+        @Override
+        public List<Event> getEvents()
+        {
+            return Arrays.<Event>asList(new ComponentDescriptorAddedEvent(VelocityContextInitializer.class),
+                new ComponentDescriptorRemovedEvent(VelocityContextInitializer.class));
+        }
+
+        @Override
+        public void onEvent(Event event, Object source, Object data)
+        {
+            resetContextTemplate();
+        }
     }
 }
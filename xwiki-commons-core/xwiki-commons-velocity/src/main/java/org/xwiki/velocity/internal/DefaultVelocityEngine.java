@@ -23,8 +23,6 @@
 import java.io.StringReader;
 import java.io.Writer;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Properties;
 
 import javax.inject.Inject;
@@ -66,6 +64,11 @@ public class DefaultVelocityEngine extends AbstractSLF4JLogChute implements Velo
      */
     private static final String TEMPLATE_SCOPE_NAME = "template";
 
+    /**
+     * The beginning of the error message used when the evaluation fails.
+     */
+    private static final String EVALUATE_ERROR = "Failed to evaluate content with id [";
+
     /**
      * Used to set it as a Velocity Application Attribute so that Velocity extensions done by XWiki can use it to lookup
      * other components.
@@ -102,8 +105,15 @@ public class DefaultVelocityEngine extends AbstractSLF4JLogChute implements Velo
      */
     private RuntimeServices rsvc;
 
-    /** Counter for the number of active rendering processes using each namespace. */
-    private final Map<String, Integer> namespaceUsageCount = new HashMap<String, Integer>();
+    /**
+     * Counter for the number of active rendering processes using each namespace.
+     */
+    private MacroNamespaceUsage macroNamespaceUsage;
+
+    /**
+     * The parsed templates, {@code null} if the engine is not initialized or if the cache is disabled.
+     */
+    private ParsedTemplateCache parsedTemplateCache;
 
     @Override
     public void initialize(Properties overridingProperties) throws XWikiVelocityException
@@ -121,9 +131,21 @@ public void initialize(Properties overridingProperties) throws XWikiVelocityExce
             throw new XWikiVelocityException("Cannot start the Velocity engine", e);
         }
 
+        this.parsedTemplateCache = ParsedTemplateCache.create(this.rsvc);
+        this.macroNamespaceUsage = new MacroNamespaceUsage(this, this.logger);
+
         this.engine = velocityEngine;
     }
 
+    /**
+     * @return the cache of parsed templates or {@code null} if it's disabled
+     * @since 4.5M1
+     */
+    public ParsedTemplateCache getParsedTemplateCache()
+    {
+        return this.parsedTemplateCache;
+    }
+
     /**
      * @param velocityEngine the Velocity engine against which to initialize Velocity properties
      * @param configurationProperties the Velocity properties coming from XWiki's configuration
@@ -180,71 +202,138 @@ private void restoreTemplateScope(InternalContextAdapterImpl ica, Scope currentT
         }
     }
 
+    /**
+     * @throws XWikiVelocityException if the engine has not yet been initialized
+     */
+    private void checkInitialized() throws XWikiVelocityException
+    {
+        if (this.engine == null) {
+            throw new XWikiVelocityException("This Velocity Engine has not yet been initialized. "
+                + " You must call its initialize() method before you can use it.");
+        }
+    }
+
     @Override
     public boolean evaluate(Context context, Writer out, String templateName, String source)
         throws XWikiVelocityException
     {
-        return evaluate(context, out, templateName, new StringReader(source));
+        checkInitialized();
+
+        try {
+            SimpleNode cachedTree =
+                this.parsedTemplateCache != null ? this.parsedTemplateCache.get(templateName, source) : null;
+            if (cachedTree != null) {
+                // The tree is already initialized
+                render(context, out, templateName, cachedTree, false);
+
+                return true;
+            }
+
+            return evaluate(context, out, templateName, new StringReader(source), source);
+        } catch (Exception e) {
+            throw new XWikiVelocityException(EVALUATE_ERROR + templateName + "]", e);
+        }
     }
 
     @Override
     public boolean evaluate(Context context, Writer out, String templateName, Reader source)
         throws XWikiVelocityException
     {
-        // Ensure that initialization has been called
-        if (this.engine == null) {
-            throw new XWikiVelocityException("This Velocity Engine has not yet been initialized. "
-                + " You must call its initialize() method before you can use it.");
+        checkInitialized();
+
+        if (this.parsedTemplateCache != null) {
+            String content;
+            try {
+                content = ParsedTemplateCache.read(source);
+            } catch (Exception e) {
+                throw new XWikiVelocityException(EVALUATE_ERROR + templateName + "]", e);
+            }
+
+            return evaluate(context, out, templateName, content);
         }
 
+        try {
+            return evaluate(context, out, templateName, source, null);
+        } catch (Exception e) {
+            throw new XWikiVelocityException(EVALUATE_ERROR + templateName + "]", e);
+        }
+    }
+
+    /**
+     * Parse and render the passed source.
+     * 
+     * @param context the Velocity context to use in the evaluation
+     * @param out the writer where to write the result of the evaluation
+     * @param templateName the name of the template (i.e. the macro namespace)
+     * @param reader the source to evaluate
+     * @param source the source to evaluate, to put the parsed tree in the cache, {@code null} to not cache it
+     * @return {@code false} if the source could not be parsed, {@code true} otherwise
+     * @throws Exception in case of error
+     */
+    private boolean evaluate(Context context, Writer out, String templateName, Reader reader, String source)
+        throws Exception
+    {
         // We override the default implementation here. See #init(RuntimeServices)
         // for explanations.
-        try {
-            SimpleNode nodeTree = null;
-
-            // The trick is done here: We use the signature that allows
-            // passing a boolean and we pass false, thus preventing Velocity
-            // from cleaning the context of its velocimacros even though the
-            // config property velocimacro.permissions.allow.inline.local.scope
-            // is set to true.
-            nodeTree = this.rsvc.parse(source, templateName, false);
-
-            if (nodeTree != null) {
-                InternalContextAdapterImpl ica =
-                    new InternalContextAdapterImpl(context != null ? context
-                        : this.velocityContextFactory.createContext());
-                ica.pushCurrentTemplateName(templateName);
-                boolean provideTemplateScope = this.rsvc.getBoolean("template.provide.scope.control", true);
-                Object templateScopeMarker = new Object();
-                Scope templateScope = null;
-                if (provideTemplateScope) {
-                    Object previous = ica.get(TEMPLATE_SCOPE_NAME);
-                    templateScope = new Scope(templateScopeMarker, previous);
-                    templateScope.put("templateName", templateName);
-                    ica.put(TEMPLATE_SCOPE_NAME, templateScope);
-                }
-                try {
-                    nodeTree.init(ica, this.rsvc);
-                    nodeTree.render(ica, out);
-                } catch (StopCommand stop) {
-                    // Check if we're supposed to stop here or not:
-                    // - stop if the template is breaking explicitly on the provided $template
-                    // - or stop if this is the topmost evaluation
-                    if (!stop.isFor(templateScopeMarker) && ica.getTemplateNameStack().length > 1) {
-                        throw stop;
-                    }
-                } finally {
-                    ica.popCurrentTemplateName();
-                    if (provideTemplateScope) {
-                        restoreTemplateScope(ica, templateScope);
-                    }
-                }
-                return true;
+
+        // The trick is done here: We use the signature that allows
+        // passing a boolean and we pass false, thus preventing Velocity
+        // from cleaning the context of its velocimacros even though the
+        // config property velocimacro.permissions.allow.inline.local.scope
+        // is set to true.
+        SimpleNode nodeTree = this.rsvc.parse(reader, templateName, false);
+
+        if (nodeTree != null) {
+            render(context, out, templateName, nodeTree, true);
+            if (source != null) {
+                this.parsedTemplateCache.put(templateName, source, nodeTree);
             }
+            return true;
+        }
 
-            return false;
-        } catch (Exception e) {
-            throw new XWikiVelocityException("Failed to evaluate content with id [" + templateName + "]", e);
+        return false;
+    }
+
+    /**
+     * @param context the Velocity context to use in the rendering
+     * @param out the writer where to write the result of the rendering
+     * @param templateName the name of the template (i.e. the macro namespace)
+     * @param nodeTree the parsed template
+     * @param initialize {@code true} if the tree has to be initialized, {@code false} if it's already initialized
+     * @throws Exception in case of error
+     */
+    private void render(Context context, Writer out, String templateName, SimpleNode nodeTree, boolean initialize)
+        throws Exception
+    {
+        InternalContextAdapterImpl ica =
+            new InternalContextAdapterImpl(context != null ? context : this.velocityContextFactory.createContext());
+        ica.pushCurrentTemplateName(templateName);
+        boolean provideTemplateScope = this.rsvc.getBoolean("template.provide.scope.control", true);
+        Object templateScopeMarker = new Object();
+        Scope templateScope = null;
+        if (provideTemplateScope) {
+            Object previous = ica.get(TEMPLATE_SCOPE_NAME);
+            templateScope = new Scope(templateScopeMarker, previous);
+            templateScope.put("templateName", templateName);
+            ica.put(TEMPLATE_SCOPE_NAME, templateScope);
+        }
+        try {
+            if (initialize) {
+                nodeTree.init(ica, this.rsvc);
+            }
+            nodeTree.render(ica, out);
+        } catch (StopCommand stop) {
+            // Check if we're supposed to stop here or not:
+            // - stop if the template is breaking explicitly on the provided $template
+            // - or stop if this is the topmost evaluation
+            if (!stop.isFor(templateScopeMarker) && ica.getTemplateNameStack().length > 1) {
+                throw stop;
+            }
+        } finally {
+            ica.popCurrentTemplateName();
+            if (provideTemplateScope) {
+                restoreTemplateScope(ica, templateScope);
+            }
         }
     }
 
@@ -257,34 +346,13 @@ public void clearMacroNamespace(String templateName)
     @Override
     public void startedUsingMacroNamespace(String namespace)
     {
-        synchronized (this.namespaceUsageCount) {
-            Integer count = this.namespaceUsageCount.get(namespace);
-            if (count == null) {
-                count = Integer.valueOf(0);
-            }
-            count = count + 1;
-            this.namespaceUsageCount.put(namespace, count);
-        }
+        this.macroNamespaceUsage.started(namespace);
     }
 
     @Override
     public void stoppedUsingMacroNamespace(String namespace)
     {
-        synchronized (this.namespaceUsageCount) {
-            Integer count = this.namespaceUsageCount.get(namespace);
-            if (count == null) {
-                // This shouldn't happen
-                this.logger.warn("Wrong usage count for namespace [{}]", namespace);
-                return;
-            }
-            count = count - 1;
-            if (count <= 0) {
-                this.namespaceUsageCount.remove(namespace);
-                this.clearMacroNamespace(namespace);
-            } else {
-                this.namespaceUsageCount.put(namespace, count);
-            }
-        }
+        this.macroNamespaceUsage.stopped(namespace);
     }
 
     @Override
@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.xwiki.velocity.VelocityEngine;
+
+/**
+ * Count the active rendering processes using each macro namespace of a {@link VelocityEngine} and clear a namespace
+ * when it's not used anymore. Each namespace is locked separately so that rendering processes using different
+ * namespaces don't wait for each other.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+final class MacroNamespaceUsage
+{
+    /**
+     * The engine owning the macro namespaces.
+     */
+    private final VelocityEngine engine;
+
+    /**
+     * Used to report a wrong usage count.
+     */
+    private final Logger logger;
+
+    /** Counter for the number of active rendering processes using each namespace. */
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+    /**
+     * @param engine the engine owning the macro namespaces
+     * @param logger used to report a wrong usage count
+     */
+    MacroNamespaceUsage(VelocityEngine engine, Logger logger)
+    {
+        this.engine = engine;
+        this.logger = logger;
+    }
+
+    /**
+     * @param namespace the namespace a rendering process started to use
+     * @see VelocityEngine#startedUsingMacroNamespace(String)
+     */
+    void started(String namespace)
+    {
+        while (true) {
+            Counter counter = this.counters.get(namespace);
+            if (counter == null) {
+                Counter newCounter = new Counter();
+                counter = this.counters.putIfAbsent(namespace, newCounter);
+                if (counter == null) {
+                    counter = newCounter;
+                }
+            }
+            // Retry if the namespace has been released in the meantime
+            if (counter.increment()) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @param namespace the namespace a rendering process stopped to use
+     * @see VelocityEngine#stoppedUsingMacroNamespace(String)
+     */
+    void stopped(String namespace)
+    {
+        Counter counter = this.counters.get(namespace);
+        if (counter == null || !counter.decrement(namespace)) {
+            // This shouldn't happen
+            this.logger.warn("Wrong usage count for namespace [{}]", namespace);
+        }
+    }
+
+    /**
+     * The number of active rendering processes using a namespace.
+     *
+     * @version $Id$
+     */
+    private final class Counter
+    {
+        /**
+         * The number of active rendering processes.
+         */
+        private int count;
+
+        /**
+         * {@code true} when the namespace is not used anymore and has been cleared.
+         */
+        private boolean released;
+
+        /**
+         * @return {@code false} if this counter has been released and can't be used anymore
+         */
+        synchronized boolean increment()
+        {
+            if (this.released) {
+                return false;
+            }
+            this.count++;
+            return true;
+        }
+
+        /**
+         * Decrement the counter and clear the namespace when it's not used anymore.
+         *
+         * @param namespace the namespace
+         * @return {@code false} if this counter has already been released
+         */
+        synchronized boolean decrement(String namespace)
+        {
+            if (this.released) {
+                return false;
+            }
+            this.count--;
+            if (this.count <= 0) {
+                // Clear the namespace before it can be used again by another rendering process (which will wait for
+                // this lock to be released if it got this counter)
+                this.released = true;
+                engine.clearMacroNamespace(namespace);
+                counters.remove(namespace, this);
+            }
+            return true;
+        }
+    }
+}
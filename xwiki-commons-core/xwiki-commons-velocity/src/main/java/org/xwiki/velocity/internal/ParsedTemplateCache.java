@@ -0,0 +1,503 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.node.ASTDirective;
+import org.apache.velocity.runtime.parser.node.Node;
+import org.apache.velocity.runtime.parser.node.SimpleNode;
+
+/**
+ * Bounded cache of initialized Velocity AST trees, keyed by template name and source content, so that the same
+ * script doesn't have to be parsed again each time it's evaluated.
+ * <p>
+ * Velocity registers inline {@code #macro} definitions when the tree is initialized, and initialization happens only
+ * once per tree. Each cached entry thus remembers its macro definitions so that they can be registered again in the
+ * template namespace when the tree is reused (the namespace may have been cleared in the meantime). Also note that
+ * the Velocity parser decides how to parse a {@code #name} without parenthesis depending on the macros which are
+ * registered at parse time; such sources are never cached, see {@link #isCacheable(String)}.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class ParsedTemplateCache
+{
+    /**
+     * The name of the Velocity property holding the maximum number of parsed templates to keep in memory, 0 to disable
+     * the cache.
+     */
+    public static final String CACHE_SIZE_PROPERTY = "evaluate.cache.size";
+
+    /**
+     * The name of the Velocity property holding the time in seconds after which a parsed template is discarded from
+     * the cache, 0 to keep them until the cache is full.
+     */
+    public static final String CACHE_EXPIRATION_PROPERTY = "evaluate.cache.expiration";
+
+    /**
+     * The default maximum number of parsed templates to keep in memory.
+     */
+    private static final int DEFAULT_CACHE_SIZE = 100;
+
+    /**
+     * The size of the buffer used to read the template source.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The name of the directive used to define macros.
+     */
+    private static final String MACRO_DIRECTIVE = "macro";
+
+    /**
+     * The prefix of the macro parameters in the macro definition.
+     */
+    private static final String PARAMETER_PREFIX = "$";
+
+    /**
+     * Keywords of the Velocity grammar which are not registered as directives.
+     */
+    private static final List<String> KEYWORDS = Arrays.asList("else", "elseif", "end");
+
+    /**
+     * Used to register macros and to know which directives are available.
+     */
+    private final RuntimeServices rsvc;
+
+    /**
+     * The maximum number of entries in the cache.
+     */
+    private final int maxSize;
+
+    /**
+     * The time in milliseconds after which an entry is discarded, 0 or less to never expire entries.
+     */
+    private final long expiration;
+
+    /**
+     * The cached templates, in access order.
+     */
+    private final Map<Key, ParsedTemplate> templates;
+
+    /**
+     * @see #getHits()
+     */
+    private long hits;
+
+    /**
+     * @see #getMisses()
+     */
+    private long misses;
+
+    /**
+     * @see #getEvictions()
+     */
+    private long evictions;
+
+    /**
+     * @param rsvc the Velocity runtime for which the templates are parsed
+     * @param maxSize the maximum number of entries in the cache
+     * @param expiration the time in milliseconds after which an entry is discarded, 0 or less to never expire entries
+     */
+    public ParsedTemplateCache(RuntimeServices rsvc, final int maxSize, long expiration)
+    {
+        this.rsvc = rsvc;
+        this.maxSize = maxSize;
+        this.expiration = expiration;
+        this.templates = new LinkedHashMap<Key, ParsedTemplate>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ParsedTemplate> eldest)
+            {
+                boolean remove = size() > maxSize;
+                if (remove) {
+                    evictions++;
+                }
+                return remove;
+            }
+        };
+    }
+
+    /**
+     * @param rsvc the Velocity runtime for which the templates are parsed
+     * @return the cache configured by the {@value #CACHE_SIZE_PROPERTY} and {@value #CACHE_EXPIRATION_PROPERTY}
+     *         properties of the passed runtime, {@code null} if the cache is disabled
+     */
+    public static ParsedTemplateCache create(RuntimeServices rsvc)
+    {
+        int cacheSize = rsvc.getInt(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+
+        return cacheSize > 0 ? new ParsedTemplateCache(rsvc, cacheSize,
+            rsvc.getInt(CACHE_EXPIRATION_PROPERTY, 0) * 1000L) : null;
+    }
+
+    /**
+     * The cache is keyed by content so the whole source has to be read before looking for a parsed template.
+     * 
+     * @param source the source of the template
+     * @return the content of the source
+     * @throws IOException when failing to read the source
+     */
+    public static String read(Reader source) throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        char[] buffer = new char[BUFFER_SIZE];
+        for (int read = source.read(buffer); read != -1; read = source.read(buffer)) {
+            content.append(buffer, 0, read);
+        }
+
+        return content.toString();
+    }
+
+    /**
+     * @param source the source of the template
+     * @return {@code true} if the result of the parsing of the passed source doesn't depend on the macros registered
+     *         at parse time (i.e. all macro calls use parenthesis), {@code false} otherwise
+     */
+    public boolean isCacheable(String source)
+    {
+        if (this.maxSize <= 0) {
+            return false;
+        }
+
+        for (int i = source.indexOf('#'); i >= 0; i = source.indexOf('#', i + 1)) {
+            if (isAmbiguousMacroCall(source, i + 1)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param source the source of the template
+     * @param index the index following a {@code #}
+     * @return {@code true} if the source contains, at the passed index, an identifier which is not a known directive
+     *         and which is not followed by a parenthesis
+     */
+    private boolean isAmbiguousMacroCall(String source, int index)
+    {
+        int start = index;
+        if (start < source.length() && (source.charAt(start) == '{' || source.charAt(start) == '@')) {
+            start++;
+        }
+        if (start >= source.length() || !isIdentifierStart(source.charAt(start))) {
+            return false;
+        }
+
+        int end = getIdentifierEnd(source, start + 1);
+        String name = source.substring(start, end);
+        if (KEYWORDS.contains(name) || this.rsvc.getDirective(name) != null) {
+            return false;
+        }
+
+        int next = source.charAt(index) == '{' ? end + 1 : end;
+
+        return next >= source.length() || source.charAt(next) != '(';
+    }
+
+    /**
+     * @param source the source of the template
+     * @param index the index from where to look
+     * @return the index of the first character, from the passed index, which can't be part of a directive name
+     */
+    private int getIdentifierEnd(String source, int index)
+    {
+        int end = index;
+        while (end < source.length() && isIdentifierPart(source.charAt(end))) {
+            end++;
+        }
+
+        return end;
+    }
+
+    /**
+     * @param c the character to check
+     * @return {@code true} if the passed character can start a directive name
+     */
+    private boolean isIdentifierStart(char c)
+    {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    /**
+     * @param c the character to check
+     * @return {@code true} if the passed character can be part of a directive name
+     */
+    private boolean isIdentifierPart(char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-';
+    }
+
+    /**
+     * Return the cached tree for the passed template, after registering again in the template namespace the macros
+     * it defines (the namespace may have been cleared since the tree was put in the cache).
+     * 
+     * @param templateName the name of the template (i.e. the macro namespace)
+     * @param source the source of the template
+     * @return the cached tree or {@code null} if none is cached (or if it expired) or if the source can't be cached
+     */
+    public SimpleNode get(String templateName, String source)
+    {
+        ParsedTemplate template = isCacheable(source) ? getParsedTemplate(templateName, source) : null;
+
+        if (template == null) {
+            return null;
+        }
+
+        for (MacroDefinition macro : template.macros) {
+            this.rsvc.addVelocimacro(macro.arguments[0], macro.body, macro.arguments, templateName);
+        }
+
+        return template.tree;
+    }
+
+    /**
+     * @param templateName the name of the template (i.e. the macro namespace)
+     * @param source the source of the template
+     * @return the cached template or {@code null} if none is cached (or if it expired)
+     */
+    private synchronized ParsedTemplate getParsedTemplate(String templateName, String source)
+    {
+        Key key = new Key(templateName, source);
+        ParsedTemplate template = this.templates.get(key);
+
+        if (template != null && this.expiration > 0
+            && System.currentTimeMillis() - template.creationDate > this.expiration) {
+            this.templates.remove(key);
+            this.evictions++;
+            template = null;
+        }
+
+        if (template != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+
+        return template;
+    }
+
+    /**
+     * Cache the passed tree, unless the source can't be cached (see {@link #isCacheable(String)}).
+     * 
+     * @param templateName the name of the template (i.e. the macro namespace)
+     * @param source the source of the template
+     * @param tree the parsed and initialized tree
+     */
+    public void put(String templateName, String source, SimpleNode tree)
+    {
+        if (isCacheable(source)) {
+            ParsedTemplate template = new ParsedTemplate(tree);
+
+            synchronized (this) {
+                this.templates.put(new Key(templateName, source), template);
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached templates
+     */
+    public synchronized int size()
+    {
+        return this.templates.size();
+    }
+
+    /**
+     * @return the number of times a parsed template was found in the cache
+     */
+    public synchronized long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of times a parsed template was not found in the cache
+     */
+    public synchronized long getMisses()
+    {
+        return this.misses;
+    }
+
+    /**
+     * @return the number of templates removed from the cache because it was full or because they expired
+     */
+    public synchronized long getEvictions()
+    {
+        return this.evictions;
+    }
+
+    /**
+     * A parsed and initialized template along with the macros it defines.
+     * 
+     * @version $Id$
+     */
+    private static final class ParsedTemplate
+    {
+        /**
+         * The parsed and initialized tree.
+         */
+        private final SimpleNode tree;
+
+        /**
+         * The macros defined in the template.
+         */
+        private final List<MacroDefinition> macros;
+
+        /**
+         * When the entry was created.
+         */
+        private final long creationDate = System.currentTimeMillis();
+
+        /**
+         * @param tree the parsed and initialized tree
+         */
+        private ParsedTemplate(SimpleNode tree)
+        {
+            this.tree = tree;
+
+            List<MacroDefinition> definitions = new ArrayList<MacroDefinition>();
+            collectMacros(tree, definitions);
+            this.macros = definitions.isEmpty() ? Collections.<MacroDefinition>emptyList() : definitions;
+        }
+
+        /**
+         * @param node the node in which to look for macro definitions
+         * @param definitions the list where to add found macro definitions
+         */
+        private static void collectMacros(Node node, List<MacroDefinition> definitions)
+        {
+            if (node instanceof ASTDirective && MACRO_DIRECTIVE.equals(((ASTDirective) node).getDirectiveName())) {
+                definitions.add(new MacroDefinition(node));
+            }
+
+            for (int i = 0; i < node.jjtGetNumChildren(); ++i) {
+                collectMacros(node.jjtGetChild(i), definitions);
+            }
+        }
+    }
+
+    /**
+     * A {@code #macro} definition, in the form expected by
+     * {@link RuntimeServices#addVelocimacro(String, Node, String[], String)}.
+     * 
+     * @version $Id$
+     */
+    private static final class MacroDefinition
+    {
+        /**
+         * The macro name followed by the names of its parameters.
+         */
+        private final String[] arguments;
+
+        /**
+         * The body of the macro.
+         */
+        private final Node body;
+
+        /**
+         * @param node the {@code #macro} directive node
+         */
+        MacroDefinition(Node node)
+        {
+            // Same as what Velocity's Macro directive does: the last child is the body and the others are the macro
+            // name followed by the parameters.
+            int count = node.jjtGetNumChildren() - 1;
+            this.arguments = new String[count];
+            for (int i = 0; i < count; ++i) {
+                String argument = node.jjtGetChild(i).getFirstToken().image;
+                if (i > 0 && argument.startsWith(PARAMETER_PREFIX)) {
+                    argument = argument.substring(1);
+                }
+                this.arguments[i] = argument.intern();
+            }
+            this.body = node.jjtGetChild(count);
+        }
+    }
+
+    /**
+     * Cache key: the template name and the source, compared by content.
+     * 
+     * @version $Id$
+     */
+    private static final class Key
+    {
+        /**
+         * The name of the template (i.e. the macro namespace).
+         */
+        private final String templateName;
+
+        /**
+         * The source of the template.
+         */
+        private final String source;
+
+        /**
+         * The precomputed hash code.
+         */
+        private final int hashCode;
+
+        /**
+         * @param templateName the name of the template (i.e. the macro namespace)
+         * @param source the source of the template
+         */
+        Key(String templateName, String source)
+        {
+            this.templateName = templateName;
+            this.source = source;
+            this.hashCode = 31 * (templateName != null ? templateName.hashCode() : 0) + source.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) obj;
+
+            return this.hashCode == other.hashCode && this.source.equals(other.source)
+                && StringUtils.equals(this.templateName, other.templateName);
+        }
+    }
+}
@@ -20,6 +20,9 @@
 package org.xwiki.velocity.internal.jmx;
 
 import org.xwiki.velocity.VelocityEngine;
+import org.xwiki.velocity.internal.DefaultVelocityEngine;
+import org.xwiki.velocity.internal.ParsedTemplateCache;
+import org.xwiki.velocity.introspection.DeprecatedCheckUberspector;
 
 import javax.management.openmbean.ArrayType;
 import javax.management.openmbean.CompositeData;
@@ -31,6 +34,7 @@
 import javax.management.openmbean.TabularDataSupport;
 import javax.management.openmbean.TabularType;
 import java.lang.reflect.Field;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -99,6 +103,91 @@ public TabularData getTemplates()
         return data;
     }
 
+    @Override
+    public int getParsedTemplateCacheSize()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.size() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateCacheHits()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getHits() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateCacheMisses()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getMisses() : 0;
+    }
+
+    @Override
+    public long getParsedTemplateCacheEvictions()
+    {
+        ParsedTemplateCache cache = getParsedTemplateCache();
+
+        return cache != null ? cache.getEvictions() : 0;
+    }
+
+    @Override
+    public TabularData getDeprecatedUsages()
+    {
+        TabularData data;
+
+        try {
+            String[] columnNames = new String[] {"usage", "count"};
+            String[] descriptions = new String[] {"The deprecated usage", "The number of times it was found"};
+            CompositeType rowType = new CompositeType("deprecatedUsage",
+                "Deprecated usage found in templates for a row", columnNames, descriptions,
+                new OpenType[]{SimpleType.STRING, SimpleType.LONG});
+
+            TabularType type = new TabularType("deprecatedUsages", "Deprecated usages found in templates", rowType,
+                new String[] {columnNames[0]});
+            data = new TabularDataSupport(type);
+
+            for (Map.Entry<String, Long> entry : getInternalDeprecatedUsages().entrySet()) {
+                data.put(new CompositeDataSupport(rowType, columnNames, new Object[]{entry.getKey(),
+                    entry.getValue()}));
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to gather information on Velocity deprecated usages", e);
+        }
+
+        return data;
+    }
+
+    /**
+     * @return the number of times each deprecated usage was found, empty if the engine doesn't aggregate them
+     * @throws NoSuchFieldException in case of an exception in getting the data
+     * @throws IllegalAccessException in case of an exception in getting the data
+     * @see DeprecatedCheckUberspector#getDeprecatedUsages()
+     */
+    private Map<String, Long> getInternalDeprecatedUsages() throws NoSuchFieldException, IllegalAccessException
+    {
+        org.apache.velocity.app.VelocityEngine velocityEngine = getInternalEngine();
+
+        Object uberspector = velocityEngine != null
+            ? velocityEngine.getApplicationAttribute(DeprecatedCheckUberspector.class.getName()) : null;
+
+        return uberspector instanceof DeprecatedCheckUberspector
+            ? ((DeprecatedCheckUberspector) uberspector).getDeprecatedUsages() : Collections.<String, Long>emptyMap();
+    }
+
+    /**
+     * @return the cache of parsed templates of the engine, {@code null} if the engine doesn't have any
+     */
+    private ParsedTemplateCache getParsedTemplateCache()
+    {
+        return this.engine instanceof DefaultVelocityEngine
+            ? ((DefaultVelocityEngine) this.engine).getParsedTemplateCache() : null;
+    }
+
     /**
      * @return the data using standard Java classes, {@link #getTemplates()} wraps it in generic Open types to make the
      *         returned data portable and accessible remotely from a JMX management console
@@ -108,8 +197,7 @@ public TabularData getTemplates()
      */
     private Map<String, String[]> getInternalTemplates() throws NoSuchFieldException, IllegalAccessException
     {
-        // Get the internal Velocity Engine (not the XWiki wrapping one)
-        Object velocityEngine = getField(this.engine, "engine");
+        Object velocityEngine = getInternalEngine();
 
         Object runtimeInstance = getField(velocityEngine, "ri");
         Object vmFactory = getField(runtimeInstance, "vmFactory");
@@ -140,6 +228,17 @@ private Map<String, String[]> getInternalTemplates() throws NoSuchFieldException
         return result;
     }
 
+    /**
+     * @return the internal Velocity Engine (not the XWiki wrapping one)
+     * @throws NoSuchFieldException in case of an error when accessing the private field
+     * @throws IllegalAccessException in case of an error when accessing the private field
+     */
+    private org.apache.velocity.app.VelocityEngine getInternalEngine() throws NoSuchFieldException,
+        IllegalAccessException
+    {
+        return (org.apache.velocity.app.VelocityEngine) getField(this.engine, "engine");
+    }
+
     /**
      * Helper method to access a private field.
      *
@@ -25,6 +25,8 @@
  * MBean API related to Velocity Engines. Supports the following features:
  * <ul>
  *   <li>Retrieve list of template namespaces along with the name of macros registered in each template namespace</li>
+ *   <li>Retrieve statistics about the cache of parsed templates</li>
+ *   <li>Retrieve the deprecated usages found in templates</li>
  * </ul>
  *
  * @version $Id$
@@ -36,4 +38,35 @@
      * @return the list of template namespaces along with the name of macros registered in each template namespace
      */
     TabularData getTemplates();
+
+    /**
+     * @return the number of parsed templates currently cached
+     * @since 4.5M1
+     */
+    int getParsedTemplateCacheSize();
+
+    /**
+     * @return the number of evaluations which reused a cached parsed template
+     * @since 4.5M1
+     */
+    long getParsedTemplateCacheHits();
+
+    /**
+     * @return the number of evaluations which had to parse a cacheable template
+     * @since 4.5M1
+     */
+    long getParsedTemplateCacheMisses();
+
+    /**
+     * @return the number of parsed templates removed from the cache because it was full or because they expired
+     * @since 4.5M1
+     */
+    long getParsedTemplateCacheEvictions();
+
+    /**
+     * @return the number of times each deprecated usage was found in templates, empty unless deprecated usages are
+     *         aggregated (see {@link org.xwiki.velocity.introspection.DeprecatedCheckUberspector#AGGREGATE_USAGES})
+     * @since 4.5M1
+     */
+    TabularData getDeprecatedUsages();
 }
@@ -64,6 +64,16 @@
      */
     private VelocityType type;
 
+    /**
+     * The index of the first character of the Velocity element in the parsed source.
+     */
+    private int start;
+
+    /**
+     * The index following the last character of the Velocity element in the parsed source.
+     */
+    private int end;
+
     /**
      * @param name the name of the Velocity element (if, macro, ...).
      * @param type the type of the Velocity element.
@@ -74,6 +84,21 @@ public VelocityBlock(String name, VelocityType type)
         this.type = type;
     }
 
+    /**
+     * @param name the name of the Velocity element (if, macro, ...).
+     * @param type the type of the Velocity element.
+     * @param start the index of the first character of the Velocity element in the parsed source
+     * @param end the index following the last character of the Velocity element in the parsed source
+     * @since 4.5M1
+     */
+    public VelocityBlock(String name, VelocityType type, int start, int end)
+    {
+        this(name, type);
+
+        this.start = start;
+        this.end = end;
+    }
+
     /**
      * @return the name of the Velocity element (if, macro, ...).
      */
@@ -105,4 +130,22 @@ public void setType(VelocityType type)
     {
         this.type = type;
     }
+
+    /**
+     * @return the index of the first character of the Velocity element in the parsed source
+     * @since 4.5M1
+     */
+    public int getStart()
+    {
+        return this.start;
+    }
+
+    /**
+     * @return the index following the last character of the Velocity element in the parsed source
+     * @since 4.5M1
+     */
+    public int getEnd()
+    {
+        return this.end;
+    }
 }
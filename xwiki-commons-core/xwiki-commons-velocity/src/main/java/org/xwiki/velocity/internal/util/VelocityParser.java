@@ -137,10 +137,9 @@ public int getDirective(char[] array, int currentIndex, StringBuffer velocityBlo
         int i = currentIndex + 1;
 
         // Get macro name
-        StringBuffer directiveNameBuffer = new StringBuffer();
-        i = getDirectiveName(array, i, directiveNameBuffer, null, context);
+        i = getDirectiveName(array, i, null, null, context);
 
-        String directiveName = directiveNameBuffer.toString();
+        String directiveName = getDirectiveName(array, currentIndex + 1, i);
 
         if (!VELOCITYDIRECTIVE_NOPARAM.contains(directiveName)) {
             // Skip spaces
@@ -178,6 +177,26 @@ public int getDirective(char[] array, int currentIndex, StringBuffer velocityBlo
         return i;
     }
 
+    /**
+     * @param array the source to parse
+     * @param start the index of the directive name, including the optional <code>{</code>
+     * @param end the index after the directive name, including the optional <code>}</code>
+     * @return the name of the directive
+     */
+    private String getDirectiveName(char[] array, int start, int end)
+    {
+        int nameStart = start;
+        int nameEnd = end;
+        if (array[nameStart] == '{') {
+            ++nameStart;
+        }
+        if (array[nameEnd - 1] == '}') {
+            --nameEnd;
+        }
+
+        return new String(array, nameStart, nameEnd - nameStart);
+    }
+
     /**
      * Get a valid Velocity identifier used for variable of macro.
      * 
@@ -40,6 +40,25 @@
      */
     private Stack<VelocityBlock> blocks = new Stack<VelocityBlock>();
 
+    /**
+     * Create an empty context.
+     */
+    public VelocityParserContext()
+    {
+    }
+
+    /**
+     * Create a copy of the passed context.
+     * 
+     * @param context the context to copy
+     * @since 4.5M1
+     */
+    public VelocityParserContext(VelocityParserContext context)
+    {
+        this.type = context.type;
+        this.blocks.addAll(context.blocks);
+    }
+
     /**
      * @param type the type of found velocity block.
      */
@@ -78,11 +97,12 @@ public VelocityBlock pushVelocityElement(VelocityBlock block)
     /**
      * Go out of a Velocity block.
      * 
-     * @return the previous Velocity block in which the process was.
+     * @return the previous Velocity block in which the process was, null if the process was not in any block
+     *         (unbalanced <code>#end</code>)
      */
     public VelocityBlock popVelocityElement()
     {
-        return this.blocks.pop();
+        return this.blocks.isEmpty() ? null : this.blocks.pop();
     }
 
     /**
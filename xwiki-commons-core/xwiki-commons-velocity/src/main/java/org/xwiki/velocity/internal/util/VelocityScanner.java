@@ -0,0 +1,238 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scan a Velocity source and produce the list of Velocity elements it contains as {@link VelocityBlock}s pointing to
+ * the source buffer instead of copying it.
+ * <p>
+ * The scanner can be stopped at any time and resumed later from a {@link Checkpoint}, so that an editor can rescan
+ * only the modified part of a large document.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ */
+public class VelocityScanner
+{
+    /**
+     * The Logger to use for logging.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VelocityScanner.class);
+
+    /**
+     * The state of a {@link VelocityScanner} at a given index of the source.
+     * 
+     * @version $Id$
+     */
+    public static final class Checkpoint
+    {
+        /**
+         * The index in the source.
+         */
+        private final int index;
+
+        /**
+         * The parser context at {@link #index}.
+         */
+        private final VelocityParserContext context;
+
+        /**
+         * @param index the index in the source
+         * @param context the parser context at the provided index
+         */
+        private Checkpoint(int index, VelocityParserContext context)
+        {
+            this.index = index;
+            this.context = new VelocityParserContext(context);
+        }
+
+        /**
+         * @return the index in the source where to resume scanning
+         */
+        public int getIndex()
+        {
+            return this.index;
+        }
+    }
+
+    /**
+     * The parser used to match the Velocity elements.
+     */
+    private final VelocityParser parser = new VelocityParser();
+
+    /**
+     * The source to scan.
+     */
+    private final char[] array;
+
+    /**
+     * The current index in {@link #array}.
+     */
+    private int index;
+
+    /**
+     * The current parser context.
+     */
+    private VelocityParserContext context;
+
+    /**
+     * @param array the source to scan
+     */
+    public VelocityScanner(char[] array)
+    {
+        this.array = array;
+        this.context = new VelocityParserContext();
+    }
+
+    /**
+     * Resume scanning from a previously saved checkpoint.
+     * <p>
+     * The provided source is expected to be identical to the scanned one before the checkpoint index.
+     * 
+     * @param array the source to scan
+     * @param checkpoint the checkpoint returned by {@link #getCheckpoint()}
+     */
+    public VelocityScanner(char[] array, Checkpoint checkpoint)
+    {
+        this.array = array;
+        this.index = Math.min(checkpoint.index, array.length);
+        this.context = new VelocityParserContext(checkpoint.context);
+    }
+
+    /**
+     * @return the state of the scanner at the current index
+     */
+    public Checkpoint getCheckpoint()
+    {
+        return new Checkpoint(this.index, this.context);
+    }
+
+    /**
+     * @return the current index in the source
+     */
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    /**
+     * Find the next Velocity element.
+     * 
+     * @return the next Velocity element or null if the end of the source has been reached
+     */
+    public VelocityBlock next()
+    {
+        while (this.index < this.array.length) {
+            char c = this.array[this.index];
+
+            if (c == '#' || c == '$') {
+                VelocityBlock block = getBlock(c);
+                if (block != null) {
+                    return block;
+                }
+            } else if (c == '\\') {
+                skipEscape();
+            } else {
+                ++this.index;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Skip a group of <code>\</code> and the character following it when it's escaped.
+     */
+    private void skipEscape()
+    {
+        int start = this.index;
+
+        while (this.index < this.array.length && this.array[this.index] == '\\') {
+            ++this.index;
+        }
+
+        if ((this.index - start) % 2 == 1 && this.index < this.array.length) {
+            ++this.index;
+        }
+    }
+
+    /**
+     * Try to match a Velocity element at the current index.
+     * 
+     * @param c the current character
+     * @return the matched Velocity element or null if there is none at the current index
+     */
+    private VelocityBlock getBlock(char c)
+    {
+        int start = this.index;
+
+        // Don't let a failed match alter the current context
+        VelocityParserContext blockContext = new VelocityParserContext(this.context);
+
+        try {
+            int end;
+            if (c == '#') {
+                end = this.parser.getKeyWord(this.array, start, null, blockContext);
+            } else {
+                end = this.parser.getVar(this.array, start, null, blockContext);
+            }
+
+            this.index = end;
+            this.context = blockContext;
+
+            VelocityBlock.VelocityType type = blockContext.getType();
+
+            return new VelocityBlock(type == VelocityBlock.VelocityType.COMMENT ? null : getName(start), type, start,
+                end);
+        } catch (InvalidVelocityException e) {
+            LOGGER.debug("Not a valid Velocity block at char [{}]", start, e);
+
+            this.index = start + 1;
+
+            return null;
+        }
+    }
+
+    /**
+     * @param start the index of the Velocity element
+     * @return the name of the directive, macro or variable
+     */
+    private String getName(int start)
+    {
+        int i = start + 1;
+
+        if (this.array[i] == '!') {
+            ++i;
+        }
+        if (this.array[i] == '{') {
+            ++i;
+        }
+
+        int nameStart = i;
+        while (i < this.array.length && this.parser.isValidVelocityIdentifierChar(this.array[i])) {
+            ++i;
+        }
+
+        return new String(this.array, nameStart, i - nameStart);
+    }
+}
@@ -20,7 +20,16 @@
 package org.xwiki.velocity.introspection;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.util.RuntimeServicesAware;
 import org.apache.velocity.util.introspection.Info;
 import org.apache.velocity.util.introspection.Introspector;
 import org.apache.velocity.util.introspection.Uberspect;
@@ -34,14 +43,81 @@
  * if the returned method has a Deprecated annotation. Because this is a chainable uberspector, it
  * has to re-get the method using a default introspector, which is not safe; future uberspectors
  * might not be able to return a precise method name, or a method of the original target object.
+ * <p>
+ * Whether a method is deprecated or not is cached per class, method name and argument types. By default each
+ * deprecated usage is logged; when {@link #AGGREGATE_USAGES} is enabled each deprecated usage is logged only the first
+ * time it's found in a template and then only counted, see {@link #getDeprecatedUsages()}. The uberspector registers
+ * itself as a Velocity application attribute (named after this class) so that the report can be retrieved from the
+ * Velocity engine (it's exposed by the Velocity engine JMX bean).
  * 
  * @since 1.5M1
  * @version $Id$
  * @see ChainableUberspector
  */
 public class DeprecatedCheckUberspector extends AbstractChainableUberspector implements Uberspect,
-    ChainableUberspector, UberspectLoggable
+    ChainableUberspector, UberspectLoggable, RuntimeServicesAware
 {
+    /**
+     * The name of the Velocity property indicating if deprecated usages should be aggregated instead of logged each
+     * time they are found.
+     * 
+     * @since 4.5M1
+     */
+    public static final String AGGREGATE_USAGES = "runtime.introspector.uberspect.deprecatedCheck.aggregate";
+
+    /**
+     * Used when looking up getters.
+     */
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    /**
+     * The maximum number of classes for which verdicts are cached. The cache keeps a strong reference to the classes
+     * so it has to be bounded for the classes to be garbage collected once they are not used anymore.
+     */
+    private static final int VERDICTS_SIZE = 1000;
+
+    /**
+     * The maximum number of distinct deprecated usages which are counted. Once reached, the usages which are not
+     * counted yet are logged each time they are found.
+     */
+    private static final int USAGES_SIZE = 1000;
+
+    /**
+     * Whether a method is deprecated, per class, then per method name and argument types. The least recently used
+     * classes are discarded once {@link #VERDICTS_SIZE} is reached. Access to this map (and to the maps it contains)
+     * is synchronized on this map.
+     */
+    private final Map<Class< ? >, Map<String, Verdict[]>> verdicts =
+        new LinkedHashMap<Class< ? >, Map<String, Verdict[]>>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Class< ? >, Map<String, Verdict[]>> eldest)
+            {
+                return size() > VERDICTS_SIZE;
+            }
+        };
+
+    /**
+     * The number of times each deprecated usage was found, when they are aggregated. Bounded by {@link #USAGES_SIZE}.
+     */
+    private final ConcurrentMap<String, AtomicLong> usages = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * @see #AGGREGATE_USAGES
+     */
+    private boolean aggregateUsages;
+
+    @Override
+    public void setRuntimeServices(RuntimeServices runtimeServices)
+    {
+        this.aggregateUsages = runtimeServices.getBoolean(AGGREGATE_USAGES, false);
+
+        // Make the deprecated usages report reachable from the Velocity engine
+        runtimeServices.setApplicationAttribute(DeprecatedCheckUberspector.class.getName(), this);
+    }
+
     @Override
     public void init()
     {
@@ -55,8 +131,7 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
     {
         VelMethod method = super.getMethod(obj, methodName, args, i);
         if (method != null) {
-            Method m = introspector.getMethod(obj.getClass(), method.getMethodName(), args);
-            if (m != null && m.isAnnotationPresent(Deprecated.class)) {
+            if (isDeprecated(obj.getClass(), method.getMethodName(), args, null)) {
                 logWarning("method", obj, method.getMethodName(), i);
             }
         }
@@ -68,9 +143,7 @@ public VelPropertyGet getPropertyGet(Object obj, String identifier, Info i) thro
     {
         VelPropertyGet method = super.getPropertyGet(obj, identifier, i);
         if (method != null) {
-            Method m =
-                introspector.getMethod(obj.getClass(), method.getMethodName(), new Object[] {});
-            if (m != null && m.isAnnotationPresent(Deprecated.class)) {
+            if (isDeprecated(obj.getClass(), method.getMethodName(), NO_ARGUMENTS, null)) {
                 logWarning("getter", obj, method.getMethodName(), i);
             }
         }
@@ -84,15 +157,94 @@ public VelPropertySet getPropertySet(Object obj, String identifier, Object arg,
         // TODO Auto-generated method stub
         VelPropertySet method = super.getPropertySet(obj, identifier, arg, i);
         if (method != null) {
-            Method m =
-                introspector.getMethod(obj.getClass(), method.getMethodName(), new Object[] {arg});
-            if (m != null && m.isAnnotationPresent(Deprecated.class)) {
+            if (isDeprecated(obj.getClass(), method.getMethodName(), null, arg)) {
                 logWarning("setter", obj, method.getMethodName(), i);
             }
         }
         return method;
     }
 
+    /**
+     * @return the number of times each deprecated usage was found (e.g. {@code method [java.util.Date.getYear] in
+     *         mytemplate}), empty if deprecated usages are not aggregated
+     * @see #AGGREGATE_USAGES
+     * @since 4.5M1
+     */
+    public Map<String, Long> getDeprecatedUsages()
+    {
+        Map<String, Long> result = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : this.usages.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * @param type the class declaring the method
+     * @param methodName the name of the method
+     * @param args the arguments passed to the method, {@code null} for a setter
+     * @param arg the argument passed to the setter, when {@code args} is {@code null}
+     * @return {@code true} if the method is annotated with {@link Deprecated}
+     */
+    private boolean isDeprecated(Class< ? > type, String methodName, Object[] args, Object arg)
+    {
+        synchronized (this.verdicts) {
+            Map<String, Verdict[]> typeVerdicts = this.verdicts.get(type);
+            Verdict[] methodVerdicts = typeVerdicts != null ? typeVerdicts.get(methodName) : null;
+            if (methodVerdicts != null) {
+                for (Verdict verdict : methodVerdicts) {
+                    if (args != null ? verdict.matches(args) : verdict.matches(arg)) {
+                        return verdict.deprecated;
+                    }
+                }
+            }
+        }
+
+        // Not found: the arguments can be copied
+        Object[] arguments = args != null ? args : new Object[] {arg};
+        Method m = this.introspector.getMethod(type, methodName, arguments);
+        Verdict verdict = new Verdict(arguments, m != null && m.isAnnotationPresent(Deprecated.class));
+
+        synchronized (this.verdicts) {
+            Map<String, Verdict[]> typeVerdicts = this.verdicts.get(type);
+            if (typeVerdicts == null) {
+                typeVerdicts = new HashMap<String, Verdict[]>();
+                this.verdicts.put(type, typeVerdicts);
+            }
+            Verdict[] methodVerdicts = typeVerdicts.get(methodName);
+            if (methodVerdicts == null) {
+                methodVerdicts = new Verdict[] {verdict};
+            } else {
+                methodVerdicts = Arrays.copyOf(methodVerdicts, methodVerdicts.length + 1);
+                methodVerdicts[methodVerdicts.length - 1] = verdict;
+            }
+            typeVerdicts.put(methodName, methodVerdicts);
+        }
+
+        return verdict.deprecated;
+    }
+
+    /**
+     * @param usage the deprecated usage
+     * @return {@code true} if the deprecated usage has already been found before
+     */
+    private boolean countUsage(String usage)
+    {
+        AtomicLong count = this.usages.get(usage);
+        if (count == null) {
+            if (this.usages.size() >= USAGES_SIZE) {
+                // Too many distinct usages: log it each time
+                return false;
+            }
+            AtomicLong newCount = new AtomicLong();
+            count = this.usages.putIfAbsent(usage, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        return count.getAndIncrement() > 0;
+    }
+
     /**
      * Helper method to log a warning when a deprecation has been found.
      * 
@@ -104,8 +256,77 @@ public VelPropertySet getPropertySet(Object obj, String identifier, Object arg,
      */
     private void logWarning(String deprecationType, Object object, String methodName, Info info)
     {
+        if (this.aggregateUsages && countUsage(String.format("%s [%s.%s] in %s", deprecationType,
+            object.getClass().getCanonicalName(), methodName, info.getTemplateName()))) {
+            // Already logged
+            return;
+        }
+
         log.warn(String.format("Deprecated usage of %s [%s] in %s@%d,%d", deprecationType, object
             .getClass().getCanonicalName()
             + "." + methodName, info.getTemplateName(), info.getLine(), info.getColumn()));
     }
+
+    /**
+     * Whether the method resolved for some argument types is deprecated (Velocity's introspector resolves methods
+     * using the argument types only).
+     *
+     * @version $Id$
+     */
+    private static final class Verdict
+    {
+        /** The types of the arguments, {@code null} for {@code null} arguments. */
+        private final Class< ? >[] argumentTypes;
+
+        /** {@code true} if the resolved method is deprecated. */
+        private final boolean deprecated;
+
+        /**
+         * @param args the arguments passed to the method
+         * @param deprecated {@code true} if the resolved method is deprecated
+         */
+        Verdict(Object[] args, boolean deprecated)
+        {
+            this.argumentTypes = new Class< ? >[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                this.argumentTypes[i] = getType(args[i]);
+            }
+            this.deprecated = deprecated;
+        }
+
+        /**
+         * @param args the arguments passed to the method
+         * @return {@code true} if the arguments have the types of this verdict
+         */
+        boolean matches(Object[] args)
+        {
+            if (args.length != this.argumentTypes.length) {
+                return false;
+            }
+            for (int i = 0; i < args.length; ++i) {
+                if (getType(args[i]) != this.argumentTypes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param arg the argument passed to the setter
+         * @return {@code true} if this verdict is for a single argument of the type of the passed argument
+         */
+        boolean matches(Object arg)
+        {
+            return this.argumentTypes.length == 1 && getType(arg) == this.argumentTypes[0];
+        }
+
+        /**
+         * @param arg an argument
+         * @return the type of the argument, {@code null} for a {@code null} argument
+         */
+        private static Class< ? > getType(Object arg)
+        {
+            return arg != null ? arg.getClass() : null;
+        }
+    }
 }
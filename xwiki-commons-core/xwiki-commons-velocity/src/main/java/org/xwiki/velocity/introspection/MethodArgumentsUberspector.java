@@ -20,8 +20,13 @@
 package org.xwiki.velocity.introspection;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.apache.commons.lang3.ClassUtils;
 import org.apache.velocity.runtime.RuntimeServices;
 import org.apache.velocity.util.RuntimeServicesAware;
 import org.apache.velocity.util.introspection.Info;
@@ -50,10 +55,35 @@
 public class MethodArgumentsUberspector extends AbstractChainableUberspector implements RuntimeServicesAware
 {
     /**
-     * The component used to convert method arguments to formal parameter types.
+     * The maximum number of entries in {@link #candidateMethods}. The cache keeps a strong reference to the classes so
+     * it has to be bounded for the classes to be garbage collected once they are not used anymore (e.g. the classes of
+     * an uninstalled extension).
+     */
+    private static final int CANDIDATE_METHODS_SIZE = 1000;
+
+    /**
+     * Used to convert method arguments to formal parameter types.
      */
     private ConverterManager converterManager;
 
+    /**
+     * The signatures of the methods which can be called with converted arguments, indexed by class, method name and
+     * number of arguments, so that we don't have to look for them each time a method is called. The least recently
+     * used entries are discarded once {@link #CANDIDATE_METHODS_SIZE} is reached. Access to this map is synchronized
+     * on the map.
+     */
+    private final Map<MethodKey, MethodSignature[]> candidateMethods =
+        new LinkedHashMap<MethodKey, MethodSignature[]>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<MethodKey, MethodSignature[]> eldest)
+            {
+                return size() > CANDIDATE_METHODS_SIZE;
+            }
+        };
+
     @Override
     public void setRuntimeServices(RuntimeServices runtimeServices)
     {
@@ -72,17 +102,50 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
         VelMethod method = super.getMethod(obj, methodName, args, i);
         if (method == null && this.converterManager != null) {
             // Try to convert method arguments to formal parameter types.
-            Object[] convertedArguments = this.convertArguments(obj, methodName, args);
-            if (convertedArguments != null) {
-                method = super.getMethod(obj, methodName, convertedArguments, i);
-                if (method != null) {
-                    method = new ConvertingVelMethod(method);
+            for (MethodSignature signature : getCandidateMethods(obj.getClass(), methodName, args.length)) {
+                Object[] convertedArguments = convertArguments(args, signature);
+                if (convertedArguments != null) {
+                    method = super.getMethod(obj, methodName, convertedArguments, i);
+                    if (method != null) {
+                        method = new ConvertingVelMethod(method, signature);
+                    }
+                    break;
                 }
             }
         }
         return method;
     }
 
+    /**
+     * @param type the class of the object the method is invoked on
+     * @param methodName the method we're looking for
+     * @param parameterCount the number of arguments
+     * @return the signatures of the public methods with the specified name (ignoring case) and the specified number
+     *         of formal parameters
+     */
+    private MethodSignature[] getCandidateMethods(Class< ? > type, String methodName, int parameterCount)
+    {
+        MethodKey key = new MethodKey(type, methodName, parameterCount);
+        MethodSignature[] signatures;
+        synchronized (this.candidateMethods) {
+            signatures = this.candidateMethods.get(key);
+        }
+        if (signatures == null) {
+            List<MethodSignature> list = new ArrayList<MethodSignature>();
+            for (Method method : type.getMethods()) {
+                if (method.getName().equalsIgnoreCase(methodName)
+                    && method.getParameterTypes().length == parameterCount) {
+                    list.add(new MethodSignature(method.getParameterTypes()));
+                }
+            }
+            signatures = list.toArray(new MethodSignature[list.size()]);
+            synchronized (this.candidateMethods) {
+                this.candidateMethods.put(key, signatures);
+            }
+        }
+        return signatures;
+    }
+
     /**
      * Converts the given arguments to match a method with the specified name and the same number of formal parameters
      * as the number of arguments.
@@ -95,13 +158,10 @@ public VelMethod getMethod(Object obj, String methodName, Object[] args, Info i)
      */
     private Object[] convertArguments(Object obj, String methodName, Object[] args)
     {
-        for (Method method : obj.getClass().getMethods()) {
-            if (method.getName().equalsIgnoreCase(methodName) && method.getParameterTypes().length == args.length) {
-                try {
-                    return convertArguments(args, method.getParameterTypes());
-                } catch (Exception e) {
-                    // Ignore and try the next method.
-                }
+        for (MethodSignature signature : getCandidateMethods(obj.getClass(), methodName, args.length)) {
+            Object[] convertedArguments = convertArguments(args, signature);
+            if (convertedArguments != null) {
+                return convertedArguments;
             }
         }
         return null;
@@ -109,25 +169,102 @@ private Object[] convertArguments(Object obj, String methodName, Object[] args)
 
     /**
      * Tries to convert the given arguments to match the specified formal parameters types.
-     * <p>
-     * Throws a runtime exception if the conversion fails.
      * 
      * @param arguments the method actual arguments
-     * @param parameterTypes the method formal parameter types
-     * @return a new array of arguments where some values have been converted to match the formal method parameter types
+     * @param signature the method formal parameter types
+     * @return a new array of arguments where some values have been converted to match the formal method parameter
+     *         types, {@code null} if the conversion fails
      */
-    private Object[] convertArguments(Object[] arguments, Class< ? >[] parameterTypes)
+    private Object[] convertArguments(Object[] arguments, MethodSignature signature)
     {
         Object[] convertedArguments = Arrays.copyOf(arguments, arguments.length);
-        for (int i = 0; i < parameterTypes.length; i++) {
-            // Try to convert the argument if it's not null and if it doesn't match the parameter type.
-            if (arguments[i] != null && !parameterTypes[i].isInstance(arguments[i])) {
-                convertedArguments[i] = this.converterManager.convert(parameterTypes[i], arguments[i]);
+        try {
+            for (int i = 0; i < arguments.length; i++) {
+                // Try to convert the argument if it's not null and if it doesn't match the parameter type.
+                if (arguments[i] != null && !signature.instanceTypes[i].isInstance(arguments[i])) {
+                    convertedArguments[i] = this.converterManager.convert(signature.parameterTypes[i], arguments[i]);
+                }
             }
+        } catch (Exception e) {
+            return null;
         }
         return convertedArguments;
     }
 
+    /**
+     * The formal parameter types of a method. The converters are not cached with them but resolved by the
+     * {@link ConverterManager} each time an argument is converted, so that the converters registered or unregistered
+     * afterwards are taken into account.
+     *
+     * @version $Id$
+     */
+    private static final class MethodSignature
+    {
+        /** The formal parameter types. */
+        private final Class< ? >[] parameterTypes;
+
+        /** The types the arguments can be instances of without conversion (primitive types are boxed). */
+        private final Class< ? >[] instanceTypes;
+
+        /**
+         * @param parameterTypes the formal parameter types
+         */
+        MethodSignature(Class< ? >[] parameterTypes)
+        {
+            this.parameterTypes = parameterTypes;
+            this.instanceTypes = ClassUtils.primitivesToWrappers(parameterTypes);
+        }
+    }
+
+    /**
+     * Identifies the methods which can be called on a class with a given name and a given number of arguments.
+     *
+     * @version $Id$
+     */
+    private static final class MethodKey
+    {
+        /** The class of the object the method is invoked on. */
+        private final Class< ? > type;
+
+        /** The method name. */
+        private final String methodName;
+
+        /** The number of arguments. */
+        private final int parameterCount;
+
+        /**
+         * @param type the class of the object the method is invoked on
+         * @param methodName the method name
+         * @param parameterCount the number of arguments
+         */
+        MethodKey(Class< ? > type, String methodName, int parameterCount)
+        {
+            this.type = type;
+            this.methodName = methodName;
+            this.parameterCount = parameterCount;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (this.type.hashCode() * 31 + this.methodName.hashCode()) * 31 + this.parameterCount;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MethodKey)) {
+                return false;
+            }
+            MethodKey other = (MethodKey) obj;
+            return this.type == other.type && this.parameterCount == other.parameterCount
+                && this.methodName.equals(other.methodName);
+        }
+    }
+
     /**
      * Wrapper for a real VelMethod that converts the passed arguments to the real arguments expected by the method.
      *
@@ -138,20 +275,31 @@ private class ConvertingVelMethod implements VelMethod
         /** The real method that performs the actual call. */
         private VelMethod innerMethod;
 
+        /** The formal parameter types the arguments were converted to when the method was looked up. */
+        private MethodSignature signature;
+
         /**
          * Constructor.
          *
          * @param realMethod the real method to wrap
+         * @param signature the formal parameter types the arguments were converted to when the method was looked up
          */
-        public ConvertingVelMethod(VelMethod realMethod)
+        public ConvertingVelMethod(VelMethod realMethod, MethodSignature signature)
         {
             this.innerMethod = realMethod;
+            this.signature = signature;
         }
 
         @Override
         public Object invoke(Object o, Object[] params) throws Exception
         {
-            return this.innerMethod.invoke(o, convertArguments(o, this.innerMethod.getMethodName(), params));
+            // Most of the time the arguments passed by the cached method call have the same types as the arguments
+            // used to look up the method.
+            Object[] convertedArguments = convertArguments(params, this.signature);
+            if (convertedArguments == null) {
+                convertedArguments = convertArguments(o, this.innerMethod.getMethodName(), params);
+            }
+            return this.innerMethod.invoke(o, convertedArguments);
         }
 
         @Override
@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link ChunkedOutputWriter}.
+ * 
+ * @version $Id$
+ */
+public class ChunkedOutputWriterTest extends AbstractComponentTestCase
+{
+    /**
+     * Records the size of each write.
+     */
+    private static class RecordingOutputStream extends ByteArrayOutputStream
+    {
+        private List<Integer> writes = new ArrayList<Integer>();
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+        {
+            this.writes.add(len);
+            super.write(b, off, len);
+        }
+    }
+
+    @Test
+    public void testWriteChunks() throws IOException
+    {
+        RecordingOutputStream out = new RecordingOutputStream();
+        ChunkedOutputWriter writer = new ChunkedOutputWriter(out, 4);
+
+        writer.write("abcdefghij");
+        // Full chunks are written as soon as they are complete
+        Assert.assertEquals("abcdefgh", out.toString("UTF-8"));
+        Assert.assertEquals(8, writer.getWrittenBytes());
+
+        writer.flush();
+        Assert.assertEquals("abcdefghij", out.toString("UTF-8"));
+
+        writer.close();
+        for (int size : out.writes) {
+            Assert.assertTrue(size <= 4);
+        }
+    }
+
+    @Test
+    public void testWriteSurrogatePairInSeveralCalls() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputWriter writer = new ChunkedOutputWriter(out, 4);
+
+        String text = "a\u00e9\ud834\udd1e\u20ac";
+        for (char c : text.toCharArray()) {
+            writer.write(c);
+        }
+        writer.close();
+
+        Assert.assertEquals(text, out.toString("UTF-8"));
+    }
+
+    @Test
+    public void testCloseWithPendingHighSurrogate() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputWriter writer = new ChunkedOutputWriter(out);
+
+        writer.write("a\ud834");
+        writer.close();
+
+        Assert.assertEquals("a?", out.toString("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWriteAfterClose() throws IOException
+    {
+        ChunkedOutputWriter writer = new ChunkedOutputWriter(new ByteArrayOutputStream());
+        writer.close();
+        writer.write("a");
+    }
+
+    @Test
+    public void testEvaluate() throws Exception
+    {
+        VelocityEngine engine = getComponentManager().getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+        String source = "#foreach($i in [1..1000])line $i \u20ac\n#end";
+
+        StringWriter expected = new StringWriter();
+        engine.evaluate(new VelocityContext(), expected, "template", source);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputWriter writer = new ChunkedOutputWriter(out);
+        engine.evaluate(new VelocityContext(), writer, "template", source);
+        writer.close();
+
+        Assert.assertEquals(expected.toString(), out.toString("UTF-8"));
+    }
+}
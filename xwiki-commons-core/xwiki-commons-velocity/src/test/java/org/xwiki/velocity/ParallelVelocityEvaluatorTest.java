@@ -0,0 +1,122 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.velocity.VelocityContext;
+import org.apache.velocity.context.Context;
+import org.jmock.Expectations;
+import org.jmock.lib.concurrent.Synchroniser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link ParallelVelocityEvaluator}.
+ * 
+ * @version $Id$
+ */
+public class ParallelVelocityEvaluatorTest extends AbstractComponentTestCase
+{
+    private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdownExecutor()
+    {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testEvaluate() throws Exception
+    {
+        VelocityEngine engine = getComponentManager().getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+
+        VelocityContext context = new VelocityContext();
+        context.put("name", "fragment");
+
+        List<ParallelVelocityEvaluator.Fragment> fragments = new ArrayList<ParallelVelocityEvaluator.Fragment>();
+        for (int i = 0; i < 50; ++i) {
+            // Each fragment defines the same macro in its own namespace
+            fragments.add(new ParallelVelocityEvaluator.Fragment("namespace" + i, "#macro(mymacro)$name " + i
+                + "#end#set($name = 'changed')#mymacro()", context));
+        }
+
+        List<String> results = new ParallelVelocityEvaluator(engine, this.executor).evaluate(fragments);
+
+        Assert.assertEquals(50, results.size());
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertEquals("changed " + i, results.get(i));
+        }
+
+        // The passed context is not modified
+        Assert.assertEquals("fragment", context.get("name"));
+
+        // The namespaces are cleared once they're not used anymore
+        StringWriter writer = new StringWriter();
+        engine.evaluate(new VelocityContext(), writer, "namespace0", "#mymacro");
+        Assert.assertEquals("#mymacro", writer.toString());
+    }
+
+    @Test(expected = XWikiVelocityException.class)
+    public void testEvaluateWithError() throws Exception
+    {
+        VelocityEngine engine = getComponentManager().getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+
+        List<ParallelVelocityEvaluator.Fragment> fragments = new ArrayList<ParallelVelocityEvaluator.Fragment>();
+        fragments.add(new ParallelVelocityEvaluator.Fragment("namespace", "#if(", new VelocityContext()));
+
+        new ParallelVelocityEvaluator(engine, this.executor).evaluate(fragments);
+    }
+
+    @Test
+    public void testEvaluateWhenFragmentCannotBeParsed() throws Exception
+    {
+        // The mock is called from the threads of the executor
+        getMockery().setThreadingPolicy(new Synchroniser());
+        final VelocityEngine engine = getMockery().mock(VelocityEngine.class);
+        getMockery().checking(new Expectations()
+        {{
+            allowing(engine).startedUsingMacroNamespace("namespace");
+            oneOf(engine).evaluate(with(any(Context.class)), with(any(StringWriter.class)), with("namespace"),
+                with("unparsable"));
+            will(returnValue(false));
+            oneOf(engine).stoppedUsingMacroNamespace("namespace");
+        }});
+
+        List<ParallelVelocityEvaluator.Fragment> fragments = new ArrayList<ParallelVelocityEvaluator.Fragment>();
+        fragments.add(new ParallelVelocityEvaluator.Fragment("namespace", "unparsable", new VelocityContext()));
+
+        try {
+            new ParallelVelocityEvaluator(engine, this.executor).evaluate(fragments);
+            Assert.fail("Should have raised an exception");
+        } catch (XWikiVelocityException expected) {
+            Assert.assertEquals("Failed to parse Velocity fragment [namespace]", expected.getMessage());
+        }
+    }
+}
@@ -19,19 +19,29 @@
  */
 package org.xwiki.velocity.internal;
 
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Properties;
 
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.tools.generic.ListTool;
 import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.test.jmock.AbstractMockingComponentTestCase;
 import org.xwiki.test.jmock.annotation.MockingRequirement;
+import org.xwiki.velocity.StaticVelocityContextInitializer;
 import org.xwiki.velocity.VelocityConfiguration;
 import org.xwiki.velocity.VelocityContextFactory;
 import org.xwiki.velocity.VelocityContextInitializer;
@@ -46,10 +56,18 @@ public class DefaultVelocityContextFactoryTest extends AbstractMockingComponentT
 {
     private VelocityContextFactory factory;
 
+    private ComponentManager mockComponentManager;
+
+    private ObservationManager observationManager;
+
+    private EventListener listener;
+
     @Before
     public void configure() throws Exception
     {
         final VelocityConfiguration configuration = getComponentManager().getInstance(VelocityConfiguration.class);
+        this.mockComponentManager = getComponentManager().getInstance(ComponentManager.class);
+        this.observationManager = getMockery().mock(ObservationManager.class);
         final Properties properties = new Properties();
         properties.put("listtool", ListTool.class.getName());
         getMockery().checking(new Expectations() {{
@@ -60,11 +78,37 @@ public void configure() throws Exception
             // annotation but this allows us to assert if there are warn(), info() or error() calls, which are
             // important to test.
             ignoring(any(Logger.class)).method("debug");
+
+            oneOf(mockComponentManager).hasComponent(ObservationManager.class);
+            will(returnValue(true));
+            oneOf(mockComponentManager).getInstance(ObservationManager.class);
+            will(returnValue(observationManager));
+            oneOf(observationManager).addListener(with(any(EventListener.class)));
+            will(new CustomAction("store listener")
+            {
+                @Override
+                public Object invoke(Invocation invocation) throws Throwable
+                {
+                    listener = (EventListener) invocation.getParameter(0);
+                    return null;
+                }
+            });
         }});
 
         this.factory = getComponentManager().getInstance(VelocityContextFactory.class);
     }
 
+    private DefaultComponentDescriptor<VelocityContextInitializer> createDescriptor(String hint,
+        Class< ? extends VelocityContextInitializer> implementation)
+    {
+        DefaultComponentDescriptor<VelocityContextInitializer> descriptor =
+            new DefaultComponentDescriptor<VelocityContextInitializer>();
+        descriptor.setRoleType(VelocityContextInitializer.class);
+        descriptor.setRoleHint(hint);
+        descriptor.setImplementation(implementation);
+        return descriptor;
+    }
+
     /**
      * Verify that we get different contexts when we call the createContext method but that
      * they contain the same references to the Velocity tools. Also tests that objects we
@@ -76,11 +120,14 @@ public void testCreateDifferentContext() throws Exception
     {
         // We also verify that the VelocityContextInitializers are called.
         final VelocityContextInitializer mockInitializer = getMockery().mock(VelocityContextInitializer.class);
-        final ComponentManager mockComponentManager = getComponentManager().getInstance(ComponentManager.class);
         getMockery().checking(new Expectations() {{
             exactly(2).of(mockInitializer).initialize(with(any(VelocityContext.class)));
-            exactly(2). of(mockComponentManager).getInstanceList(VelocityContextInitializer.class);
-            will(returnValue(Arrays.asList(mockInitializer)));
+            // The list of initializers is cached
+            oneOf(mockComponentManager).getComponentDescriptorList((Type) VelocityContextInitializer.class);
+            will(returnValue(Arrays.asList(createDescriptor("test", VelocityContextInitializer.class))));
+            // But the initializers are looked up for each context
+            exactly(2).of(mockComponentManager).getInstance(VelocityContextInitializer.class, "test");
+            will(returnValue(mockInitializer));
         }});
 
         VelocityContext context1 = this.factory.createContext();
@@ -92,4 +139,91 @@ public void testCreateDifferentContext() throws Exception
         Assert.assertSame(context2.get("listtool"), context1.get("listtool"));
         Assert.assertNull(context2.get("param"));
     }
+
+    /**
+     * Verify that static initializers are called only once and that their contributions are shared by all the
+     * contexts, and that the initializers are looked up again when an initializer is registered.
+     */
+    @Test
+    public void testStaticInitializer() throws Exception
+    {
+        final StaticVelocityContextInitializer staticInitializer =
+            getMockery().mock(StaticVelocityContextInitializer.class);
+        final VelocityContextInitializer initializer = getMockery().mock(VelocityContextInitializer.class);
+        getMockery().checking(new Expectations() {{
+            exactly(2).of(mockComponentManager).getComponentDescriptorList((Type) VelocityContextInitializer.class);
+            will(returnValue(Arrays.asList(createDescriptor("static", StaticVelocityContextInitializer.class),
+                createDescriptor("default", VelocityContextInitializer.class))));
+            exactly(2).of(mockComponentManager).getInstance(VelocityContextInitializer.class, "static");
+            will(returnValue(staticInitializer));
+            exactly(3).of(mockComponentManager).getInstance(VelocityContextInitializer.class, "default");
+            will(returnValue(initializer));
+            exactly(2).of(staticInitializer).initialize(with(any(VelocityContext.class)));
+            will(new CustomAction("put static value")
+            {
+                @Override
+                public Object invoke(Invocation invocation) throws Throwable
+                {
+                    ((VelocityContext) invocation.getParameter(0)).put("static", "value");
+                    return null;
+                }
+            });
+            exactly(3).of(initializer).initialize(with(any(VelocityContext.class)));
+        }});
+
+        VelocityContext context1 = this.factory.createContext();
+        VelocityContext context2 = this.factory.createContext();
+        Assert.assertEquals("value", context1.get("static"));
+        Assert.assertEquals("value", context2.get("static"));
+        Assert.assertTrue(Arrays.asList(context1.getKeys()).contains("static"));
+
+        // Overwriting a shared value doesn't impact the other contexts
+        context1.put("static", "other");
+        Assert.assertEquals("value", context2.get("static"));
+
+        this.listener.onEvent(new ComponentDescriptorAddedEvent(VelocityContextInitializer.class), null, null);
+
+        Assert.assertEquals("value", this.factory.createContext().get("static"));
+    }
+
+    /**
+     * Verify that the initializers are not cached when nobody can tell that they changed.
+     */
+    @Test
+    public void testCreateContextWithoutObservationManager() throws Exception
+    {
+        final VelocityContextInitializer initializer = getMockery().mock(VelocityContextInitializer.class);
+        getMockery().checking(new Expectations() {{
+            oneOf(mockComponentManager).hasComponent(ObservationManager.class);
+            will(returnValue(false));
+            exactly(2).of(mockComponentManager).getComponentDescriptorList((Type) VelocityContextInitializer.class);
+            will(returnValue(Arrays.asList(createDescriptor("default", VelocityContextInitializer.class))));
+            exactly(2).of(mockComponentManager).getInstance(VelocityContextInitializer.class, "default");
+            will(returnValue(initializer));
+            exactly(2).of(initializer).initialize(with(any(VelocityContext.class)));
+        }});
+
+        DefaultVelocityContextFactory otherFactory = new DefaultVelocityContextFactory();
+        ReflectionUtils.setFieldValue(otherFactory, "componentManager", this.mockComponentManager);
+        ReflectionUtils.setFieldValue(otherFactory, "velocityConfiguration",
+            getComponentManager().getInstance(VelocityConfiguration.class));
+        ReflectionUtils.setFieldValue(otherFactory, "logger", getMockery().mock(Logger.class, "otherLogger"));
+        otherFactory.initialize();
+
+        otherFactory.createContext();
+        otherFactory.createContext();
+    }
+
+    /**
+     * Verify that the listener resetting the cached initializers is removed when the factory is disposed.
+     */
+    @Test
+    public void testDispose() throws Exception
+    {
+        getMockery().checking(new Expectations() {{
+            oneOf(observationManager).removeListener(listener.getName());
+        }});
+
+        ((Disposable) this.factory).dispose();
+    }
 }
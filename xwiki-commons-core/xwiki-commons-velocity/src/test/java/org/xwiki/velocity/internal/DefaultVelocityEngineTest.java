@@ -174,4 +174,131 @@ public void testConfigureMacrosToBeGlobal() throws Exception
         this.engine.evaluate(context, writer, "template2", "#mymacro");
         Assert.assertEquals("test", writer.toString());
     }
+
+    @Test
+    public void testCachedTemplateRegistersItsMacrosAgain() throws Exception
+    {
+        this.engine.initialize(new Properties());
+        Context context = new org.apache.velocity.VelocityContext();
+        String source = "#macro(mymacro $param)test$param#end#mymacro('1')";
+
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", source);
+        Assert.assertEquals("test1", writer.toString());
+
+        this.engine.clearMacroNamespace("template1");
+
+        writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", new StringReader(source));
+        Assert.assertEquals("test1", writer.toString());
+
+        // The macro is registered again in the namespace
+        writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", "#mymacro('2')");
+        Assert.assertEquals("test2", writer.toString());
+
+        ParsedTemplateCache cache = ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCachedTemplateCallingMacroDefinedLater() throws Exception
+    {
+        this.engine.initialize(new Properties());
+        Context context = new org.apache.velocity.VelocityContext();
+
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", "#mymacro()");
+        Assert.assertEquals("#mymacro()", writer.toString());
+
+        this.engine.evaluate(context, new StringWriter(), "template1", "#macro(mymacro)test#end");
+
+        writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", "#mymacro()");
+        Assert.assertEquals("test", writer.toString());
+        Assert.assertEquals(1, ((DefaultVelocityEngine) this.engine).getParsedTemplateCache().getHits());
+    }
+
+    @Test
+    public void testMacroCallWithoutParenthesisIsNotCached() throws Exception
+    {
+        this.engine.initialize(new Properties());
+        Context context = new org.apache.velocity.VelocityContext();
+
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", "#mymacro");
+        Assert.assertEquals("#mymacro", writer.toString());
+
+        this.engine.evaluate(context, new StringWriter(), "template1", "#macro(mymacro)test#end");
+
+        writer = new StringWriter();
+        this.engine.evaluate(context, writer, "template1", "#mymacro");
+        Assert.assertEquals("test", writer.toString());
+
+        ParsedTemplateCache cache = ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testCacheEviction() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("evaluate.cache.size", "1");
+        this.engine.initialize(properties);
+        Context context = new org.apache.velocity.VelocityContext();
+
+        this.engine.evaluate(context, new StringWriter(), "template1", "first");
+        this.engine.evaluate(context, new StringWriter(), "template1", "second");
+
+        ParsedTemplateCache cache = ((DefaultVelocityEngine) this.engine).getParsedTemplateCache();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testDisableCache() throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("evaluate.cache.size", "0");
+        this.engine.initialize(properties);
+
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(new org.apache.velocity.VelocityContext(), writer, "mytemplate",
+            new StringReader("#set($foo='hello')$foo World"));
+        Assert.assertEquals("hello World", writer.toString());
+        Assert.assertNull(((DefaultVelocityEngine) this.engine).getParsedTemplateCache());
+    }
+
+    @Test
+    public void testMacroNamespaceUsage() throws Exception
+    {
+        this.engine.initialize(new Properties());
+        Context context = new org.apache.velocity.VelocityContext();
+
+        this.engine.startedUsingMacroNamespace("namespace");
+        this.engine.startedUsingMacroNamespace("namespace");
+        this.engine.evaluate(context, new StringWriter(), "namespace", "#macro(mymacro)test#end");
+
+        // Still used
+        this.engine.stoppedUsingMacroNamespace("namespace");
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, "namespace", "#mymacro");
+        Assert.assertEquals("test", writer.toString());
+
+        // Not used anymore
+        this.engine.stoppedUsingMacroNamespace("namespace");
+        writer = new StringWriter();
+        this.engine.evaluate(context, writer, "namespace", "#mymacro");
+        Assert.assertEquals("#mymacro", writer.toString());
+
+        final Logger logger = getMockLogger();
+        getMockery().checking(new Expectations() {{
+            oneOf(logger).warn("Wrong usage count for namespace [{}]", "namespace");
+        }});
+
+        this.engine.stoppedUsingMacroNamespace("namespace");
+    }
 }
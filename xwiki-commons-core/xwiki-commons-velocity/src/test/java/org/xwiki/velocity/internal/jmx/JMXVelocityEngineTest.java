@@ -24,6 +24,7 @@
 import org.junit.Test;
 import org.xwiki.test.jmock.AbstractComponentTestCase;
 import org.xwiki.velocity.VelocityEngine;
+import org.xwiki.velocity.introspection.DeprecatedCheckUberspector;
 
 import javax.management.openmbean.CompositeData;
 import javax.management.openmbean.TabularData;
@@ -68,4 +69,44 @@ public void testGetTemplates() throws Exception
         Assert.assertEquals(1, retrievedData.get("testmacronamespace").length);
         Assert.assertEquals("testmacro", retrievedData.get("testmacronamespace")[0]);
     }
+
+    @Test
+    public void testGetParsedTemplateCacheStatistics() throws Exception
+    {
+        VelocityEngine engine = getComponentManager().getInstance(VelocityEngine.class);
+        engine.initialize(new Properties());
+        JMXVelocityEngine jmxBean = new JMXVelocityEngine(engine);
+
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template", "#set($foo = 1)$foo");
+        engine.evaluate(new VelocityContext(), new StringWriter(), "template", "#set($foo = 1)$foo");
+
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCacheSize());
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCacheHits());
+        Assert.assertEquals(1, jmxBean.getParsedTemplateCacheMisses());
+        Assert.assertEquals(0, jmxBean.getParsedTemplateCacheEvictions());
+    }
+
+    @Test
+    public void testGetDeprecatedUsages() throws Exception
+    {
+        VelocityEngine engine = getComponentManager().getInstance(VelocityEngine.class);
+        Properties properties = new Properties();
+        properties.setProperty(DeprecatedCheckUberspector.AGGREGATE_USAGES, "true");
+        engine.initialize(properties);
+        JMXVelocityEngine jmxBean = new JMXVelocityEngine(engine);
+
+        // Use a new context for each evaluation since the context caches the resolved methods
+        for (int i = 0; i < 2; i++) {
+            VelocityContext context = new VelocityContext();
+            context.put("date", new java.util.Date());
+            engine.evaluate(context, new StringWriter(), "template", "$date.getYear()");
+        }
+
+        TabularData data = jmxBean.getDeprecatedUsages();
+
+        Assert.assertEquals(1, data.values().size());
+        CompositeData cd = ((CompositeData) data.values().iterator().next());
+        Assert.assertEquals("method [java.util.Date.getYear] in template", cd.get("usage"));
+        Assert.assertEquals(2L, cd.get("count"));
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.internal.util;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.xwiki.velocity.internal.util.VelocityBlock.VelocityType;
+
+public class VelocityScannerTest
+{
+    private void assertBlock(String name, VelocityType type, int start, int end, VelocityBlock block)
+    {
+        Assert.assertNotNull(block);
+        Assert.assertEquals(name, block.getName());
+        Assert.assertEquals(type, block.getType());
+        Assert.assertEquals(start, block.getStart());
+        Assert.assertEquals(end, block.getEnd());
+    }
+
+    // Tests
+
+    @Test
+    public void next()
+    {
+        String source = "text #if($a)$b.c#{else}\\$d#end ## comment\n#mymacro() # $";
+        VelocityScanner scanner = new VelocityScanner(source.toCharArray());
+
+        assertBlock("if", VelocityType.DIRECTIVE, 5, 12, scanner.next());
+        assertBlock("b", VelocityType.VAR, 12, 16, scanner.next());
+        assertBlock("else", VelocityType.DIRECTIVE, 16, 23, scanner.next());
+        assertBlock("end", VelocityType.DIRECTIVE, 26, 30, scanner.next());
+        assertBlock(null, VelocityType.COMMENT, 31, 42, scanner.next());
+        assertBlock("mymacro", VelocityType.MACRO, 42, 52, scanner.next());
+        Assert.assertNull(scanner.next());
+        Assert.assertEquals(source.length(), scanner.getIndex());
+    }
+
+    @Test
+    public void resumeFromCheckpoint()
+    {
+        VelocityScanner scanner = new VelocityScanner("#foreach($i in $list)$i#end".toCharArray());
+
+        assertBlock("foreach", VelocityType.DIRECTIVE, 0, 21, scanner.next());
+
+        VelocityScanner.Checkpoint checkpoint = scanner.getCheckpoint();
+
+        Assert.assertEquals(21, checkpoint.getIndex());
+
+        assertBlock("i", VelocityType.VAR, 21, 23, scanner.next());
+        assertBlock("end", VelocityType.DIRECTIVE, 23, 27, scanner.next());
+
+        // Rescan only the modified end of the source
+        scanner = new VelocityScanner("#foreach($i in $list)${i.name}#end".toCharArray(), checkpoint);
+
+        assertBlock("i", VelocityType.VAR, 21, 30, scanner.next());
+        assertBlock("end", VelocityType.DIRECTIVE, 30, 34, scanner.next());
+        Assert.assertNull(scanner.next());
+
+        // The checkpoint is not affected by the scanners resumed from it
+        Assert.assertEquals(21, checkpoint.getIndex());
+    }
+}
@@ -274,4 +274,43 @@ public void testDeprecatedUberspector() throws Exception
         Assert.assertEquals(1, TestingUberspector.methodCalls);
         Assert.assertEquals(1, TestingUberspector.getterCalls);
     }
+
+    /*
+     * Checks that the deprecated check uberspector logs each deprecated usage only once when they are aggregated.
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testDeprecatedUberspectorWithAggregatedUsages() throws Exception
+    {
+        Properties prop = new Properties();
+        prop.setProperty(RuntimeConstants.UBERSPECT_CLASSNAME, ChainingUberspector.class.getCanonicalName());
+        prop.setProperty(ChainingUberspector.UBERSPECT_CHAIN_CLASSNAMES, UberspectImpl.class.getCanonicalName() + ","
+            + DeprecatedCheckUberspector.class.getCanonicalName());
+        prop.setProperty(DeprecatedCheckUberspector.AGGREGATE_USAGES, "true");
+        this.engine.initialize(prop);
+        Date d = new Date();
+
+        // Define expectations on the Logger
+        this.loggingVerification.become("on");
+        this.mockery.checking(new Expectations()
+        {{
+            oneOf(mockLogger).warn("Deprecated usage of method [java.util.Date.getYear] in mytemplate@1,7");
+            oneOf(mockLogger).warn("Deprecated usage of method [java.util.Date.getYear] in othertemplate@1,7");
+        }});
+
+        // Use a new context for each evaluation since the context caches the resolved methods
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(createContext(d), writer, "mytemplate", "$date.getYear()");
+        this.engine.evaluate(createContext(d), writer, "mytemplate", "#set($year = $date.getYear())");
+        this.engine.evaluate(createContext(d), writer, "othertemplate", "$date.getYear()");
+
+        Assert.assertEquals(String.valueOf(d.getYear()) + d.getYear(), writer.toString());
+    }
+
+    private VelocityContext createContext(Date date)
+    {
+        VelocityContext context = new VelocityContext();
+        context.put("date", date);
+        return context;
+    }
 }
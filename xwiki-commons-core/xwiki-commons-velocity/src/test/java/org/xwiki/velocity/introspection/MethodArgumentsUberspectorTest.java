@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.velocity.introspection;
+
+import java.io.StringWriter;
+import java.util.Properties;
+
+import org.apache.velocity.VelocityContext;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+import org.xwiki.velocity.VelocityEngine;
+
+/**
+ * Unit tests for {@link MethodArgumentsUberspector}.
+ *
+ * @version $Id$
+ */
+public class MethodArgumentsUberspectorTest extends AbstractComponentTestCase
+{
+    public enum Size
+    {
+        SMALL,
+        LARGE
+    }
+
+    public static class Shop
+    {
+        public String order(Size size, int count)
+        {
+            return count + " " + size.name().toLowerCase();
+        }
+    }
+
+    private VelocityEngine engine;
+
+    @Override
+    protected void registerComponents() throws Exception
+    {
+        this.engine = getComponentManager().getInstance(VelocityEngine.class);
+        this.engine.initialize(new Properties());
+    }
+
+    @Test
+    public void testConvertArgumentsInLoop() throws Exception
+    {
+        VelocityContext context = new VelocityContext();
+        context.put("shop", new Shop());
+
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, "mytemplate",
+            "#foreach($size in ['small', 'LARGE', 'small'])$shop.order($size, $velocityCount),#end");
+        Assert.assertEquals("1 small,2 large,3 small,", writer.toString());
+    }
+
+    @Test
+    public void testConvertArgumentsWhenTypesChange() throws Exception
+    {
+        VelocityContext context = new VelocityContext();
+        context.put("shop", new Shop());
+
+        StringWriter writer = new StringWriter();
+        this.engine.evaluate(context, writer, "mytemplate",
+            "#foreach($count in [1, '2'])$shop.order('large', $count),#end");
+        Assert.assertEquals("1 large,2 large,", writer.toString());
+    }
+}
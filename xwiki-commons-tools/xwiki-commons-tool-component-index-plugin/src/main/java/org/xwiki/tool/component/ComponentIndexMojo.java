@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.tool.component;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.xwiki.component.annotation.ComponentAnnotationLoader;
+import org.xwiki.component.annotation.ComponentDeclaration;
+import org.xwiki.component.annotation.ComponentDescriptorIndex;
+
+/**
+ * Generates the component index (see {@link ComponentDescriptorIndex}) of the components declared in the
+ * {@code META-INF/components.txt} file of the compiled module, so that they don't have to be introspected at startup.
+ * 
+ * @version $Id$
+ * @since 4.5M1
+ * @goal index
+ * @phase process-classes
+ * @requiresProject
+ * @requiresDependencyResolution compile
+ * @threadSafe
+ */
+public class ComponentIndexMojo extends AbstractMojo
+{
+    /**
+     * The directory containing the compiled classes and the {@code META-INF/components.txt} file.
+     * 
+     * @parameter default-value="${project.build.outputDirectory}"
+     * @required
+     * @readonly
+     */
+    private File outputDirectory;
+
+    /**
+     * The compile classpath of the module, including the compiled classes.
+     * 
+     * @parameter default-value="${project.compileClasspathElements}"
+     * @required
+     * @readonly
+     */
+    private List<String> classpathElements;
+
+    /**
+     * If true then don't generate the index.
+     * 
+     * @parameter expression="${xwiki.componentindex.skip}" default-value="false"
+     */
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException
+    {
+        File componentListFile = new File(this.outputDirectory, ComponentAnnotationLoader.COMPONENT_LIST);
+        if (this.skip || !componentListFile.exists()) {
+            return;
+        }
+
+        try {
+            // The component API classes come from the plugin so that the annotations are the ones the loader knows
+            ClassLoader classLoader = new URLClassLoader(getClasspathURLs(), getClass().getClassLoader());
+
+            ComponentAnnotationLoader loader = new ComponentAnnotationLoader();
+            List<ComponentDeclaration> declarations;
+            // The checksum of the list identifies the index generated for it
+            CheckedInputStream componentListStream =
+                new CheckedInputStream(new FileInputStream(componentListFile), new CRC32());
+            try {
+                declarations = loader.getDeclaredComponents(componentListStream);
+            } finally {
+                componentListStream.close();
+            }
+
+            List<Class< ? >> componentClasses = new ArrayList<Class< ? >>(declarations.size());
+            for (ComponentDeclaration declaration : declarations) {
+                componentClasses.add(classLoader.loadClass(declaration.getImplementationClassName()));
+            }
+
+            int indexed;
+            OutputStream stream =
+                new FileOutputStream(new File(this.outputDirectory, ComponentDescriptorIndex.COMPONENT_INDEX));
+            try {
+                indexed =
+                    new ComponentDescriptorIndex(loader).write(componentClasses, componentListStream.getChecksum()
+                        .getValue(), stream);
+            } finally {
+                stream.close();
+            }
+
+            getLog().info(String.format("Indexed [%s] of [%s] components", indexed, componentClasses.size()));
+        } catch (Exception e) {
+            throw new MojoExecutionException("Failed to generate the component index", e);
+        }
+    }
+
+    /**
+     * @return the URLs of the compile classpath of the module
+     * @throws MojoExecutionException when an element of the classpath is invalid
+     */
+    private URL[] getClasspathURLs() throws MojoExecutionException
+    {
+        URL[] urls = new URL[this.classpathElements.size()];
+        for (int i = 0; i < urls.length; ++i) {
+            try {
+                urls[i] = new File(this.classpathElements.get(i)).toURI().toURL();
+            } catch (Exception e) {
+                throw new MojoExecutionException("Invalid classpath element [" + this.classpathElements.get(i) + "]",
+                    e);
+            }
+        }
+
+        return urls;
+    }
+}